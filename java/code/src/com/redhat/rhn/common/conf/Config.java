@@ -23,12 +23,17 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * The Config class acts as an abstraction layer between our configuration
@@ -38,6 +43,11 @@ import java.util.TreeSet;
  * <p>
  * Config files are properties, with /usr/share/rhn/config-defaults/rhn.conf
  * setting defaults that can be overridden by /etc/rhn/rhn.conf.
+ * <p>
+ * The values are held in an immutable snapshot published through a volatile
+ * reference, so readers never take a lock. Each snapshot caches the values
+ * looked up and parsed through it. Changes and {@link #reload()} build a new
+ * snapshot and swap it in.
  *
  * @version $Rev$
  */
@@ -74,14 +84,19 @@ public class Config {
      */
     private static final String[] TRUE_VALUES = {"1", "y", "true", "yes", "on"};
 
+    /**
+     * Cached in place of values that are not set
+     */
+    private static final Object NO_VALUE = new Object();
+
     /**
      * array of prefix in the order they should be search
      * if the given lookup string is without a namespace.
      */
     private final String[] prefixOrder = new String[] {"web", "server"};
-    private static Config singletonConfig = null;
-    /** hash of configuration properties */
-    private final Properties configValues = new Properties();
+    private static volatile Config singletonConfig = null;
+    /** configuration properties and the values looked up from them */
+    private volatile Snapshot snapshot = new Snapshot(new HashMap<String, String>());
     /** set of configuration file names */
     private final TreeSet<File> fileList = new TreeSet<File>(new Comparator<File>() {
 
@@ -123,7 +138,7 @@ public class Config {
      * Add a path to the config object for parsing
      * @param path The path to add
      */
-    public void addPath(String path) {
+    public synchronized void addPath(String path) {
         getFiles(path);
     }
 
@@ -132,11 +147,17 @@ public class Config {
      *
      * @return the config option
      */
-    public static synchronized Config get() {
-        if (singletonConfig == null) {
-            singletonConfig = new Config();
+    public static Config get() {
+        Config config = singletonConfig;
+        if (config == null) {
+            synchronized (Config.class) {
+                if (singletonConfig == null) {
+                    singletonConfig = new Config();
+                }
+                config = singletonConfig;
+            }
         }
-        return singletonConfig;
+        return config;
     }
 
     private static String getDefaultConfigDir() {
@@ -180,7 +201,7 @@ public class Config {
      * @return true if the config contains key
      */
     public boolean containsKey(String name) {
-        return configValues.containsKey(name);
+        return snapshot.values.containsKey(name);
     }
 
     /**
@@ -190,12 +211,25 @@ public class Config {
      * @return the value
      */
     public String getString(String value) {
-        if (logger.isDebugEnabled()) {
-            logger.debug("getString() -     getString() called with: " + value);
-        }
         if (value == null) {
             return null;
         }
+        Snapshot current = snapshot;
+        Object cached = current.strings.get(value);
+        if (cached == null) {
+            cached = lookup(current.values, value);
+            if (cached == null) {
+                cached = NO_VALUE;
+            }
+            current.strings.putIfAbsent(value, cached);
+        }
+        return cached == NO_VALUE ? null : (String) cached;
+    }
+
+    private String lookup(Map<String, String> configValues, String value) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("getString() -     getString() called with: " + value);
+        }
 
         int lastDot = value.lastIndexOf('.');
         String ns = "";
@@ -208,17 +242,17 @@ public class Config {
             logger.debug("getString() -     getString() -> Getting property: " +
                     property);
         }
-        String result = configValues.getProperty(property);
+        String result = configValues.get(property);
         if (logger.isDebugEnabled()) {
             logger.debug("getString() -     getString() -> result: " + result);
         }
         if (result == null) {
             if (!"".equals(ns)) {
-                result = configValues.getProperty(ns + "." + property);
+                result = configValues.get(ns + "." + property);
             }
             else {
                 for (String prefix : prefixOrder) {
-                    result = configValues.getProperty(prefix + "." + property);
+                    result = configValues.get(prefix + "." + property);
                     if (result != null) {
                         break;
                     }
@@ -269,11 +303,18 @@ public class Config {
      * @return the value
      */
     public Integer getInteger(String s) {
-        String val = getString(s);
-        if (val == null) {
+        if (s == null) {
             return null;
         }
-        return new Integer(val);
+        Snapshot current = snapshot;
+        Object cached = current.integers.get(s);
+        if (cached == null) {
+            String val = getString(s);
+            // values that are not numbers are not cached and fail every time
+            cached = val == null ? NO_VALUE : new Integer(val);
+            current.integers.putIfAbsent(s, cached);
+        }
+        return cached == NO_VALUE ? null : (Integer) cached;
     }
 
     /**
@@ -316,16 +357,21 @@ public class Config {
      * @param value new value
      * @return the previous value of the property
      */
-    public String setString(String name, String value) {
-        return (String) configValues.setProperty(name, value);
+    public synchronized String setString(String name, String value) {
+        Map<String, String> values = new HashMap<String, String>(snapshot.values);
+        String previous = values.put(name, value);
+        snapshot = new Snapshot(values);
+        return previous;
     }
 
     /**
      * remove the config entry for key
      * @param name key to remove
      */
-    public void remove(String name) {
-        configValues.remove(name);
+    public synchronized void remove(String name) {
+        Map<String, String> values = new HashMap<String, String>(snapshot.values);
+        values.remove(name);
+        snapshot = new Snapshot(values);
     }
 
     /**
@@ -335,6 +381,19 @@ public class Config {
      * @return the value
      */
     public boolean getBoolean(String s) {
+        if (s == null) {
+            return false;
+        }
+        Snapshot current = snapshot;
+        Boolean cached = current.booleans.get(s);
+        if (cached == null) {
+            cached = Boolean.valueOf(parseBoolean(s));
+            current.booleans.putIfAbsent(s, cached);
+        }
+        return cached.booleanValue();
+    }
+
+    private boolean parseBoolean(String s) {
         String value = getString(s);
         if (logger.isDebugEnabled()) {
             logger.debug("getBoolean() - " + s + " is : " + value);
@@ -371,13 +430,13 @@ public class Config {
         // get the job done for an integer as a String.
         for (String trueValue : TRUE_VALUES) {
             if (trueValue.equalsIgnoreCase(b)) {
-                configValues.setProperty(s, "1");
+                setString(s, "1");
 
                 // get out we're done here
                 return;
             }
         }
-        configValues.setProperty(s, "0");
+        setString(s, "0");
     }
 
     private void getFiles(String path) {
@@ -423,7 +482,25 @@ public class Config {
     /**
      * Parse all of the added files.
      */
-    public void parseFiles() {
+    public synchronized void parseFiles() {
+        Map<String, String> values = new HashMap<String, String>(snapshot.values);
+        readFiles(values);
+        snapshot = new Snapshot(values);
+    }
+
+    /**
+     * Reads the added files again and replaces all values with theirs,
+     * dropping values set at runtime. Readers see either the old or the new
+     * values, never a mix of both.
+     */
+    public synchronized void reload() {
+        Map<String, String> values = new HashMap<String, String>();
+        readFiles(values);
+        snapshot = new Snapshot(values);
+        logger.info("Configuration reloaded from " + fileList.size() + " files");
+    }
+
+    private void readFiles(Map<String, String> configValues) {
         for (File curr : fileList) {
 
             Properties props = new Properties();
@@ -439,7 +516,7 @@ public class Config {
 
             // loop through all of the config values in the properties file
             // making sure the prefix is there.
-            Properties newProps = new Properties();
+            Map<String, String> newProps = new HashMap<String, String>();
             for (Iterator j = props.keySet().iterator(); j.hasNext();) {
                 String key = (String) j.next();
                 String newKey = key;
@@ -462,16 +539,36 @@ public class Config {
      * @return subset of the properties that begin with the given namespace.
      */
     public Properties getNamespaceProperties(String namespace) {
+        Map<String, String> configValues = snapshot.values;
         Properties prop = new Properties();
-        for (Iterator i = configValues.keySet().iterator(); i.hasNext();) {
-            String key = (String) i.next();
+        for (Iterator<String> i = configValues.keySet().iterator(); i.hasNext();) {
+            String key = i.next();
             if (key.startsWith(namespace)) {
                 if (logger.isDebugEnabled()) {
                     logger.debug("Looking for key: [" + key + "]");
                 }
-                prop.put(key, configValues.getProperty(key));
+                prop.put(key, configValues.get(key));
             }
         }
         return prop;
     }
+
+    /**
+     * The configuration values at one point in time, with the results of
+     * the lookups made on them. Never changed once published.
+     */
+    private static final class Snapshot {
+        private final Map<String, String> values;
+        // looked up names and the parsed values, NO_VALUE if not set
+        private final ConcurrentMap<String, Object> strings =
+                new ConcurrentHashMap<String, Object>();
+        private final ConcurrentMap<String, Object> integers =
+                new ConcurrentHashMap<String, Object>();
+        private final ConcurrentMap<String, Boolean> booleans =
+                new ConcurrentHashMap<String, Boolean>();
+
+        Snapshot(Map<String, String> valuesIn) {
+            values = Collections.unmodifiableMap(valuesIn);
+        }
+    }
 }
@@ -97,6 +97,32 @@ public class ConfigDefaults {
 
     public static final String CONFIG_FILE_EDIT_SIZE = "java.config_file_edit_size";
 
+    public static final String DB_BATCH_SIZE = "java.db_batch_size";
+
+    public static final String DB_STATEMENT_CACHE_SIZE = "java.db_statement_cache_size";
+
+    public static final String DB_FETCH_SIZE = "java.db_fetch_size";
+
+    public static final String MESSAGE_QUEUE_THREAD_POOL_SIZE =
+            "java.message_queue_thread_pool_size";
+
+    public static final String MESSAGE_QUEUE_JOURNAL_DIR =
+            "java.message_queue_journal_dir";
+
+    public static final String MESSAGE_QUEUE_JOURNAL_SEGMENT_SIZE =
+            "java.message_queue_journal_segment_size";
+
+    public static final String INCREMENTAL_REPODATA = "java.incremental_repodata";
+
+    public static final String API_SESSION_CACHE_SIZE = "java.api_session_cache_size";
+
+    public static final String API_SESSION_CACHE_TTL = "java.api_session_cache_ttl";
+
+    public static final String SESSION_REFRESH_THRESHOLD = "java.session_refresh_threshold";
+
+    public static final String SESSION_REFRESH_FLUSH_INTERVAL =
+            "java.session_refresh_flush_interval";
+
     /**
      * The default maximum size for config revisions,  (128 K)
      */
@@ -604,4 +630,101 @@ public class ConfigDefaults {
     public int getConfigFileEditSize() {
         return Config.get().getInt(CONFIG_FILE_EDIT_SIZE, 32);
     }
+
+    /**
+     * Returns the number of rows sent to the database in one JDBC batch
+     * @return the number of rows sent to the database in one JDBC batch
+     */
+    public int getDbBatchSize() {
+        return Config.get().getInt(DB_BATCH_SIZE, 1000);
+    }
+
+    /**
+     * Returns the number of prepared statements kept open per database
+     * connection by the datasource layer, 0 disables the cache
+     * @return the number of prepared statements cached per connection
+     */
+    public int getDbStatementCacheSize() {
+        return Config.get().getInt(DB_STATEMENT_CACHE_SIZE, 100);
+    }
+
+    /**
+     * Returns the number of rows read from the database at a time by
+     * streamed queries
+     * @return the fetch size of streamed queries
+     */
+    public int getDbFetchSize() {
+        return Config.get().getInt(DB_FETCH_SIZE, 1000);
+    }
+
+    /**
+     * Returns the number of threads dispatching MessageQueue events
+     * @return the number of message queue partitions
+     */
+    public int getMessageQueueThreadPoolSize() {
+        return Config.get().getInt(MESSAGE_QUEUE_THREAD_POOL_SIZE, 5);
+    }
+
+    /**
+     * Returns the directory of the MessageQueue event journal
+     * @return the journal directory, or null if events are not journaled
+     */
+    public String getMessageQueueJournalDir() {
+        return Config.get().getString(MESSAGE_QUEUE_JOURNAL_DIR);
+    }
+
+    /**
+     * Returns the size of a MessageQueue event journal segment file
+     * @return the segment size in bytes
+     */
+    public int getMessageQueueJournalSegmentSize() {
+        return Config.get().getInt(MESSAGE_QUEUE_JOURNAL_SEGMENT_SIZE, 16777216);
+    }
+
+    /**
+     * Returns whether the repodata of a channel is regenerated from the
+     * previous repodata and the packages added since, instead of from all
+     * packages of the channel
+     * @return true if repodata is regenerated incrementally
+     */
+    public boolean useIncrementalRepodata() {
+        return Config.get().getString(INCREMENTAL_REPODATA) == null ||
+                Config.get().getBoolean(INCREMENTAL_REPODATA);
+    }
+
+    /**
+     * Returns the number of API sessions whose key is remembered by the
+     * SessionCache, 0 disables the cache
+     * @return the number of API sessions cached
+     */
+    public int getApiSessionCacheSize() {
+        return Config.get().getInt(API_SESSION_CACHE_SIZE, 10000);
+    }
+
+    /**
+     * Returns the time after which a cached API session is verified again
+     * @return the time to live of cached API sessions in seconds
+     */
+    public int getApiSessionCacheTtl() {
+        return Config.get().getInt(API_SESSION_CACHE_TTL, 300);
+    }
+
+    /**
+     * Returns the percentage of the session lifetime below which the
+     * remaining lifetime of a web session has to drop before its expiry is
+     * written again
+     * @return the refresh threshold in percent of the session lifetime
+     */
+    public int getSessionRefreshThreshold() {
+        return Config.get().getInt(SESSION_REFRESH_THRESHOLD, 90);
+    }
+
+    /**
+     * Returns the time between batches of web session expiry refreshes,
+     * 0 makes every request write its session expiry
+     * @return the flush interval in seconds
+     */
+    public int getSessionRefreshFlushInterval() {
+        return Config.get().getInt(SESSION_REFRESH_FLUSH_INTERVAL, 15);
+    }
 }
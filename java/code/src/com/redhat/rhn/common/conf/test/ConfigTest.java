@@ -361,6 +361,31 @@ public class ConfigTest extends RhnBaseTestCase {
         assertFalse(somevalue.equals(""));
         assertTrue(somevalue.equals("xmlrpc.rhn.redhat.com"));
     }
+    public void testCachedValuesFollowChanges() {
+        assertEquals(100, c.getInt("prefix.int_100"));
+        assertTrue(c.getBoolean("prefix.int_100") == c.getBoolean("prefix.int_100"));
+        assertNull(c.getString("prefix.cached_value"));
+
+        c.setString("prefix.int_100", "101");
+        c.setBoolean("prefix.cached_value", "yes");
+        assertEquals(101, c.getInt("prefix.int_100"));
+        assertTrue(c.getBoolean("prefix.cached_value"));
+        assertEquals("1", c.getString("prefix.cached_value"));
+
+        c.remove("prefix.cached_value");
+        assertFalse(c.getBoolean("prefix.cached_value"));
+    }
+
+    public void testReload() {
+        String value = c.getString("prefix.int_100");
+        c.setString("prefix.int_100", "101");
+        c.setString("prefix.runtime_value", "set");
+
+        c.reload();
+        assertEquals(value, c.getString("prefix.int_100"));
+        assertNull(c.getString("prefix.runtime_value"));
+    }
+
     public void testForNull() {
         assertNull(c.getString(null));
         assertNull(c.getInteger(null));
@@ -69,6 +69,16 @@ public class CachedStatement implements Serializable {
      */
     public static final int BATCH_SIZE = 500;
 
+    /*
+     * In clause lists are bound as bind variables, padded up to the next of
+     * these sizes so that every query only ever has a handful of distinct
+     * statements for the database to parse.
+     */
+    private static final int[] IN_CLAUSE_BUCKETS = {1, 10, 50, 100, BATCH_SIZE};
+
+    // prefix of the bind variables generated for %s, never a valid parameter name
+    private static final String IN_CLAUSE_PARAM = "%s";
+
     /*
      * This is the original config for this query as specified in the mode query
      * xml file. It is intended to be immutable.
@@ -219,15 +229,79 @@ public class CachedStatement implements Serializable {
         sqlStatement = sqlStatement.replace(replaceToken, replacementString);
     }
 
-    int executeUpdate(Map<String, ?> parameters) {
-        return executeUpdate(parameters, null);
+    int executeUpdate(Map<String, ?> parameters, Mode mode) {
+        return executeUpdate(parameters, null, mode);
     }
 
-    int executeUpdate(Map<String, ?> parameters, List<?> inClause) {
-        Integer res = (Integer) internalExecute(parameters, inClause, null);
+    int executeUpdate(Map<String, ?> parameters, List<?> inClause, Mode mode) {
+        Integer res = (Integer) internalExecute(parameters, inClause, mode);
         return res.intValue();
     }
 
+    int[] executeBatchUpdates(Collection<? extends Map<String, ?>> parameterList,
+            int flushSize) {
+        if (flushSize < 1) {
+            throw new IllegalArgumentException("flushSize must be > 0");
+        }
+        this.sqlStatement = NamedPreparedStatement.replaceBindParams(sqlStatement, qMap);
+        if (sqlStatement.indexOf("%s") > 0) {
+            throw new IllegalArgumentException(
+                    "Batched updates can not expand an in clause: " + sqlStatement);
+        }
+
+        int[] counts = new int[parameterList.size()];
+        int done = 0;
+        int pending = 0;
+        PreparedStatement ps = null;
+        try {
+            Connection conn = stealConnection();
+            ps = conn.prepareStatement(sqlStatement);
+
+            if (log.isDebugEnabled()) {
+                log.debug("executeBatchUpdates() - Executing: " + sqlStatement);
+                log.debug("executeBatchUpdates() - Rows: " + counts.length +
+                        ", flush size: " + flushSize);
+            }
+
+            for (Map<String, ?> parameters : parameterList) {
+                NamedPreparedStatement.addBatch(ps, qMap, setupParamMap(parameters));
+                pending++;
+                if (pending == flushSize) {
+                    done = flushBatch(ps, counts, done);
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                done = flushBatch(ps, counts, done);
+            }
+            return counts;
+        }
+        catch (SQLException e) {
+            throw SqlExceptionTranslator.sqlException(e);
+        }
+        catch (HibernateException he) {
+            throw new HibernateRuntimeException(
+                    "HibernateException executing CachedStatement", he);
+
+        }
+        catch (RhnRuntimeException e) {
+            // we just add more information for better bug tracking
+            log.error("Error while processing batched statement sql: " + sqlStatement +
+                    " after " + done + " rows", e);
+            throw e;
+        }
+        finally {
+            HibernateHelper.cleanupDB(ps);
+        }
+    }
+
+    private int flushBatch(PreparedStatement ps, int[] counts, int offset)
+        throws SQLException {
+        int[] batch = ps.executeBatch();
+        System.arraycopy(batch, 0, counts, offset, batch.length);
+        return offset + batch.length;
+    }
+
     DataResult<Object> execute(Map<String, ?> parameters, Mode mode) {
         return (DataResult<Object>) internalExecute(parameters, null, mode);
     }
@@ -260,10 +334,14 @@ public class CachedStatement implements Serializable {
                 int subLength = subStart + BATCH_SIZE >= inClause.size() ?
                         inClause.size() - subStart : BATCH_SIZE;
 
-                List<?> subClause = inClause.subList(subStart, subStart + subLength);
-                String finalQuery =
-                        sqlStatement.replaceAll("%s", commaSeparatedList(subClause));
-                Object resultObj = execute(finalQuery, qMap, parameters, mode, null);
+                List<Object> subClause = padToBucket(
+                        inClause.subList(subStart, subStart + subLength));
+                StringBuilder finalQuery = new StringBuilder(sqlStatement.length() +
+                        subClause.size() * 3);
+                Map<String, List<Integer>> finalMap =
+                        expandInClause(subClause.size(), finalQuery);
+                Object resultObj = execute(finalQuery.toString(), finalMap, parameters,
+                        subClause, mode, null);
                 subStart += subLength;
 
                 if (resultObj instanceof DataResult) {
@@ -290,28 +368,192 @@ public class CachedStatement implements Serializable {
             return returnDataResult;
         }
         else {
-            return execute(sqlStatement, qMap, parameters, mode, null);
+            return execute(sqlStatement, qMap, parameters, null, mode, null);
         }
     }
 
-    private String commaSeparatedList(List<?> list) {
-        StringBuilder sb = new StringBuilder();
-        boolean firstValue = true;
-        for (Object value : list) {
-            if (!firstValue) {
-                sb.append(",");
+    /**
+     * Returns the smallest in clause bucket that can hold size values.
+     * @param size number of values, at most BATCH_SIZE
+     * @return the bucket size
+     */
+    static int inClauseBucket(int size) {
+        for (int bucket : IN_CLAUSE_BUCKETS) {
+            if (size <= bucket) {
+                return bucket;
             }
-            else {
-                firstValue = false;
+        }
+        return size;
+    }
+
+    /*
+     * Pads the values up to their bucket size by repeating the last one,
+     * which does not change the outcome of an in (or not in) condition.
+     */
+    private static List<Object> padToBucket(List<?> values) {
+        int bucket = inClauseBucket(values.size());
+        List<Object> padded = new ArrayList<Object>(bucket);
+        padded.addAll(values);
+        Object last = values.get(values.size() - 1);
+        while (padded.size() < bucket) {
+            padded.add(last);
+        }
+        return padded;
+    }
+
+    /*
+     * Writes the statement into sql with every %s replaced by size bind
+     * markers, and returns the matching parameter map: named parameters
+     * after a %s move up by size positions, and the i-th in clause value is
+     * registered as IN_CLAUSE_PARAM + i.
+     */
+    private Map<String, List<Integer>> expandInClause(int size, StringBuilder sql) {
+        // position of every existing bind marker in the expanded statement
+        List<Integer> moved = new ArrayList<Integer>();
+        Map<String, List<Integer>> expanded = new HashMap<String, List<Integer>>();
+        int markers = 0;
+        boolean inQuotes = false;
+        for (int i = 0; i < sqlStatement.length(); i++) {
+            char c = sqlStatement.charAt(i);
+            if (c == '%' && i + 1 < sqlStatement.length() &&
+                    sqlStatement.charAt(i + 1) == 's') {
+                for (int j = 0; j < size; j++) {
+                    if (j > 0) {
+                        sql.append(", ");
+                    }
+                    sql.append('?');
+                    markers++;
+                    String inParam = IN_CLAUSE_PARAM + j;
+                    List<Integer> positions = expanded.get(inParam);
+                    if (positions == null) {
+                        positions = new ArrayList<Integer>();
+                        expanded.put(inParam, positions);
+                    }
+                    positions.add(markers);
+                }
+                i++;
+                continue;
+            }
+            if (c == '"' || c == '\'') {
+                inQuotes = !inQuotes;
+            }
+            else if (c == '?' && !inQuotes) {
+                markers++;
+                moved.add(markers);
+            }
+            sql.append(c);
+        }
+
+        for (Map.Entry<String, List<Integer>> entry : qMap.entrySet()) {
+            List<Integer> positions = new ArrayList<Integer>(entry.getValue().size());
+            for (Integer pos : entry.getValue()) {
+                positions.add(moved.get(pos - 1));
+            }
+            expanded.put(entry.getKey(), positions);
+        }
+        return expanded;
+    }
+
+    int stream(Map<String, ?> parameters, SelectMode mode, RowHandler<Object> handler,
+            int fetchSize) {
+        this.sqlStatement = NamedPreparedStatement.replaceBindParams(sqlStatement, qMap);
+        if (sqlStatement.indexOf("%s") > 0) {
+            throw new IllegalArgumentException(
+                    "Streamed queries can not expand an in clause: " + sqlStatement);
+        }
+
+        String className = mode.getClassString();
+        boolean elaborate = !mode.getElaborators().isEmpty();
+        List<Object> batch = new ArrayList<Object>(elaborate ? fetchSize : 0);
+        int count = 0;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            Connection conn = stealConnection();
+            // not taken from the StatementCache, the fetch size would stick
+            ps = conn.prepareStatement(sqlStatement);
+            ps.setMaxRows(mode.getMaxRows());
+            // with autocommit off this makes the driver read through a cursor
+            ps.setFetchSize(fetchSize);
+
+            if (log.isDebugEnabled()) {
+                log.debug("stream() - Executing: " + sqlStatement);
+                log.debug("stream() - With: " + parameters);
             }
-            if (value instanceof String) {
-                sb.append("'").append((String) value).append("'");
+
+            NamedPreparedStatement.execute(ps, qMap, setupParamMap(parameters));
+            rs = ps.getResultSet();
+            List<String> columns = getColumnNames(rs.getMetaData());
+
+            boolean mapRows = className == null || className.equals("java.util.Map");
+            Class<?> clazz = null;
+            RowMapper mapper;
+            if (mapRows) {
+                mapper = RowMapper.getMapInstance(columns);
             }
             else {
-                sb.append(String.valueOf(value));
+                clazz = Class.forName(className);
+                mapper = RowMapper.getInstance(clazz, columns);
+            }
+
+            while (rs.next()) {
+                Object row;
+                if (mapRows) {
+                    row = mapper.toMap(rs);
+                }
+                else {
+                    row = clazz.newInstance();
+                    addToObject(mapper, rs, row, false);
+                }
+                count++;
+                if (!elaborate) {
+                    handler.handleRow(row);
+                    continue;
+                }
+                batch.add(row);
+                if (batch.size() == fetchSize) {
+                    handleBatch(batch, parameters, mode, handler);
+                }
             }
+            if (!batch.isEmpty()) {
+                handleBatch(batch, parameters, mode, handler);
+            }
+            return count;
+        }
+        catch (SQLException e) {
+            throw SqlExceptionTranslator.sqlException(e);
+        }
+        catch (HibernateException he) {
+            throw new HibernateRuntimeException(
+                    "HibernateException executing CachedStatement", he);
+        }
+        catch (ClassNotFoundException e) {
+            throw new ObjectCreateWrapperException("Could not create " + className, e);
+        }
+        catch (InstantiationException e) {
+            throw new ObjectCreateWrapperException("Could not create " + className, e);
+        }
+        catch (IllegalAccessException e) {
+            throw new ObjectCreateWrapperException("Could not create " + className, e);
+        }
+        catch (RhnRuntimeException e) {
+            // we just add more information for better bug tracking
+            log.error("Error while streaming cached statement sql: " + sqlStatement +
+                    " after " + count + " rows", e);
+            throw e;
+        }
+        finally {
+            HibernateHelper.cleanupDB(rs, ps);
         }
-        return sb.toString();
+    }
+
+    private void handleBatch(List<Object> batch, Map<String, ?> parameters,
+            SelectMode mode, RowHandler<Object> handler) {
+        mode.elaborate(batch, parameters);
+        for (Object row : batch) {
+            handler.handleRow(row);
+        }
+        batch.clear();
     }
 
     Collection<Object> executeElaborator(List<Object> resultList, Mode mode,
@@ -343,37 +585,40 @@ public class CachedStatement implements Serializable {
 
         // If we aren't actually operating on a list, just elaborate.
         if (sqlStatement.indexOf("%s") == -1) {
-            return (DataResult<Object>) execute(sqlStatement, qMap, parameters, mode,
-                    resultList);
+            return (DataResult<Object>) execute(sqlStatement, qMap, parameters, null,
+                    mode, resultList);
         }
 
         if (!checkForColumn(resultList.get(0), getColumn())) {
             throw new MapColumnNotFoundException(
                     "Column, " + getColumn() + ", not found in driving query results");
         }
+        // pad to a bucket size so that only a few distinct statements exist
+        int bucket = inClauseBucket(len);
         StringBuilder bindParams = new StringBuilder();
         List<String> newParams = new ArrayList<String>(params);
-        for (int i = 0; i < len; i++) {
+        for (int i = 0; i < bucket; i++) {
             if (i > 0) { // don't prepend comma before first one
                 bindParams.append(", ");
             }
             String newParam = "l" + i;
             bindParams.append(":").append(newParam);
-            parameters.put(newParam, getKey(resultList.get(i), getColumn()));
+            parameters.put(newParam,
+                    getKey(resultList.get(Math.min(i, len - 1)), getColumn()));
             newParams.add(newParam);
         }
 
         // This should all be removed and replaced with a copy constructor.
         String newName = "";
         if (!getName().equals("")) {
-            newName = getName() + len;
+            newName = getName() + bucket;
         }
         CachedStatement cs = new CachedStatement(newName, protoQuery, newParams, this);
         cs.modifyQuery("%s", bindParams.toString());
         return cs.executeElaboratorBatch(resultList, mode, parameters);
     }
 
-    private Map<String, ?> setupParamMap(Map<String, ?> parameters) {
+    private Map<String, Object> setupParamMap(Map<String, ?> parameters) {
         if (parameters == null && !params.isEmpty()) {
             throw new IllegalArgumentException(
                     "Query contains named parameter," + " but value map is null");
@@ -394,12 +639,14 @@ public class CachedStatement implements Serializable {
     // number of rows updated, or the DataResult. That can only be done by
     // returning an Object and letting the caller do the casting for us.
     private Object execute(String sql, Map<String, List<Integer>> parameterMap,
-            Map<String, ?> parameters, Mode mode, List<Object> dr) {
+            Map<String, ?> parameters, List<Object> inValues, Mode mode,
+            List<Object> dr) {
 
         PreparedStatement ps = null;
+        boolean reusable = false;
         try {
             Connection conn = stealConnection();
-            ps = conn.prepareStatement(sql);
+            ps = StatementCache.prepare(conn, mode == null ? name : mode.getName(), sql);
 
             // allow limiting the results for better performance.
             if (mode != null && mode instanceof SelectMode) {
@@ -411,15 +658,25 @@ public class CachedStatement implements Serializable {
                 log.debug("execute() - With: " + parameters);
             }
 
-            boolean returnType = NamedPreparedStatement.execute(ps, parameterMap,
-                    setupParamMap(parameters));
+            Map<String, Object> binds = setupParamMap(parameters);
+            if (inValues != null) {
+                for (int i = 0; i < inValues.size(); i++) {
+                    binds.put(IN_CLAUSE_PARAM + i, inValues.get(i));
+                }
+            }
+            boolean returnType = NamedPreparedStatement.execute(ps, parameterMap, binds);
             if (log.isDebugEnabled()) {
                 log.debug("execute() - Return type: " + returnType);
             }
+            Object result;
             if (returnType) {
-                return processResultSet(ps.getResultSet(), (SelectMode) mode, dr);
+                result = processResultSet(ps.getResultSet(), (SelectMode) mode, dr);
+            }
+            else {
+                result = new Integer(ps.getUpdateCount());
             }
-            return new Integer(ps.getUpdateCount());
+            reusable = true;
+            return result;
         }
         catch (SQLException e) {
             throw SqlExceptionTranslator.sqlException(e);
@@ -435,7 +692,8 @@ public class CachedStatement implements Serializable {
             throw e;
         }
         finally {
-            HibernateHelper.cleanupDB(ps);
+            // a statement that failed half way is not worth keeping around
+            StatementCache.release(ps, reusable);
         }
     }
 
@@ -516,15 +774,27 @@ public class CachedStatement implements Serializable {
                         "Column, " + getColumn() + ", not found in elaborator results");
             }
 
+            /*
+             * If no className was specified *or* if the caller wants a Map
+             */
+            boolean mapRows = className == null || className.equals("java.util.Map");
+            Class<?> clazz = null;
+            RowMapper mapper;
+            if (mapRows) {
+                mapper = RowMapper.getMapInstance(columns);
+            }
+            else {
+                clazz = Class.forName(className);
+                mapper = RowMapper.getInstance(clazz, columns);
+            }
+            int elabPos = mode.getElaborators().indexOf(parentStatement);
+
             // loop through the results, adding them to the displayMap
             while (rs.next()) {
-                /*
-                 * If no className was specified *or* if the caller wants a Map
-                 */
-                if (className == null || className.equals("java.util.Map")) {
+                if (mapRows) {
                     Map<String, Object> resultMap;
                     if (pointers == null) {
-                        resultMap = new HashMap<String, Object>();
+                        resultMap = mapper.newMap();
                     }
                     else {
                         Integer pos = pointers.get(getObject(rs, getColumn()));
@@ -539,8 +809,7 @@ public class CachedStatement implements Serializable {
                         resultMap =
                                 (Map<String, Object>) currentResults.get(pos.intValue());
                     }
-                    addToMap(columns, rs, resultMap,
-                            mode.getElaborators().indexOf(parentStatement));
+                    addToMap(mapper, rs, resultMap, elabPos);
 
                     // bug 141664: Don't add to the DataResult if we are
                     // elaborating the data.
@@ -552,7 +821,6 @@ public class CachedStatement implements Serializable {
                  * Otherwise, try to set the results to the class given.
                  */
                 else {
-                    Class<?> clazz = Class.forName(className);
                     Object obj;
                     if (pointers == null) {
                         obj = clazz.newInstance();
@@ -566,8 +834,11 @@ public class CachedStatement implements Serializable {
                         }
                         obj = currentResults.get(pos.intValue());
                     }
+                    if (obj.getClass() != mapper.getType()) {
+                        mapper = RowMapper.getInstance(obj.getClass(), columns);
+                    }
                     // if pointers are null, we are doing an elaborator.
-                    addToObject(columns, rs, obj, (pointers != null));
+                    addToObject(mapper, rs, obj, (pointers != null));
                     // bug 141664: Don't add to the DataResult if we are
                     // elaborating the data.
                     if (pointers == null) {
@@ -606,15 +877,10 @@ public class CachedStatement implements Serializable {
         }
     }
 
-    private void addToMap(List<String> columns, ResultSet rs, Map<String, Object> resultMap,
+    private void addToMap(RowMapper mapper, ResultSet rs, Map<String, Object> resultMap,
             int pos)
         throws SQLException {
-        Map<String, Object> newMap = new HashMap<String, Object>();
-        Iterator<String> i = columns.iterator();
-        while (i.hasNext()) {
-            String columnName = i.next();
-            newMap.put(columnName.toLowerCase(), getObject(rs, columnName));
-        }
+        Map<String, Object> newMap = mapper.toMap(rs);
         if (resultMap.isEmpty()) {
             resultMap.putAll(newMap);
         }
@@ -650,70 +916,17 @@ public class CachedStatement implements Serializable {
         }
     }
 
-    private void addToObject(List<String> columns, ResultSet rs, Object obj,
+    private void addToObject(RowMapper mapper, ResultSet rs, Object obj,
             boolean elaborator)
         throws SQLException {
 
-        List<String> columnSkip;
+        List<String> columnSkip = null;
         if (elaborator && obj instanceof RowCallback) {
             RowCallback cb = (RowCallback) obj;
             cb.callback(rs);
             columnSkip = cb.getCallBackColumns();
         }
-        else {
-            columnSkip = new ArrayList<String>();
-        }
-
-        Iterator<String> i = columns.iterator();
-        while (i.hasNext()) {
-            String columnName = i.next();
-            if (columnSkip.contains(columnName.toLowerCase())) {
-                continue;
-            }
-
-            String setName = StringUtil.beanify("set " + columnName.toLowerCase());
-            String getName = StringUtil.beanify("get " + columnName.toLowerCase());
-
-            boolean isList = false;
-            Method[] methods = obj.getClass().getMethods();
-            /*
-             * Now loop through the methods and find the set method for this
-             * column then decide if it takes a collection Note: This action
-             * might not complete correctly if there are two set methods with
-             * the same name
-             */
-            for (int j = 0; j < methods.length; j++) {
-                // getName() gets the name of the set method
-                // setName is the name of the set method
-                if (methods[j].getName().equals(setName)) {
-                    Class<?> paramType = methods[j].getParameterTypes()[0];
-                    if (Collection.class.isAssignableFrom(paramType)) {
-                        isList = true;
-                    }
-                    break;
-                }
-            }
-
-            if (isList) { // requires matching get method returning the same
-                          // list
-                Collection<Object> c = (Collection<Object>) MethodUtil.callMethod(obj,
-                        getName, new Object[0]);
-                if (c == null) {
-                    c = new ArrayList<Object>();
-                }
-                c.add(getObject(rs, columnName));
-                MethodUtil.callMethod(obj, setName, c);
-                continue;
-            }
-            /*
-             * Just call the set method. This will call the same set method
-             * multiple times. If the result set should be a list, but has a
-             * non-Collection set method, the attribute corresponding to this
-             * column will ultimately contain the last item found for this
-             * column.
-             */
-            MethodUtil.callMethod(obj, setName, getObject(rs, columnName));
-        } // while
+        mapper.bind(rs, obj, columnSkip);
     }
 
     /**
@@ -729,7 +942,19 @@ public class CachedStatement implements Serializable {
      * @throws SQLException if rs.getObject/rs.getTimestamp raise an exception.
      */
     private Object getObject(ResultSet rs, String columnName) throws SQLException {
-        Object columnValue = rs.getObject(columnName);
+        return getObject(rs, rs.findColumn(columnName));
+    }
+
+    /**
+     * Same as {@link #getObject(ResultSet, String)}, but by column index,
+     * which saves the driver a name lookup for every column of every row.
+     * @param rs the sql result set
+     * @param columnIndex the 1-based index of the column to be returned
+     * @return the column value, converted as described above
+     * @throws SQLException if rs.getObject/rs.getTimestamp raise an exception.
+     */
+    static Object getObject(ResultSet rs, int columnIndex) throws SQLException {
+        Object columnValue = rs.getObject(columnIndex);
         if (columnValue == null) {
             return null;
         }
@@ -746,10 +971,10 @@ public class CachedStatement implements Serializable {
                      .equals(columnValue.getClass().getCanonicalName())) ||
                 ("oracle.sql.TIMESTAMPTZ"
                      .equals(columnValue.getClass().getCanonicalName()))) {
-            return rs.getTimestamp(columnName);
+            return rs.getTimestamp(columnIndex);
         }
         else if (columnValue instanceof BigDecimal) {
-            return rs.getLong(columnName);
+            return rs.getLong(columnIndex);
         }
         return columnValue;
     }
@@ -0,0 +1,33 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.rhn.common.db.datasource;
+
+/**
+ * RowHandler receives the rows of a query run through
+ * {@link SelectMode#stream(java.util.Map, RowHandler)} one at a time, as
+ * they are read from the database.
+ * @param <T> the row type, a Map or the class of the mode
+ * @version $Rev$
+ */
+public interface RowHandler<T> {
+
+    /**
+     * Called for every row of the query, in result set order. The row is
+     * already elaborated. Any other query may be run from here, but the
+     * session must not be committed or closed while the stream is open.
+     * @param row the current row
+     */
+    void handleRow(T row);
+}
@@ -0,0 +1,295 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.rhn.common.db.datasource;
+
+import com.redhat.rhn.common.MethodInvocationException;
+import com.redhat.rhn.common.util.MethodUtil;
+import com.redhat.rhn.common.util.StringUtil;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Binds the current row of a ResultSet onto a DTO or a Map.
+ *
+ * A RowMapper is compiled once for a (class, column list) pair: the setter
+ * for every column is looked up a single time and reused for every row
+ * afterwards, instead of scanning getMethods() per column per row. Values
+ * that do not match the setter's parameter type directly still go through
+ * {@link MethodUtil#callMethod(Object, String, Object...)}, so type
+ * translation behaves exactly as before.
+ *
+ * @version $Rev$
+ */
+public class RowMapper {
+
+    private static final Map<Class<?>, Class<?>> WRAPPERS =
+            new HashMap<Class<?>, Class<?>>();
+
+    static {
+        WRAPPERS.put(Boolean.TYPE, Boolean.class);
+        WRAPPERS.put(Byte.TYPE, Byte.class);
+        WRAPPERS.put(Character.TYPE, Character.class);
+        WRAPPERS.put(Short.TYPE, Short.class);
+        WRAPPERS.put(Integer.TYPE, Integer.class);
+        WRAPPERS.put(Long.TYPE, Long.class);
+        WRAPPERS.put(Float.TYPE, Float.class);
+        WRAPPERS.put(Double.TYPE, Double.class);
+    }
+
+    private static ConcurrentMap<Key, RowMapper> mappers =
+            new ConcurrentHashMap<Key, RowMapper>();
+
+    private final Class<?> type;
+    private final String[] columns;
+    private final int[] indexes;
+    private final String[] setterNames;
+    private final String[] getterNames;
+    private final Method[] setters;
+    private final Method[] getters;
+    private final Class<?>[] paramTypes;
+    private final boolean[] collections;
+    private final int mapCapacity;
+
+    /**
+     * Returns the mapper binding the given columns onto instances of clazz,
+     * compiling it on first use.
+     * @param clazz the DTO class, or null to bind onto Maps
+     * @param columnNames lower case column names, in result set order
+     * @return the cached RowMapper
+     */
+    public static RowMapper getInstance(Class<?> clazz, List<String> columnNames) {
+        Key key = new Key(clazz, columnNames);
+        RowMapper mapper = mappers.get(key);
+        if (mapper == null) {
+            mapper = new RowMapper(clazz, columnNames);
+            RowMapper existing = mappers.putIfAbsent(key, mapper);
+            if (existing != null) {
+                mapper = existing;
+            }
+        }
+        return mapper;
+    }
+
+    /**
+     * Returns the mapper binding the given columns onto Maps.
+     * @param columnNames lower case column names, in result set order
+     * @return the cached RowMapper
+     */
+    public static RowMapper getMapInstance(List<String> columnNames) {
+        return getInstance(null, columnNames);
+    }
+
+    /**
+     * Drops every compiled mapper. Only useful for tests and benchmarks.
+     */
+    public static void clearCache() {
+        mappers.clear();
+    }
+
+    private RowMapper(Class<?> clazz, List<String> columnNames) {
+        int count = columnNames.size();
+        type = clazz;
+        columns = columnNames.toArray(new String[count]);
+        indexes = new int[count];
+        setterNames = new String[count];
+        getterNames = new String[count];
+        setters = new Method[count];
+        getters = new Method[count];
+        paramTypes = new Class<?>[count];
+        collections = new boolean[count];
+        // sized so that a full row never triggers a rehash
+        mapCapacity = (int) (count / 0.75f) + 1;
+
+        for (int i = 0; i < count; i++) {
+            // rs.getObject(name) returns the first column with that name
+            indexes[i] = columnNames.indexOf(columns[i]) + 1;
+        }
+        if (clazz != null) {
+            compile(clazz.getMethods());
+        }
+    }
+
+    private void compile(Method[] methods) {
+        for (int i = 0; i < columns.length; i++) {
+            setterNames[i] = StringUtil.beanify("set " + columns[i]);
+            getterNames[i] = StringUtil.beanify("get " + columns[i]);
+            /*
+             * Like the reflective lookup this replaces, only the first set
+             * method with the right name is considered. Overloads are still
+             * honored through the MethodUtil fallback in setValue().
+             */
+            for (Method m : methods) {
+                if (m.getName().equals(setterNames[i])) {
+                    Class<?>[] params = m.getParameterTypes();
+                    if (params.length == 1) {
+                        setters[i] = m;
+                        paramTypes[i] = params[0].isPrimitive() ?
+                                WRAPPERS.get(params[0]) : params[0];
+                        collections[i] = Collection.class.isAssignableFrom(params[0]);
+                    }
+                    break;
+                }
+            }
+            if (collections[i]) {
+                for (Method m : methods) {
+                    if (m.getName().equals(getterNames[i]) &&
+                            m.getParameterTypes().length == 0) {
+                        getters[i] = m;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the class this mapper binds onto, null for Maps
+     */
+    public Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * Creates an empty Map large enough to hold one row without rehashing.
+     * @return new row Map
+     */
+    public Map<String, Object> newMap() {
+        return new HashMap<String, Object>(mapCapacity);
+    }
+
+    /**
+     * Reads the current row into a newly allocated Map keyed by column name.
+     * @param rs the result set positioned on the row to read
+     * @return the row
+     * @throws SQLException if a column cannot be read
+     */
+    public Map<String, Object> toMap(ResultSet rs) throws SQLException {
+        Map<String, Object> row = newMap();
+        for (int i = 0; i < columns.length; i++) {
+            row.put(columns[i], CachedStatement.getObject(rs, indexes[i]));
+        }
+        return row;
+    }
+
+    /**
+     * Sets every column of the current row on the given object.
+     * @param rs the result set positioned on the row to read
+     * @param obj the object to populate, must be an instance of getType()
+     * @param columnSkip lower case columns to leave alone, may be null
+     * @throws SQLException if a column cannot be read
+     */
+    public void bind(ResultSet rs, Object obj, List<String> columnSkip)
+        throws SQLException {
+        for (int i = 0; i < columns.length; i++) {
+            if (columnSkip != null && columnSkip.contains(columns[i])) {
+                continue;
+            }
+            Object value = CachedStatement.getObject(rs, indexes[i]);
+
+            if (collections[i]) {
+                // requires matching get method returning the same list
+                Collection<Object> c;
+                if (getters[i] == null) {
+                    c = (Collection<Object>) MethodUtil.callMethod(obj, getterNames[i],
+                            new Object[0]);
+                }
+                else {
+                    c = (Collection<Object>) invoke(getters[i], obj);
+                }
+                if (c == null) {
+                    c = new ArrayList<Object>();
+                }
+                c.add(value);
+                setValue(i, obj, c);
+                continue;
+            }
+            /*
+             * Just call the set method. If the result set should be a list,
+             * but has a non-Collection set method, the attribute corresponding
+             * to this column will ultimately contain the last item found.
+             */
+            setValue(i, obj, value);
+        }
+    }
+
+    private void setValue(int i, Object obj, Object value) {
+        Method setter = setters[i];
+        if (setter != null) {
+            if (value == null) {
+                if (!setter.getParameterTypes()[0].isPrimitive()) {
+                    invoke(setter, obj, value);
+                    return;
+                }
+            }
+            else if (paramTypes[i].isInstance(value)) {
+                invoke(setter, obj, value);
+                return;
+            }
+        }
+        // no direct match, let MethodUtil translate or report the error
+        MethodUtil.callMethod(obj, setterNames[i], value);
+    }
+
+    private static Object invoke(Method m, Object obj, Object... args) {
+        try {
+            return m.invoke(obj, args);
+        }
+        catch (IllegalAccessException e) {
+            throw new MethodInvocationException("Could not access " + m.getName(), e);
+        }
+        catch (InvocationTargetException e) {
+            throw new MethodInvocationException("Something bad happened when " +
+                    "calling " + m.getName(), e);
+        }
+    }
+
+    /**
+     * Cache key for compiled mappers.
+     */
+    private static final class Key {
+        private final Class<?> clazz;
+        private final List<String> columnNames;
+
+        Key(Class<?> clazzIn, List<String> columnNamesIn) {
+            clazz = clazzIn;
+            columnNames = columnNamesIn;
+        }
+
+        /** {@inheritDoc} */
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) other;
+            return clazz == k.clazz && columnNames.equals(k.columnNames);
+        }
+
+        /** {@inheritDoc} */
+        public int hashCode() {
+            return (clazz == null ? 0 : clazz.hashCode()) * 31 +
+                    columnNames.hashCode();
+        }
+    }
+}
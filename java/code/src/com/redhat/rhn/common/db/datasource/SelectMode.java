@@ -14,9 +14,12 @@
  */
 package com.redhat.rhn.common.db.datasource;
 
+import com.redhat.rhn.common.conf.ConfigDefaults;
+
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -117,6 +120,43 @@ public class SelectMode extends BaseMode implements Serializable {
         return getQuery().execute(parameters, inClause, this);
     }
 
+    /**
+     * Runs the query and hands every row to the handler as soon as it is
+     * read, instead of collecting all of them in a DataResult. Rows are read
+     * through a database cursor java.db_fetch_size rows at a time. If the mode
+     * has elaborators they run on batches of that many rows before the rows
+     * are handed out, so memory use does not grow with the size of the result.
+     * @param parameters named query parameters, also passed to the elaborators
+     * @param handler called for every row
+     * @param <T> the row type, a Map or the class of the mode
+     * @return number of rows handed to the handler
+     */
+    public <T> int stream(Map<String, ?> parameters, RowHandler<T> handler) {
+        return stream(parameters, handler, ConfigDefaults.get().getDbFetchSize());
+    }
+
+    /**
+     * Runs the query and hands every row to the handler as soon as it is
+     * read, see {@link #stream(Map, RowHandler)}.
+     * @param parameters named query parameters, also passed to the elaborators
+     * @param handler called for every row
+     * @param fetchSize number of rows read from the cursor, and elaborated,
+     * at a time
+     * @param <T> the row type, a Map or the class of the mode
+     * @return number of rows handed to the handler
+     */
+    public <T> int stream(Map<String, ?> parameters, RowHandler<T> handler,
+            int fetchSize) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("fetchSize must be > 0");
+        }
+        Map<String, ?> params = parameters;
+        if (params == null) {
+            params = Collections.<String, Object>emptyMap();
+        }
+        return getQuery().stream(params, this, (RowHandler<Object>) handler, fetchSize);
+    }
+
     /**
      * Elaborates a list by calling the elaboration queries with the given
      * parameters.
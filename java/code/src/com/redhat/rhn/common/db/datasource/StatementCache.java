@@ -0,0 +1,259 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.rhn.common.db.datasource;
+
+import com.redhat.rhn.common.conf.ConfigDefaults;
+
+import org.apache.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the PreparedStatements run by CachedStatement open for as long as
+ * the current thread holds on to the same database connection, so running
+ * a mode again skips the prepare call and the parse on the database side.
+ *
+ * Statements are keyed by mode name and final SQL text, and the least
+ * recently used ones are closed once java.db_statement_cache_size is
+ * reached. A statement is taken out of the cache while it runs, so nested
+ * executions of the same mode simply prepare a second one. Hits and misses
+ * are counted per mode for the whole JVM.
+ *
+ * The pool level statement cache (hibernate.c3p0.max_statements) stays
+ * disabled; this cache is dropped with the Hibernate session.
+ *
+ * @version $Rev$
+ */
+public class StatementCache {
+
+    private static Logger log = Logger.getLogger(StatementCache.class);
+
+    private static final ThreadLocal<StatementCache> CURRENT =
+            new ThreadLocal<StatementCache>();
+
+    private static ConcurrentMap<String, Counter> counters =
+            new ConcurrentHashMap<String, Counter>();
+
+    private final Connection connection;
+    private final Map<Key, PreparedStatement> statements;
+    private final Map<PreparedStatement, Key> checkedOut =
+            new IdentityHashMap<PreparedStatement, Key>();
+
+    private StatementCache(Connection conn, final int maxSize) {
+        connection = conn;
+        statements = new LinkedHashMap<Key, PreparedStatement>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Key, PreparedStatement> e) {
+                if (size() > maxSize) {
+                    close(e.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns a PreparedStatement for the given SQL, reusing one prepared
+     * earlier on the same connection if possible. The statement must be
+     * handed back through {@link #release(PreparedStatement, boolean)}.
+     * @param conn the connection of the current Hibernate session
+     * @param modeName name of the mode running the statement
+     * @param sql the final SQL text
+     * @return the statement
+     * @throws SQLException if the statement can not be prepared
+     */
+    static PreparedStatement prepare(Connection conn, String modeName, String sql)
+        throws SQLException {
+        Counter counter = getCounter(modeName);
+        int maxSize = ConfigDefaults.get().getDbStatementCacheSize();
+        if (maxSize <= 0) {
+            counter.misses.incrementAndGet();
+            return conn.prepareStatement(sql);
+        }
+
+        StatementCache cache = CURRENT.get();
+        if (cache == null || cache.connection != conn) {
+            // the session moved to another connection, old statements are useless
+            if (cache != null) {
+                cache.closeAll();
+            }
+            cache = new StatementCache(conn, maxSize);
+            CURRENT.set(cache);
+        }
+
+        Key key = new Key(modeName, sql);
+        PreparedStatement ps = cache.statements.remove(key);
+        if (ps != null) {
+            counter.hits.incrementAndGet();
+        }
+        else {
+            counter.misses.incrementAndGet();
+            ps = conn.prepareStatement(sql);
+        }
+        cache.checkedOut.put(ps, key);
+        return ps;
+    }
+
+    /**
+     * Hands a statement obtained from prepare() back. It is kept for reuse
+     * unless reuse is false, the cache is full of the same statement, or the
+     * connection has been dropped in the meantime; it is closed otherwise.
+     * @param ps the statement, may be null
+     * @param reuse false if the statement failed and should be discarded
+     */
+    static void release(PreparedStatement ps, boolean reuse) {
+        if (ps == null) {
+            return;
+        }
+        StatementCache cache = CURRENT.get();
+        Key key = cache == null ? null : cache.checkedOut.remove(ps);
+        if (key == null || !reuse || cache.statements.containsKey(key)) {
+            close(ps);
+            return;
+        }
+        try {
+            ps.clearParameters();
+        }
+        catch (SQLException e) {
+            close(ps);
+            return;
+        }
+        cache.statements.put(key, ps);
+    }
+
+    /**
+     * Closes every statement cached for the current thread. Called when the
+     * Hibernate session, and with it the connection, goes away.
+     */
+    public static void clear() {
+        StatementCache cache = CURRENT.get();
+        if (cache != null) {
+            cache.closeAll();
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * Returns how many times a cached statement was reused for the mode.
+     * @param modeName name of the mode
+     * @return number of cache hits
+     */
+    public static long getHits(String modeName) {
+        Counter counter = counters.get(modeName);
+        return counter == null ? 0 : counter.hits.get();
+    }
+
+    /**
+     * Returns how many times a statement had to be prepared for the mode.
+     * @param modeName name of the mode
+     * @return number of cache misses
+     */
+    public static long getMisses(String modeName) {
+        Counter counter = counters.get(modeName);
+        return counter == null ? 0 : counter.misses.get();
+    }
+
+    /**
+     * @return names of all modes that ran a statement so far, sorted
+     */
+    public static Set<String> getModeNames() {
+        return new TreeSet<String>(counters.keySet());
+    }
+
+    /**
+     * Resets the hit and miss counters of all modes.
+     */
+    public static void resetStatistics() {
+        counters.clear();
+    }
+
+    private static Counter getCounter(String modeName) {
+        String name = modeName == null ? "" : modeName;
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            counter = new Counter();
+            Counter existing = counters.putIfAbsent(name, counter);
+            if (existing != null) {
+                counter = existing;
+            }
+        }
+        return counter;
+    }
+
+    private void closeAll() {
+        for (Iterator<PreparedStatement> i = statements.values().iterator(); i.hasNext();) {
+            close(i.next());
+            i.remove();
+        }
+        // statements still running are closed by release()
+        checkedOut.clear();
+    }
+
+    private static void close(PreparedStatement ps) {
+        try {
+            ps.close();
+        }
+        catch (SQLException e) {
+            // the connection may be gone already, nothing left to clean up
+            log.debug("Could not close cached statement", e);
+        }
+    }
+
+    /**
+     * Hit and miss counts of one mode.
+     */
+    private static final class Counter {
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+    }
+
+    /**
+     * Cache key for prepared statements.
+     */
+    private static final class Key {
+        private final String modeName;
+        private final String sql;
+
+        Key(String modeNameIn, String sqlIn) {
+            modeName = modeNameIn == null ? "" : modeNameIn;
+            sql = sqlIn;
+        }
+
+        /** {@inheritDoc} */
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) other;
+            return modeName.equals(k.modeName) && sql.equals(k.sql);
+        }
+
+        /** {@inheritDoc} */
+        public int hashCode() {
+            return modeName.hashCode() * 31 + sql.hashCode();
+        }
+    }
+}
@@ -14,6 +14,9 @@
  */
 package com.redhat.rhn.common.db.datasource;
 
+import com.redhat.rhn.common.conf.ConfigDefaults;
+
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -34,7 +37,7 @@ public class WriteMode extends BaseMode {
      * @return int number of rows affected.
      */
     public int executeUpdate(Map<String, ?> parameters) {
-        return getQuery().executeUpdate(parameters);
+        return getQuery().executeUpdate(parameters, this);
     }
 
     /**
@@ -48,6 +51,35 @@ public class WriteMode extends BaseMode {
         if (inClause == null || inClause.isEmpty()) {
             return 0;
         }
-        return getQuery().executeUpdate(parameters, inClause);
+        return getQuery().executeUpdate(parameters, inClause, this);
+    }
+
+    /**
+     * Executes the update statement once for every map of query parameters.
+     * All rows go through a single prepared statement as JDBC batches of
+     * <code>java.db_batch_size</code> rows each.
+     * @param parameterList query parameters, one map per row
+     * @return number of rows affected by each parameter map, in iteration
+     * order. The driver may report Statement.SUCCESS_NO_INFO instead of a count.
+     */
+    public int[] executeBatchUpdates(Collection<? extends Map<String, ?>> parameterList) {
+        return executeBatchUpdates(parameterList, ConfigDefaults.get().getDbBatchSize());
+    }
+
+    /**
+     * Executes the update statement once for every map of query parameters.
+     * All rows go through a single prepared statement, sent to the database
+     * in batches of flushSize rows.
+     * @param parameterList query parameters, one map per row
+     * @param flushSize maximum number of rows sent in one round trip
+     * @return number of rows affected by each parameter map, in iteration
+     * order. The driver may report Statement.SUCCESS_NO_INFO instead of a count.
+     */
+    public int[] executeBatchUpdates(Collection<? extends Map<String, ?>> parameterList,
+            int flushSize) {
+        if (parameterList == null || parameterList.isEmpty()) {
+            return new int[0];
+        }
+        return getQuery().executeBatchUpdates(parameterList, flushSize);
     }
 }
@@ -37,7 +37,9 @@ import com.redhat.rhn.common.conf.ConfigDefaults;
 import com.redhat.rhn.common.db.datasource.CallableMode;
 import com.redhat.rhn.common.db.datasource.DataResult;
 import com.redhat.rhn.common.db.datasource.ModeFactory;
+import com.redhat.rhn.common.db.datasource.RowHandler;
 import com.redhat.rhn.common.db.datasource.SelectMode;
+import com.redhat.rhn.common.db.datasource.StatementCache;
 import com.redhat.rhn.common.db.datasource.WriteMode;
 import com.redhat.rhn.common.hibernate.HibernateFactory;
 import com.redhat.rhn.common.hibernate.HibernateHelper;
@@ -179,6 +181,29 @@ public class AdvDataSourceTest extends RhnBaseTestCase {
         lookup("insert_test", 3, 1);
     }
 
+    public void testBatchInsert() throws Exception {
+        WriteMode m = ModeFactory.getWriteMode("test_queries", "insert_into_table");
+        List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+        for (int i = 0; i < 5; i++) {
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put("foobar", "batch_test");
+            params.put("id", Integer.valueOf(10 + i));
+            params.put("test_column", "test-" + TestUtils.randomString());
+            params.put("pin", random.nextInt(100));
+            rows.add(params);
+        }
+        // flush every 2 rows to exercise a partial final batch
+        int[] res = m.executeBatchUpdates(rows, 2);
+        assertEquals(5, res.length);
+        for (int count : res) {
+            assertTrue(count == 1 || count == Statement.SUCCESS_NO_INFO);
+        }
+        commitAndCloseSession();
+        for (int i = 0; i < 5; i++) {
+            lookup("batch_test", 10 + i, 1);
+        }
+    }
+
     public void testDelete() throws Exception {
         // Take nothing for granted, make sure the data is there.
         insert("Blarg", 1);
@@ -283,6 +308,58 @@ public class AdvDataSourceTest extends RhnBaseTestCase {
         assertNotEmpty(result);
     }
 
+    public void testInClauseBuckets() throws Exception {
+        for (int i = 0; i < 12; i++) {
+            insert("bucket_test", 100 + i);
+        }
+        List<Integer> ids = new ArrayList<Integer>();
+        for (int i = 0; i < 12; i++) {
+            ids.add(100 + i);
+        }
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("foobar", "bucket_test");
+
+        StatementCache.resetStatistics();
+        // 12 and 11 values share the padded statement with 50 bind variables
+        DataResult<AdvDataSourceDto> dr = ModeFactory.getMode("test_queries",
+                "find_ids_in_table").execute(params, ids);
+        assertEquals(12, dr.size());
+        dr = ModeFactory.getMode("test_queries", "find_ids_in_table").execute(params,
+                ids.subList(1, 12));
+        assertEquals(11, dr.size());
+        assertEquals(1, StatementCache.getMisses("find_ids_in_table"));
+        assertEquals(1, StatementCache.getHits("find_ids_in_table"));
+
+        // elaborators are padded the same way
+        dr = ModeFactory.getMode("test_queries", "find_in_table").execute(params);
+        assertEquals(12, dr.size());
+        dr.elaborate();
+        for (AdvDataSourceDto dto : dr) {
+            assertNotNull(dto.getTestColumn());
+        }
+    }
+
+    public void testStream() throws Exception {
+        for (int i = 0; i < 7; i++) {
+            insert("stream_test", 200 + i);
+        }
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("foobar", "stream_test");
+
+        final List<AdvDataSourceDto> rows = new ArrayList<AdvDataSourceDto>();
+        SelectMode m = ModeFactory.getMode("test_queries", "find_in_table");
+        // elaborated in batches of 3, 3 and 1 rows
+        int count = m.stream(params, new RowHandler<AdvDataSourceDto>() {
+            public void handleRow(AdvDataSourceDto row) {
+                assertNotNull(row.getTestColumn());
+                rows.add(row);
+            }
+        }, 3);
+        assertEquals(7, count);
+        assertEquals(7, rows.size());
+        assertEquals("stream_test", rows.get(0).getFoobar());
+    }
+
     public void testStressedElaboration() throws Exception {
         int startId = 1000;
         int endId = startId + 1500;
@@ -0,0 +1,193 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.rhn.common.db.datasource.test;
+
+import com.redhat.rhn.common.db.datasource.RowMapper;
+import com.redhat.rhn.common.util.MethodUtil;
+import com.redhat.rhn.common.util.StringUtil;
+import com.redhat.rhn.frontend.dto.PackageDto;
+
+import org.apache.log4j.Logger;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * RowMapperTest
+ * @version $Rev$
+ */
+public class RowMapperTest extends TestCase {
+
+    private static Logger log = Logger.getLogger(RowMapperTest.class);
+
+    private static final List<String> COLUMNS = Arrays.asList("id", "name", "version",
+            "release", "epoch", "arch_label", "summary", "package_size", "build_time",
+            "cid");
+
+    private static final int ROWS = 50000;
+
+    private RowSource source;
+    private ResultSet rs;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        RowMapper.clearCache();
+        source = new RowSource();
+        rs = (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[] {ResultSet.class}, source);
+    }
+
+    public void testBindObject() throws Exception {
+        source.setRow(1);
+        RowMapper mapper = RowMapper.getInstance(PackageDto.class, COLUMNS);
+        assertSame(mapper, RowMapper.getInstance(PackageDto.class, COLUMNS));
+
+        PackageDto dto = new PackageDto();
+        mapper.bind(rs, dto, null);
+        assertEquals(new Long(1), dto.getId());
+        assertEquals("package-1", dto.getName());
+        assertEquals("x86_64", dto.getArchLabel());
+        assertEquals(new Long(1024), dto.getPackageSize());
+        assertNull(dto.getEpoch());
+
+        PackageDto legacy = new PackageDto();
+        legacyBind(rs, legacy);
+        assertEquals(legacy.getSummary(), dto.getSummary());
+        assertEquals(legacy.getCid(), dto.getCid());
+    }
+
+    public void testBindSkipsColumns() throws Exception {
+        source.setRow(2);
+        PackageDto dto = new PackageDto();
+        RowMapper.getInstance(PackageDto.class, COLUMNS).bind(rs, dto,
+                Arrays.asList("name"));
+        assertEquals(new Long(2), dto.getId());
+        assertNull(dto.getName());
+    }
+
+    public void testToMap() throws Exception {
+        source.setRow(3);
+        Map<String, Object> row = RowMapper.getMapInstance(COLUMNS).toMap(rs);
+        assertEquals(COLUMNS.size(), row.size());
+        assertEquals(new Long(3), row.get("id"));
+        assertEquals("package-3", row.get("name"));
+        assertTrue(row.containsKey("epoch"));
+    }
+
+    public void testBenchmark() throws Exception {
+        // warm up both paths before measuring
+        bindLegacy(ROWS / 10);
+        bindCompiled(ROWS / 10);
+
+        long legacy = bindLegacy(ROWS);
+        long compiled = bindCompiled(ROWS);
+        log.info("Bound " + ROWS + " PackageDto rows: reflective " + legacy +
+                " ms, compiled " + compiled + " ms");
+
+        // both paths map the rows alike
+        RowMapper mapper = RowMapper.getInstance(PackageDto.class, COLUMNS);
+        for (int i = 0; i < ROWS / 10; i++) {
+            source.setRow(i);
+            PackageDto expected = new PackageDto();
+            legacyBind(rs, expected);
+            PackageDto dto = new PackageDto();
+            mapper.bind(rs, dto, null);
+            for (String columnName : COLUMNS) {
+                String getName = StringUtil.beanify("get " + columnName);
+                assertEquals(columnName + " of row " + i,
+                        MethodUtil.callMethod(expected, getName, new Object[0]),
+                        MethodUtil.callMethod(dto, getName, new Object[0]));
+            }
+        }
+    }
+
+    private long bindLegacy(int rows) throws Exception {
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < rows; i++) {
+            source.setRow(i);
+            legacyBind(rs, new PackageDto());
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    private long bindCompiled(int rows) throws Exception {
+        long start = System.currentTimeMillis();
+        // CachedStatement looks the mapper up once per result set
+        RowMapper mapper = RowMapper.getInstance(PackageDto.class, COLUMNS);
+        for (int i = 0; i < rows; i++) {
+            source.setRow(i);
+            mapper.bind(rs, new PackageDto(), null);
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    /**
+     * The per-column lookup CachedStatement did before RowMapper existed.
+     */
+    private void legacyBind(ResultSet row, Object obj) throws Exception {
+        for (String columnName : COLUMNS) {
+            String setName = StringUtil.beanify("set " + columnName);
+            String getName = StringUtil.beanify("get " + columnName);
+            boolean isList = false;
+            Method[] methods = obj.getClass().getMethods();
+            for (int j = 0; j < methods.length; j++) {
+                if (methods[j].getName().equals(setName)) {
+                    Class<?> paramType = methods[j].getParameterTypes()[0];
+                    isList = Collection.class.isAssignableFrom(paramType);
+                    break;
+                }
+            }
+            if (isList) {
+                MethodUtil.callMethod(obj, getName, new Object[0]);
+            }
+            MethodUtil.callMethod(obj, setName, row.getObject(columnName));
+        }
+    }
+
+    /**
+     * Serves a synthetic package row through the ResultSet interface.
+     */
+    private static class RowSource implements InvocationHandler {
+        private Object[] values;
+
+        void setRow(int id) {
+            values = new Object[] {new Long(id), "package-" + id, "1.0", "1.el7",
+                    null, "x86_64", "Summary of package " + id, new Long(1024),
+                    new Timestamp(0), new Long(id % 7)};
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if (name.equals("findColumn")) {
+                return COLUMNS.indexOf(args[0]) + 1;
+            }
+            if (name.equals("getObject") || name.equals("getTimestamp")) {
+                int idx = args[0] instanceof String ?
+                        COLUMNS.indexOf(args[0]) : (Integer) args[0] - 1;
+                return values[idx];
+            }
+            throw new UnsupportedOperationException(name);
+        }
+    }
+}
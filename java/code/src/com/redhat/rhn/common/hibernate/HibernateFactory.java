@@ -19,6 +19,7 @@ import com.redhat.rhn.common.db.datasource.CallableMode;
 import com.redhat.rhn.common.db.datasource.DataResult;
 import com.redhat.rhn.common.db.datasource.ModeFactory;
 import com.redhat.rhn.common.db.datasource.SelectMode;
+import com.redhat.rhn.common.db.datasource.StatementCache;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
@@ -29,6 +30,7 @@ import org.hibernate.LockMode;
 import org.hibernate.MappingException;
 import org.hibernate.Query;
 import org.hibernate.Session;
+import org.hibernate.Transaction;
 import org.hibernate.metadata.ClassMetadata;
 
 import java.io.ByteArrayOutputStream;
@@ -47,6 +49,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
 /**
  * HibernateFactory - Helper superclass that contains methods for fetching and
  * storing Objects from the DB using Hibernate.
@@ -349,10 +354,45 @@ public abstract class HibernateFactory {
         return connectionManager.isTransactionPending();
     }
 
+    /**
+     * Runs the task once the given transaction has been committed, from the
+     * thread doing the commit. The task is dropped if the transaction is
+     * rolled back. If the transaction is not active, the task runs right
+     * away unless the transaction has been rolled back.
+     * @param txn the transaction to wait for, may be null
+     * @param task the task to run after the commit
+     */
+    public static void runAfterCommit(Transaction txn, final Runnable task) {
+        if (txn == null || !txn.isActive()) {
+            if (txn != null && txn.wasRolledBack()) {
+                LOG.debug("Transaction was rolled back, dropping " + task);
+                return;
+            }
+            task.run();
+            return;
+        }
+        txn.registerSynchronization(new Synchronization() {
+            public void beforeCompletion() {
+                // nothing to do
+            }
+
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    task.run();
+                }
+                else if (LOG.isDebugEnabled()) {
+                    LOG.debug("Transaction ended with status " + status +
+                            ", dropping " + task);
+                }
+            }
+        });
+    }
+
     /**
      * Closes the Hibernate Session stored in ThreadLocal storage.
      */
     public static void closeSession() {
+        StatementCache.clear();
         connectionManager.closeSession();
     }
 
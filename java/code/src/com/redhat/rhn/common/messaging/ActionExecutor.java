@@ -31,6 +31,10 @@ class ActionExecutor implements Runnable {
 
     private EventMessage msg;
     private List<MessageAction> actionHandlers = new ArrayList<MessageAction>();
+    private EventStatistics statistics;
+    private long publishTime;
+    private EventJournal journal;
+    private long journalId;
 
     /**
      * Constructor
@@ -38,8 +42,42 @@ class ActionExecutor implements Runnable {
      * @param eventMsg message published to queue
      */
     ActionExecutor(List<MessageAction> handlers, EventMessage eventMsg) {
+        this(handlers, eventMsg, null);
+    }
+
+    /**
+     * Constructor
+     * @param handlers list of event handlers to dispatch to
+     * @param eventMsg message published to queue
+     * @param statisticsIn figures of the event type to update, may be null
+     */
+    ActionExecutor(List<MessageAction> handlers, EventMessage eventMsg,
+            EventStatistics statisticsIn) {
         actionHandlers.addAll(handlers);
         msg = eventMsg;
+        statistics = statisticsIn;
+        publishTime = System.currentTimeMillis();
+        if (statistics != null) {
+            statistics.eventPublished();
+        }
+    }
+
+    /**
+     * @return the message published to the queue
+     */
+    EventMessage getMessage() {
+        return msg;
+    }
+
+    /**
+     * Marks the message as journaled, so it is completed in the journal
+     * once its actions have run.
+     * @param journalIn the journal holding the message
+     * @param journalIdIn id of the message in the journal
+     */
+    void setJournalEntry(EventJournal journalIn, long journalIdIn) {
+        journal = journalIn;
+        journalId = journalIdIn;
     }
 
     /**
@@ -47,28 +85,31 @@ class ActionExecutor implements Runnable {
      * the message to each
      */
     public void run() {
+        long start = System.currentTimeMillis();
+        if (statistics != null) {
+            statistics.eventStarted(start - publishTime);
+        }
+        try {
+            runActions();
+        }
+        finally {
+            if (journal != null) {
+                journal.complete(journalId);
+            }
+            if (statistics != null) {
+                statistics.eventFinished(System.currentTimeMillis() - start);
+            }
+        }
+    }
+
+    private void runActions() {
         for (Iterator<MessageAction> iter = actionHandlers.iterator(); iter.hasNext();) {
             MessageAction action = iter.next();
             LOG.debug("run() - got action: " + action.getClass().getName());
             try {
-                if (msg instanceof EventDatabaseMessage) {
-                    EventDatabaseMessage evtdb = (EventDatabaseMessage) msg;
-                    LOG.debug("Got a EventDatabaseMessage");
-                    while (evtdb.getTransaction().isActive()) {
-                        if (LOG.isDebugEnabled()) {
-                            LOG.debug("DB message, waiting for txn: active: " +
-                                    evtdb.getTransaction().isActive() + " commited: " +
-                                    evtdb.getTransaction().wasCommitted());
-                        }
-                        Thread.sleep(10);
-                    }
-                    LOG.debug("Transaction finished.  Executing");
-                    action.execute(msg);
-                }
-                else {
-                    action.execute(msg);
-                }
-
+                // an EventDatabaseMessage is only queued once its transaction
+                // has been committed, see MessageQueue.publish()
+                action.execute(msg);
             }
             catch (Throwable t) {
                 LOG.error(t);
@@ -0,0 +1,36 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.rhn.common.messaging;
+
+import java.io.Serializable;
+
+/**
+ * An EventMessage that is written to the EventJournal, if one is configured,
+ * so it is run again after a restart if it had not finished before.
+ *
+ * The message is stored through Java serialization; fields that can not be
+ * restored, like the Transaction of an EventDatabaseMessage, must be
+ * transient.
+ *
+ * @version $Rev$
+ */
+public interface DurableEventMessage extends EventMessage, Serializable {
+
+    /**
+     * Called on a message read back from the journal after a restart, right
+     * before it is queued again.
+     */
+    void replayed();
+}
@@ -20,7 +20,8 @@ import org.hibernate.Transaction;
 /**
  * A interface representing a class that can act on a EventMessage that contains
  * a database transaction.  We pass a Transaction into this EventMessage so the
- * MessageQueue can *wait* on the caller's Transaction to finish before starting its work.
+ * MessageQueue only queues the message once the caller's Transaction has been
+ * committed. The message is dropped if the Transaction is rolled back.
  *
  *  This is useful if your Event needs to wait for the caller to finish writing
  *  things to the database.
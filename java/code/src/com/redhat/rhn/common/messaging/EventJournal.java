@@ -0,0 +1,417 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.rhn.common.messaging;
+
+import org.apache.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of DurableEventMessages, so events still waiting in
+ * the MessageQueue when the JVM goes down are run on the next start.
+ *
+ * The journal is a directory of fixed size segment files that are memory
+ * mapped and filled sequentially. Each published event is appended as a
+ * record holding its serialized form, and a small completion record is
+ * appended once its actions have run. Publishers wait for their record to
+ * reach the disk in {@link #sync(long)}, where all publishers waiting at the
+ * same time share one force() of the segment. Whenever a segment is full a
+ * checkpoint is written naming the oldest segment still holding an
+ * unfinished event, and the segments before it are deleted.
+ *
+ * On startup the segments from the checkpoint on are scanned and the events
+ * without a completion record are handed out by {@link #takePending()}. A
+ * record torn by a crash fails its checksum and ends the scan of its
+ * segment. Events run at least once: one finishing right before a crash
+ * may run again.
+ *
+ * @version $Rev$
+ */
+public class EventJournal {
+
+    private static Logger log = Logger.getLogger(EventJournal.class);
+
+    private static final String CHECKPOINT = "checkpoint";
+    private static final String LOCK = "lock";
+    private static final String SEGMENT_PREFIX = "events-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final byte TYPE_EVENT = 1;
+    private static final byte TYPE_DONE = 2;
+    private static final byte[] NO_PAYLOAD = new byte[0];
+    // record length, type, event id and checksum
+    private static final int HEADER_SIZE = 4 + 1 + 8 + 4;
+
+    private final File dir;
+    private final int segmentSize;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final Object syncLock = new Object();
+
+    // unfinished event id -> index of the segment holding the event
+    private final TreeMap<Long, Long> open = new TreeMap<Long, Long>();
+    private Map<Long, DurableEventMessage> pending =
+            new LinkedHashMap<Long, DurableEventMessage>();
+    private MappedByteBuffer segment;
+    private long segmentIndex;
+    private long nextId = 1;
+    private long lastAppended;
+    private long lastSynced;
+
+    /**
+     * Opens the journal in the given directory, creating it if needed, and
+     * reads back the events that had not finished.
+     * @param dirIn directory of the journal
+     * @param segmentSizeIn size of a segment file in bytes
+     * @throws IOException if the journal can not be read or is used by
+     * another process
+     */
+    public EventJournal(File dirIn, int segmentSizeIn) throws IOException {
+        dir = dirIn;
+        segmentSize = segmentSizeIn;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can not create " + dir);
+        }
+        lockChannel = new RandomAccessFile(new File(dir, LOCK), "rw").getChannel();
+        FileLock acquired = null;
+        try {
+            acquired = lockChannel.tryLock();
+        }
+        catch (OverlappingFileLockException e) {
+            // held by this JVM already
+        }
+        lock = acquired;
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException(dir + " is in use by another journal");
+        }
+        try {
+            recover();
+        }
+        catch (IOException e) {
+            lock.release();
+            lockChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the events read back on opening the journal that have not
+     * finished yet, in publishing order. They are only handed out once.
+     * @return unfinished events keyed by their journal id
+     */
+    public synchronized Map<Long, DurableEventMessage> takePending() {
+        Map<Long, DurableEventMessage> retval = pending;
+        pending = new LinkedHashMap<Long, DurableEventMessage>();
+        return retval;
+    }
+
+    /**
+     * Appends an event to the journal. The record is not necessarily on disk
+     * before {@link #sync(long)} returns for its id.
+     * @param msg the event
+     * @return the journal id of the event
+     * @throws IOException if the event can not be serialized or written
+     */
+    public long append(DurableEventMessage msg) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(msg);
+        out.close();
+        byte[] payload = bytes.toByteArray();
+
+        synchronized (this) {
+            long id = nextId++;
+            write(TYPE_EVENT, id, payload);
+            open.put(id, segmentIndex);
+            lastAppended = id;
+            return id;
+        }
+    }
+
+    /**
+     * Waits until the event with the given id, and all appended before it,
+     * are on disk.
+     * @param id journal id returned by append()
+     */
+    public void sync(long id) {
+        synchronized (syncLock) {
+            if (lastSynced >= id) {
+                // forced by the publisher that synced before us
+                return;
+            }
+            long target;
+            MappedByteBuffer buf;
+            synchronized (this) {
+                target = lastAppended;
+                buf = segment;
+            }
+            buf.force();
+            lastSynced = target;
+        }
+    }
+
+    /**
+     * Marks an event as finished, so it is not run again after a restart.
+     * @param id journal id of the event
+     */
+    public synchronized void complete(long id) {
+        if (open.remove(id) == null) {
+            return;
+        }
+        try {
+            write(TYPE_DONE, id, NO_PAYLOAD);
+        }
+        catch (IOException e) {
+            log.error("Could not mark event " + id + " as finished", e);
+        }
+    }
+
+    /**
+     * @return number of events appended and not finished yet
+     */
+    public synchronized int getOpenCount() {
+        return open.size();
+    }
+
+    /**
+     * Forces the current segment to disk, records the oldest segment still
+     * needed and deletes the ones before it.
+     * @throws IOException if the checkpoint can not be written
+     */
+    public synchronized void checkpoint() throws IOException {
+        segment.force();
+        long oldest = open.isEmpty() ? segmentIndex : open.firstEntry().getValue();
+        writeCheckpoint(oldest);
+        for (long index : listSegments()) {
+            if (index < oldest) {
+                deleteSegment(index);
+            }
+        }
+    }
+
+    /**
+     * Writes a checkpoint and releases the journal directory.
+     * @throws IOException if the checkpoint can not be written
+     */
+    public synchronized void close() throws IOException {
+        try {
+            checkpoint();
+        }
+        finally {
+            lock.release();
+            lockChannel.close();
+        }
+    }
+
+    private void write(byte type, long id, byte[] payload) throws IOException {
+        int length = HEADER_SIZE + payload.length;
+        if (length > segmentSize) {
+            throw new IOException("Event of " + length +
+                    " bytes does not fit into a journal segment");
+        }
+        if (segment.remaining() < length) {
+            roll();
+        }
+        segment.putInt(length);
+        segment.put(type);
+        segment.putLong(id);
+        segment.putInt(checksum(type, id, payload));
+        segment.put(payload);
+    }
+
+    private void roll() throws IOException {
+        segment.force();
+        openSegment(segmentIndex + 1);
+        checkpoint();
+    }
+
+    private void recover() throws IOException {
+        long first = readCheckpoint();
+        long last = first - 1;
+        TreeMap<Long, byte[]> payloads = new TreeMap<Long, byte[]>();
+        for (long index : listSegments()) {
+            if (index < first) {
+                deleteSegment(index);
+                continue;
+            }
+            scan(index, payloads);
+            last = index;
+        }
+        openSegment(Math.max(first, last + 1));
+
+        List<Long> unreadable = new ArrayList<Long>();
+        for (Map.Entry<Long, byte[]> entry : payloads.entrySet()) {
+            try {
+                ObjectInputStream in = new ObjectInputStream(
+                        new ByteArrayInputStream(entry.getValue()));
+                pending.put(entry.getKey(), (DurableEventMessage) in.readObject());
+                in.close();
+            }
+            catch (Exception e) {
+                log.error("Dropping journaled event " + entry.getKey() +
+                        ", it can not be read back", e);
+                unreadable.add(entry.getKey());
+            }
+        }
+        for (Long id : unreadable) {
+            complete(id);
+        }
+        if (!payloads.isEmpty()) {
+            log.info("Read back " + pending.size() + " unfinished events from " + dir);
+        }
+        checkpoint();
+    }
+
+    private void scan(long index, Map<Long, byte[]> payloads) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(segmentFile(index), "r");
+        ByteBuffer buf;
+        try {
+            buf = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        }
+        finally {
+            file.close();
+        }
+        while (buf.remaining() >= HEADER_SIZE) {
+            int start = buf.position();
+            int length = buf.getInt();
+            if (length < HEADER_SIZE || length > buf.limit() - start) {
+                // end of the written part of the segment
+                break;
+            }
+            byte type = buf.get();
+            long id = buf.getLong();
+            int crc = buf.getInt();
+            byte[] payload = new byte[length - HEADER_SIZE];
+            buf.get(payload);
+            if (checksum(type, id, payload) != crc) {
+                log.warn("Torn record at " + start + " of " + segmentFile(index));
+                break;
+            }
+            nextId = Math.max(nextId, id + 1);
+            if (type == TYPE_EVENT) {
+                payloads.put(id, payload);
+                open.put(id, index);
+            }
+            else if (type == TYPE_DONE) {
+                payloads.remove(id);
+                open.remove(id);
+            }
+        }
+    }
+
+    private void openSegment(long index) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(segmentFile(index), "rw");
+        try {
+            // the mapping stays valid after the file is closed
+            segment = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        finally {
+            file.close();
+        }
+        segmentIndex = index;
+    }
+
+    private long readCheckpoint() throws IOException {
+        File file = new File(dir, CHECKPOINT);
+        if (!file.exists()) {
+            return 0;
+        }
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            return Long.parseLong(in.readLine().trim());
+        }
+        catch (RuntimeException e) {
+            throw new IOException("Invalid journal checkpoint " + file, e);
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    private void writeCheckpoint(long index) throws IOException {
+        File tmp = new File(dir, CHECKPOINT + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            out.write((index + "\n").getBytes("US-ASCII"));
+            out.getFD().sync();
+        }
+        finally {
+            out.close();
+        }
+        if (!tmp.renameTo(new File(dir, CHECKPOINT))) {
+            throw new IOException("Can not replace the checkpoint in " + dir);
+        }
+    }
+
+    private TreeSet<Long> listSegments() {
+        TreeSet<Long> retval = new TreeSet<Long>();
+        String[] names = dir.list();
+        if (names == null) {
+            return retval;
+        }
+        for (String name : names) {
+            if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                try {
+                    retval.add(Long.valueOf(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())));
+                }
+                catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        return retval;
+    }
+
+    private void deleteSegment(long index) {
+        File file = segmentFile(index);
+        if (!file.delete()) {
+            log.warn("Could not delete " + file);
+        }
+    }
+
+    private File segmentFile(long index) {
+        return new File(dir, String.format("%s%010d%s", SEGMENT_PREFIX, index,
+                SEGMENT_SUFFIX));
+    }
+
+    private static int checksum(byte type, long id, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(ByteBuffer.allocate(8).putLong(id).array());
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
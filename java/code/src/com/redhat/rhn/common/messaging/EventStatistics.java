@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.rhn.common.messaging;
+
+/**
+ * Queue depth and latency figures of one event type in the MessageQueue.
+ * Times are in milliseconds; wait time runs from publishing an event until
+ * its actions start, run time covers executing all of its actions.
+ *
+ * @version $Rev$
+ */
+public class EventStatistics {
+
+    private final String eventType;
+    private long published;
+    private long processed;
+    private int queued;
+    private long totalWaitTime;
+    private long maxWaitTime;
+    private long totalRunTime;
+    private long maxRunTime;
+
+    /**
+     * Constructor
+     * @param eventTypeIn class name of the event
+     */
+    EventStatistics(String eventTypeIn) {
+        eventType = eventTypeIn;
+    }
+
+    synchronized void eventPublished() {
+        published++;
+        queued++;
+    }
+
+    synchronized void eventStarted(long waitTime) {
+        queued--;
+        totalWaitTime += waitTime;
+        maxWaitTime = Math.max(maxWaitTime, waitTime);
+    }
+
+    synchronized void eventFinished(long runTime) {
+        processed++;
+        totalRunTime += runTime;
+        maxRunTime = Math.max(maxRunTime, runTime);
+    }
+
+    /**
+     * @return class name of the event
+     */
+    public String getEventType() {
+        return eventType;
+    }
+
+    /**
+     * @return number of events published so far
+     */
+    public synchronized long getPublished() {
+        return published;
+    }
+
+    /**
+     * @return number of events whose actions have finished
+     */
+    public synchronized long getProcessed() {
+        return processed;
+    }
+
+    /**
+     * @return number of events waiting in the queue right now
+     */
+    public synchronized int getQueued() {
+        return queued;
+    }
+
+    /**
+     * @return average time events waited in the queue
+     */
+    public synchronized long getAverageWaitTime() {
+        long started = published - queued;
+        return started == 0 ? 0 : totalWaitTime / started;
+    }
+
+    /**
+     * @return longest time an event waited in the queue
+     */
+    public synchronized long getMaxWaitTime() {
+        return maxWaitTime;
+    }
+
+    /**
+     * @return average time taken to run the actions of an event
+     */
+    public synchronized long getAverageRunTime() {
+        return processed == 0 ? 0 : totalRunTime / processed;
+    }
+
+    /**
+     * @return longest time taken to run the actions of an event
+     */
+    public synchronized long getMaxRunTime() {
+        return maxRunTime;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized String toString() {
+        return eventType + ": queued=" + queued + " published=" + published +
+                " processed=" + processed + " avgWait=" + getAverageWaitTime() +
+                "ms maxWait=" + maxWaitTime + "ms avgRun=" + getAverageRunTime() +
+                "ms maxRun=" + maxRunTime + "ms";
+    }
+}
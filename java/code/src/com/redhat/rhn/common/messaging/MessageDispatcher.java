@@ -20,7 +20,7 @@ import com.redhat.rhn.frontend.events.TraceBackEvent;
 import org.apache.log4j.Logger;
 
 /**
- * Polls the EventQueue for events and executes them
+ * Polls one partition of the EventQueue for events and executes them
  *
  * @version $Rev $
  */
@@ -28,6 +28,15 @@ public class MessageDispatcher implements Runnable {
 
     private static Logger log = Logger.getLogger(MessageDispatcher.class);
     private boolean isStopped = false;
+    private final int partition;
+
+    /**
+     * Constructor
+     * @param partitionIn index of the queue partition to work on
+     */
+    public MessageDispatcher(int partitionIn) {
+        partition = partitionIn;
+    }
 
     /**
      * Signals the dispatcher to stop
@@ -49,9 +58,9 @@ public class MessageDispatcher implements Runnable {
      * and executed. Events are wrapped inside of a Runnable instance
      */
     public void run() {
-        while (!isStopped) {
+        while (!isStopped()) {
             try {
-                Runnable actionHandler = MessageQueue.popEventMessage();
+                Runnable actionHandler = MessageQueue.popEventMessage(partition);
                 if (actionHandler == null) {
                     continue;
                 }
@@ -15,14 +15,13 @@
 
 package com.redhat.rhn.common.messaging;
 
+import com.redhat.rhn.common.conf.ConfigDefaults;
+import com.redhat.rhn.common.hibernate.HibernateFactory;
 import com.redhat.rhn.frontend.events.SsmRemovePackagesAction;
 import com.redhat.rhn.frontend.events.SsmRemovePackagesEvent;
 import com.redhat.rhn.frontend.events.SsmUpgradePackagesAction;
 import com.redhat.rhn.frontend.events.SsmUpgradePackagesEvent;
 
-import EDU.oswego.cs.dl.util.concurrent.Channel;
-import EDU.oswego.cs.dl.util.concurrent.LinkedQueue;
-
 import com.redhat.rhn.frontend.events.CloneErrataAction;
 import com.redhat.rhn.frontend.events.CloneErrataEvent;
 import com.redhat.rhn.frontend.events.NewCloneErrataAction;
@@ -54,17 +53,36 @@ import com.redhat.rhn.frontend.events.SsmSystemRebootEvent;
 import com.redhat.rhn.frontend.events.SsmVerifyPackagesAction;
 import com.redhat.rhn.frontend.events.SsmVerifyPackagesEvent;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A class that passes messages from the sender to an action class
  *
+ * Messages are spread over java.message_queue_thread_pool_size partitions,
+ * each worked on by its own dispatcher thread. Messages with the same
+ * partition key (see {@link PartitionedEventMessage}) always land in the
+ * same partition, so they run in publishing order, while messages with
+ * different keys can run in parallel.
+ *
+ * If java.message_queue_journal_dir is set, DurableEventMessages are written
+ * to an {@link EventJournal} there before they are queued, and the ones that
+ * had not finished are queued again by configureDefaultActions() after a
+ * restart.
  */
 public class MessageQueue {
 
@@ -75,10 +93,15 @@ public class MessageQueue {
 
     private static final Map<Class, List<MessageAction>> ACTIONS =
             new HashMap<Class, List<MessageAction>>();
-    private static Channel messages = new LinkedQueue();
-    private static Thread dispatcherThread = null;
-    private static MessageDispatcher dispatcher = null;
+    private static final ConcurrentMap<Class, EventStatistics> STATISTICS =
+            new ConcurrentHashMap<Class, EventStatistics>();
+    // replaced as a whole, and only while holding the ACTIONS lock
+    private static volatile List<BlockingQueue<Runnable>> partitions =
+            new ArrayList<BlockingQueue<Runnable>>();
+    private static List<MessageDispatcher> dispatchers =
+            new ArrayList<MessageDispatcher>();
     private static int messageCount;
+    private static volatile EventJournal journal;
 
     /**
      * Util class so we don't have a usable constructor
@@ -88,43 +111,93 @@ public class MessageQueue {
 
     /**
      * Publish a new message
-     * Each message is wrapped in a ActionExecutor instance
+     * Each message is wrapped in a ActionExecutor instance. An
+     * EventDatabaseMessage is only queued once its transaction has been
+     * committed, and is dropped if the transaction is rolled back.
      * @param msg EventMessage to publish to queue.
      */
-    public static void publish(EventMessage msg) {
+    public static void publish(final EventMessage msg) {
         if (logger.isDebugEnabled()) {
             logger.debug("publish(EventMessage) - start: " + msg.getClass().getName());
         }
+        if (msg instanceof EventDatabaseMessage) {
+            HibernateFactory.runAfterCommit(((EventDatabaseMessage) msg).getTransaction(),
+                    new Runnable() {
+                public void run() {
+                    enqueue(msg);
+                }
+
+                public String toString() {
+                    return msg.getClass().getName();
+                }
+            });
+        }
+        else {
+            enqueue(msg);
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("publish(EventMessage) - end");
+        }
+    }
+
+    private static void enqueue(EventMessage msg) {
         if (!isMessaging()) {
             startMessaging();
         }
         if (msg != null) {
-            synchronized (ACTIONS) {
-                List<MessageAction> handlers = ACTIONS.get(msg.getClass());
-                if (handlers != null && handlers.size() > 0) {
-                    logger.debug("creating ActionExecutor");
-                    ActionExecutor executor = new ActionExecutor(handlers, msg);
-                    try {
-                        messages.put(executor);
-                        messageCount++;
-                    }
-                    catch (InterruptedException e) {
-                        logger.error(e.getMessage(), e);
-                    }
+            EventJournal current = journal;
+            long journalId = 0;
+            if (current != null && msg instanceof DurableEventMessage) {
+                try {
+                    journalId = current.append((DurableEventMessage) msg);
+                    current.sync(journalId);
                 }
-                else {
-                    logger.debug("handlers is null, not processing!");
+                catch (IOException e) {
+                    logger.warn("Could not journal " + msg.getClass().getName() +
+                            ", it will be lost on restart", e);
+                    journalId = 0;
                 }
             }
+            enqueue(msg, journalId == 0 ? null : current, journalId);
         }
+    }
 
-        if (logger.isDebugEnabled()) {
-            logger.debug("publish(EventMessage) - end");
+    private static void enqueue(EventMessage msg, EventJournal current, long journalId) {
+        synchronized (ACTIONS) {
+            List<MessageAction> handlers = ACTIONS.get(msg.getClass());
+            if (handlers != null && handlers.size() > 0) {
+                logger.debug("creating ActionExecutor");
+                ActionExecutor executor = new ActionExecutor(handlers, msg,
+                        getStatistics(msg.getClass()));
+                if (current != null) {
+                    executor.setJournalEntry(current, journalId);
+                }
+                try {
+                    getPartition(msg, partitions).put(executor);
+                    messageCount++;
+                }
+                catch (InterruptedException e) {
+                    logger.error(e.getMessage(), e);
+                }
+            }
+            else {
+                logger.debug("handlers is null, not processing!");
+                if (current != null) {
+                    current.complete(journalId);
+                }
+            }
         }
     }
 
-    static Runnable popEventMessage() throws InterruptedException {
-        Runnable retval = (Runnable) messages.poll(500);
+    static Runnable popEventMessage(int partition) throws InterruptedException {
+        List<BlockingQueue<Runnable>> queues = partitions;
+        if (partition >= queues.size()) {
+            // left over from before a restart with fewer partitions
+            Thread.sleep(500);
+            return null;
+        }
+        Runnable retval = queues.get(partition).poll(500, TimeUnit.MILLISECONDS);
         if (retval != null) {
             synchronized (ACTIONS) {
                 messageCount--;
@@ -143,11 +216,25 @@ public class MessageQueue {
         if (isMessaging()) {
             return;
         }
-        dispatcher = new MessageDispatcher();
-        dispatcherThread = new Thread(dispatcher);
-        dispatcherThread.setName("RHN Message Dispatcher");
-        dispatcherThread.setDaemon(false);
-        dispatcherThread.start();
+        if (journal == null) {
+            journal = openJournal();
+        }
+        int size = Math.max(1, ConfigDefaults.get().getMessageQueueThreadPoolSize());
+        synchronized (ACTIONS) {
+            if (partitions.size() != size) {
+                partitions = repartition(partitions, size);
+            }
+        }
+        List<MessageDispatcher> started = new ArrayList<MessageDispatcher>(size);
+        for (int i = 0; i < size; i++) {
+            MessageDispatcher dispatcher = new MessageDispatcher(i);
+            Thread dispatcherThread = new Thread(dispatcher);
+            dispatcherThread.setName("RHN Message Dispatcher-" + i);
+            dispatcherThread.setDaemon(false);
+            dispatcherThread.start();
+            started.add(dispatcher);
+        }
+        dispatchers = started;
         if (logger.isDebugEnabled()) {
             logger.debug("startMessaging() - end");
         }
@@ -160,8 +247,21 @@ public class MessageQueue {
         if (logger.isDebugEnabled()) {
             logger.debug("stopMessaging() - start");
         }
-        dispatcher.stop();
+        for (MessageDispatcher dispatcher : dispatchers) {
+            dispatcher.stop();
+        }
+        if (journal != null) {
+            try {
+                journal.checkpoint();
+            }
+            catch (IOException e) {
+                logger.error("Could not checkpoint the event journal", e);
+            }
+        }
         if (logger.isDebugEnabled()) {
+            for (EventStatistics stats : getStatistics().values()) {
+                logger.debug(stats);
+            }
             logger.debug("stopMessaging() - end");
         }
     }
@@ -245,13 +345,116 @@ public class MessageQueue {
      * publish MessageEvents to
      * @return boolean true if MessageQueue is running.
      */
-    public static boolean isMessaging() {
-        return (dispatcher != null && !dispatcher.isStopped());
+    public static synchronized boolean isMessaging() {
+        return (!dispatchers.isEmpty() && !dispatchers.get(0).isStopped());
+    }
+
+    private static EventJournal openJournal() {
+        String dir = ConfigDefaults.get().getMessageQueueJournalDir();
+        if (StringUtils.isBlank(dir)) {
+            return null;
+        }
+        try {
+            return new EventJournal(new File(dir),
+                    ConfigDefaults.get().getMessageQueueJournalSegmentSize());
+        }
+        catch (IOException e) {
+            logger.warn("Running without event journal: " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /*
+     * Queues the events left unfinished in the journal by the previous run,
+     * once the actions for them have been registered.
+     */
+    private static void replayJournal() {
+        EventJournal current = journal;
+        if (current == null) {
+            return;
+        }
+        Map<Long, DurableEventMessage> events = current.takePending();
+        for (Map.Entry<Long, DurableEventMessage> entry : events.entrySet()) {
+            DurableEventMessage msg = entry.getValue();
+            msg.replayed();
+            enqueue(msg, current, entry.getKey());
+        }
+        if (!events.isEmpty()) {
+            logger.info("Queued " + events.size() + " events left over from the last run");
+        }
+    }
+
+    /**
+     * Returns queue depth and latency figures per event type, for all event
+     * types published since startup.
+     * @return statistics keyed by event class name
+     */
+    public static Map<String, EventStatistics> getStatistics() {
+        Map<String, EventStatistics> retval = new TreeMap<String, EventStatistics>();
+        for (EventStatistics stats : STATISTICS.values()) {
+            retval.put(stats.getEventType(), stats);
+        }
+        return retval;
+    }
+
+    private static EventStatistics getStatistics(Class eventType) {
+        EventStatistics stats = STATISTICS.get(eventType);
+        if (stats == null) {
+            stats = new EventStatistics(eventType.getName());
+            EventStatistics existing = STATISTICS.putIfAbsent(eventType, stats);
+            if (existing != null) {
+                stats = existing;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the key deciding which messages run in order with the given one.
+     * @param msg the message
+     * @return the partition key
+     */
+    static Object getPartitionKey(EventMessage msg) {
+        if (msg instanceof PartitionedEventMessage) {
+            return ((PartitionedEventMessage) msg).getPartitionKey();
+        }
+        if (msg.getUserId() != null) {
+            return msg.getUserId();
+        }
+        // nothing better to go by, keep messages of this type in order
+        return msg.getClass();
+    }
+
+    private static BlockingQueue<Runnable> getPartition(EventMessage msg,
+            List<BlockingQueue<Runnable>> queues) {
+        int hash = getPartitionKey(msg).hashCode() & Integer.MAX_VALUE;
+        return queues.get(hash % queues.size());
+    }
+
+    /*
+     * Creates size new partitions and moves the messages still waiting in
+     * the old ones over, keeping their order within each key.
+     */
+    private static List<BlockingQueue<Runnable>> repartition(
+            List<BlockingQueue<Runnable>> old, int size) {
+        List<BlockingQueue<Runnable>> queues = new ArrayList<BlockingQueue<Runnable>>(size);
+        for (int i = 0; i < size; i++) {
+            queues.add(new LinkedBlockingQueue<Runnable>());
+        }
+        for (BlockingQueue<Runnable> queue : old) {
+            List<Runnable> waiting = new ArrayList<Runnable>();
+            queue.drainTo(waiting);
+            for (Runnable r : waiting) {
+                getPartition(((ActionExecutor) r).getMessage(), queues).add(r);
+            }
+        }
+        return queues;
     }
 
 
     /**
-     * Configures defaut messaging actions needed by RHN
+     * Configures defaut messaging actions needed by RHN and queues the events
+     * left unfinished in the event journal.
      * This method should be called directly after <code>startMessaging</code>.
      *
      */
@@ -310,6 +513,8 @@ public class MessageQueue {
         // Deploy configuration files
         MessageQueue.registerAction(new SsmConfigFilesAction(),
                                     SsmConfigFilesEvent.class);
+
+        replayJournal();
     }
 }
 
@@ -0,0 +1,35 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.rhn.common.messaging;
+
+/**
+ * An EventMessage that chooses which messages it must be ordered with.
+ *
+ * The MessageQueue runs messages with equal partition keys one after the
+ * other, in publishing order, while messages with different keys may run
+ * in parallel. Messages that do not implement this interface are keyed by
+ * their user, or by their class if they have no user.
+ *
+ * @version $Rev$
+ */
+public interface PartitionedEventMessage extends EventMessage {
+
+    /**
+     * Returns the key messages are ordered by, for example the org or
+     * channel the message works on. Must implement equals() and hashCode().
+     * @return partition key, never null
+     */
+    Object getPartitionKey();
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.rhn.common.messaging.test;
+
+import com.redhat.rhn.common.messaging.DurableEventMessage;
+import com.redhat.rhn.common.messaging.EventJournal;
+import com.redhat.rhn.testing.TestUtils;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class EventJournalTest extends TestCase {
+
+    private File dir;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        dir = new File("/tmp/journal-" + System.currentTimeMillis() +
+                TestUtils.randomString());
+    }
+
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+        super.tearDown();
+    }
+
+    public void testReplayUnfinished() throws Exception {
+        EventJournal journal = new EventJournal(dir, 4096);
+        long first = journal.append(new TestDurableEventMessage("first"));
+        long second = journal.append(new TestDurableEventMessage("second"));
+        long third = journal.append(new TestDurableEventMessage("third"));
+        journal.sync(third);
+        journal.complete(second);
+        assertEquals(2, journal.getOpenCount());
+        journal.close();
+
+        journal = new EventJournal(dir, 4096);
+        Map<Long, DurableEventMessage> pending = journal.takePending();
+        assertEquals(2, pending.size());
+        assertEquals(first, (long) new ArrayList<Long>(pending.keySet()).get(0));
+        assertEquals("first", ((TestDurableEventMessage) pending.get(first)).getData());
+        assertEquals("third", ((TestDurableEventMessage) pending.get(third)).getData());
+        assertTrue(journal.takePending().isEmpty());
+
+        // new events do not reuse the ids of the replayed ones
+        assertTrue(journal.append(new TestDurableEventMessage("fourth")) > third);
+        journal.close();
+    }
+
+    public void testFinishedSegmentsAreDeleted() throws Exception {
+        EventJournal journal = new EventJournal(dir, 1024);
+        long open = journal.append(new TestDurableEventMessage("still open"));
+        for (int i = 0; i < 100; i++) {
+            long id = journal.append(new TestDurableEventMessage("event " + i));
+            journal.sync(id);
+            journal.complete(id);
+        }
+        // the segment of the open event has to stay
+        assertTrue(segmentCount() > 1);
+
+        journal.complete(open);
+        journal.checkpoint();
+        assertEquals(1, segmentCount());
+        journal.close();
+
+        journal = new EventJournal(dir, 1024);
+        assertTrue(journal.takePending().isEmpty());
+        journal.close();
+    }
+
+    public void testTornRecord() throws Exception {
+        EventJournal journal = new EventJournal(dir, 4096);
+        long first = journal.append(new TestDurableEventMessage("first"));
+        journal.append(new TestDurableEventMessage("second"));
+        journal.close();
+
+        // damage the end of the last record, as a crash while writing would
+        File segment = null;
+        for (File f : dir.listFiles()) {
+            if (f.getName().endsWith(".log")) {
+                segment = f;
+            }
+        }
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        long pos = file.length() - 1;
+        file.seek(pos);
+        while (file.read() == 0) {
+            file.seek(--pos);
+        }
+        file.seek(pos);
+        file.write(0);
+        file.close();
+
+        journal = new EventJournal(dir, 4096);
+        Map<Long, DurableEventMessage> pending = journal.takePending();
+        assertEquals(1, pending.size());
+        assertTrue(pending.containsKey(first));
+        journal.close();
+    }
+
+    public void testDirectoryIsLocked() throws Exception {
+        EventJournal journal = new EventJournal(dir, 4096);
+        try {
+            new EventJournal(dir, 4096);
+            fail("journal directory opened twice");
+        }
+        catch (IOException e) {
+            // expected
+        }
+        journal.close();
+    }
+
+    private int segmentCount() {
+        int count = 0;
+        for (String name : dir.list()) {
+            if (name.endsWith(".log")) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
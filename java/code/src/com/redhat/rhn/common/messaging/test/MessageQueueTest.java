@@ -18,6 +18,8 @@ package com.redhat.rhn.common.messaging.test;
 import org.apache.log4j.Logger;
 
 import com.redhat.rhn.common.conf.Config;
+import com.redhat.rhn.common.hibernate.HibernateFactory;
+import com.redhat.rhn.common.messaging.EventStatistics;
 import com.redhat.rhn.common.messaging.MessageQueue;
 import com.redhat.rhn.domain.common.LoggingFactory;
 import com.redhat.rhn.domain.org.OrgFactory;
@@ -71,6 +73,37 @@ public class MessageQueueTest extends RhnBaseTestCase {
         logger.debug("testPublish - end");
     }
 
+    public void testStatistics() throws Exception {
+        String type = TestEventMessage.class.getName();
+        EventStatistics before = MessageQueue.getStatistics().get(type);
+        long published = before == null ? 0 : before.getPublished();
+        long processed = before == null ? 0 : before.getProcessed();
+
+        TestEventMessage me = new TestEventMessage();
+        MessageQueue.publish(me);
+        Thread.sleep(1000);
+        assertTrue(me.getMessageReceived());
+
+        EventStatistics stats = MessageQueue.getStatistics().get(type);
+        assertNotNull(stats);
+        assertEquals(published + 1, stats.getPublished());
+        assertEquals(processed + 1, stats.getProcessed());
+        assertEquals(0, stats.getQueued());
+    }
+
+    public void testDatabaseMessageDroppedOnRollback() throws Exception {
+        TestDBEventMessage me = new TestDBEventMessage(
+                HibernateFactory.getSession().getTransaction(), "rollback");
+        MessageQueue.publish(me);
+        // nothing is queued until the transaction is over
+        assertNull(MessageQueue.getStatistics().get(TestDBEventMessage.class.getName()));
+
+        HibernateFactory.rollbackTransaction();
+        Thread.sleep(1000);
+        assertFalse(me.getMessageReceived());
+        assertNull(MessageQueue.getStatistics().get(TestDBEventMessage.class.getName()));
+    }
+
 
     public void testMultiThreadedPublish() throws Exception {
         logger.debug("testMultiThreadedPublish - start");
@@ -0,0 +1,49 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.rhn.common.messaging.test;
+
+import com.redhat.rhn.common.messaging.DurableEventMessage;
+
+public class TestDurableEventMessage implements DurableEventMessage {
+
+    private static final long serialVersionUID = 1L;
+
+    private String data;
+    private transient boolean replayed;
+
+    public TestDurableEventMessage(String dataIn) {
+        data = dataIn;
+    }
+
+    public String getData() {
+        return data;
+    }
+
+    public boolean isReplayed() {
+        return replayed;
+    }
+
+    public void replayed() {
+        replayed = true;
+    }
+
+    public String toText() {
+        return data;
+    }
+
+    public Long getUserId() {
+        return null;
+    }
+}
@@ -15,18 +15,10 @@
 
 package com.redhat.rhn.common.security.acl;
 
-import com.redhat.rhn.common.IllegalRegexException;
 import com.redhat.rhn.common.MethodInvocationException;
 import com.redhat.rhn.common.localization.LocalizationService;
 
 import org.apache.log4j.Logger;
-import org.apache.oro.text.regex.MalformedPatternException;
-import org.apache.oro.text.regex.MatchResult;
-import org.apache.oro.text.regex.Pattern;
-import org.apache.oro.text.regex.PatternCompiler;
-import org.apache.oro.text.regex.PatternMatcher;
-import org.apache.oro.text.regex.Perl5Compiler;
-import org.apache.oro.text.regex.Perl5Matcher;
 
 import java.beans.BeanInfo;
 import java.beans.IntrospectionException;
@@ -34,9 +26,14 @@ import java.beans.Introspector;
 import java.beans.MethodDescriptor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Class for handling ACLs.
@@ -157,10 +154,22 @@ import java.util.TreeSet;
  *      }
  *  }
  *  </pre>
+ *  ACL strings are parsed once and the parsed statements are shared by all
+ *  Acl instances, as are the handler methods found on each AclHandler class.
+ *  If the context is a Map holding a Map under {@link #MEMO_KEY}, the
+ *  results of the handler calls are remembered there and repeated statements
+ *  evaluated with the same context do not call their handler again.
  * @version $Rev$
  */
 public class Acl {
 
+    /**
+     * Context key of the Map memoizing handler results. Callers put a new Map
+     * there when the context does not change between evaluations, for
+     * example while rendering the navigation of one request.
+     */
+    public static final String MEMO_KEY = "acl_memo";
+
     /** RegEx to split ACL into multiple expressions */
     private static final String ACL_SPLIT_REGEX = "\\s*;\\s*";
 
@@ -179,34 +188,29 @@ public class Acl {
     private static final int HANDLERNAME_GROUP = 2;
     /** constant used to identify param regex group within statement */
     private static final int PARAM_GROUP = 3;
-    /** total number of regex groups expected in statement */
-    private static final int EXPECTED_GROUPS = 4;
 
     /** prefix of acl handler method names */
     private static final String ACL_PREFIX = "acl";
 
+    /** number of distinct ACL strings whose parsed form is kept */
+    private static final int MAX_PARSED_ACLS = 5000;
+
     /** The log instance for this class */
     private static Logger log = Logger.getLogger(Acl.class);
 
-    /** Store acl handlers against keys referenced in acl statements */
-    private Map handlers = new HashMap();
+    /** the compiled regex parsing statements */
+    private static final Pattern PARSE_PATTERN = Pattern.compile(STMT_PARSE_REGEX);
 
-    /** store the compiled regex that will be re-used for evalAcl invocations */
-    private static Pattern parsePattern = null;
+    /** parsed ACL strings, expressions of statements */
+    private static final ConcurrentMap<String, Statement[][]> PARSED_ACLS =
+            new ConcurrentHashMap<String, Statement[][]>();
 
-    // initialize the parse pattern
-    static {
-        PatternCompiler compiler = new Perl5Compiler();
-        try {
-            parsePattern = compiler.compile(STMT_PARSE_REGEX);
-        }
-        catch (MalformedPatternException e) {
-            // we assume our regex is sane and tested
-            // and that we don't get here
-            throw new IllegalRegexException("Invalid when constructing parse " +
-                                            "pattern for acls.", e);
-        }
-    }
+    /** acl handler methods of each handler class by their acl name */
+    private static final ConcurrentMap<Class, Map<String, Method>> HANDLER_METHODS =
+            new ConcurrentHashMap<Class, Map<String, Method>>();
+
+    /** Store acl handlers against keys referenced in acl statements */
+    private Map handlers = new HashMap();
 
     /** Constructor for a new Acl instance without any default ACL handlers. */
     public Acl() {
@@ -228,6 +232,15 @@ public class Acl {
         }
     }
 
+    /**
+     * Creates a new Acl instance with the handlers of another one. Handlers
+     * registered later are only added to the new instance.
+     * @param other the Acl whose handlers are used
+     */
+    Acl(Acl other) {
+        handlers = new HashMap(other.handlers);
+    }
+
     /** Register an AclHandler class.
      * @param aclClassname fully-qualified classname of an {@link AclHandler}
      * implementation
@@ -288,9 +301,26 @@ public class Acl {
      * @param aclHandler AclHandler
      */
     public void registerHandler(AclHandler aclHandler) {
+        Map<String, Method> methods = getHandlerMethods(aclHandler.getClass());
+        for (Map.Entry<String, Method> entry : methods.entrySet()) {
+            handlers.put(entry.getKey(),
+                    new InstanceMethodPair(aclHandler, entry.getValue()));
+        }
+    }
 
+    /**
+     * Returns the acl handler methods of a class, looking them up the first
+     * time the class is registered.
+     * @param clazz the AclHandler class
+     * @return the methods by the names they are referenced by in ACL strings
+     */
+    private static Map<String, Method> getHandlerMethods(Class clazz) {
+        Map<String, Method> methods = HANDLER_METHODS.get(clazz);
+        if (methods != null) {
+            return methods;
+        }
+        methods = new HashMap<String, Method>();
         try {
-            Class clazz = aclHandler.getClass();
             // find all the acl* methods. and store them
             BeanInfo info = Introspector.getBeanInfo(clazz);
             MethodDescriptor[] methodDescriptors = info.getMethodDescriptors();
@@ -319,9 +349,7 @@ public class Acl {
 
                 }
 
-                String aclName = methodNameToAclName(methodName);
-                handlers.put(aclName,
-                        new InstanceMethodPair(aclHandler, method));
+                methods.put(methodNameToAclName(methodName), method);
             }
         }
         // from reading the javadocs for IntrospectionException,
@@ -331,7 +359,9 @@ public class Acl {
             exc.initCause(e);
             throw exc;
         }
-
+        methods = Collections.unmodifiableMap(methods);
+        Map<String, Method> known = HANDLER_METHODS.putIfAbsent(clazz, methods);
+        return known == null ? methods : known;
     }
 
     /**
@@ -340,7 +370,7 @@ public class Acl {
      * @param name The ACL name to convert
      * @return The corresponding method name.
      */
-    private String methodNameToAclName(String name) {
+    private static String methodNameToAclName(String name) {
 
         StringBuilder ret = new StringBuilder();
         boolean lastWasLower = false;
@@ -395,105 +425,57 @@ public class Acl {
                              "bad-syntax", acl));
         }
 
-        String[] expressions = acl.split(ACL_SPLIT_REGEX);
-        int exprLen = expressions.length;
+        Statement[][] expressions = parse(acl);
+        Map memo = getMemo(context);
 
         boolean result = false;
 
-        PatternMatcher matcher = new Perl5Matcher();
+        for (int exprIdx = 0; exprIdx < expressions.length; ++exprIdx) {
 
-        for (int exprIdx = 0; exprIdx < exprLen; ++exprIdx) {
+            Statement[] statements = expressions[exprIdx];
 
-            String expression = expressions[exprIdx];
+            for (int stmtIdx = 0; stmtIdx < statements.length; ++stmtIdx) {
 
-            if (log.isDebugEnabled()) {
-                log.debug("expression[" + exprIdx + "]: " + expression);
-            }
-
-            String[] statements = expression.split(EXPR_SPLIT_REGEX);
-            int statementLen = statements.length;
-
-            for (int stmtIdx = 0; stmtIdx < statementLen; ++stmtIdx) {
-
-                String statement = statements[stmtIdx];
+                Statement statement = statements[stmtIdx];
 
                 if (log.isDebugEnabled()) {
-                    log.debug("statement[" + stmtIdx + "]: " + statement);
+                    log.debug("statement[" + exprIdx + "][" + stmtIdx + "]: " +
+                            statement.getText());
                 }
 
-                boolean itMatches = matcher.matches(statement, parsePattern);
-                MatchResult matchResult = matcher.getMatch();
-                if (!itMatches || matchResult == null || matchResult.groups() <
-                        EXPECTED_GROUPS) {
+                if (statement.getHandlerName() == null) {
                     throw new IllegalArgumentException(
                                   LocalizationService.getInstance().getMessage(
-                                     "bad-syntax", statement));
-                }
-
-                if (log.isDebugEnabled()) {
-                    log.debug("num groups: " + matchResult.groups());
-                    log.debug("not: " + matchResult.group(NEGATION_GROUP));
-                    log.debug("handler: " +
-                            matchResult.group(HANDLERNAME_GROUP));
-                    log.debug("params: " + matchResult.group(PARAM_GROUP));
+                                     "bad-syntax", statement.getText()));
                 }
 
-                boolean negated = matchResult.group(NEGATION_GROUP) != null;
-
-                String func = matchResult.group(HANDLERNAME_GROUP);
-
-                String params = matchResult.group(PARAM_GROUP);
-
                 InstanceMethodPair pair =
-                    (InstanceMethodPair)handlers.get(func);
+                    (InstanceMethodPair)handlers.get(statement.getHandlerName());
 
                 if (pair == null) {
                     Object[] args = new Object[3];
-                    args[0] = func;
-                    args[1] = statement;
+                    args[0] = statement.getHandlerName();
+                    args[1] = statement.getText();
                     args[2] = new TreeSet(handlers.keySet()).toString();
                     throw new IllegalArgumentException(
                         LocalizationService.getInstance().getMessage(
                             "bad-handler", args));
                 }
 
-                Method handler = pair.getMethod();
-
-                String[] paramArray = params.split(PARAM_SPLIT_REGEX);
-
-                // if no args were givien, make sure we pass a 0-length array
-                if (paramArray.length == 1 && paramArray[0].trim().equals("")) {
-                    paramArray = new String[0];
+                if (memo == null) {
+                    result = invoke(pair, context, statement);
                 }
-
-                try {
-                    result = ((Boolean)handler.invoke(pair.getInstance(),
-                        new Object[] {context, paramArray })).booleanValue();
+                else {
+                    MemoKey key = new MemoKey(pair, statement.getParams());
+                    Boolean memoized = (Boolean)memo.get(key);
+                    if (memoized == null) {
+                        memoized = Boolean.valueOf(invoke(pair, context, statement));
+                        memo.put(key, memoized);
+                    }
+                    result = memoized.booleanValue();
                 }
-                // we shouldn't hit any of these exceptions, because the
-                // handler classes should have been adequately junit-tested
-                catch (IllegalAccessException iae) {
-                    Object[] args = new Object[3];
-                    args[0] = handler.getName();
-                    args[1] = statement;
-                    args[2] = iae.getMessage();
-
-                    throw new MethodInvocationException(
-                        LocalizationService.getInstance().getMessage(
-                        "illegal-access", args), iae);
-                }
-                catch (InvocationTargetException ite) {
-                    Object[] args = new Object[3];
-                    args[0] = handler.getName();
-                    args[1] = statement;
-                    args[2] = ite.getMessage();
 
-                    throw new MethodInvocationException(
-                        LocalizationService.getInstance().getMessage(
-                        "invocation-target-exception", args), ite);
-                }
-
-                if (negated) {
+                if (statement.isNegated()) {
                     result = !result;
                 }
 
@@ -519,6 +501,161 @@ public class Acl {
 
     }
 
+    private boolean invoke(InstanceMethodPair pair, Object context,
+            Statement statement) {
+        Method handler = pair.getMethod();
+        try {
+            // handlers get their own copy of the parameters
+            return ((Boolean)handler.invoke(pair.getInstance(),
+                new Object[] {context, statement.getParamArray().clone()})).booleanValue();
+        }
+        // we shouldn't hit any of these exceptions, because the
+        // handler classes should have been adequately junit-tested
+        catch (IllegalAccessException iae) {
+            Object[] args = new Object[3];
+            args[0] = handler.getName();
+            args[1] = statement.getText();
+            args[2] = iae.getMessage();
+
+            throw new MethodInvocationException(
+                LocalizationService.getInstance().getMessage(
+                "illegal-access", args), iae);
+        }
+        catch (InvocationTargetException ite) {
+            Object[] args = new Object[3];
+            args[0] = handler.getName();
+            args[1] = statement.getText();
+            args[2] = ite.getMessage();
+
+            throw new MethodInvocationException(
+                LocalizationService.getInstance().getMessage(
+                "invocation-target-exception", args), ite);
+        }
+    }
+
+    private static Map getMemo(Object context) {
+        if (context instanceof Map) {
+            Object memo = ((Map)context).get(MEMO_KEY);
+            if (memo instanceof Map) {
+                return (Map)memo;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Splits an ACL string into expressions of statements, reusing the
+     * result of earlier calls. Statements with a syntax error are kept
+     * without a handler name and only rejected once they are evaluated.
+     * @param acl the ACL string
+     * @return the statements of each expression
+     */
+    private static Statement[][] parse(String acl) {
+        Statement[][] expressions = PARSED_ACLS.get(acl);
+        if (expressions != null) {
+            return expressions;
+        }
+
+        String[] exprStrings = acl.split(ACL_SPLIT_REGEX);
+        expressions = new Statement[exprStrings.length][];
+        for (int exprIdx = 0; exprIdx < exprStrings.length; ++exprIdx) {
+            String[] statements = exprStrings[exprIdx].split(EXPR_SPLIT_REGEX);
+            expressions[exprIdx] = new Statement[statements.length];
+            for (int stmtIdx = 0; stmtIdx < statements.length; ++stmtIdx) {
+                expressions[exprIdx][stmtIdx] = new Statement(statements[stmtIdx]);
+            }
+        }
+
+        if (PARSED_ACLS.size() < MAX_PARSED_ACLS) {
+            PARSED_ACLS.putIfAbsent(acl, expressions);
+        }
+        return expressions;
+    }
+
+    /**
+     * A parsed statement of an ACL expression
+     */
+    private static class Statement {
+        private final String text;
+        private final boolean negated;
+        private final String handlerName;
+        private final String params;
+        private final String[] paramArray;
+
+        Statement(String textIn) {
+            text = textIn;
+            Matcher matcher = PARSE_PATTERN.matcher(textIn);
+            if (!matcher.matches()) {
+                negated = false;
+                handlerName = null;
+                params = null;
+                paramArray = null;
+                return;
+            }
+            negated = matcher.group(NEGATION_GROUP) != null;
+            handlerName = matcher.group(HANDLERNAME_GROUP);
+            params = matcher.group(PARAM_GROUP);
+
+            String[] split = params.split(PARAM_SPLIT_REGEX);
+            // if no args were givien, make sure we pass a 0-length array
+            if (split.length == 1 && split[0].trim().equals("")) {
+                split = new String[0];
+            }
+            paramArray = split;
+        }
+
+        String getText() {
+            return text;
+        }
+
+        boolean isNegated() {
+            return negated;
+        }
+
+        /**
+         * @return the handler called, null if the statement is malformed
+         */
+        String getHandlerName() {
+            return handlerName;
+        }
+
+        String getParams() {
+            return params;
+        }
+
+        String[] getParamArray() {
+            return paramArray;
+        }
+    }
+
+    /**
+     * Identifies a handler call in the memo of a context
+     */
+    private static class MemoKey {
+        private final Object instance;
+        private final Method method;
+        private final String params;
+
+        MemoKey(InstanceMethodPair pair, String paramsIn) {
+            instance = pair.getInstance();
+            method = pair.getMethod();
+            params = paramsIn;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof MemoKey)) {
+                return false;
+            }
+            MemoKey other = (MemoKey)o;
+            return instance == other.instance && method.equals(other.method) &&
+                    params.equals(other.params);
+        }
+
+        public int hashCode() {
+            return method.hashCode() * 31 + params.hashCode();
+        }
+    }
+
     private static class InstanceMethodPair {
         private Method method;
         private Object instance;
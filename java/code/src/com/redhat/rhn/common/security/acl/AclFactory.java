@@ -17,13 +17,16 @@ package com.redhat.rhn.common.security.acl;
 
 import org.apache.commons.lang.StringUtils;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * Class to assist with creating Acls.  This Factory will setup
  * the Acl class as well as setup the default as well as the mixin AclHandlers
  * associated with the Acl.
  *
- * TODO - consider caching the Acl instances within the Factory so we don't have to
- * instantiate new ones each time. Not sure how to do this yet.
+ * The handlers of each combination of mixins are created once and shared by
+ * the Acl instances returned, which is fine as handlers keep no state.
  *
  * @version $Rev$
  */
@@ -32,6 +35,10 @@ public class AclFactory {
     // private instance of the service.
     private static AclFactory instance = new AclFactory();
 
+    // Acls with the handlers of each mixins string, copied by getAcl
+    private final ConcurrentMap<String, Acl> prototypes =
+            new ConcurrentHashMap<String, Acl>();
+
     /**
      * hidden constructor
      */
@@ -53,6 +60,19 @@ public class AclFactory {
      * @return Acl created
      */
     public Acl getAcl(String mixinsIn) {
+        String key = mixinsIn == null ? "" : mixinsIn;
+        Acl prototype = prototypes.get(key);
+        if (prototype == null) {
+            prototype = createAcl(mixinsIn);
+            Acl known = prototypes.putIfAbsent(key, prototype);
+            if (known != null) {
+                prototype = known;
+            }
+        }
+        return new Acl(prototype);
+    }
+
+    private Acl createAcl(String mixinsIn) {
         Acl aclObj = new Acl();
         Access access = new Access();
         aclObj.registerHandler(access);
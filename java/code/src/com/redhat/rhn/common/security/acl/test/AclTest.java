@@ -22,6 +22,8 @@ import com.redhat.rhn.testing.RhnBaseTestCase;
 import com.mockobjects.ExpectationValue;
 import com.mockobjects.Verifiable;
 
+import org.apache.commons.lang.StringUtils;
+
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
@@ -219,6 +221,52 @@ public class AclTest extends RhnBaseTestCase {
         }
     }
 
+    /* Syntax errors are only reported for statements that are evaluated.
+     */
+    public void testBadSyntaxNotEvaluated() {
+        assertFalse(acl.evalAcl(null, "handler_zero(false); handler_zero true"));
+        try {
+            acl.evalAcl(null, "handler_zero(true); handler_zero true");
+            fail("expected to fail");
+        }
+        catch (IllegalArgumentException e) {
+            // good
+        }
+    }
+
+    /* Parsed acls are shared by Acl instances with other handlers.
+     */
+    public void testParsedAclShared() {
+        CountingAclHandler counting = new CountingAclHandler();
+        Acl other = new Acl();
+        other.registerHandler(counting);
+        String aclStr = "handler_zero(true) or handler_zero(a, b)";
+
+        assertTrue(acl.evalAcl(context, aclStr));
+        assertFalse(other.evalAcl(context, aclStr));
+        assertEquals(2, counting.getCalls());
+        assertEquals("a,b", counting.getLastParams());
+    }
+
+    /* Handler results are remembered in the memo of the context.
+     */
+    public void testMemo() {
+        CountingAclHandler counting = new CountingAclHandler();
+        Acl other = new Acl();
+        other.registerHandler(counting);
+
+        assertFalse(other.evalAcl(context, "handler_zero(a)"));
+        assertFalse(other.evalAcl(context, "handler_zero(a)"));
+        assertEquals(2, counting.getCalls());
+
+        context.put(Acl.MEMO_KEY, new HashMap());
+        assertFalse(other.evalAcl(context, "handler_zero(a)"));
+        assertTrue(other.evalAcl(context, "not handler_zero(a); handler_zero(b) or " +
+                "not handler_zero(a)"));
+        assertFalse(other.evalAcl(context, "handler_zero(b)"));
+        assertEquals(4, counting.getCalls());
+    }
+
     /** Makes sure that method names are properly converted to acl handler
      *  names.
      *  Tests the following:
@@ -390,6 +438,27 @@ public class AclTest extends RhnBaseTestCase {
        }
    }
 
+   /** A handler counting its calls, always returning false.
+    */
+   public static class CountingAclHandler implements AclHandler {
+       private int calls;
+       private String lastParams;
+
+       public boolean aclHandlerZero(Object ctx, String[] params) {
+           calls++;
+           lastParams = StringUtils.join(params, ",");
+           return false;
+       }
+
+       public int getCalls() {
+           return calls;
+       }
+
+       public String getLastParams() {
+           return lastParams;
+       }
+   }
+
    /** A handler class with a variety of names to test that method names
     *  get converted to acl names correctly.
     */
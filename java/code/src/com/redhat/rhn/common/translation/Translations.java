@@ -34,16 +34,31 @@ public class Translations {
     // within a static method.  So, we pass the Class object in from
     // a sub-class.
     protected static Object convert(Class thisClass, Object have, Class want) {
+        return invokeTranslator(findTranslator(thisClass, have.getClass(), want),
+                have, want);
+    }
+
+    /**
+     * Finds the method of thisClass that converts objects of one class to
+     * another, so callers converting the same classes over and over can
+     * look it up once.
+     * @param thisClass class holding the translation methods
+     * @param have class of the objects to convert
+     * @param want class to convert to
+     * @return the translation method, null if no translation is needed
+     * @throws TranslationException there is no translation method
+     */
+    protected static Method findTranslator(Class thisClass, Class have, Class want) {
 
         // Don't worry about classes that are assignable; i.e., HashMap -> Map
-        if (want.isAssignableFrom(have.getClass())) {
-            return have;
+        if (want.isAssignableFrom(have)) {
+            return null;
         }
 
         Method[] methods = thisClass.getDeclaredMethods();
 
         // tries to find an exact match
-        Object rc = findMatch(methods, have, want, false);
+        Method rc = findMatch(methods, have, want, false);
 
         if (rc == null) {
             // try to find the best match
@@ -51,46 +66,62 @@ public class Translations {
 
             if (rc == null) {
                 throw new TranslationException("Could not find translator for " +
-                        have.getClass() + " to " + want);
+                        have + " to " + want);
             }
         }
 
         return rc;
     }
 
-    private static Object findMatch(Method[] methods, Object have,
-                                    Class want, boolean bestMatch)
-            throws TranslationException {
+    /**
+     * Converts an object with a method returned by findTranslator
+     * @param translator the translation method, null to keep the object
+     * @param have the object to convert
+     * @param want class to convert to
+     * @return the converted object
+     * @throws TranslationException the translation failed
+     */
+    protected static Object invokeTranslator(Method translator, Object have,
+            Class want) {
+        if (translator == null) {
+            return have;
+        }
+        Object[] objs = {have};
+        try {
+            return translator.invoke(null, objs);
+        }
+        catch (IllegalAccessException e) {
+            throw new TranslationException("Could not execute " +
+                            "translator for " + have.getClass() +
+                            " to " + want, e);
+        }
+        catch (InvocationTargetException e) {
+            throw new TranslationException("Error when executing " +
+                            "translator for " + have.getClass() +
+                            " to " + want, e.getCause());
+        }
+    }
+
+    private static Method findMatch(Method[] methods, Class have,
+                                    Class want, boolean bestMatch) {
 
         for (int i = 0; i < methods.length; i++) {
             Class returnType = methods[i].getReturnType();
             Class[] params = methods[i].getParameterTypes();
 
             // All conversions have a single parameter, the object to transform
-            if (!bestMatch && have != null &&
-                (params.length != 1 || !params[0].equals(have.getClass()))) {
+            if (params.length != 1) {
+                continue;
+            }
+            if (!bestMatch && !params[0].equals(have)) {
                 continue;
             }
-            else if (bestMatch && have != null &&
-                    (params.length != 1 || !params[0].isAssignableFrom(have.getClass()))) {
+            else if (bestMatch && !params[0].isAssignableFrom(have)) {
                 continue;
             }
 
             if (returnType.equals(want)) {
-                Object[] objs = {have};
-                try {
-                    return methods[i].invoke(null, objs);
-                }
-                catch (IllegalAccessException e) {
-                    throw new TranslationException("Could not execute " +
-                                    "translator for " + have.getClass() +
-                                    " to " + want, e);
-                }
-                catch (InvocationTargetException e) {
-                    throw new TranslationException("Error when executing " +
-                                    "translator for " + have.getClass() +
-                                    " to " + want, e.getCause());
-                }
+                return methods[i];
             }
         }
 
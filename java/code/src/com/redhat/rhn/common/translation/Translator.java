@@ -18,6 +18,7 @@ package com.redhat.rhn.common.translation;
 import com.redhat.rhn.domain.user.User;
 import com.redhat.rhn.domain.user.UserFactory;
 
+import java.lang.reflect.Method;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Date;
@@ -45,6 +46,27 @@ public class Translator extends Translations {
         return convert(Translator.class, have, want);
     }
 
+    /**
+     * Find the method translating one object type to another.
+     * @param have The Class to convert from
+     * @param want The Class to convert to.
+     * @return the translation method, null if have is assignable to want
+     */
+    public static Method findTranslator(Class have, Class want) {
+        return findTranslator(Translator.class, have, want);
+    }
+
+    /**
+     * Translate an object with a method returned by findTranslator.
+     * @param translator The translation method, null to keep the object
+     * @param have The object to convert
+     * @param want The Class to convert to.
+     * @return the converted object
+     */
+    public static Object convert(Method translator, Object have, Class want) {
+        return invokeTranslator(translator, have, want);
+    }
+
     /**
      * Convert an Integer object into a String
      * @param i the integer to convert
@@ -121,7 +121,7 @@ public class CommonFactory extends HibernateFactory {
         }
 
         TinyUrl url = new TinyUrl();
-        Config c = new Config();
+        Config c = Config.get();
         url.setUrl(urlIn);
         url.setEnabled(true);
         url.setToken(token);
@@ -24,6 +24,8 @@ import com.redhat.rhn.common.hibernate.HibernateFactory;
 
 import org.apache.log4j.Logger;
 
+import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -118,21 +120,17 @@ public class RhnSetFactory extends HibernateFactory {
      */
     public static void save(RhnSet set) {
         RhnSetImpl simpl = (RhnSetImpl) set;
-        // The updates really need to be batched
         if (simpl.isSynced() && !simpl.getElements().isEmpty()) {
             WriteMode deleteEl3 = writeMode("delete_from_set_el3");
             WriteMode deleteEl2 = writeMode("delete_from_set_el2");
             WriteMode deleteEl1 = writeMode("delete_from_set_el1");
-            for (Iterator i = simpl.getRemoved().iterator(); i.hasNext();) {
-                RhnSetElement current = (RhnSetElement) i.next();
-                executeMode(current, deleteEl3, deleteEl2, deleteEl1);
-            }
+            executeBatch(simpl.getRemoved(), deleteEl3, deleteEl2, deleteEl1);
         }
         else {
             removeByLabel(simpl.getUserId(), simpl.getLabel());
         }
 
-        Set added;
+        Set<RhnSetElement> added;
         if (!simpl.isSynced()) {
             added = simpl.getElements();
         }
@@ -142,10 +140,30 @@ public class RhnSetFactory extends HibernateFactory {
         WriteMode insertEl3 = writeMode("add_to_set_el3");
         WriteMode insertEl2 = writeMode("add_to_set_el2");
         WriteMode insertEl1 = writeMode("add_to_set_el1");
-        for (Iterator i = added.iterator(); i.hasNext();) {
-            RhnSetElement current = (RhnSetElement) i.next();
+        try {
+            executeBatch(added, insertEl3, insertEl2, insertEl1);
+        }
+        catch (ConstraintViolationException e) {
+            // a concurrent transaction has already inserted one of these rows
+            // and COMMITted, which fails the whole batch. Retry row by row,
+            // skipping the duplicates.
+            insertEach(added, insertEl3, insertEl2, insertEl1);
+        }
+        catch (WrappedSQLException e) {
+            // see ConstraintViolationException
+            insertEach(added, insertEl3, insertEl2, insertEl1);
+        }
+        if (!added.isEmpty()) {
+            simpl.getCleanup().cleanup(simpl);
+        }
+        simpl.sync();
+    }
+
+    private static void insertEach(Set<RhnSetElement> added,
+            WriteMode el3, WriteMode el2, WriteMode el1) {
+        for (RhnSetElement current : added) {
             try {
-                executeMode(current, insertEl3, insertEl2, insertEl1);
+                executeMode(current, el3, el2, el1);
             }
             catch (ConstraintViolationException e) {
                 // a concurrent transaction has already inserted this row
@@ -157,10 +175,6 @@ public class RhnSetFactory extends HibernateFactory {
                 // see ConstraintViolationException
             }
         }
-        if (!added.isEmpty()) {
-            simpl.getCleanup().cleanup(simpl);
-        }
-        simpl.sync();
     }
 
     /**
@@ -177,30 +191,67 @@ public class RhnSetFactory extends HibernateFactory {
         return ModeFactory.getWriteMode(CATALOG, modeName);
     }
 
-    private static void executeMode(RhnSetElement elem,
-            WriteMode el3, WriteMode el2, WriteMode el1) {
+    private static Map<String, Object> buildParams(RhnSetElement elem) {
         Map<String, Object> params = new HashMap<String, Object>();
         params.put("user_id", elem.getUserId());
         params.put("label", elem.getLabel());
         params.put("el_one", elem.getElement());
-        int count;
+        if (elem.getElementTwo() != null || elem.getElementThree() != null) {
+            params.put("el_two", elem.getElementTwo());
+        }
+        if (elem.getElementThree() != null) {
+            params.put("el_three", elem.getElementThree());
+        }
+        return params;
+    }
 
+    /*
+     * Picks the mode matching the number of elements set on elem, the same
+     * way for single rows and for batches.
+     */
+    private static WriteMode pickMode(RhnSetElement elem,
+            WriteMode el3, WriteMode el2, WriteMode el1) {
         if (elem.getElementThree() == null && elem.getElementTwo() == null) {
-            count = el1.executeUpdate(params);
+            return el1;
         }
         else if (elem.getElementThree() == null) {
-            params.put("el_two", elem.getElementTwo());
-            count = el2.executeUpdate(params);
-        }
-        else {
-            params.put("el_three", elem.getElementThree());
-            params.put("el_two", elem.getElementTwo());
-            count = el3.executeUpdate(params);
+            return el2;
         }
+        return el3;
+    }
+
+    private static void executeMode(RhnSetElement elem,
+            WriteMode el3, WriteMode el2, WriteMode el1) {
+        int count = pickMode(elem, el3, el2, el1).executeUpdate(buildParams(elem));
 
         assert count == 1 : "Failed to update row";
     }
 
+    private static void executeBatch(Set<RhnSetElement> elems,
+            WriteMode el3, WriteMode el2, WriteMode el1) {
+        if (elems.isEmpty()) {
+            return;
+        }
+        Map<WriteMode, List<Map<String, Object>>> batches =
+                new HashMap<WriteMode, List<Map<String, Object>>>();
+        for (RhnSetElement elem : elems) {
+            WriteMode m = pickMode(elem, el3, el2, el1);
+            List<Map<String, Object>> rows = batches.get(m);
+            if (rows == null) {
+                rows = new ArrayList<Map<String, Object>>();
+                batches.put(m, rows);
+            }
+            rows.add(buildParams(elem));
+        }
+        for (Map.Entry<WriteMode, List<Map<String, Object>>> batch : batches.entrySet()) {
+            int[] counts = batch.getKey().executeBatchUpdates(batch.getValue());
+            for (int count : counts) {
+                assert count == 1 || count == Statement.SUCCESS_NO_INFO :
+                    "Failed to update row";
+            }
+        }
+    }
+
     /**
      * Removes a set by label and userid.
      * @param userId The userid associated with the set.
@@ -92,5 +92,21 @@ public class WebSessionFactory extends HibernateFactory {
         query.setParameter("user_id", user.getId());
         query.executeUpdate();
     }
-}
 
+    /**
+     * Sets the expiry time of a session, if it still belongs to the user
+     * @param sessionId id of the session
+     * @param userId id of the user of the session
+     * @param expires new expiry time in seconds
+     * @return the number of sessions updated, 0 if the session was removed
+     * or belongs to another user
+     */
+    public static int updateExpires(Long sessionId, Long userId, long expires) {
+        Session session = HibernateFactory.getSession();
+        Query query = session.getNamedQuery("WebSession.updateExpires");
+        query.setParameter("id", sessionId);
+        query.setParameter("user_id", userId);
+        query.setParameter("expires", expires);
+        return query.executeUpdate();
+    }
+}
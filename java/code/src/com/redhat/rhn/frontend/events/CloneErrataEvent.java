@@ -15,7 +15,9 @@
 package com.redhat.rhn.frontend.events;
 
 import com.redhat.rhn.common.hibernate.HibernateFactory;
+import com.redhat.rhn.common.messaging.DurableEventMessage;
 import com.redhat.rhn.common.messaging.EventDatabaseMessage;
+import com.redhat.rhn.common.messaging.PartitionedEventMessage;
 import com.redhat.rhn.domain.channel.Channel;
 import com.redhat.rhn.domain.channel.ChannelFactory;
 import com.redhat.rhn.domain.user.User;
@@ -31,13 +33,16 @@ import java.util.Collection;
  *
  * @version $Rev$
  */
-public class CloneErrataEvent implements EventDatabaseMessage {
+public class CloneErrataEvent implements EventDatabaseMessage,
+        PartitionedEventMessage, DurableEventMessage {
+
+    private static final long serialVersionUID = 2671521945691753783L;
 
 
 
     private Long chanId;
     private Collection<Long> errata;
-    private Transaction txn;
+    private transient Transaction txn;
     private Long userId;
 
     /**
@@ -122,4 +127,18 @@ public class CloneErrataEvent implements EventDatabaseMessage {
         return userId;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public Object getPartitionKey() {
+        // clones into the same channel must not run concurrently
+        return "channel-" + chanId;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void replayed() {
+        // nothing to restore
+    }
 }
@@ -15,7 +15,9 @@
 package com.redhat.rhn.frontend.events;
 
 import com.redhat.rhn.common.hibernate.HibernateFactory;
+import com.redhat.rhn.common.messaging.DurableEventMessage;
 import com.redhat.rhn.common.messaging.EventDatabaseMessage;
+import com.redhat.rhn.common.messaging.PartitionedEventMessage;
 import com.redhat.rhn.domain.channel.Channel;
 import com.redhat.rhn.domain.channel.ChannelFactory;
 import com.redhat.rhn.domain.user.User;
@@ -32,13 +34,16 @@ import org.hibernate.Transaction;
  * once the message got popped back off
  * @version $Rev$
  */
-public class NewCloneErrataEvent implements EventDatabaseMessage {
+public class NewCloneErrataEvent implements EventDatabaseMessage,
+        PartitionedEventMessage, DurableEventMessage {
+
+    private static final long serialVersionUID = -2875293200062377941L;
 
 
 
     private Long chanId;
     private Long errata;
-    private final Transaction txn;
+    private final transient Transaction txn;
     private final Long userId;
     private boolean inheritPackages;
 
@@ -147,4 +152,20 @@ public class NewCloneErrataEvent implements EventDatabaseMessage {
     public Long getUserId() {
         return userId;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Object getPartitionKey() {
+        // clones into the same channel must not run concurrently
+        return "channel-" + chanId;
+    }
+
+    /**
+     * Registers the clone job with the counter again, the counter does not
+     * survive a restart.
+     */
+    public void replayed() {
+        register();
+    }
 }
@@ -25,6 +25,8 @@ import java.util.Set;
  */
 public class SsmInstallPackagesEvent extends SsmPackageEvent {
 
+    private static final long serialVersionUID = 3723149190595139521L;
+
     protected Set<String> packages;
     protected Long        channelId;
 
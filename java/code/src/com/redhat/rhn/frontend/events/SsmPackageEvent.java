@@ -15,6 +15,7 @@
 package com.redhat.rhn.frontend.events;
 
 import com.redhat.rhn.common.hibernate.HibernateFactory;
+import com.redhat.rhn.common.messaging.DurableEventMessage;
 import com.redhat.rhn.common.messaging.EventDatabaseMessage;
 import com.redhat.rhn.domain.action.ActionChain;
 import org.hibernate.Transaction;
@@ -28,12 +29,15 @@ import java.util.Date;
  * @author ggainey
  *
  */
-public abstract class SsmPackageEvent implements EventDatabaseMessage {
+public abstract class SsmPackageEvent implements EventDatabaseMessage,
+        DurableEventMessage {
+
+    private static final long serialVersionUID = -651203574895259915L;
 
     protected Long                userId;
     protected Date                earliest;
     protected Long                actionChainId;
-    private Transaction           txn;
+    private transient Transaction txn;
 
     /**
      * Creates a new event to install a set of packages on systems in the SSM.
@@ -96,4 +100,11 @@ public abstract class SsmPackageEvent implements EventDatabaseMessage {
         return txn;
     }
 
+
+    /**
+     * {@inheritDoc}
+     */
+    public void replayed() {
+        // nothing to restore
+    }
 }
@@ -16,6 +16,7 @@ package com.redhat.rhn.frontend.events;
 
 import com.redhat.rhn.domain.action.ActionChain;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -29,6 +30,8 @@ import java.util.Map;
  */
 public class SsmRemovePackagesEvent extends SsmPackageEvent {
 
+    private static final long serialVersionUID = -1108611763305260494L;
+
     private List<Map<String, Object>> result;
 
     /**
@@ -42,7 +45,8 @@ public class SsmRemovePackagesEvent extends SsmPackageEvent {
     public SsmRemovePackagesEvent(Long userIdIn, Date earliestIn,
             ActionChain actionChainIn, List<Map<String, Object>> resultIn) {
         super(userIdIn, earliestIn, actionChainIn);
-        result = resultIn;
+        // a plain copy, so the event can be journaled
+        result = new ArrayList<Map<String, Object>>(resultIn);
     }
 
     /** {@inheritDoc} */
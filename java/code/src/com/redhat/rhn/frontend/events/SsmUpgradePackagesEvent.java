@@ -28,6 +28,8 @@ import java.util.Map;
  */
 public class SsmUpgradePackagesEvent extends SsmPackageEvent {
 
+    private static final long serialVersionUID = 4164596580995592642L;
+
     protected Map<Long, List<Map<String, Long>>> sysPackageSet;
 
     /**
@@ -15,7 +15,9 @@
 package com.redhat.rhn.frontend.events;
 
 import com.redhat.rhn.common.hibernate.HibernateFactory;
+import com.redhat.rhn.common.messaging.DurableEventMessage;
 import com.redhat.rhn.common.messaging.EventDatabaseMessage;
+import com.redhat.rhn.common.messaging.PartitionedEventMessage;
 
 import org.hibernate.Transaction;
 
@@ -27,7 +29,10 @@ import java.util.List;
  *
  * @version $Rev$
  */
-public class UpdateErrataCacheEvent implements EventDatabaseMessage {
+public class UpdateErrataCacheEvent implements EventDatabaseMessage,
+        PartitionedEventMessage, DurableEventMessage {
+
+    private static final long serialVersionUID = -3720958657989204912L;
 
     private Long orgId;
     private List<Long> channelIds;
@@ -38,7 +43,7 @@ public class UpdateErrataCacheEvent implements EventDatabaseMessage {
     public static final int TYPE_CHANNEL = 2;
     public static final int TYPE_CHANNEL_ERRATA = 3;
 
-    private Transaction txn;
+    private transient Transaction txn;
 
 
     /**
@@ -146,4 +151,23 @@ public class UpdateErrataCacheEvent implements EventDatabaseMessage {
     public Long getUserId() {
         return null;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Object getPartitionKey() {
+        // org updates of different orgs may run side by side, channel
+        // updates are kept in order with each other
+        if (type == TYPE_ORG && orgId != null) {
+            return "org-" + orgId;
+        }
+        return UpdateErrataCacheEvent.class;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void replayed() {
+        // nothing to restore
+    }
 }
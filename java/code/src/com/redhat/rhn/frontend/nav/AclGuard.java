@@ -26,6 +26,7 @@ import java.util.Map;
 public class AclGuard implements RenderGuard {
     private Map context;
     private String mixins;
+    private Acl acl;
 
 
     /**
@@ -65,7 +66,9 @@ public class AclGuard implements RenderGuard {
             return true;
         }
 
-        Acl acl = AclFactory.getInstance().getAcl(mixins);
+        if (acl == null) {
+            acl = AclFactory.getInstance().getAcl(mixins);
+        }
         return acl.evalAcl(context, aclStr);
     }
 }
@@ -14,12 +14,21 @@
  */
 package com.redhat.rhn.frontend.nav.test;
 
+import com.redhat.rhn.common.security.acl.Acl;
 import com.redhat.rhn.common.security.acl.AclHandler;
 import com.redhat.rhn.frontend.nav.AclGuard;
 import com.redhat.rhn.frontend.nav.NavNode;
+import com.redhat.rhn.frontend.nav.NavTree;
+import com.redhat.rhn.frontend.nav.NavTreeIndex;
+import com.redhat.rhn.frontend.nav.RenderEngine;
+import com.redhat.rhn.frontend.nav.SidenavRenderer;
 import com.redhat.rhn.testing.RhnBaseTestCase;
 
+import org.apache.log4j.Logger;
+
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * AclGuardTest
@@ -27,6 +36,19 @@ import java.util.HashMap;
  */
 public class AclGuardTest extends RhnBaseTestCase {
 
+    private static Logger log = Logger.getLogger(AclGuardTest.class);
+
+    // acls of the authenticated sitenav, by the number of nodes using them
+    private static final Object[][] SIDENAV_ACLS = {
+        {16, "user_role_test(satellite_admin)"},
+        {14, "user_role_test(org_admin)"},
+        {13, "user_role_test(config_admin)"},
+        {6, "user_role_test(channel_admin)"},
+        {1, "user_role_test(activation_key_admin)"},
+        {1, "user_role_test(channel_admin) or not user_role_test(org_admin); " +
+            "user_role_test(org_admin)"},
+    };
+
     public void testNoAclDefined() {
         NavNode node = new NavNode();
         AclGuard aclGuard = new AclGuard(new HashMap());
@@ -58,6 +80,91 @@ public class AclGuardTest extends RhnBaseTestCase {
         assertTrue(rc);
     }
 
+    public void testSidenavMemo() {
+        NavTree tree = buildSidenav();
+        RoleAclHandler.CALLS.set(0);
+        String unmemoized = render(tree, new HashMap());
+        assertEquals(52, RoleAclHandler.CALLS.get());
+
+        Map context = new HashMap();
+        context.put(Acl.MEMO_KEY, new HashMap());
+        RoleAclHandler.CALLS.set(0);
+        assertEquals(unmemoized, render(tree, context));
+        assertEquals(5, RoleAclHandler.CALLS.get());
+        render(tree, context);
+        assertEquals(5, RoleAclHandler.CALLS.get());
+    }
+
+    public void testSidenavBenchmark() {
+        NavTree tree = buildSidenav();
+        int renders = 2000;
+        // warm up
+        for (int i = 0; i < 100; i++) {
+            render(tree, new HashMap());
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < renders; i++) {
+            render(tree, new HashMap());
+        }
+        long unmemoized = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < renders; i++) {
+            Map context = new HashMap();
+            context.put(Acl.MEMO_KEY, new HashMap());
+            render(tree, context);
+        }
+        long memoized = System.nanoTime() - start;
+
+        log.info("Sidenav of " + tree.getNodes().size() + " nodes rendered in " +
+                unmemoized / renders / 1000 + " us, " + memoized / renders / 1000 +
+                " us with memoized acl handlers");
+    }
+
+    private NavTree buildSidenav() {
+        NavTree tree = new NavTree();
+        tree.setLabel("sidenav_test");
+        tree.setAclMixins(RoleAclHandler.class.getName());
+        int n = 0;
+        for (Object[] acl : SIDENAV_ACLS) {
+            for (int i = 0; i < (Integer) acl[0]; i++) {
+                NavNode node = new NavNode();
+                node.setName("Node " + n);
+                node.addPrimaryURL("/rhn/node" + n + ".do");
+                node.setAcl((String) acl[1]);
+                tree.addNode(node);
+                n++;
+            }
+        }
+        return tree;
+    }
+
+    private String render(NavTree tree, Map context) {
+        SidenavRenderer renderer = new SidenavRenderer();
+        renderer.setRenderGuard(new AclGuard(context, tree.getAclMixins()));
+        return new RenderEngine(new NavTreeIndex(tree)).render(renderer);
+    }
+
+    /**
+     * Handler granting the org_admin and config_admin roles, counting its
+     * calls
+     */
+    public static class RoleAclHandler implements AclHandler {
+        static final AtomicInteger CALLS = new AtomicInteger();
+
+        /**
+         * Checks for a role
+         * @param ctx ignored
+         * @param params the role
+         * @return true for org_admin and config_admin
+         */
+        public boolean aclUserRoleTest(Object ctx, String[] params) {
+            CALLS.incrementAndGet();
+            return "org_admin".equals(params[0]) || "config_admin".equals(params[0]);
+        }
+    }
+
     public static class MockAclHandler implements AclHandler {
         /**
          * Always returns true.
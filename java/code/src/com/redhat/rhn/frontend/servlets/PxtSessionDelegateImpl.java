@@ -17,6 +17,7 @@ package com.redhat.rhn.frontend.servlets;
 import com.redhat.rhn.common.util.TimeUtils;
 import com.redhat.rhn.domain.session.WebSession;
 import com.redhat.rhn.domain.session.WebSessionFactory;
+import com.redhat.rhn.manager.session.SessionExpiryCoalescer;
 import com.redhat.rhn.manager.session.SessionManager;
 
 import javax.servlet.http.Cookie;
@@ -201,9 +202,14 @@ public class PxtSessionDelegateImpl implements PxtSessionDelegate {
         Cookie pxtCookie = pxtCookieManager.createPxtCookie(pxtSession.getId(), request,
                 pxtCookieExpiration);
 
-        pxtSession.setExpires(TimeUtils.currentTimeSeconds() +
-                SessionManager.lifetimeValue());
-        savePxtSession(pxtSession);
+        long expires = TimeUtils.currentTimeSeconds() + SessionManager.lifetimeValue();
+        SessionExpiryCoalescer coalescer = getExpiryCoalescer();
+        // an invalidated session has changed and is written right away
+        if (pxtCookieExpiration == 0 || coalescer == null ||
+                !coalescer.refresh(pxtSession, expires)) {
+            pxtSession.setExpires(expires);
+            savePxtSession(pxtSession);
+        }
 
         response.addCookie(pxtCookie);
     }
@@ -217,6 +223,16 @@ public class PxtSessionDelegateImpl implements PxtSessionDelegate {
         WebSessionFactory.save(pxtSession);
     }
 
+    /**
+     * This method is a hook for testing.
+     *
+     * @return The coalescer queuing session expiry refreshes, <code>null</code> if
+     * every refresh is saved right away
+     */
+    protected SessionExpiryCoalescer getExpiryCoalescer() {
+        return SessionExpiryCoalescer.getInstance();
+    }
+
     /**
      * {@inheritDoc}
      */
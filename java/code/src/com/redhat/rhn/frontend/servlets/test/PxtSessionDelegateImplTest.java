@@ -28,9 +28,11 @@ import org.hamcrest.TypeSafeMatcher;
 import org.jmock.Expectations;
 import org.jmock.integration.junit3.MockObjectTestCase;
 
+import com.redhat.rhn.common.util.TimeUtils;
 import com.redhat.rhn.domain.session.WebSession;
 import com.redhat.rhn.frontend.servlets.PxtCookieManager;
 import com.redhat.rhn.frontend.servlets.PxtSessionDelegateImpl;
+import com.redhat.rhn.manager.session.SessionExpiryCoalescer;
 
 /**
  * PxtSessionDelegateImplTest
@@ -88,6 +90,10 @@ public class PxtSessionDelegateImplTest extends MockObjectTestCase {
         public int getSavePxtSessionCounter() {
             return savePxtSessionCounter;
         }
+
+        protected SessionExpiryCoalescer getExpiryCoalescer() {
+            return coalescer;
+        }
     }
 
     private static final Long PXT_SESSION_ID = new Long(2658447890L);
@@ -101,6 +107,8 @@ public class PxtSessionDelegateImplTest extends MockObjectTestCase {
 
     private PxtCookieManager pxtCookieManager;
 
+    private SessionExpiryCoalescer coalescer;
+
     /**
      * @param name test name
      */
@@ -151,6 +159,7 @@ public class PxtSessionDelegateImplTest extends MockObjectTestCase {
         mockHttpSession = mock(HttpSession.class);
         pxtSessionDelegate = new PxtSessionDelegateImplStub();
         pxtCookieManager = new PxtCookieManager();
+        coalescer = new SessionExpiryCoalescer(600);
 
         context().checking(new Expectations() { {
             allowing(mockRequest).getServerName();
@@ -307,6 +316,40 @@ public class PxtSessionDelegateImplTest extends MockObjectTestCase {
         assertEquals(1, pxtSessionDelegate.getSavePxtSessionCounter());
     }
 
+    private void setUpRefreshPxtSession(final long remaining) {
+        pxtSessionDelegate.stubLoadPxtSession(true);
+
+        context().checking(new Expectations() { {
+            allowing(mockRequest).getAttribute("session");
+            will(returnValue(getPxtSession()));
+            allowing(mockPxtSession).getId();
+            will(returnValue(PXT_SESSION_ID));
+            allowing(mockPxtSession).getExpires();
+            will(returnValue(TimeUtils.currentTimeSeconds() + remaining));
+            allowing(mockResponse).addCookie(with(any(Cookie.class)));
+            never(mockPxtSession).setExpires(with(any(Long.class)));
+        } });
+    }
+
+    public final void testRefreshPxtSessionSkipsFreshSession() {
+        setUpRefreshPxtSession(3000);
+
+        pxtSessionDelegate.refreshPxtSession(getRequest(), getResponse());
+
+        assertEquals(0, pxtSessionDelegate.getSavePxtSessionCounter());
+        assertEquals(0, coalescer.getPendingCount());
+    }
+
+    public final void testRefreshPxtSessionQueuesAgingSession() {
+        setUpRefreshPxtSession(300);
+
+        pxtSessionDelegate.refreshPxtSession(getRequest(), getResponse());
+        pxtSessionDelegate.refreshPxtSession(getRequest(), getResponse());
+
+        assertEquals(0, pxtSessionDelegate.getSavePxtSessionCounter());
+        assertEquals(1, coalescer.getPendingCount());
+    }
+
     private static class ZeroMaxAgeCookieMatcher extends TypeSafeMatcher<Cookie> {
 
         @Override
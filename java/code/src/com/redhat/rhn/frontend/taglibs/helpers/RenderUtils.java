@@ -14,6 +14,7 @@
  */
 package com.redhat.rhn.frontend.taglibs.helpers;
 
+import com.redhat.rhn.common.security.acl.Acl;
 import com.redhat.rhn.common.util.ServletUtils;
 import com.redhat.rhn.domain.user.User;
 import com.redhat.rhn.frontend.nav.AclGuard;
@@ -44,6 +45,8 @@ public enum RenderUtils {
      */
     INSTANCE;
 
+    private static final String ACL_MEMO_ATTRIBUTE = "navAclMemo";
+
     RenderUtils() { }
 
     /**
@@ -108,6 +111,9 @@ public enum RenderUtils {
                 aclContext.put(token, req.getParameter(token));
             }
         }
+        // the menus of a request with the same formvars evaluate their acls
+        // in the same context, so handler results are shared between them
+        aclContext.put(Acl.MEMO_KEY, getAclMemo(req, navTree.getFormvar()));
         AclGuard guard = new AclGuard(aclContext, navTree.getAclMixins());
         navTree.setGuard(guard);
 
@@ -132,6 +138,17 @@ public enum RenderUtils {
         return render(navTreeIndex, renderable, comp, req.getParameterMap());
     }
 
+    private Map<Object, Object> getAclMemo(HttpServletRequest req, String formvar) {
+        String name = ACL_MEMO_ATTRIBUTE + (formvar == null ? "" : formvar);
+        @SuppressWarnings("unchecked")
+        Map<Object, Object> memo = (Map<Object, Object>) req.getAttribute(name);
+        if (memo == null) {
+            memo = new HashMap<Object, Object>();
+            req.setAttribute(name, memo);
+        }
+        return memo;
+    }
+
     /**
      * Call the {@link RenderEngine} to render a given {@link Renderable}.
      *
@@ -0,0 +1,232 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.rhn.frontend.xmlrpc;
+
+import com.redhat.rhn.common.translation.Translator;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import redstone.xmlrpc.XmlRpcFault;
+
+/**
+ * The public methods of a handler class by name and number of parameters,
+ * and the method and parameter translations chosen for every combination
+ * of parameter types it was called with. BaseHandler.invoke used to scan
+ * all methods of the handler on every call.
+ *
+ * @version $Rev$
+ */
+public class HandlerDispatchTable {
+
+    private static final ConcurrentMap<Class, HandlerDispatchTable> TABLES =
+        new ConcurrentHashMap<Class, HandlerDispatchTable>();
+
+    private final Class handlerClass;
+    private final Map<String, List<Method>> methods = new HashMap<String, List<Method>>();
+    private final ConcurrentMap<Signature, Dispatch> dispatches =
+        new ConcurrentHashMap<Signature, Dispatch>();
+
+    /**
+     * Constructor
+     * @param handlerClassIn the handler class
+     */
+    HandlerDispatchTable(Class handlerClassIn) {
+        handlerClass = handlerClassIn;
+        for (Method method : handlerClass.getMethods()) {
+            String key = key(method.getName(), method.getParameterTypes().length);
+            List<Method> candidates = methods.get(key);
+            if (candidates == null) {
+                candidates = new ArrayList<Method>();
+                methods.put(key, candidates);
+            }
+            candidates.add(method);
+        }
+    }
+
+    /**
+     * Returns the dispatch table of a handler class, building it on first use.
+     * @param handlerClass the handler class
+     * @return the dispatch table of the class
+     */
+    public static HandlerDispatchTable forClass(Class handlerClass) {
+        HandlerDispatchTable table = TABLES.get(handlerClass);
+        if (table == null) {
+            table = new HandlerDispatchTable(handlerClass);
+            HandlerDispatchTable previous = TABLES.putIfAbsent(handlerClass, table);
+            if (previous != null) {
+                table = previous;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Finds the method to call for the given parameters. A method whose
+     * parameter types accept all parameters is preferred, otherwise the first
+     * method with the right number of parameters is called with the
+     * parameters translated to its types.
+     * @param beanifiedMethod name of the method
+     * @param params parameters of the call
+     * @return the method and the translations of its parameters
+     * @throws XmlRpcFault there is no method of that name and number of
+     * parameters
+     */
+    public Dispatch lookup(String beanifiedMethod, List params) throws XmlRpcFault {
+        Class[] types = new Class[params.size()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = params.get(i).getClass();
+        }
+        Signature signature = new Signature(beanifiedMethod, types);
+        Dispatch dispatch = dispatches.get(signature);
+        if (dispatch == null) {
+            dispatch = resolve(beanifiedMethod, types);
+            dispatches.putIfAbsent(signature, dispatch);
+        }
+        return dispatch;
+    }
+
+    /**
+     * @return number of method and parameter type combinations resolved
+     */
+    public int getDispatchCount() {
+        return dispatches.size();
+    }
+
+    private Dispatch resolve(String beanifiedMethod, Class[] types) throws XmlRpcFault {
+        List<Method> candidates = methods.get(key(beanifiedMethod, types.length));
+        if (candidates == null) {
+            //The caller didn't get the method name or number of parameters right
+            String message = "Could not find method: " + beanifiedMethod +
+            " in class: " + handlerClass.getName() + " with params: [";
+            for (Iterator<Class> iter = Arrays.asList(types).iterator(); iter.hasNext();) {
+                message += iter.next().getName();
+                if (iter.hasNext()) {
+                    message = message + ", ";
+                }
+            }
+            message = message + "]";
+            throw new XmlRpcFault(-1, message);
+        }
+
+        //Attempt to find a perfect match
+        for (Method candidate : candidates) {
+            if (accepts(candidate.getParameterTypes(), types)) {
+                return new Dispatch(candidate, null);
+            }
+        }
+
+        //If we were not able to find the exact method match, let's just use the first one
+        //Since it is not an exact match, we have to translate the params.
+        Method method = candidates.get(0);
+        Class[] wanted = method.getParameterTypes();
+        Method[] translators = new Method[wanted.length];
+        for (int i = 0; i < wanted.length; i++) {
+            if (!wanted[i].equals(types[i])) {
+                translators[i] = Translator.findTranslator(types[i], wanted[i]);
+            }
+        }
+        return new Dispatch(method, translators);
+    }
+
+    private static boolean accepts(Class[] wanted, Class[] types) {
+        for (int i = 0; i < wanted.length; i++) {
+            if (!wanted[i].isAssignableFrom(types[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String key(String name, int arity) {
+        return name + "/" + arity;
+    }
+
+    /**
+     * A handler method and the translations of the parameters passed to it
+     */
+    public static final class Dispatch {
+
+        private final Method method;
+        private final Class[] wanted;
+        private final Method[] translators;
+
+        private Dispatch(Method methodIn, Method[] translatorsIn) {
+            method = methodIn;
+            wanted = method.getParameterTypes();
+            translators = translatorsIn;
+        }
+
+        /**
+         * @return the handler method to call
+         */
+        public Method getMethod() {
+            return method;
+        }
+
+        /**
+         * Translates the parameters of a call to the types of the method
+         * @param params parameters of the call
+         * @return the arguments of the method
+         */
+        public Object[] getArguments(List params) {
+            Object[] arguments = params.toArray();
+            if (translators != null) {
+                for (int i = 0; i < arguments.length; i++) {
+                    if (translators[i] != null) {
+                        arguments[i] = Translator.convert(translators[i], arguments[i],
+                                wanted[i]);
+                    }
+                }
+            }
+            return arguments;
+        }
+    }
+
+    /**
+     * Method name and parameter types of a call
+     */
+    private static final class Signature {
+
+        private final String name;
+        private final Class[] types;
+        private final int hash;
+
+        Signature(String nameIn, Class[] typesIn) {
+            name = nameIn;
+            types = typesIn;
+            hash = 31 * name.hashCode() + Arrays.hashCode(types);
+        }
+
+        public boolean equals(Object other) {
+            if (!(other instanceof Signature)) {
+                return false;
+            }
+            Signature that = (Signature) other;
+            return name.equals(that.name) && Arrays.equals(types, that.types);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
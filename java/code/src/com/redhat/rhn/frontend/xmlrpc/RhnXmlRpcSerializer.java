@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.rhn.frontend.xmlrpc;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import redstone.xmlrpc.XmlRpcCustomSerializer;
+import redstone.xmlrpc.XmlRpcException;
+import redstone.xmlrpc.XmlRpcSerializer;
+
+/**
+ * XmlRpcSerializer finding the custom serializer of a value by its class
+ * instead of asking every registered serializer in turn. The serializer of
+ * the most specific class or interface the value is an instance of is used,
+ * so a catch-all serializer of Object never hides a more specific one. Of
+ * several serializers of the same class the last registered is used, as
+ * redstone does.
+ * Basic types and values that only the Object serializer supports are left
+ * to redstone.
+ *
+ * @version $Rev$
+ */
+public class RhnXmlRpcSerializer extends XmlRpcSerializer {
+
+    // marks classes left to redstone in the cache
+    private static final XmlRpcCustomSerializer NONE = new XmlRpcCustomSerializer() {
+        public Class getSupportedClass() {
+            return Void.class;
+        }
+
+        public void serialize(Object value, Writer writer, XmlRpcSerializer builtin) {
+            throw new UnsupportedOperationException();
+        }
+    };
+
+    private final ConcurrentMap<Class, XmlRpcCustomSerializer> registered =
+        new ConcurrentHashMap<Class, XmlRpcCustomSerializer>();
+    private final ConcurrentMap<Class, XmlRpcCustomSerializer> resolved =
+        new ConcurrentHashMap<Class, XmlRpcCustomSerializer>();
+
+    /**
+     * {@inheritDoc}
+     */
+    public void addCustomSerializer(XmlRpcCustomSerializer customSerializer) {
+        super.addCustomSerializer(customSerializer);
+        registered.put(customSerializer.getSupportedClass(), customSerializer);
+        resolved.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void serialize(Object value, Writer writer)
+        throws XmlRpcException, IOException {
+        XmlRpcCustomSerializer custom = value == null ? NONE : lookup(value.getClass());
+        if (custom == NONE || value instanceof Collection || value instanceof Map ||
+                value.getClass().isArray()) {
+            super.serialize(value, writer);
+            return;
+        }
+        writer.write("<value>");
+        custom.serialize(value, writer, this);
+        writer.write("</value>");
+    }
+
+    /**
+     * Returns the custom serializer of a class
+     * @param clazz class of the value to serialize
+     * @return the serializer of the most specific class or interface
+     * supported, null if there is none other than the one of Object
+     */
+    public XmlRpcCustomSerializer getCustomSerializer(Class clazz) {
+        XmlRpcCustomSerializer custom = lookup(clazz);
+        return custom == NONE ? null : custom;
+    }
+
+    private XmlRpcCustomSerializer lookup(Class clazz) {
+        XmlRpcCustomSerializer custom = resolved.get(clazz);
+        if (custom == null) {
+            custom = resolve(clazz);
+            resolved.putIfAbsent(clazz, custom);
+        }
+        return custom;
+    }
+
+    private XmlRpcCustomSerializer resolve(Class clazz) {
+        // the class and its interfaces first, then the superclass
+        for (Class current = clazz; current != null && current != Object.class;
+                current = current.getSuperclass()) {
+            XmlRpcCustomSerializer custom = registered.get(current);
+            if (custom != null) {
+                return custom;
+            }
+            List<Class> interfaces = new LinkedList<Class>();
+            addInterfaces(current, interfaces);
+            for (Class iface : interfaces) {
+                custom = registered.get(iface);
+                if (custom != null) {
+                    return custom;
+                }
+            }
+        }
+        return NONE;
+    }
+
+    private static void addInterfaces(Class clazz, List<Class> interfaces) {
+        for (Class iface : clazz.getInterfaces()) {
+            interfaces.add(iface);
+        }
+        for (Class iface : clazz.getInterfaces()) {
+            addInterfaces(iface, interfaces);
+        }
+    }
+}
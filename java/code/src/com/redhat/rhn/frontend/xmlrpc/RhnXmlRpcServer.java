@@ -30,6 +30,13 @@ public class RhnXmlRpcServer extends XmlRpcServer {
     private static ThreadLocal<String> proto = new ThreadLocal<String>();
     private static ThreadLocal<String> caller = new ThreadLocal<String>();
 
+    /**
+     * Constructs a server looking up custom serializers by class
+     */
+    public RhnXmlRpcServer() {
+        super(new RhnXmlRpcSerializer());
+    }
+
     /**
      * Adding a method to get the callerIp into the XmlRpc for logging.
      * For some dumb reason XmlRpcServer doesn't know about callerIp
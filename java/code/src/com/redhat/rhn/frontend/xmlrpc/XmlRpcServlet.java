@@ -19,7 +19,9 @@ import com.redhat.rhn.frontend.xmlrpc.serializer.SerializerFactory;
 
 import org.apache.log4j.Logger;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.Iterator;
 
 import javax.servlet.ServletException;
@@ -43,6 +45,8 @@ public class XmlRpcServlet extends HttpServlet {
 
     private static Logger log = Logger.getLogger(XmlRpcServlet.class);
 
+    private static final int RESPONSE_BUFFER_SIZE = 64 * 1024;
+
     private RhnXmlRpcServer server;
     private HandlerFactory handlers;
     private SerializerFactory serializers;
@@ -108,12 +112,15 @@ public class XmlRpcServlet extends HttpServlet {
         Iterator i = handlers.getKeys().iterator();
         while (i.hasNext()) {
             String namespace = (String)i.next();
+            BaseHandler handler = handlers.getHandler(namespace);
 
             if (log.isDebugEnabled()) {
                 log.debug("registerInvocationHandler: namespace [" + namespace +
-                          "] handler [" + handlers.getHandler(namespace) + "]");
+                          "] handler [" + handler + "]");
             }
-            srvr.addInvocationHandler(namespace, handlers.getHandler(namespace));
+            // build the method table now instead of on the first call
+            HandlerDispatchTable.forClass(handler.getClass());
+            srvr.addInvocationHandler(namespace, handler);
         }
     }
 
@@ -159,11 +166,14 @@ public class XmlRpcServlet extends HttpServlet {
                 log.debug("Passing control to XmlRpcServer.execute");
             }
 
+            // large responses are streamed, in chunks the size of the buffer
+            Writer output = new BufferedWriter(response.getWriter(), RESPONSE_BUFFER_SIZE);
             server.execute(request.getInputStream(),
-                           response.getWriter(),
+                           output,
                            request.getRemoteAddr(),
                            request.getLocalName(),
                            request.getProtocol());
+            output.flush();
 
             /*
              * jesusr - 2007.09.14
@@ -46,7 +46,7 @@ public class ChannelArchSerializer extends RhnXmlRpcCustomSerializer {
         throws XmlRpcException, IOException {
         ChannelArch arch = (ChannelArch) value;
 
-        SerializerHelper helper = new SerializerHelper(serializer);
+        SerializerHelper helper = new SerializerHelper(serializer, output);
         helper.add("name", arch.getName());
         helper.add("label", arch.getLabel());
         helper.writeTo(output);
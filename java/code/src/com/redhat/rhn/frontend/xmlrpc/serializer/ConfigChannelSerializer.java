@@ -55,7 +55,7 @@ public class ConfigChannelSerializer extends RhnXmlRpcCustomSerializer {
     protected void doSerialize(Object value, Writer output, XmlRpcSerializer serializer)
         throws XmlRpcException, IOException {
         ConfigChannel chan = (ConfigChannel) value;
-        SerializerHelper helper = new SerializerHelper(serializer);
+        SerializerHelper helper = new SerializerHelper(serializer, output);
         helper.add("id", chan.getId());
         helper.add("label", chan.getLabel());
         helper.add("name", chan.getName());
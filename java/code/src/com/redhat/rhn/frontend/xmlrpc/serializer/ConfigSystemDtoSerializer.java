@@ -49,7 +49,7 @@ public class ConfigSystemDtoSerializer extends RhnXmlRpcCustomSerializer {
     protected void doSerialize(Object value, Writer output, XmlRpcSerializer serializer)
         throws XmlRpcException, IOException {
         ConfigSystemDto dto = (ConfigSystemDto) value;
-        SerializerHelper helper = new SerializerHelper(serializer);
+        SerializerHelper helper = new SerializerHelper(serializer, output);
         helper.add("id", dto.getId());
         helper.add("name", dto.getName());
         helper.writeTo(output);
@@ -50,7 +50,7 @@ public class ContentSourceFilterSerializer extends RhnXmlRpcCustomSerializer {
      */
     protected void doSerialize(Object value, Writer output, XmlRpcSerializer serializer)
         throws XmlRpcException, IOException {
-        SerializerHelper helper = new SerializerHelper(serializer);
+        SerializerHelper helper = new SerializerHelper(serializer, output);
         ContentSourceFilter filter = (ContentSourceFilter) value;
 
         helper.add("sortOrder", filter.getSortOrder());
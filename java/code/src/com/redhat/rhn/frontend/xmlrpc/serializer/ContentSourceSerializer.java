@@ -58,7 +58,7 @@ public class ContentSourceSerializer extends RhnXmlRpcCustomSerializer {
      */
     protected void doSerialize(Object value, Writer output, XmlRpcSerializer serializer)
         throws XmlRpcException, IOException {
-        SerializerHelper helper = new SerializerHelper(serializer);
+        SerializerHelper helper = new SerializerHelper(serializer, output);
         ContentSource repo = (ContentSource) value;
 
         helper.add("id", repo.getId());
@@ -57,7 +57,7 @@ public class CpuSerializer extends RhnXmlRpcCustomSerializer {
      */
     protected void doSerialize(Object value, Writer output, XmlRpcSerializer serializer)
         throws XmlRpcException, IOException {
-        SerializerHelper helper = new SerializerHelper(serializer);
+        SerializerHelper helper = new SerializerHelper(serializer, output);
         CPU cpu = (CPU) value;
         helper.add("cache", cpu.getCache());
         helper.add("family", cpu.getFamily());
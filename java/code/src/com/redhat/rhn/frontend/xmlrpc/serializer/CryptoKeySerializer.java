@@ -55,7 +55,7 @@ public class CryptoKeySerializer extends RhnXmlRpcCustomSerializer {
 
         CryptoKey key = (CryptoKey) o;
 
-        SerializerHelper serializer = new SerializerHelper(xmlRpcSerializer);
+        SerializerHelper serializer = new SerializerHelper(xmlRpcSerializer, writer);
         serializer.add("description", key.getDescription());
         serializer.add("type", key.getCryptoKeyType().getLabel());
         serializer.add("content", key.getKeyString());
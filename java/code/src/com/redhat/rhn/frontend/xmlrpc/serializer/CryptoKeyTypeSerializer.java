@@ -45,7 +45,7 @@ public class CryptoKeyTypeSerializer extends RhnXmlRpcCustomSerializer {
         throws XmlRpcException, IOException {
         CryptoKeyType ckt = (CryptoKeyType)value;
 
-        SerializerHelper helper = new SerializerHelper(serializer);
+        SerializerHelper helper = new SerializerHelper(serializer, output);
 
         helper.add("id", ckt.getId());
         helper.add("label", ckt.getLabel());
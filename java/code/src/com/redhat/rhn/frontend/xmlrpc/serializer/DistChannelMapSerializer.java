@@ -53,7 +53,7 @@ public class DistChannelMapSerializer extends RhnXmlRpcCustomSerializer {
         throws XmlRpcException, IOException {
 
         DistChannelMap dstChannelMap = (DistChannelMap) value;
-        SerializerHelper helper = new SerializerHelper(serializer);
+        SerializerHelper helper = new SerializerHelper(serializer, output);
 
         helper.add("os", dstChannelMap.getOs());
         helper.add("release", dstChannelMap.getRelease());
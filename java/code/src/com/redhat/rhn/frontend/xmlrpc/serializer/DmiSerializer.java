@@ -55,7 +55,7 @@ public class DmiSerializer extends RhnXmlRpcCustomSerializer {
      */
     protected void doSerialize(Object value, Writer output, XmlRpcSerializer serializer)
         throws XmlRpcException, IOException {
-        SerializerHelper bean = new SerializerHelper(serializer);
+        SerializerHelper bean = new SerializerHelper(serializer, output);
         Dmi dmi = (Dmi) value;
 
         bean.add("vendor", StringUtils.defaultString(dmi.getVendor()));
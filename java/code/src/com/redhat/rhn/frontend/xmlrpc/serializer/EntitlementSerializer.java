@@ -50,7 +50,7 @@ public class EntitlementSerializer extends RhnXmlRpcCustomSerializer {
     protected void doSerialize(Object value, Writer output,
             XmlRpcSerializer serializer)
         throws XmlRpcException, IOException {
-        SerializerHelper helper = new SerializerHelper(serializer);
+        SerializerHelper helper = new SerializerHelper(serializer, output);
         Entitlement ent = (Entitlement) value;
         helper.add("label", ent.getLabel());
         helper.add("name", ent.getHumanReadableLabel());
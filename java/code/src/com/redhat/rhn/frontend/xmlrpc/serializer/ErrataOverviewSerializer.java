@@ -56,7 +56,7 @@ public class ErrataOverviewSerializer extends RhnXmlRpcCustomSerializer {
         throws XmlRpcException, IOException {
 
         ErrataOverview errata = (ErrataOverview) value;
-        SerializerHelper helper = new SerializerHelper(serializer);
+        SerializerHelper helper = new SerializerHelper(serializer, output);
 
         helper.add("id", errata.getId());
         helper.add("issue_date", errata.getIssueDate());
@@ -53,7 +53,7 @@ public class FileListSerializer extends RhnXmlRpcCustomSerializer {
         throws XmlRpcException, IOException {
         FileList fl = (FileList)value;
 
-        SerializerHelper helper = new SerializerHelper(serializer);
+        SerializerHelper helper = new SerializerHelper(serializer, output);
 
         helper.add("name", fl.getLabel());
 
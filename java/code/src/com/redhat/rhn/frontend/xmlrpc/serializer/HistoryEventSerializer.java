@@ -54,7 +54,7 @@ public class HistoryEventSerializer extends RhnXmlRpcCustomSerializer {
     protected void doSerialize(Object value, Writer output, XmlRpcSerializer serializer)
         throws XmlRpcException, IOException {
 
-        SerializerHelper helper = new SerializerHelper(serializer);
+        SerializerHelper helper = new SerializerHelper(serializer, output);
         HistoryEvent event = (HistoryEvent) value;
 
        helper.add("summary", event.getSummary());
@@ -48,7 +48,7 @@ public class IssMasterOrgSerializer extends RhnXmlRpcCustomSerializer {
      */
     protected void doSerialize(Object obj, Writer writer, XmlRpcSerializer serializer)
             throws XmlRpcException, IOException {
-        SerializerHelper helper = new SerializerHelper(serializer);
+        SerializerHelper helper = new SerializerHelper(serializer, writer);
 
         IssMasterOrg anOrg = (IssMasterOrg) obj;
         helper.add("masterOrgId", anOrg.getMasterOrgId());
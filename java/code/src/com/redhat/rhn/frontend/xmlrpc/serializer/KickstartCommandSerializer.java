@@ -51,7 +51,7 @@ public class KickstartCommandSerializer extends RhnXmlRpcCustomSerializer {
         throws XmlRpcException, IOException {
         KickstartCommand kc = (KickstartCommand)value;
 
-        SerializerHelper helper = new SerializerHelper(serializer);
+        SerializerHelper helper = new SerializerHelper(serializer, output);
 
         helper.add("id", kc.getId());
         helper.add("arguments", kc.getArguments());
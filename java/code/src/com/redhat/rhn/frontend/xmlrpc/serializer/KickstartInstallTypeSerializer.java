@@ -54,7 +54,7 @@ public class KickstartInstallTypeSerializer extends RhnXmlRpcCustomSerializer {
         throws XmlRpcException, IOException {
 
         KickstartInstallType type = (KickstartInstallType) value;
-        SerializerHelper helper = new SerializerHelper(serializer);
+        SerializerHelper helper = new SerializerHelper(serializer, output);
 
         helper.add("id", type.getId());
         helper.add("label", type.getLabel());
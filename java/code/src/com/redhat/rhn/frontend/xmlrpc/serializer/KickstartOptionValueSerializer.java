@@ -54,7 +54,7 @@ public class KickstartOptionValueSerializer extends RhnXmlRpcCustomSerializer {
 
         KickstartOptionValue value = (KickstartOptionValue) o;
 
-        SerializerHelper serializer = new SerializerHelper(xmlRpcSerializer);
+        SerializerHelper serializer = new SerializerHelper(xmlRpcSerializer, writer);
         serializer.add("name", value.getName());
         serializer.add("value", value.getArg());
 
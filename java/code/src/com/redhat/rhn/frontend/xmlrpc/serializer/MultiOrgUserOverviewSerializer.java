@@ -54,7 +54,7 @@ public class MultiOrgUserOverviewSerializer extends RhnXmlRpcCustomSerializer {
     protected void doSerialize(Object value, Writer output,
             XmlRpcSerializer serializer)
         throws XmlRpcException, IOException {
-        SerializerHelper se = new SerializerHelper(serializer);
+        SerializerHelper se = new SerializerHelper(serializer, output);
         MultiOrgUserOverview dto = (MultiOrgUserOverview) value;
 
         se.add("login", dto.getLogin());
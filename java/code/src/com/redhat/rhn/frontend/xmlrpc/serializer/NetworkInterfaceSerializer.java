@@ -67,7 +67,7 @@ public class NetworkInterfaceSerializer extends RhnXmlRpcCustomSerializer {
     protected void doSerialize(Object value, Writer output, XmlRpcSerializer serializer)
         throws XmlRpcException, IOException {
         NetworkInterface device = (NetworkInterface)value;
-        SerializerHelper devMap = new SerializerHelper(serializer);
+        SerializerHelper devMap = new SerializerHelper(serializer, output);
         ArrayList ipv6List = new ArrayList();
 
         for (ServerNetAddress6 addr : device.getIPv6Addresses()) {
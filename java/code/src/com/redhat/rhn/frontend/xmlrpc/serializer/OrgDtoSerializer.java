@@ -64,7 +64,7 @@ public class OrgDtoSerializer extends RhnXmlRpcCustomSerializer {
     protected void doSerialize(Object value, Writer output,
             XmlRpcSerializer serializer)
         throws XmlRpcException, IOException {
-        SerializerHelper helper = new SerializerHelper(serializer);
+        SerializerHelper helper = new SerializerHelper(serializer, output);
 
         OrgDto dto = (OrgDto) value;
         helper.add("id", dto.getId());
@@ -47,7 +47,7 @@ public class OrgTrustOverviewSerializer extends RhnXmlRpcCustomSerializer {
     /** {@inheritDoc} */
     protected void doSerialize(Object value, Writer output, XmlRpcSerializer serializer)
         throws XmlRpcException, IOException {
-        SerializerHelper helper = new SerializerHelper(serializer);
+        SerializerHelper helper = new SerializerHelper(serializer, output);
         OrgTrustOverview tr = (OrgTrustOverview) value;
         helper.add("orgId", tr.getId());
         helper.add("orgName", tr.getName());
@@ -53,7 +53,7 @@ public class OrgUserExtGroupSerializer extends RhnXmlRpcCustomSerializer {
      */
     protected void doSerialize(Object value, Writer output, XmlRpcSerializer serializer)
         throws XmlRpcException, IOException {
-        SerializerHelper helper = new SerializerHelper(serializer);
+        SerializerHelper helper = new SerializerHelper(serializer, output);
         OrgUserExtGroup g = (OrgUserExtGroup) value;
 
         helper.add("name", g.getLabel());
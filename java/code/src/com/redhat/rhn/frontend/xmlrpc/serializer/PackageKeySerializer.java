@@ -47,7 +47,7 @@ public class PackageKeySerializer extends RhnXmlRpcCustomSerializer {
     protected void doSerialize(Object value, Writer output, XmlRpcSerializer serializer)
         throws XmlRpcException, IOException {
         PackageKey key = (PackageKey)value;
-        SerializerHelper helper = new SerializerHelper(serializer);
+        SerializerHelper helper = new SerializerHelper(serializer, output);
         helper.add("key", key.getKey());
         helper.add("type", key.getType().getLabel());
         helper.writeTo(output);
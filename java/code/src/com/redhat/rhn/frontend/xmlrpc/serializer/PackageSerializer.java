@@ -62,7 +62,7 @@ public class PackageSerializer extends RhnXmlRpcCustomSerializer {
         throws XmlRpcException, IOException {
         Package pack = (Package) value;
 
-        SerializerHelper helper = new SerializerHelper(serializer);
+        SerializerHelper helper = new SerializerHelper(serializer, output);
         helper.add("name", pack.getPackageName().getName());
         helper.add("version", pack.getPackageEvr().getVersion());
         helper.add("release", pack.getPackageEvr().getRelease());
@@ -50,7 +50,7 @@ public class ProfileOverviewDtoSerializer extends RhnXmlRpcCustomSerializer {
     protected void doSerialize(Object value, Writer output, XmlRpcSerializer serializer)
         throws XmlRpcException, IOException {
         ProfileOverviewDto dto = (ProfileOverviewDto) value;
-        SerializerHelper helper = new SerializerHelper(serializer);
+        SerializerHelper helper = new SerializerHelper(serializer, output);
         helper.add("id", dto.getId().longValue());
         helper.add("name", dto.getName());
         helper.add("channel", dto.getChannelName());
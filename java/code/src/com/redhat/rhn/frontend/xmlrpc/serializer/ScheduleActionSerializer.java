@@ -54,7 +54,7 @@ public class ScheduleActionSerializer extends RhnXmlRpcCustomSerializer {
     protected void doSerialize(Object value, Writer output, XmlRpcSerializer serializer)
         throws XmlRpcException, IOException {
         ScheduledAction action = (ScheduledAction)value;
-        SerializerHelper helper = new SerializerHelper(serializer);
+        SerializerHelper helper = new SerializerHelper(serializer, output);
 
         helper.add("id", action.getId());
         helper.add("name", action.getActionName());
@@ -51,7 +51,7 @@ public class ScheduleSystemSerializer extends RhnXmlRpcCustomSerializer {
     protected void doSerialize(Object value, Writer output, XmlRpcSerializer serializer)
         throws XmlRpcException, IOException {
         ActionedSystem action = (ActionedSystem)value;
-        SerializerHelper helper = new SerializerHelper(serializer);
+        SerializerHelper helper = new SerializerHelper(serializer, output);
 
         helper.add("server_id", action.getId());
         helper.add("server_name", action.getServerName());
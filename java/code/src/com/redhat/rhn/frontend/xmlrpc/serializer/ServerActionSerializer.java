@@ -77,7 +77,7 @@ public class ServerActionSerializer extends RhnXmlRpcCustomSerializer {
         throws XmlRpcException, IOException {
         ServerAction sAct = (ServerAction) value;
         Action act = sAct.getParentAction();
-        SerializerHelper helper = new SerializerHelper(serializer);
+        SerializerHelper helper = new SerializerHelper(serializer, output);
 
         helper.add("failed_count", act.getFailedCount());
         helper.add("modified", act.getModified().toString());
@@ -55,7 +55,7 @@ public class ServerPathSerializer extends RhnXmlRpcCustomSerializer {
 
         ServerPath serverPath = (ServerPath)value;
 
-        SerializerHelper helper = new SerializerHelper(serializer);
+        SerializerHelper helper = new SerializerHelper(serializer, output);
         helper.add("position", serverPath.getPosition());
         helper.add("id", serverPath.getId());
         helper.add("hostname", serverPath.getHostname());
@@ -67,7 +67,7 @@ public class TokenSerializer extends RhnXmlRpcCustomSerializer {
    /** {@inheritDoc} */
    protected void doSerialize(Object value, Writer output, XmlRpcSerializer serializer)
        throws XmlRpcException, IOException {
-       SerializerHelper helper = new SerializerHelper(serializer);
+       SerializerHelper helper = new SerializerHelper(serializer, output);
        populateTokenInfo((Token)value, helper);
        helper.writeTo(output);
    }
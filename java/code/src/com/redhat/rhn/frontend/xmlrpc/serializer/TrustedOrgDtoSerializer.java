@@ -44,7 +44,7 @@ public class TrustedOrgDtoSerializer extends RhnXmlRpcCustomSerializer {
     /** {@inheritDoc} */
     protected void doSerialize(Object value, Writer output, XmlRpcSerializer serializer)
         throws XmlRpcException, IOException {
-        SerializerHelper helper = new SerializerHelper(serializer);
+        SerializerHelper helper = new SerializerHelper(serializer, output);
         TrustedOrgDto tr = (TrustedOrgDto) value;
         helper.add("org_id", tr.getId());
         helper.add("org_name", tr.getName());
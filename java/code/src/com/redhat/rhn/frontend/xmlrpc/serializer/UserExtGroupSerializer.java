@@ -52,7 +52,7 @@ public class UserExtGroupSerializer extends RhnXmlRpcCustomSerializer {
      */
     protected void doSerialize(Object value, Writer output, XmlRpcSerializer serializer)
         throws XmlRpcException, IOException {
-        SerializerHelper helper = new SerializerHelper(serializer);
+        SerializerHelper helper = new SerializerHelper(serializer, output);
         UserExtGroup g = (UserExtGroup) value;
 
         helper.add("name", g.getLabel());
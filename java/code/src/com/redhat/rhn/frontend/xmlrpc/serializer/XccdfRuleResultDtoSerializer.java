@@ -50,7 +50,7 @@ public class XccdfRuleResultDtoSerializer extends RhnXmlRpcCustomSerializer {
     protected void doSerialize(Object value, Writer output,
             XmlRpcSerializer serializer) throws XmlRpcException, IOException {
         XccdfRuleResultDto dto = (XccdfRuleResultDto) value;
-        SerializerHelper helper = new SerializerHelper(serializer);
+        SerializerHelper helper = new SerializerHelper(serializer, output);
         helper.add("idref", dto.getDocumentIdref());
         helper.add("result", dto.getLabel());
         helper.add("idents", dto.getIdentsString());
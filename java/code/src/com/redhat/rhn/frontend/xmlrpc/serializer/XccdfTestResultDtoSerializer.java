@@ -51,7 +51,7 @@ public class XccdfTestResultDtoSerializer extends RhnXmlRpcCustomSerializer {
     protected void doSerialize(Object value, Writer output,
             XmlRpcSerializer serializer) throws XmlRpcException, IOException {
         XccdfTestResultDto dto = (XccdfTestResultDto) value;
-        SerializerHelper helper = new SerializerHelper(serializer);
+        SerializerHelper helper = new SerializerHelper(serializer, output);
         addToHelper(helper, "xid", dto.getXid());
         addToHelper(helper, "profile", dto.getProfile());
         addToHelper(helper, "path", dto.getPath());
@@ -23,11 +23,17 @@ import redstone.xmlrpc.XmlRpcSerializer;
 
 /**
  * SimpleSerializer
+ *
+ * Builds an XMLRPC struct member by member. A helper constructed with the
+ * output writer streams the members to it as they are added, instead of
+ * buffering the struct until writeTo().
  * @version $Rev$
  */
 public class SerializerHelper {
-    private Writer output = new StringWriter();
+    private Writer output;
     private XmlRpcSerializer serializer;
+    private boolean streaming;
+    private boolean started;
 
     /**
      * Constructs a SerializerHelper
@@ -36,6 +42,20 @@ public class SerializerHelper {
      */
     public SerializerHelper(XmlRpcSerializer basicSerializer) {
         serializer = basicSerializer;
+        output = new StringWriter();
+    }
+
+    /**
+     * Constructs a SerializerHelper writing the struct straight to out.
+     * writeTo() has to be called with the same writer to end the struct.
+     * @param basicSerializer serializer to convert basic objects to
+     * XMLRPC format
+     * @param out the writer the struct is written to
+     */
+    public SerializerHelper(XmlRpcSerializer basicSerializer, Writer out) {
+        serializer = basicSerializer;
+        output = out;
+        streaming = true;
     }
 
     /**
@@ -54,10 +74,19 @@ public class SerializerHelper {
      * @throws IOException problem writing to given Writer
      */
     public void writeTo(Writer out) throws IOException {
-        out.write("<struct>");
-        out.write(output.toString());
+        if (streaming) {
+            if (out != output) {
+                throw new IllegalStateException("Struct is streamed to another writer");
+            }
+            start();
+        }
+        else {
+            out.write("<struct>");
+            out.write(output.toString());
+        }
         out.write("</struct>");
         out.write("\n");
+        started = false;
     }
 
     /**
@@ -65,8 +94,25 @@ public class SerializerHelper {
      * start over with a new snippet
      */
     public void clear() {
-        output = new StringWriter();
+        if (streaming) {
+            if (started) {
+                throw new IllegalStateException("Struct was already streamed");
+            }
+        }
+        else {
+            output = new StringWriter();
+        }
     }
+
+    private void start() throws IOException {
+        if (!started) {
+            if (streaming) {
+                output.write("<struct>");
+            }
+            started = true;
+        }
+    }
+
     /**
      * Generates an XMLRPC <member>.
      * @param name Member name.
@@ -83,6 +129,7 @@ public class SerializerHelper {
         }
 
         try {
+            start();
             output.write("<member><name>");
             output.write(name);
             output.write("</name>");
@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.rhn.frontend.xmlrpc.test;
+
+import com.redhat.rhn.domain.user.User;
+import com.redhat.rhn.domain.user.UserFactory;
+import com.redhat.rhn.frontend.xmlrpc.HandlerDispatchTable;
+import com.redhat.rhn.frontend.xmlrpc.system.SystemHandler;
+
+import org.apache.log4j.Logger;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+import redstone.xmlrpc.XmlRpcFault;
+
+/**
+ * Method lookup of HandlerDispatchTable, and its cost compared to scanning
+ * the methods of the handler on every call.
+ */
+public class HandlerDispatchTableTest extends TestCase {
+
+    private static Logger log = Logger.getLogger(HandlerDispatchTableTest.class);
+
+    public void testPerfectMatch() throws Exception {
+        HandlerDispatchTable table = HandlerDispatchTable.forClass(UnitTestHandler.class);
+        List params = params(new Integer(1), new Integer(2));
+        HandlerDispatchTable.Dispatch dispatch = table.lookup("add", params);
+        assertEquals("add", dispatch.getMethod().getName());
+        assertEquals(3, dispatch.getMethod().invoke(new UnitTestHandler(),
+                dispatch.getArguments(params)));
+        assertSame(dispatch, table.lookup("add", params(new Integer(3), new Integer(4))));
+    }
+
+    public void testTranslatedParameters() throws Exception {
+        HandlerDispatchTable table = HandlerDispatchTable.forClass(UnitTestHandler.class);
+        List params = params(new Long(1), new Long(2));
+        HandlerDispatchTable.Dispatch dispatch = table.lookup("add", params);
+        Object[] arguments = dispatch.getArguments(params);
+        assertEquals(new Integer(1), arguments[0]);
+        assertEquals(new Integer(2), arguments[1]);
+        assertEquals(3, dispatch.getMethod().invoke(new UnitTestHandler(), arguments));
+        // another parameter signature is resolved separately
+        assertNotSame(dispatch, table.lookup("add", params(new Integer(1),
+                new Integer(2))));
+    }
+
+    public void testSubclassParameter() throws Exception {
+        HandlerDispatchTable table = HandlerDispatchTable.forClass(UnitTestHandler.class);
+        User user = UserFactory.createUser();
+        HandlerDispatchTable.Dispatch dispatch = table.lookup("getUserLogin",
+                params(user));
+        assertEquals(User.class, dispatch.getMethod().getParameterTypes()[0]);
+    }
+
+    public void testMissingMethod() throws Exception {
+        HandlerDispatchTable table = HandlerDispatchTable.forClass(UnitTestHandler.class);
+        int resolved = table.getDispatchCount();
+        try {
+            table.lookup("add", params(new Integer(1)));
+            fail("method with one parameter found");
+        }
+        catch (XmlRpcFault e) {
+            assertEquals("Could not find method: add in class: " +
+                    UnitTestHandler.class.getName() + " with params: [java.lang.Integer]",
+                    e.getMessage());
+        }
+        // failed lookups are not cached
+        assertEquals(resolved, table.getDispatchCount());
+    }
+
+    public void testDispatchOverhead() throws Exception {
+        HandlerDispatchTable table = HandlerDispatchTable.forClass(SystemHandler.class);
+        List params = params(UserFactory.createUser(), new Integer(1000010000));
+        int calls = 20000;
+
+        // warm up both before measuring
+        for (int i = 0; i < calls; i++) {
+            scan(SystemHandler.class, "listBaseChannels", params);
+            table.lookup("listBaseChannels", params).getArguments(params);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            scan(SystemHandler.class, "listBaseChannels", params);
+        }
+        long scanTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            table.lookup("listBaseChannels", params).getArguments(params);
+        }
+        long tableTime = System.nanoTime() - start;
+
+        log.info("method scan:    " + scanTime / calls + " ns per call");
+        log.info("dispatch table: " + tableTime / calls + " ns per call");
+        assertEquals(scan(SystemHandler.class, "listBaseChannels", params),
+                table.lookup("listBaseChannels", params).getMethod());
+        assertTrue(tableTime < scanTime);
+    }
+
+    /**
+     * The lookup BaseHandler.invoke did on every call
+     */
+    private static Method scan(Class handlerClass, String name, List params) {
+        List<Method> matched = new ArrayList<Method>();
+        for (Method method : handlerClass.getMethods()) {
+            if (method.getName().equals(name) &&
+                    method.getParameterTypes().length == params.size()) {
+                matched.add(method);
+            }
+        }
+        for (Method method : matched) {
+            Class[] types = method.getParameterTypes();
+            for (int i = 0; i < types.length; i++) {
+                if (!types[i].isAssignableFrom(params.get(i).getClass())) {
+                    break;
+                }
+                if (i == types.length - 1) {
+                    return method;
+                }
+            }
+        }
+        return matched.get(0);
+    }
+
+    private static List params(Object... values) {
+        return new ArrayList<Object>(Arrays.asList(values));
+    }
+}
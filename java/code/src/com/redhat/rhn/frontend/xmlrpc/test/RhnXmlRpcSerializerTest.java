@@ -0,0 +1,226 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.rhn.frontend.xmlrpc.test;
+
+import com.redhat.rhn.domain.kickstart.KickstartCommand;
+import com.redhat.rhn.domain.kickstart.KickstartCommandName;
+import com.redhat.rhn.frontend.dto.PackageDto;
+import com.redhat.rhn.frontend.dto.SystemOverview;
+import com.redhat.rhn.frontend.dto.VirtualSystemOverview;
+import com.redhat.rhn.frontend.xmlrpc.RhnXmlRpcSerializer;
+import com.redhat.rhn.frontend.xmlrpc.serializer.KickstartAdvancedOptionsSerializer;
+import com.redhat.rhn.frontend.xmlrpc.serializer.ObjectSerializer;
+import com.redhat.rhn.frontend.xmlrpc.serializer.PackageDtoSerializer;
+import com.redhat.rhn.frontend.xmlrpc.serializer.SerializerFactory;
+import com.redhat.rhn.frontend.xmlrpc.serializer.SystemOverviewSerializer;
+import com.redhat.rhn.frontend.xmlrpc.serializer.VirtualSystemOverviewSerializer;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import redstone.xmlrpc.XmlRpcCustomSerializer;
+import redstone.xmlrpc.XmlRpcException;
+import redstone.xmlrpc.XmlRpcSerializer;
+
+/**
+ * Serializer lookup of RhnXmlRpcSerializer, and the cost of a large response
+ * compared to buffering every struct.
+ */
+public class RhnXmlRpcSerializerTest extends TestCase {
+
+    private static Logger log = Logger.getLogger(RhnXmlRpcSerializerTest.class);
+
+    public void testMostSpecificSerializer() throws Exception {
+        RhnXmlRpcSerializer serializer = new RhnXmlRpcSerializer();
+        serializer.addCustomSerializer(new VirtualSystemOverviewSerializer());
+        serializer.addCustomSerializer(new ObjectSerializer());
+        serializer.addCustomSerializer(new SystemOverviewSerializer());
+
+        assertEquals(VirtualSystemOverviewSerializer.class,
+                serializer.getCustomSerializer(VirtualSystemOverview.class).getClass());
+        assertEquals(SystemOverviewSerializer.class,
+                serializer.getCustomSerializer(SystemOverview.class).getClass());
+        // left to redstone
+        assertNull(serializer.getCustomSerializer(String.class));
+        assertNull(serializer.getCustomSerializer(PackageDto.class));
+    }
+
+    public void testLastSerializerOfClass() throws Exception {
+        // registered as XmlRpcServlet does
+        RhnXmlRpcSerializer serializer = new RhnXmlRpcSerializer();
+        for (Object custom : new SerializerFactory().getSerializers()) {
+            serializer.addCustomSerializer((XmlRpcCustomSerializer) custom);
+        }
+        // KickstartCommandSerializer supports KickstartCommand too, redstone
+        // asks the serializer registered last first
+        assertEquals(KickstartAdvancedOptionsSerializer.class,
+                serializer.getCustomSerializer(KickstartCommand.class).getClass());
+
+        KickstartCommandName name = new KickstartCommandName();
+        name.setName("selinux");
+        KickstartCommand command = new KickstartCommand();
+        command.setId(new Long(42));
+        command.setCommandName(name);
+        command.setArguments("--enforcing");
+        List<Object> values = new ArrayList<Object>();
+        values.add(command);
+        String xml = serialize(serializer, values);
+        assertTrue(xml.contains("<name>name</name>"));
+        assertTrue(xml.contains("selinux"));
+        assertTrue(xml.contains("<name>arguments</name>"));
+        assertFalse(xml.contains("<name>id</name>"));
+    }
+
+    public void testBasicTypes() throws Exception {
+        RhnXmlRpcSerializer serializer = new RhnXmlRpcSerializer();
+        serializer.addCustomSerializer(new ObjectSerializer());
+        List<Object> values = new ArrayList<Object>();
+        values.add("a < b");
+        values.add(new Integer(12));
+        values.add(Boolean.TRUE);
+        assertEquals(serialize(new XmlRpcSerializer(), values),
+                serialize(serializer, values));
+    }
+
+    public void testStreamedStruct() throws Exception {
+        List<PackageDto> packages = packages(10);
+        XmlRpcSerializer buffered = new XmlRpcSerializer();
+        buffered.addCustomSerializer(new BufferedPackageDtoSerializer());
+        RhnXmlRpcSerializer streaming = new RhnXmlRpcSerializer();
+        streaming.addCustomSerializer(new PackageDtoSerializer());
+        assertEquals(serialize(buffered, packages), serialize(streaming, packages));
+    }
+
+    public void testLargeResponse() throws Exception {
+        List<PackageDto> packages = packages(50000);
+        XmlRpcSerializer buffered = new XmlRpcSerializer();
+        buffered.addCustomSerializer(new BufferedPackageDtoSerializer());
+        RhnXmlRpcSerializer streaming = new RhnXmlRpcSerializer();
+        streaming.addCustomSerializer(new PackageDtoSerializer());
+
+        // warm up both before measuring
+        write(buffered, packages);
+        write(streaming, packages);
+
+        long bufferedAllocated = allocated();
+        long start = System.nanoTime();
+        long bufferedSize = write(buffered, packages);
+        long bufferedTime = System.nanoTime() - start;
+        bufferedAllocated = allocated() - bufferedAllocated;
+
+        long streamingAllocated = allocated();
+        start = System.nanoTime();
+        long streamingSize = write(streaming, packages);
+        long streamingTime = System.nanoTime() - start;
+        streamingAllocated = allocated() - streamingAllocated;
+
+        log.info("buffered structs: " + bufferedTime / 1000000 + " ms, " +
+                bufferedAllocated / 1024 + " KB allocated");
+        log.info("streamed structs: " + streamingTime / 1000000 + " ms, " +
+                streamingAllocated / 1024 + " KB allocated");
+        assertEquals(bufferedSize, streamingSize);
+        if (streamingAllocated > 0) {
+            assertTrue(streamingAllocated < bufferedAllocated);
+        }
+    }
+
+    private static long write(XmlRpcSerializer serializer, List<?> values)
+        throws Exception {
+        CountingOutputStream out = new CountingOutputStream();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"),
+                64 * 1024);
+        serializer.serialize(values, writer);
+        writer.flush();
+        return out.count;
+    }
+
+    private static String serialize(XmlRpcSerializer serializer, List<?> values)
+        throws Exception {
+        StringWriter writer = new StringWriter();
+        serializer.serialize(values, writer);
+        return writer.toString();
+    }
+
+    /**
+     * Bytes allocated by this thread so far, 0 if the JVM does not tell
+     */
+    private static long allocated() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private static List<PackageDto> packages(int count) {
+        List<PackageDto> packages = new ArrayList<PackageDto>();
+        for (int i = 0; i < count; i++) {
+            PackageDto pkg = new PackageDto();
+            pkg.setId(new Long(i));
+            pkg.setName("package-" + i);
+            pkg.setVersion("1." + i % 100);
+            pkg.setRelease("1.el7");
+            pkg.setEpoch(" ");
+            pkg.setArchLabel("x86_64");
+            pkg.setChecksum(Integer.toHexString(i * 7919));
+            pkg.setChecksumType("sha256");
+            pkg.setLastModified("2018-01-01 00:00:00");
+            packages.add(pkg);
+        }
+        return packages;
+    }
+
+    /**
+     * PackageDtoSerializer collecting the struct before writing it, as all
+     * serializers used to
+     */
+    private static class BufferedPackageDtoSerializer extends PackageDtoSerializer {
+
+        protected void doSerialize(Object value, Writer output,
+                XmlRpcSerializer serializer) throws XmlRpcException, IOException {
+            StringWriter struct = new StringWriter();
+            super.doSerialize(value, struct, serializer);
+            output.write(struct.toString());
+        }
+    }
+
+    /**
+     * Discards the response, counting its bytes
+     */
+    private static class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        public void write(int b) {
+            count++;
+        }
+
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -1040,6 +1040,7 @@ public class ActionManager extends BaseManager {
         // this is SOOOO WRONG, we need to get rid of DataSource
         WriteMode m = ModeFactory.getWriteMode("Action_queries",
                 "insert_package_delta_element");
+        List<Map<String, Object>> elements = new ArrayList<Map<String, Object>>();
         for (Iterator itr = pkgs.iterator(); itr.hasNext();) {
             PackageMetadata pm = (PackageMetadata) itr.next();
             Map<String, Object> params = new HashMap<String, Object>();
@@ -1059,7 +1060,7 @@ public class ActionManager extends BaseManager {
                 params.put("e", epoch.equals("") ? null : epoch);
                 params.put("a", pm.getSystem().getArch() != null ?
                         pm.getSystem().getArch() : "");
-                m.executeUpdate(params);
+                elements.add(params);
             }
             else if (pm.getComparisonAsInt() == PackageMetadata.KEY_OTHER_ONLY) {
 
@@ -1077,7 +1078,7 @@ public class ActionManager extends BaseManager {
                 params.put("e", epoch.equals("") ? null : epoch);
                 params.put("a", pm.getOther().getArch() != null ?
                         pm.getOther().getArch() : "");
-                m.executeUpdate(params);
+                elements.add(params);
 
             }
             else if (pm.getComparisonAsInt() == PackageMetadata.KEY_THIS_NEWER ||
@@ -1101,7 +1102,9 @@ public class ActionManager extends BaseManager {
                     params.put("e", epoch.equals("") ? null : epoch);
                     params.put("a", pm.getSystem().getArch() != null ?
                             pm.getOther().getArch() : "");
-                    m.executeUpdate(params);
+                    elements.add(params);
+                    params = new HashMap<String, Object>();
+                    params.put("delta_id", pd.getId());
                 }
 
                 params.put("operation", ActionFactory.TXN_OPERATION_INSERT);
@@ -1112,9 +1115,10 @@ public class ActionManager extends BaseManager {
                 params.put("e", epoch.equals("") ? null : epoch);
                 params.put("a", pm.getOther().getArch() != null ?
                         pm.getOther().getArch() : "");
-                m.executeUpdate(params);
+                elements.add(params);
             }
         }
+        m.executeBatchUpdates(elements);
 
         // this is SOOOO WRONG, we need to get rid of DataSource
         m = ModeFactory.getWriteMode("Action_queries",
@@ -1612,6 +1616,8 @@ public class ActionManager extends BaseManager {
             // hibernate. It seems terribly inefficient to lookup a
             // packagename and packageevr object to insert the ids into the
             // correct table if I already have the ids.
+            List<Map<String, Object>> noArch = new ArrayList<Map<String, Object>>();
+            List<Map<String, Object>> withArch = new ArrayList<Map<String, Object>>();
             for (Iterator itr = packages.iterator(); itr.hasNext();) {
                 Map rse = (Map) itr.next();
                 Map<String, Object> params = new HashMap<String, Object>();
@@ -1628,17 +1634,18 @@ public class ActionManager extends BaseManager {
                 params.put("name_id", nameId);
                 params.put("evr_id", evrId);
 
-                WriteMode m = null;
                 if (archId == null) {
-                    m = ModeFactory.getWriteMode("Action_queries",
-                            "schedule_action_no_arch");
+                    noArch.add(params);
                 }
                 else {
                     params.put("arch_id", archId);
-                    m = ModeFactory.getWriteMode("Action_queries", "schedule_action");
+                    withArch.add(params);
                 }
-                m.executeUpdate(params);
             }
+            ModeFactory.getWriteMode("Action_queries", "schedule_action_no_arch")
+                    .executeBatchUpdates(noArch);
+            ModeFactory.getWriteMode("Action_queries", "schedule_action")
+                    .executeBatchUpdates(withArch);
         }
     }
 
@@ -0,0 +1,199 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.rhn.manager.session;
+
+import com.redhat.rhn.common.conf.ConfigDefaults;
+import com.redhat.rhn.common.util.TimeUtils;
+import com.redhat.rhn.domain.session.WebSession;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the session keys verified by SessionManager, so API calls made
+ * with the same key skip the key hash and the session lookup. Only the
+ * session id, user id and expiry time are kept; the User is still loaded
+ * by every call, so changes to its roles apply right away.
+ *
+ * An entry is dropped when the session is removed or expires, when it was
+ * verified longer than java.api_session_cache_ttl seconds ago, and when
+ * java.api_session_cache_size entries are reached and it is the least
+ * recently used. Sessions removed by another process are noticed by
+ * SessionManager.extendSessionLifetime(String), which only updates the
+ * session row while it still belongs to the cached user.
+ *
+ * @version $Rev$
+ */
+public class SessionCache {
+
+    private static SessionCache instance;
+
+    private final Map<String, Entry> entries;
+    private final long ttl;
+
+    /**
+     * Constructor
+     * @param maxSize number of sessions kept
+     * @param ttlIn milliseconds after which a session is verified again
+     */
+    public SessionCache(final int maxSize, long ttlIn) {
+        ttl = ttlIn;
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> e) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return the cache of this process, null if it is disabled
+     */
+    public static synchronized SessionCache getInstance() {
+        int size = ConfigDefaults.get().getApiSessionCacheSize();
+        if (size <= 0) {
+            return null;
+        }
+        if (instance == null) {
+            instance = new SessionCache(size,
+                    ConfigDefaults.get().getApiSessionCacheTtl() * 1000L);
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the cached session of a key
+     * @param key the session key
+     * @return the session, null if it is not cached, expired or has to be
+     * verified again
+     */
+    public synchronized Entry get(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && (System.currentTimeMillis() - entry.verified > ttl ||
+                entry.expires < TimeUtils.currentTimeSeconds())) {
+            entries.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Caches a session whose key was verified
+     * @param key the session key
+     * @param session the session, not cached unless it has a user
+     * @return the cached session, null if it was not cached
+     */
+    public synchronized Entry put(String key, WebSession session) {
+        if (session.getWebUserId() == null) {
+            entries.remove(key);
+            return null;
+        }
+        Entry entry = new Entry(session.getId(), session.getWebUserId(),
+                session.getExpires());
+        entries.put(key, entry);
+        return entry;
+    }
+
+    /**
+     * Drops a session key
+     * @param key the session key
+     */
+    public synchronized void remove(String key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Drops a session
+     * @param sessionId id of the session
+     */
+    public synchronized void removeSession(Long sessionId) {
+        for (Iterator<Entry> i = entries.values().iterator(); i.hasNext();) {
+            if (i.next().sessionId.equals(sessionId)) {
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops all sessions of a user
+     * @param userId id of the user
+     */
+    public synchronized void removeUser(Long userId) {
+        for (Iterator<Entry> i = entries.values().iterator(); i.hasNext();) {
+            if (i.next().userId.equals(userId)) {
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * @return number of sessions cached
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Drops all sessions
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * A verified session
+     */
+    public static class Entry {
+
+        private final Long sessionId;
+        private final Long userId;
+        private final long verified = System.currentTimeMillis();
+        private volatile long expires;
+
+        Entry(Long sessionIdIn, Long userIdIn, long expiresIn) {
+            sessionId = sessionIdIn;
+            userId = userIdIn;
+            expires = expiresIn;
+        }
+
+        /**
+         * @return id of the session
+         */
+        public Long getSessionId() {
+            return sessionId;
+        }
+
+        /**
+         * @return id of the user of the session
+         */
+        public Long getUserId() {
+            return userId;
+        }
+
+        /**
+         * @return expiry time of the session in seconds
+         */
+        public long getExpires() {
+            return expires;
+        }
+
+        /**
+         * @param expiresIn new expiry time of the session in seconds
+         */
+        public void setExpires(long expiresIn) {
+            expires = expiresIn;
+        }
+    }
+}
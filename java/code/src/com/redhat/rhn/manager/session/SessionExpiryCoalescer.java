@@ -0,0 +1,228 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.rhn.manager.session;
+
+import com.redhat.rhn.common.conf.ConfigDefaults;
+import com.redhat.rhn.common.db.datasource.ModeFactory;
+import com.redhat.rhn.common.db.datasource.WriteMode;
+import com.redhat.rhn.common.hibernate.HibernateFactory;
+import com.redhat.rhn.common.util.TimeUtils;
+import com.redhat.rhn.domain.session.WebSession;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the expiry refreshes of web sessions instead of writing the
+ * session row on every request. A refresh is only queued once the remaining
+ * lifetime of the session dropped below java.session_refresh_threshold
+ * percent of its lifetime; queued refreshes of the same session are merged
+ * and written in one batch every java.session_refresh_flush_interval
+ * seconds.
+ *
+ * @version $Rev$
+ */
+public class SessionExpiryCoalescer {
+
+    private static Logger log = Logger.getLogger(SessionExpiryCoalescer.class);
+
+    private static SessionExpiryCoalescer instance;
+
+    private final long threshold;
+    private Map<Long, Long> pending = new HashMap<Long, Long>();
+    private Flusher flusher;
+
+    /**
+     * Constructor
+     * @param thresholdIn remaining lifetime in seconds below which the
+     * expiry of a session is written again
+     */
+    public SessionExpiryCoalescer(long thresholdIn) {
+        threshold = thresholdIn;
+    }
+
+    /**
+     * @return the coalescer of this process, null if session expiries are
+     * written by the requests themselves
+     */
+    public static synchronized SessionExpiryCoalescer getInstance() {
+        if (ConfigDefaults.get().getSessionRefreshFlushInterval() <= 0) {
+            return null;
+        }
+        if (instance == null) {
+            instance = new SessionExpiryCoalescer(SessionManager.lifetimeValue() *
+                    ConfigDefaults.get().getSessionRefreshThreshold() / 100);
+        }
+        return instance;
+    }
+
+    /**
+     * Starts the thread writing the queued refreshes, if enabled
+     */
+    public static synchronized void startFlushing() {
+        SessionExpiryCoalescer coalescer = getInstance();
+        if (coalescer == null || coalescer.flusher != null) {
+            return;
+        }
+        coalescer.flusher = new Flusher(coalescer,
+                ConfigDefaults.get().getSessionRefreshFlushInterval() * 1000L);
+        Thread thread = new Thread(coalescer.flusher);
+        thread.setName("RHN Session Expiry Flusher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the flushing thread and writes the refreshes still queued
+     */
+    public static synchronized void stopFlushing() {
+        if (instance == null || instance.flusher == null) {
+            return;
+        }
+        instance.flusher.stop();
+        instance.flusher = null;
+        if (instance.getPendingCount() > 0) {
+            Flusher.flushAndCommit(instance);
+        }
+    }
+
+    /**
+     * Refreshes the expiry of a session, unless enough of its lifetime is
+     * left. The session itself is not changed, its row is updated when the
+     * queued refreshes are flushed.
+     * @param session the session used by the request
+     * @param expires the new expiry time in seconds
+     * @return true if the refresh was queued or is not needed, false if the
+     * session was not saved yet and has to be written by the caller
+     */
+    public boolean refresh(WebSession session, long expires) {
+        if (session.getId() == null) {
+            return false;
+        }
+        if (session.getExpires() - TimeUtils.currentTimeSeconds() >= threshold) {
+            return true;
+        }
+        synchronized (this) {
+            Long queued = pending.get(session.getId());
+            if (queued == null || queued < expires) {
+                pending.put(session.getId(), expires);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of sessions with a queued refresh
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Writes the queued refreshes in one batch within the current
+     * transaction. Expiries are never moved backwards, and rows of sessions
+     * removed in the meantime are skipped.
+     * @return the number of sessions refreshed
+     */
+    public int flush() {
+        Map<Long, Long> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return 0;
+            }
+            batch = pending;
+            pending = new HashMap<Long, Long>();
+        }
+        List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>(batch.size());
+        for (Map.Entry<Long, Long> e : batch.entrySet()) {
+            Map<String, Object> row = new HashMap<String, Object>();
+            row.put("id", e.getKey());
+            row.put("expires", e.getValue());
+            rows.add(row);
+        }
+        WriteMode m = ModeFactory.getWriteMode("General_queries",
+                "update_session_expires");
+        m.executeBatchUpdates(rows);
+        if (log.isDebugEnabled()) {
+            log.debug("Refreshed the expiry of " + rows.size() + " sessions");
+        }
+        return rows.size();
+    }
+
+    /**
+     * Flushes the queued refreshes periodically, each batch in its own
+     * transaction
+     */
+    private static class Flusher implements Runnable {
+
+        private final SessionExpiryCoalescer coalescer;
+        private final long interval;
+        private volatile boolean running = true;
+
+        Flusher(SessionExpiryCoalescer coalescerIn, long intervalIn) {
+            coalescer = coalescerIn;
+            interval = intervalIn;
+        }
+
+        void stop() {
+            running = false;
+        }
+
+        public void run() {
+            while (running) {
+                try {
+                    Thread.sleep(interval);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (running && coalescer.getPendingCount() > 0) {
+                    flushAndCommit(coalescer);
+                }
+            }
+        }
+
+        static void flushAndCommit(SessionExpiryCoalescer coalescer) {
+            boolean committed = false;
+            try {
+                coalescer.flush();
+                HibernateFactory.commitTransaction();
+                committed = true;
+            }
+            catch (RuntimeException e) {
+                // the sessions are queued again by their next request
+                log.error("Unable to refresh session expiries", e);
+            }
+            finally {
+                try {
+                    if (!committed) {
+                        HibernateFactory.rollbackTransaction();
+                    }
+                }
+                catch (RuntimeException e) {
+                    log.warn("Additional error during rollback", e);
+                }
+                finally {
+                    HibernateFactory.closeSession();
+                }
+            }
+        }
+    }
+}
@@ -23,6 +23,7 @@ import com.redhat.rhn.domain.session.InvalidSessionIdException;
 import com.redhat.rhn.domain.session.WebSession;
 import com.redhat.rhn.domain.session.WebSessionFactory;
 import com.redhat.rhn.domain.user.User;
+import com.redhat.rhn.domain.user.UserFactory;
 import com.redhat.rhn.manager.BaseManager;
 
 import org.apache.commons.lang.StringUtils;
@@ -94,6 +95,10 @@ public class SessionManager extends BaseManager {
      * @return number of sessions removed (typically 1 or 0).
      */
     public static int removeSession(WebSession s) {
+        SessionCache cache = SessionCache.getInstance();
+        if (cache != null && s.getId() != null) {
+            cache.removeSession(s.getId());
+        }
         return WebSessionFactory.remove(s);
     }
 
@@ -106,11 +111,30 @@ public class SessionManager extends BaseManager {
         return SessionManager.lookupByKey(sessionKey);
     }
 
+    /**
+     * Returns the user of the session identified by sessionKey. Keys verified
+     * before are taken from the SessionCache, without loading the session.
+     * @param sessionKey The key for the session
+     * @return the user of the session, null if nobody is logged in
+     */
+    public static User loadSessionUser(String sessionKey) {
+        SessionCache cache = SessionCache.getInstance();
+        SessionCache.Entry entry = cache == null ? null : cache.get(sessionKey);
+        if (entry != null) {
+            return UserFactory.lookupById(entry.getUserId());
+        }
+        return lookupByKey(sessionKey).getUser();
+    }
+
     /**
      * Removes the session specified by sessionKey from the database.
      * @param sessionKey Key for the session you want to remove.
      */
     public static void killSession(String sessionKey) {
+        SessionCache cache = SessionCache.getInstance();
+        if (cache != null) {
+            cache.remove(sessionKey);
+        }
         WebSession session = loadSession(sessionKey);
         removeSession(session);
     }
@@ -391,6 +415,10 @@ public class SessionManager extends BaseManager {
         }
 
         //If we made it this far, the key was ok and the sesion valid.
+        SessionCache cache = SessionCache.getInstance();
+        if (cache != null) {
+            cache.put(key, session);
+        }
         return session;
     }
 
@@ -401,6 +429,10 @@ public class SessionManager extends BaseManager {
      * @param user the user whose sessions are to be purged.
      */
     public static void purgeUserSessions(User user) {
+        SessionCache cache = SessionCache.getInstance();
+        if (cache != null) {
+            cache.removeUser(user.getId());
+        }
         WebSessionFactory.purgeUserSessions(user);
     }
 
@@ -412,5 +444,31 @@ public class SessionManager extends BaseManager {
                 SessionManager.lifetimeValue());
         WebSessionFactory.save(session);
     }
+
+    /**
+     * Extends the lifetime of the session identified by sessionKey. A cached
+     * session is updated without loading it, as long as the session row
+     * still belongs to the cached user; otherwise it is looked up again, so
+     * sessions removed by another process are refused.
+     * @param sessionKey key of the session which lifetime should be extended
+     */
+    public static void extendSessionLifetime(String sessionKey) {
+        long expires = TimeUtils.currentTimeSeconds() + SessionManager.lifetimeValue();
+        SessionCache cache = SessionCache.getInstance();
+        SessionCache.Entry entry = cache == null ? null : cache.get(sessionKey);
+        if (entry != null) {
+            if (WebSessionFactory.updateExpires(entry.getSessionId(), entry.getUserId(),
+                    expires) > 0) {
+                entry.setExpires(expires);
+                return;
+            }
+            cache.remove(sessionKey);
+        }
+        WebSession session = loadSession(sessionKey);
+        extendSessionLifetime(session);
+        if (cache != null) {
+            cache.put(sessionKey, session);
+        }
+    }
 }
 
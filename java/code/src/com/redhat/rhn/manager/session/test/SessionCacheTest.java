@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.rhn.manager.session.test;
+
+import com.redhat.rhn.common.util.TimeUtils;
+import com.redhat.rhn.domain.session.WebSession;
+import com.redhat.rhn.domain.user.User;
+import com.redhat.rhn.manager.session.SessionCache;
+
+import junit.framework.TestCase;
+
+/**
+ * Expiry, eviction and invalidation of SessionCache entries.
+ */
+public class SessionCacheTest extends TestCase {
+
+    public void testGet() {
+        SessionCache cache = new SessionCache(10, 60000);
+        SessionCache.Entry entry = cache.put("1xkey", session(1L, 100L, 3600));
+        assertSame(entry, cache.get("1xkey"));
+        assertEquals(new Long(1), entry.getSessionId());
+        assertEquals(new Long(100), entry.getUserId());
+        assertNull(cache.get("2xkey"));
+
+        // sessions without a user are not cached
+        assertNull(cache.put("3xkey", session(3L, null, 3600)));
+        assertNull(cache.get("3xkey"));
+    }
+
+    public void testExpiry() throws Exception {
+        SessionCache cache = new SessionCache(10, 60000);
+        cache.put("1xkey", session(1L, 100L, -10));
+        assertNull(cache.get("1xkey"));
+
+        SessionCache.Entry entry = cache.put("2xkey", session(2L, 100L, 3600));
+        entry.setExpires(TimeUtils.currentTimeSeconds() - 1);
+        assertNull(cache.get("2xkey"));
+        assertEquals(0, cache.size());
+    }
+
+    public void testTimeToLive() throws Exception {
+        SessionCache cache = new SessionCache(10, 50);
+        cache.put("1xkey", session(1L, 100L, 3600));
+        assertNotNull(cache.get("1xkey"));
+        Thread.sleep(100);
+        assertNull(cache.get("1xkey"));
+    }
+
+    public void testEviction() {
+        SessionCache cache = new SessionCache(2, 60000);
+        cache.put("1xkey", session(1L, 100L, 3600));
+        cache.put("2xkey", session(2L, 100L, 3600));
+        cache.get("1xkey");
+        cache.put("3xkey", session(3L, 100L, 3600));
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("1xkey"));
+        assertNull(cache.get("2xkey"));
+    }
+
+    public void testInvalidation() {
+        SessionCache cache = new SessionCache(10, 60000);
+        cache.put("1xkey", session(1L, 100L, 3600));
+        cache.put("2xkey", session(2L, 100L, 3600));
+        cache.put("3xkey", session(3L, 200L, 3600));
+        cache.put("4xkey", session(4L, 200L, 3600));
+
+        cache.remove("1xkey");
+        assertNull(cache.get("1xkey"));
+        cache.removeSession(3L);
+        assertNull(cache.get("3xkey"));
+        cache.removeUser(100L);
+        assertNull(cache.get("2xkey"));
+        assertNotNull(cache.get("4xkey"));
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    private static WebSession session(final Long id, final Long userId,
+            final long lifetime) {
+        final long expires = TimeUtils.currentTimeSeconds() + lifetime;
+        return new WebSession() {
+            public Long getId() {
+                return id;
+            }
+            public Long getWebUserId() {
+                return userId;
+            }
+            public long getExpires() {
+                return expires;
+            }
+            public void setWebUserId(Long idIn) {
+            }
+            public User getUser() {
+                return null;
+            }
+            public void setExpires(long expIn) {
+            }
+            public boolean isExpired() {
+                return false;
+            }
+            public String getValue() {
+                return " ";
+            }
+            public String getKey() {
+                return id + "xkey";
+            }
+        };
+    }
+}
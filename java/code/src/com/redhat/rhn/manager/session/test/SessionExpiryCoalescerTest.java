@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.rhn.manager.session.test;
+
+import com.redhat.rhn.common.util.TimeUtils;
+import com.redhat.rhn.domain.session.WebSession;
+import com.redhat.rhn.domain.session.WebSessionFactory;
+import com.redhat.rhn.domain.user.User;
+import com.redhat.rhn.manager.session.SessionExpiryCoalescer;
+import com.redhat.rhn.manager.session.SessionManager;
+import com.redhat.rhn.testing.RhnBaseTestCase;
+import com.redhat.rhn.testing.UserTestUtils;
+
+/**
+ * SessionExpiryCoalescerTest
+ * @version $Rev$
+ */
+public class SessionExpiryCoalescerTest extends RhnBaseTestCase {
+
+    public void testRefresh() throws Exception {
+        User u = UserTestUtils.findNewUser("testUser",
+                "testOrg" + this.getClass().getSimpleName());
+        WebSession fresh = SessionManager.makeSession(u.getId(), 3600L);
+        WebSession aging = SessionManager.makeSession(u.getId(), 60L);
+        long expires = TimeUtils.currentTimeSeconds() + 3600L;
+        SessionExpiryCoalescer coalescer = new SessionExpiryCoalescer(600L);
+
+        assertTrue(coalescer.refresh(fresh, expires));
+        assertEquals(0, coalescer.getPendingCount());
+        assertTrue(coalescer.refresh(aging, expires - 10));
+        assertTrue(coalescer.refresh(aging, expires));
+        assertEquals(1, coalescer.getPendingCount());
+
+        // sessions not saved yet are left to the caller
+        assertFalse(coalescer.refresh(WebSessionFactory.createSession(), expires));
+
+        Long id = aging.getId();
+        flushAndEvict(aging);
+        assertEquals(1, coalescer.flush());
+        assertEquals(0, coalescer.getPendingCount());
+        assertEquals(0, coalescer.flush());
+        assertEquals(expires, WebSessionFactory.lookupById(id).getExpires());
+    }
+
+    public void testFlushNeverShortensExpiry() throws Exception {
+        User u = UserTestUtils.findNewUser("testUser",
+                "testOrg" + this.getClass().getSimpleName());
+        WebSession s = SessionManager.makeSession(u.getId(), 60L);
+        long expires = s.getExpires();
+        SessionExpiryCoalescer coalescer = new SessionExpiryCoalescer(600L);
+
+        assertTrue(coalescer.refresh(s, expires - 30));
+        Long id = s.getId();
+        flushAndEvict(s);
+        coalescer.flush();
+        assertEquals(expires, WebSessionFactory.lookupById(id).getExpires());
+    }
+}
@@ -23,6 +23,7 @@ import com.redhat.rhn.domain.session.InvalidSessionIdException;
 import com.redhat.rhn.domain.session.WebSession;
 import com.redhat.rhn.domain.session.WebSessionFactory;
 import com.redhat.rhn.domain.user.User;
+import com.redhat.rhn.manager.session.SessionCache;
 import com.redhat.rhn.manager.session.SessionManager;
 import com.redhat.rhn.testing.RhnBaseTestCase;
 import com.redhat.rhn.testing.UserTestUtils;
@@ -220,4 +221,48 @@ public class SessionManagerTest extends RhnBaseTestCase {
         }
 
     }
+
+    public void testCachedSession() throws Exception {
+        User u = UserTestUtils.findNewUser("testUser",
+                "testOrg" + this.getClass().getSimpleName());
+        WebSession s = SessionManager.makeSession(u.getId(), 3600L);
+        String key = s.getKey();
+        flushAndEvict(s);
+
+        assertEquals(u, SessionManager.loadSessionUser(key));
+        SessionCache.Entry entry = SessionCache.getInstance().get(key);
+        assertNotNull(entry);
+        assertEquals(s.getId(), entry.getSessionId());
+        assertEquals(u.getId(), entry.getUserId());
+
+        // the cached session is extended without loading it
+        SessionManager.extendSessionLifetime(key);
+        assertTrue(entry.getExpires() >= TimeUtils.currentTimeSeconds() +
+                SessionManager.lifetimeValue() - 1);
+        assertEquals(u, SessionManager.loadSessionUser(key));
+
+        // another server removes the session
+        WebSessionFactory.remove(WebSessionFactory.lookupById(s.getId()));
+        flushAndEvict(u);
+        try {
+            SessionManager.extendSessionLifetime(key);
+            fail("removed session was extended");
+        }
+        catch (LookupException e) {
+            // expected
+        }
+        assertNull(SessionCache.getInstance().get(key));
+    }
+
+    public void testCachedSessionPurged() throws Exception {
+        User u = UserTestUtils.findNewUser("testUser",
+                "testOrg" + this.getClass().getSimpleName());
+        WebSession s = SessionManager.makeSession(u.getId(), 3600L);
+        String key = s.getKey();
+        assertEquals(u, SessionManager.loadSessionUser(key));
+        assertNotNull(SessionCache.getInstance().get(key));
+
+        SessionManager.purgeUserSessions(u);
+        assertNull(SessionCache.getInstance().get(key));
+    }
 }
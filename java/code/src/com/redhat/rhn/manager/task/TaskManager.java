@@ -16,6 +16,7 @@ package com.redhat.rhn.manager.task;
 
 import com.redhat.rhn.common.db.datasource.DataResult;
 import com.redhat.rhn.common.db.datasource.ModeFactory;
+import com.redhat.rhn.common.db.datasource.RowHandler;
 import com.redhat.rhn.common.db.datasource.SelectMode;
 import com.redhat.rhn.domain.channel.Channel;
 import com.redhat.rhn.frontend.dto.PackageCapabilityDto;
@@ -23,9 +24,14 @@ import com.redhat.rhn.frontend.dto.PackageChangelogDto;
 import com.redhat.rhn.frontend.dto.PackageDto;
 import com.redhat.rhn.taskomatic.task.TaskConstants;
 
+import java.sql.Timestamp;
 import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  *
@@ -52,6 +58,71 @@ public class TaskManager {
         return m.execute(params);
     }
 
+    /**
+     * Hands the elaborated packages of a channel to the handler one by one,
+     * without loading the whole channel into memory.
+     * @param channel channel info
+     * @param handler called for every package
+     * @return number of packages in the channel
+     */
+    public static int streamChannelPackageDtos(Channel channel,
+            RowHandler<PackageDto> handler) {
+        SelectMode m = ModeFactory.getMode(TaskConstants.MODE_NAME,
+                TaskConstants.TASK_QUERY_REPOMD_GENERATOR_CHANNEL_PACKAGES);
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("channel_id", channel.getId());
+        return m.stream(params, handler);
+    }
+
+    /**
+     * Get the packages of a channel without any details, in the order
+     * streamChannelPackageDtos hands them out
+     * @param channel channel info
+     * @return packages with only the id set
+     */
+    public static DataResult<PackageDto> getChannelPackageIds(Channel channel) {
+        SelectMode m = ModeFactory.getMode(TaskConstants.MODE_NAME,
+                TaskConstants.TASK_QUERY_REPOMD_GENERATOR_CHANNEL_PACKAGE_IDS);
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("channel_id", channel.getId());
+        return m.execute(params);
+    }
+
+    /**
+     * Get the packages of a channel modified since the given time, or
+     * whose repodata was dropped, e.g. because their checksum changed
+     * @param channel channel info
+     * @param since time the packages were last rendered
+     * @return ids of the packages
+     */
+    public static Set<Long> getChannelModifiedPackageIds(Channel channel, Date since) {
+        SelectMode m = ModeFactory.getMode(TaskConstants.MODE_NAME,
+                TaskConstants.TASK_QUERY_REPOMD_GENERATOR_CHANNEL_MODIFIED_PACKAGE_IDS);
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("channel_id", channel.getId());
+        params.put("since", new Timestamp(since.getTime()));
+        DataResult<PackageDto> packages = m.execute(params);
+        Set<Long> ids = new HashSet<Long>();
+        for (PackageDto pkgDto : packages) {
+            ids.add(pkgDto.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Fills in the details of packages returned by getChannelPackageIds
+     * @param channel channel info
+     * @param packages packages to elaborate, replaced by the elaborated ones
+     */
+    public static void elaborateChannelPackageDtos(Channel channel,
+            List<PackageDto> packages) {
+        SelectMode m = ModeFactory.getMode(TaskConstants.MODE_NAME,
+                TaskConstants.TASK_QUERY_REPOMD_GENERATOR_CHANNEL_PACKAGES);
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("channel_id", channel.getId());
+        m.elaborate(packages, params);
+    }
+
     /**
      * Get capabilities of a certain type for a package
      * @param packageId the package's id
@@ -17,6 +17,7 @@ package com.redhat.rhn.taskomatic.task;
 import com.redhat.rhn.common.conf.Config;
 import com.redhat.rhn.common.conf.ConfigDefaults;
 import com.redhat.rhn.common.db.datasource.ModeFactory;
+import com.redhat.rhn.common.db.datasource.RowHandler;
 import com.redhat.rhn.common.db.datasource.SelectMode;
 import com.redhat.rhn.common.db.datasource.WriteMode;
 import com.redhat.rhn.common.hibernate.HibernateFactory;
@@ -131,7 +132,7 @@ public class DailySummary extends RhnJavaJob {
      * mailing.
      * @param orgId Org Id to be processed.
      */
-    public void queueOrgEmails(Long orgId) {
+    public void queueOrgEmails(final Long orgId) {
         SelectMode m = ModeFactory.getMode(TaskConstants.MODE_NAME,
                 TaskConstants.TASK_QUERY_USERS_WANTING_REPORTS);
         Map<String, Object> params = new HashMap<String, Object>();
@@ -139,43 +140,48 @@ public class DailySummary extends RhnJavaJob {
 
         StopWatch watch = new StopWatch();
         watch.start();
-        List users = m.execute(params);
-        for (Iterator itr = users.iterator(); itr.hasNext();) {
-            ReportingUser ru = (ReportingUser) itr.next();
-            // run_user
-            List awol = getAwolServers(ru.idAsLong());
-            // send email
-            List actions = getActionInfo(ru.idAsLong());
-            if ((awol == null || awol.size() == 0) && (actions == null ||
-                    actions.size() == 0)) {
-                log.debug("Skipping ORG " + orgId + " because daily summary info has " +
-                        "changed");
-                continue;
+        // large orgs have a lot of users, don't load them all at once
+        int users = m.stream(params, new RowHandler<ReportingUser>() {
+            public void handleRow(ReportingUser ru) {
+                queueUserEmail(orgId, ru);
             }
+        });
+        watch.stop();
+        if (log.isDebugEnabled()) {
+            log.debug("queued emails of org of " + users +
+                " users in " + watch.getTime() + "ms");
+        }
+    }
 
-            String awolMsg = renderAwolServersMessage(awol);
-            String actionMsg = renderActionsMessage(actions);
+    private void queueUserEmail(Long orgId, ReportingUser ru) {
+        // run_user
+        List awol = getAwolServers(ru.idAsLong());
+        // send email
+        List actions = getActionInfo(ru.idAsLong());
+        if ((awol == null || awol.size() == 0) && (actions == null ||
+                actions.size() == 0)) {
+            log.debug("Skipping ORG " + orgId + " because daily summary info has " +
+                    "changed");
+            return;
+        }
 
-            String emailMsg = prepareEmail(
-                    ru.getLogin(), ru.getAddress(), awolMsg, actionMsg);
+        String awolMsg = renderAwolServersMessage(awol);
+        String actionMsg = renderActionsMessage(actions);
 
-            LocalizationService ls = LocalizationService.getInstance();
-            mail.setSubject(ls.getMessage(
-                    "dailysummary.email.subject", ls.formatShortDate(new Date())));
-            mail.setRecipient(ru.getAddress());
+        String emailMsg = prepareEmail(
+                ru.getLogin(), ru.getAddress(), awolMsg, actionMsg);
 
-            if (log.isDebugEnabled()) {
-                log.debug("Sending email to [" + ru.getAddress() + "]");
-            }
+        LocalizationService ls = LocalizationService.getInstance();
+        mail.setSubject(ls.getMessage(
+                "dailysummary.email.subject", ls.formatShortDate(new Date())));
+        mail.setRecipient(ru.getAddress());
 
-            mail.setBody(emailMsg);
-            TaskHelper.sendMail(mail, log);
-        }
-        watch.stop();
         if (log.isDebugEnabled()) {
-            log.debug("queued emails of org of " + users.size() +
-                " users in " + watch.getTime() + "ms");
+            log.debug("Sending email to [" + ru.getAddress() + "]");
         }
+
+        mail.setBody(emailMsg);
+        TaskHelper.sendMail(mail, log);
     }
 
     /**
@@ -17,6 +17,7 @@ package com.redhat.rhn.taskomatic.task;
 import com.redhat.rhn.common.conf.Config;
 import com.redhat.rhn.common.conf.ConfigDefaults;
 import com.redhat.rhn.common.db.datasource.ModeFactory;
+import com.redhat.rhn.common.db.datasource.RowHandler;
 import com.redhat.rhn.common.db.datasource.SelectMode;
 import com.redhat.rhn.common.db.datasource.WriteMode;
 import com.redhat.rhn.common.hibernate.HibernateFactory;
@@ -122,57 +123,42 @@ public class ErrataMailer extends RhnJavaJob {
     private void sendEmails(Long errataId, Long orgId, Long channelId) {
         Errata errata = (Errata) HibernateFactory.getSession().load(PublishedErrata.class,
                 new Long(errataId.longValue()));
-        List orgServers = getOrgRelevantServers(errataId, orgId, channelId);
+        UserMailer mailer = new UserMailer(errata, orgId);
+        processOrgRelevantServers(errataId, orgId, channelId, mailer);
+        mailer.flush();
 
-        if (orgServers == null || orgServers.size() == 0) {
+        if (mailer.getUserCount() == 0) {
             log.debug("No relevant servers found for erratum " + errata.getId() +
                     " in channel " + channelId + " for org " + orgId +
                     " ... skipping.");
             return;
         }
 
-        Map<Long, List> userMap = createUserEmailMap(orgServers);
-
-        log.info("Found " + userMap.keySet().size() + " user(s) to notify about erratum " +
+        log.info("Notified " + mailer.getUserCount() + " user(s) about erratum " +
                 errata.getId() + " in channel " + channelId + " for org " + orgId + ".");
-
-        for (Long userId : userMap.keySet()) {
-            Map userInfo = getUserInfo(userId);
-            String email = (String) userInfo.get("email");
-            String login = (String) userInfo.get("login");
-            List servers = userMap.get(userId);
-            log.info("Notification for user " + login + "(" + userId + ") about " +
-                    servers.size()  + " relevant server(s).");
-            String emailBody = formatEmail(login, email, errata, servers);
-            Mail mail = new SmtpMail();
-            mail.setRecipient(email);
-            mail.setHeader("X-RHN-Info",
-                    "Autogenerated mail for " + login);
-            mail.setHeader("Precedence", "first-class");
-            mail.setHeader("Errors-To", "rhn-bounce" +
-                    login + "-" + orgId.toString() + "@rhn.redhat.com");
-            mail.setBody(emailBody);
-            StringBuilder subject = new StringBuilder();
-            subject.append(Config.get().getString("web.product_name") + " Errata Alert: ");
-            subject.append(errata.getAdvisory()).append(" - ");
-            subject.append(errata.getSynopsis());
-            mail.setSubject(subject.toString());
-            TaskHelper.sendMail(mail, log);
-        }
     }
 
-    private Map createUserEmailMap(List orgServersIn) {
-        Map<Long, List> map = new HashMap<Long, List>();
-        for (Iterator i = orgServersIn.iterator(); i.hasNext();) {
-            Map row = (Map) i.next();
-            Long userId = (Long) row.get("user_id");
-            if (!map.containsKey(userId)) {
-                map.put(userId, new ArrayList<Map>());
-            }
-            map.get(userId).add(row);
-            i.remove();
-        }
-        return map;
+    private void sendEmail(Errata errata, Long orgId, Long userId, List servers) {
+        Map userInfo = getUserInfo(userId);
+        String email = (String) userInfo.get("email");
+        String login = (String) userInfo.get("login");
+        log.info("Notification for user " + login + "(" + userId + ") about " +
+                servers.size()  + " relevant server(s).");
+        String emailBody = formatEmail(login, email, errata, servers);
+        Mail mail = new SmtpMail();
+        mail.setRecipient(email);
+        mail.setHeader("X-RHN-Info",
+                "Autogenerated mail for " + login);
+        mail.setHeader("Precedence", "first-class");
+        mail.setHeader("Errors-To", "rhn-bounce" +
+                login + "-" + orgId.toString() + "@rhn.redhat.com");
+        mail.setBody(emailBody);
+        StringBuilder subject = new StringBuilder();
+        subject.append(Config.get().getString("web.product_name") + " Errata Alert: ");
+        subject.append(errata.getAdvisory()).append(" - ");
+        subject.append(errata.getSynopsis());
+        mail.setSubject(subject.toString());
+        TaskHelper.sendMail(mail, log);
     }
 
     private Map getUserInfo(Long userId) {
@@ -183,14 +169,23 @@ public class ErrataMailer extends RhnJavaJob {
         return (Map) mode.execute(params).get(0);
     }
 
-    protected List getOrgRelevantServers(Long errataId, Long orgId, Long channelId) {
+    /**
+     * Hands the servers of the org the erratum is relevant for to the
+     * handler, ordered by the user to notify
+     * @param errataId erratum
+     * @param orgId org
+     * @param channelId channel of the erratum
+     * @param handler called with the server and user of every row
+     */
+    protected void processOrgRelevantServers(Long errataId, Long orgId, Long channelId,
+            RowHandler<Map<String, Object>> handler) {
         SelectMode mode = ModeFactory.getMode(TaskConstants.MODE_NAME,
                 TaskConstants.TASK_QUERY_ERRATAMAILER_GET_RELEVANT_SERVERS);
         Map<String, Object> params = new HashMap<String, Object>();
         params.put("errata_id", errataId);
         params.put("org_id", orgId);
         params.put("channel_id", channelId);
-        return mode.execute(params);
+        mode.stream(params, handler);
     }
 
     private String formatEmail(String login,
@@ -316,4 +311,48 @@ public class ErrataMailer extends RhnJavaJob {
 
         return ls.getMessage("email.errata.notification.body.preferences", args);
     }
+
+    /**
+     * Collects the servers of one user at a time and mails the user once
+     * all of them are read
+     */
+    private class UserMailer implements RowHandler<Map<String, Object>> {
+
+        private final Errata errata;
+        private final Long orgId;
+        private final List<Map<String, Object>> servers =
+            new ArrayList<Map<String, Object>>();
+        private Long userId;
+        private int userCount;
+
+        UserMailer(Errata errataIn, Long orgIdIn) {
+            errata = errataIn;
+            orgId = orgIdIn;
+        }
+
+        public void handleRow(Map<String, Object> row) {
+            Long rowUserId = (Long) row.get("user_id");
+            if (!rowUserId.equals(userId)) {
+                flush();
+                userId = rowUserId;
+            }
+            servers.add(row);
+        }
+
+        /**
+         * Mails the user whose servers were read last
+         */
+        void flush() {
+            if (servers.isEmpty()) {
+                return;
+            }
+            sendEmail(errata, orgId, userId, servers);
+            userCount++;
+            servers.clear();
+        }
+
+        int getUserCount() {
+            return userCount;
+        }
+    }
 }
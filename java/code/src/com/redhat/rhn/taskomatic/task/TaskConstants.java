@@ -127,6 +127,12 @@ public class TaskConstants {
     public static final String TASK_QUERY_REPOMD_GENERATOR_CHANNEL_PACKAGES =
         "repomdgenerator_channel_packages";
 
+    public static final String TASK_QUERY_REPOMD_GENERATOR_CHANNEL_PACKAGE_IDS =
+        "repomdgenerator_channel_package_ids";
+
+    public static final String TASK_QUERY_REPOMD_GENERATOR_CHANNEL_MODIFIED_PACKAGE_IDS =
+        "repomdgenerator_channel_modified_package_ids";
+
     public static final String TASK_QUERY_REPOMD_GENERATOR_CAPABILITY_FILES =
         "repomdgenerator_capability_files";
 
@@ -56,7 +56,6 @@ public class ErrataCacheWorker implements QueueWorker {
     public void run() {
         try {
             removeTask();
-            parentQueue.workerStarting();
             UpdateErrataCacheCommand uecc = new UpdateErrataCacheCommand();
             if (ErrataCacheWorker.FOR_SERVER.equals(task.getName())) {
                 Long sid = task.getData();
@@ -85,7 +84,6 @@ public class ErrataCacheWorker implements QueueWorker {
             HibernateFactory.rollbackTransaction();
         }
         finally {
-            parentQueue.workerDone();
             HibernateFactory.closeSession();
         }
     }
@@ -53,7 +53,6 @@ class ErrataQueueWorker implements QueueWorker {
 
     public void run() {
         try {
-            parentQueue.workerStarting();
             markInProgress();
             if (logger.isDebugEnabled()) {
                 logger.debug("Processing errata queue for " +
@@ -79,7 +78,6 @@ class ErrataQueueWorker implements QueueWorker {
             HibernateFactory.rollbackTransaction();
         }
         finally {
-            parentQueue.workerDone();
             HibernateFactory.closeSession();
         }
     }
@@ -87,7 +87,6 @@ public class ChannelRepodataWorker implements QueueWorker {
      */
     public void run() {
         try {
-            parentQueue.workerStarting();
             if (!isChannelLabelAlreadyInProcess()) {
                 markInProgress(true);
                 populateQueueEntryDetails();
@@ -97,11 +96,12 @@ public class ChannelRepodataWorker implements QueueWorker {
                 if (channelToProcess != null) {
                     // see if the channel is stale, or one of the entries has
                     // force='Y'
-                    if (queueContainsBypass("force") ||
+                    boolean force = queueContainsBypass("force");
+                    if (force ||
                             repoWriter.isChannelRepodataStale(channelToProcess)) {
                         if (queueContainsBypass("bypass_filters") ||
                                 channelToProcess.isChannelRepodataRequired()) {
-                            repoWriter.writeRepomdFiles(channelToProcess);
+                            repoWriter.writeRepomdFiles(channelToProcess, !force);
                         }
                     }
                     else {
@@ -132,7 +132,6 @@ public class ChannelRepodataWorker implements QueueWorker {
             parentQueue.changeRun(null);
         }
         finally {
-            parentQueue.workerDone();
             HibernateFactory.closeSession();
         }
     }
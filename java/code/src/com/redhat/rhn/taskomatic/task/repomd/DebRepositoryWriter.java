@@ -18,7 +18,7 @@ import java.io.File;
 import java.util.Calendar;
 import java.util.Date;
 
-import com.redhat.rhn.common.db.datasource.DataResult;
+import com.redhat.rhn.common.db.datasource.RowHandler;
 import com.redhat.rhn.common.hibernate.HibernateFactory;
 import com.redhat.rhn.common.localization.LocalizationService;
 import com.redhat.rhn.domain.channel.Channel;
@@ -89,14 +89,14 @@ public class DebRepositoryWriter extends RepositoryWriter {
 
         log.info("Generating new DEB repository for channel " + channel.getLabel());
         Date start = new Date();
-        DebPackageWriter writer = new DebPackageWriter(channel, prefix);
-        // TODO: is it possible to make this batched to reduce memory requirements
-        // like in RpmReporsitoryWriter?
-        DataResult<PackageDto> packages = TaskManager.getChannelPackageDtos(channel);
-        packages.elaborate();
-        for (PackageDto pkgDto : packages) {
-            writer.addPackage(pkgDto);
-        }
+        final DebPackageWriter writer = new DebPackageWriter(channel, prefix);
+        // stream the packages so we don't have to hold many thousands of
+        // them in memory at once
+        TaskManager.streamChannelPackageDtos(channel, new RowHandler<PackageDto>() {
+            public void handleRow(PackageDto pkgDto) {
+                writer.addPackage(pkgDto);
+            }
+        });
         writer.generatePackagesGz();
 
         log.info("Repository metadata generation for '" +
@@ -78,16 +78,17 @@ public class FilelistsXmlWriter extends RepomdWriter {
     }
 
     /**
-     *
-     * @param pkgDto pkg info to add to xml
+     * Renders the XML of a package, storing it in the database for the next
+     * run if it was not there yet
+     * @param pkgDto pkg info to render
+     * @return the package XML, or null if it could not be rendered
      */
-    public void addPackage(PackageDto pkgDto) {
+    public String getPackageXml(PackageDto pkgDto) {
         try {
             String xml = pkgDto.getFilelistXml();
             if (ConfigDefaults.get().useDBRepodata() && !StringUtils.isEmpty(xml)) {
                 if (xml != null) {
-                    handler.addCharacters(xml);
-                    return;
+                    return xml;
                 }
             }
 
@@ -102,7 +103,7 @@ public class FilelistsXmlWriter extends RepomdWriter {
 
             String pkg =  st.toString();
             PackageManager.updateRepoFileList(pkgDto.getId(), pkg);
-            handler.addCharacters(pkg);
+            return pkg;
 
 
         }
@@ -112,6 +113,17 @@ public class FilelistsXmlWriter extends RepomdWriter {
 
     }
 
+    /**
+     *
+     * @param pkgDto pkg info to add to xml
+     */
+    public void addPackage(PackageDto pkgDto) {
+        String xml = getPackageXml(pkgDto);
+        if (xml != null) {
+            addPackageXml(xml);
+        }
+    }
+
     /**
      *
      * @param pkgId package Id info
@@ -76,17 +76,18 @@ public class OtherXmlWriter extends RepomdWriter {
     }
 
     /**
-     *
-     * @param pkgDto pkg info to add to xml
+     * Renders the XML of a package, storing it in the database for the next
+     * run if it was not there yet
+     * @param pkgDto pkg info to render
+     * @return the package XML, or null if it could not be rendered
      */
-    public void addPackage(PackageDto pkgDto) {
+    public String getPackageXml(PackageDto pkgDto) {
 
         try {
             String xml = pkgDto.getOtherXml();
             if (ConfigDefaults.get().useDBRepodata() && !StringUtils.isEmpty(xml)) {
                 if (xml != null) {
-                    handler.addCharacters(xml);
-                    return;
+                    return xml;
                 }
             }
 
@@ -101,7 +102,7 @@ public class OtherXmlWriter extends RepomdWriter {
 
             String pkg =  st.toString();
             PackageManager.updateRepoOther(pkgDto.getId(), pkg);
-            handler.addCharacters(pkg);
+            return pkg;
 
         }
         catch (SAXException e) {
@@ -110,6 +111,18 @@ public class OtherXmlWriter extends RepomdWriter {
         catch (SQLException e) {
             SqlExceptionTranslator.sqlException(e);
         }
+        return null;
+    }
+
+    /**
+     *
+     * @param pkgDto pkg info to add to xml
+     */
+    public void addPackage(PackageDto pkgDto) {
+        String xml = getPackageXml(pkgDto);
+        if (xml != null) {
+            addPackageXml(xml);
+        }
     }
 
     /**
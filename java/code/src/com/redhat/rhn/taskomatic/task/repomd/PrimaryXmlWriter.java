@@ -81,17 +81,18 @@ public class PrimaryXmlWriter extends RepomdWriter {
     }
 
     /**
-     *
-     * @param pkgDto pkg info to add to xml
+     * Renders the XML of a package, storing it in the database for the next
+     * run if it was not there yet
+     * @param pkgDto pkg info to render
+     * @return the package XML, or null if it could not be rendered
      */
-    public void addPackage(PackageDto pkgDto) {
+    public String getPackageXml(PackageDto pkgDto) {
         try {
             String xml = pkgDto.getPrimaryXml();
             if (ConfigDefaults.get().useDBRepodata() && !StringUtils.isEmpty(xml)) {
 
                 if (xml != null) {
-                    handler.addCharacters(xml);
-                    return;
+                    return xml;
                 }
             }
 
@@ -112,7 +113,7 @@ public class PrimaryXmlWriter extends RepomdWriter {
 
             String pkg =  st.toString();
             PackageManager.updateRepoPrimary(pkgDto.getId(), pkg);
-            handler.addCharacters(pkg);
+            return pkg;
 
         }
         catch (SAXException e) {
@@ -120,6 +121,17 @@ public class PrimaryXmlWriter extends RepomdWriter {
         }
     }
 
+    /**
+     *
+     * @param pkgDto pkg info to add to xml
+     */
+    public void addPackage(PackageDto pkgDto) {
+        String xml = getPackageXml(pkgDto);
+        if (xml != null) {
+            addPackageXml(xml);
+        }
+    }
+
     /**
      *
      * @param pkgDto pkg info to add to xml
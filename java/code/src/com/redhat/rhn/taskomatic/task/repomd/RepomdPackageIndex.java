@@ -0,0 +1,198 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.rhn.taskomatic.task.repomd;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The packages of a channel's primary, filelists and other files, in the
+ * order they were written, with the length of each package's XML in every
+ * file. It is written next to the repodata, so the next generation can
+ * copy the XML of the packages still in the channel out of the old files
+ * and only has to render the packages added or modified since.
+ *
+ * @version $Rev$
+ */
+public class RepomdPackageIndex {
+
+    public static final int PRIMARY = 0;
+    public static final int FILELISTS = 1;
+    public static final int OTHER = 2;
+
+    private static final int MAGIC = 0x52504958;
+    private static final int VERSION = 2;
+
+    private static Logger log = Logger.getLogger(RepomdPackageIndex.class);
+
+    private final Map<Long, int[]> packages = new LinkedHashMap<Long, int[]>();
+    private long buildTime;
+
+    /**
+     * Adds a package written after all packages added so far
+     * @param id package id
+     * @param primaryXml XML written to primary, may be null
+     * @param filelistsXml XML written to filelists, may be null
+     * @param otherXml XML written to other, may be null
+     */
+    public void add(Long id, String primaryXml, String filelistsXml, String otherXml) {
+        packages.put(id, new int[] {length(primaryXml), length(filelistsXml),
+                length(otherXml)});
+    }
+
+    /**
+     * @param id package id
+     * @return true if the package was written
+     */
+    public boolean contains(Long id) {
+        return packages.containsKey(id);
+    }
+
+    /**
+     * @param id package id
+     * @param file PRIMARY, FILELISTS or OTHER
+     * @return number of chars of the package's XML in the file
+     */
+    public int getLength(Long id, int file) {
+        return packages.get(id)[file];
+    }
+
+    /**
+     * @return the ids of the packages in the order they were written
+     */
+    public List<Long> getPackageIds() {
+        return new ArrayList<Long>(packages.keySet());
+    }
+
+    /**
+     * @return time the packages were read from the database; packages
+     * modified later have to be rendered again
+     */
+    public Date getBuildTime() {
+        return new Date(buildTime);
+    }
+
+    /**
+     * @param buildTimeIn time the packages were read from the database
+     */
+    public void setBuildTime(Date buildTimeIn) {
+        buildTime = buildTimeIn.getTime();
+    }
+
+    /**
+     * @return number of packages
+     */
+    public int size() {
+        return packages.size();
+    }
+
+    /**
+     * Writes the index. The sizes of the three repodata files are stored
+     * with it, so an index is not used with files it does not describe.
+     * @param indexFile file to write
+     * @param primary written primary file
+     * @param filelists written filelists file
+     * @param other written other file
+     * @throws IOException if the index cannot be written
+     */
+    public void write(File indexFile, File primary, File filelists, File other)
+        throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(indexFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(primary.length());
+            out.writeLong(filelists.length());
+            out.writeLong(other.length());
+            out.writeLong(buildTime);
+            out.writeInt(packages.size());
+            for (Map.Entry<Long, int[]> entry : packages.entrySet()) {
+                out.writeLong(entry.getKey());
+                for (int length : entry.getValue()) {
+                    out.writeInt(length);
+                }
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads the index of the given repodata files
+     * @param indexFile index file
+     * @param primary primary file
+     * @param filelists filelists file
+     * @param other other file
+     * @return the index, or null if there is none or it does not describe
+     * the files
+     */
+    public static RepomdPackageIndex load(File indexFile, File primary, File filelists,
+            File other) {
+        if (!indexFile.exists()) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(indexFile)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    log.warn("Ignoring " + indexFile + " of an unknown format");
+                    return null;
+                }
+                if (in.readLong() != primary.length() ||
+                        in.readLong() != filelists.length() ||
+                        in.readLong() != other.length()) {
+                    log.warn("Ignoring " + indexFile +
+                            ", it does not match the repodata files");
+                    return null;
+                }
+                RepomdPackageIndex index = new RepomdPackageIndex();
+                index.buildTime = in.readLong();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    index.packages.put(in.readLong(), new int[] {in.readInt(),
+                            in.readInt(), in.readInt()});
+                }
+                return index;
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch (IOException e) {
+            log.warn("Cannot read " + indexFile + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static int length(String xml) {
+        return xml == null ? 0 : xml.length();
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.rhn.taskomatic.task.repomd;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the XML of single packages back out of the primary, filelists and
+ * other files described by a RepomdPackageIndex.
+ *
+ * The files are read once from start to end, so the packages have to be
+ * taken in the order of the index; packages that are skipped are passed
+ * over. The XML is checked to start a package element, a file that does not
+ * match its index raises a RepomdRuntimeException.
+ *
+ * @version $Rev$
+ */
+public class RepomdPackageSplicer {
+
+    private static final String PACKAGE_START = "<package";
+
+    private final RepomdPackageIndex index;
+    private final Iterator<Long> ids;
+    private final PackageXmlReader[] readers;
+
+    /**
+     * Opens the repodata files
+     * @param indexIn index of the files
+     * @param primary primary file
+     * @param filelists filelists file
+     * @param other other file
+     * @throws IOException if a file cannot be opened
+     */
+    public RepomdPackageSplicer(RepomdPackageIndex indexIn, File primary,
+            File filelists, File other) throws IOException {
+        index = indexIn;
+        ids = index.getPackageIds().iterator();
+        readers = new PackageXmlReader[3];
+        try {
+            readers[RepomdPackageIndex.PRIMARY] = new PackageXmlReader(primary);
+            readers[RepomdPackageIndex.FILELISTS] = new PackageXmlReader(filelists);
+            readers[RepomdPackageIndex.OTHER] = new PackageXmlReader(other);
+        }
+        catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param id package id
+     * @return true if the XML of the package can be taken from the files
+     */
+    public boolean contains(Long id) {
+        return index.contains(id);
+    }
+
+    /**
+     * Reads the XML of a package, passing over the packages in front of it
+     * @param id package id, must come after the packages taken so far
+     * @return the XML of the package in primary, filelists and other, an
+     * element is null if the package was not written to that file
+     */
+    public String[] take(Long id) {
+        try {
+            while (ids.hasNext()) {
+                Long next = ids.next();
+                if (next.equals(id)) {
+                    String[] xml = new String[readers.length];
+                    for (int i = 0; i < readers.length; i++) {
+                        xml[i] = readers[i].read(index.getLength(next, i));
+                    }
+                    return xml;
+                }
+                for (int i = 0; i < readers.length; i++) {
+                    readers[i].read(index.getLength(next, i));
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new RepomdRuntimeException(e);
+        }
+        throw new RepomdRuntimeException("Package " + id +
+                " is not in the old repodata or was taken out of order");
+    }
+
+    /**
+     * Closes the files
+     */
+    public void close() {
+        for (PackageXmlReader reader : readers) {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Reads package XML of one gzipped repodata file
+     */
+    private static class PackageXmlReader {
+
+        private final File file;
+        private final Reader reader;
+        private boolean started;
+
+        PackageXmlReader(File fileIn) throws IOException {
+            file = fileIn;
+            // the files are written with the default charset, see RpmRepositoryWriter
+            reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(
+                    new FileInputStream(file))));
+        }
+
+        String read(int length) throws IOException {
+            if (length == 0) {
+                return null;
+            }
+            StringBuilder xml = new StringBuilder(length);
+            if (!started) {
+                skipHeader();
+                xml.append(PACKAGE_START);
+                started = true;
+            }
+            char[] buffer = new char[length - xml.length()];
+            int off = 0;
+            while (off < buffer.length) {
+                int read = reader.read(buffer, off, buffer.length - off);
+                if (read < 0) {
+                    throw new RepomdRuntimeException("Unexpected end of " + file);
+                }
+                off += read;
+            }
+            xml.append(buffer);
+            if (!xml.toString().startsWith(PACKAGE_START)) {
+                throw new RepomdRuntimeException(file + " does not match its index");
+            }
+            return xml.toString();
+        }
+
+        /**
+         * Reads up to and including the start of the first package
+         */
+        private void skipHeader() throws IOException {
+            int matched = 0;
+            while (matched < PACKAGE_START.length()) {
+                int c = reader.read();
+                if (c < 0) {
+                    throw new RepomdRuntimeException("No packages in " + file);
+                }
+                if (c == PACKAGE_START.charAt(matched)) {
+                    matched++;
+                }
+                else {
+                    matched = c == PACKAGE_START.charAt(0) ? 1 : 0;
+                }
+            }
+        }
+
+        void close() {
+            try {
+                reader.close();
+            }
+            catch (IOException e) {
+                // nothing left to read
+            }
+        }
+    }
+}
@@ -94,6 +94,19 @@ public abstract class RepomdWriter {
         return tmpHandler;
     }
 
+    /**
+     * Writes the already rendered XML of one package
+     * @param xml package xml
+     */
+    public void addPackageXml(String xml) {
+        try {
+            handler.addCharacters(xml);
+        }
+        catch (SAXException e) {
+            throw new RepomdRuntimeException(e);
+        }
+    }
+
 
 
     /**
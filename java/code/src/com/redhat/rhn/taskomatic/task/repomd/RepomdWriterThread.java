@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.rhn.taskomatic.task.repomd;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds package XML rendered by another thread into a RepomdWriter, so the
+ * serializing, compressing and digesting of primary, filelists and other
+ * run in parallel to each other and to reading the packages.
+ *
+ * The thread rendering the packages hands fragments over through a bounded
+ * queue and blocks while the queue is full. The fragments are written in
+ * the order they were handed over, so the file is the same as if they had
+ * been written directly. The RepomdWriter must not be used by anyone else
+ * between start() and finish().
+ *
+ * @version $Rev$
+ */
+public class RepomdWriterThread extends Thread {
+
+    private static final Object END = new Object();
+
+    private final RepomdWriter writer;
+    private final BlockingQueue<Object> queue;
+    private volatile Throwable failure;
+
+    /**
+     * Constructor
+     * @param nameIn thread name
+     * @param writerIn writer of the repodata file
+     * @param capacity number of fragments that may wait for the writer
+     */
+    public RepomdWriterThread(String nameIn, RepomdWriter writerIn, int capacity) {
+        super(nameIn);
+        setDaemon(true);
+        writer = writerIn;
+        queue = new ArrayBlockingQueue<Object>(capacity);
+    }
+
+    /**
+     * Queues the XML of one package, waiting while the queue is full.
+     * @param xml package xml
+     */
+    public void addPackageXml(String xml) {
+        put(xml);
+    }
+
+    /**
+     * Waits until all queued XML has been written.
+     */
+    public void finish() {
+        put(END);
+        try {
+            join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RepomdRuntimeException(e);
+        }
+        if (failure != null) {
+            throw new RepomdRuntimeException(failure);
+        }
+    }
+
+    /**
+     * Stops writing, dropping the XML still queued.
+     */
+    public void abort() {
+        interrupt();
+        try {
+            join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void run() {
+        try {
+            for (Object item = queue.take(); item != END; item = queue.take()) {
+                writer.addPackageXml((String) item);
+            }
+        }
+        catch (InterruptedException e) {
+            failure = e;
+        }
+        catch (RuntimeException e) {
+            failure = e;
+        }
+    }
+
+    private void put(Object item) {
+        try {
+            while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                if (!isAlive()) {
+                    // the writer failed and nobody takes from the queue
+                    break;
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RepomdRuntimeException(e);
+        }
+        if (failure != null) {
+            throw new RepomdRuntimeException(failure);
+        }
+    }
+}
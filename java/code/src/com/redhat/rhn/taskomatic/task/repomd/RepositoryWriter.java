@@ -54,6 +54,16 @@ public abstract class RepositoryWriter {
     */
    public abstract void writeRepomdFiles(Channel channel);
 
+   /**
+    * Writes the repodata, reusing the previous repodata of the channel where
+    * the writer is able to. Writers that are not always regenerate all of it.
+    * @param channel channelinfo for repomd file creation
+    * @param incremental false to regenerate the repodata of all packages
+    */
+   public void writeRepomdFiles(Channel channel, boolean incremental) {
+       writeRepomdFiles(channel);
+   }
+
    /**
     * Deletes repository cache files
     * @param channelLabelToProcess channel label
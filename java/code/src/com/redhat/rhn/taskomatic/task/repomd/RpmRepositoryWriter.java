@@ -16,7 +16,7 @@ package com.redhat.rhn.taskomatic.task.repomd;
 
 import com.redhat.rhn.common.conf.Config;
 import com.redhat.rhn.common.conf.ConfigDefaults;
-import com.redhat.rhn.common.db.datasource.DataResult;
+import com.redhat.rhn.common.db.datasource.RowHandler;
 import com.redhat.rhn.common.hibernate.HibernateFactory;
 import com.redhat.rhn.common.localization.LocalizationService;
 import com.redhat.rhn.common.util.StringUtil;
@@ -42,7 +42,12 @@ import java.nio.file.Files;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  *
@@ -57,6 +62,10 @@ public class RpmRepositoryWriter extends RepositoryWriter {
     private static final String REPOMD_FILE = "repomd.xml.new";
     private static final String UPDATEINFO_FILE = "updateinfo.xml.gz.new";
     private static final String NOREPO_FILE = "noyumrepo.txt";
+    private static final String PACKAGES_INDEX_FILE = "packages.idx.new";
+
+    // package XML fragments each writer thread may fall behind
+    private static final int WRITER_QUEUE_SIZE = 256;
 
     private static final String GROUP = "groups";
     private static final String MODULES = "modules";
@@ -103,7 +112,22 @@ public class RpmRepositoryWriter extends RepositoryWriter {
      */
     @Override
     public void writeRepomdFiles(Channel channel) {
+        writeRepomdFiles(channel, false);
+    }
+
+    /**
+     * Writes the repodata. Incrementally, the XML of the packages that were
+     * in the channel when the repodata was last written is copied out of
+     * the old primary, filelists and other files, and only the packages
+     * added or modified since are read from the database and rendered.
+     * @param channel channelinfo for repomd file creation
+     * @param incremental false to render all packages of the channel
+     */
+    @Override
+    public void writeRepomdFiles(Channel channel, boolean incremental) {
         PackageManager.createRepoEntrys(channel.getId());
+        // packages modified from now on are rendered again the next time
+        Date buildTime = new Date();
 
         String prefix = mountPoint + File.separator + pathPrefix +
                 File.separator + channel.getLabel() + File.separator;
@@ -144,9 +168,9 @@ public class RpmRepositoryWriter extends RepositoryWriter {
                 channel.getPackageCount() + " packages, " +
                 channel.getErrataCount() + " errata");
 
-        CompressingDigestOutputWriter primaryFile;
-        CompressingDigestOutputWriter filelistsFile;
-        CompressingDigestOutputWriter otherFile;
+        final CompressingDigestOutputWriter primaryFile;
+        final CompressingDigestOutputWriter filelistsFile;
+        final CompressingDigestOutputWriter otherFile;
 
         try {
             primaryFile = new CompressingDigestOutputWriter(
@@ -171,44 +195,66 @@ public class RpmRepositoryWriter extends RepositoryWriter {
                 new OutputStreamWriter(filelistsFile));
         BufferedWriter otherBufferedWriter = new BufferedWriter(
                 new OutputStreamWriter(otherFile));
-        PrimaryXmlWriter primary = new PrimaryXmlWriter(
+        final PrimaryXmlWriter primary = new PrimaryXmlWriter(
                 primaryBufferedWriter);
-        FilelistsXmlWriter filelists = new FilelistsXmlWriter(
+        final FilelistsXmlWriter filelists = new FilelistsXmlWriter(
                 filelistsBufferedWriter);
-        OtherXmlWriter other = new OtherXmlWriter(otherBufferedWriter);
+        final OtherXmlWriter other = new OtherXmlWriter(otherBufferedWriter);
+        final String channelLabel = channel.getLabel();
         Date start = new Date();
 
         primary.begin(channel);
         filelists.begin(channel);
         other.begin(channel);
 
-        // batch the elaboration so we don't have to hold many thousands of
-        // packages in memory at once
-        final int batchSize = 1000;
-        DataResult<PackageDto> packages = TaskManager.getChannelPackageDtos(channel);
-        for (int i = 0; i < packages.size(); i += batchSize) {
-            DataResult<PackageDto> packageBatch = packages.subList(i, i + batchSize);
-            packageBatch.elaborate();
-            for (PackageDto pkgDto : packageBatch) {
-                // this is a sanity check
-                // package may have been deleted before packageBatch.elaborate()
-                if (pkgDto.getChecksum() == null) {
-                    // channel content changed, we cannot guarantee correct repodata
-                    throw new RepomdRuntimeException("Package with id " + pkgDto.getId() +
-                            " removed from server, interrupting repo generation for " +
-                            channel.getLabel());
-                }
-                primary.addPackage(pkgDto);
-                filelists.addPackage(pkgDto);
-                other.addPackage(pkgDto);
-                try {
-                    primaryFile.flush();
-                    filelistsFile.flush();
-                    otherFile.flush();
-                }
-                catch (IOException e) {
-                    throw new RepomdRuntimeException(e);
-                }
+        // the three files are serialized, compressed and digested on their
+        // own threads while this one reads and renders the packages
+        final RepomdWriterThread primaryThread = new RepomdWriterThread(
+                "repodata-" + channelLabel + "-primary", primary, WRITER_QUEUE_SIZE);
+        final RepomdWriterThread filelistsThread = new RepomdWriterThread(
+                "repodata-" + channelLabel + "-filelists", filelists, WRITER_QUEUE_SIZE);
+        final RepomdWriterThread otherThread = new RepomdWriterThread(
+                "repodata-" + channelLabel + "-other", other, WRITER_QUEUE_SIZE);
+        primaryThread.start();
+        filelistsThread.start();
+        otherThread.start();
+        final PackageXmlQueue queue = new PackageXmlQueue(primary, filelists, other,
+                new RepomdWriterThread[] {primaryThread, filelistsThread, otherThread});
+
+        RepomdPackageIndex oldIndex = null;
+        if (incremental && ConfigDefaults.get().useIncrementalRepodata()) {
+            oldIndex = RepomdPackageIndex.load(new File(prefix + "packages.idx"),
+                    new File(prefix + "primary.xml.gz"),
+                    new File(prefix + "filelists.xml.gz"),
+                    new File(prefix + "other.xml.gz"));
+        }
+
+        boolean written = false;
+        try {
+            if (oldIndex != null) {
+                spliceChannelPackages(channel, oldIndex, prefix, queue);
+            }
+            else {
+                // stream the packages so we don't have to hold many thousands of
+                // them in memory at once; they are elaborated in batches
+                TaskManager.streamChannelPackageDtos(channel,
+                        new RowHandler<PackageDto>() {
+                    public void handleRow(PackageDto pkgDto) {
+                        checkPackage(pkgDto, channelLabel);
+                        queue.render(pkgDto);
+                    }
+                });
+            }
+            primaryThread.finish();
+            filelistsThread.finish();
+            otherThread.finish();
+            written = true;
+        }
+        finally {
+            if (!written) {
+                primaryThread.abort();
+                filelistsThread.abort();
+                otherThread.abort();
             }
         }
         primary.end();
@@ -222,6 +268,18 @@ public class RpmRepositoryWriter extends RepositoryWriter {
         catch (IOException e) {
             throw new RepomdRuntimeException(e);
         }
+        try {
+            queue.getIndex().setBuildTime(buildTime);
+            queue.getIndex().write(new File(prefix + PACKAGES_INDEX_FILE),
+                    new File(prefix + PRIMARY_FILE), new File(prefix + FILELISTS_FILE),
+                    new File(prefix + OTHER_FILE));
+        }
+        catch (IOException e) {
+            // the next generation will render all packages
+            log.warn("Cannot write package index for '" + channelLabel + "': " +
+                    e.getMessage());
+            new File(prefix + PACKAGES_INDEX_FILE).delete();
+        }
 
         RepomdIndexData primaryData = new RepomdIndexData(primaryFile
                 .getCompressedChecksum(), primaryFile
@@ -286,6 +344,94 @@ public class RpmRepositoryWriter extends RepositoryWriter {
                 (int) (new Date().getTime() - start.getTime()) / 1000 + " seconds");
     }
 
+    /**
+     * Queues the packages of the channel in the order streamChannelPackageDtos
+     * would, taking the XML of the packages in the old index out of the old
+     * repodata and rendering the others and those modified since.
+     * @param channel channel info
+     * @param oldIndex index of the current repodata
+     * @param prefix repodata directory
+     * @param queue queue of the new repodata
+     */
+    private void spliceChannelPackages(Channel channel, RepomdPackageIndex oldIndex,
+            String prefix, PackageXmlQueue queue) {
+        RepomdPackageSplicer splicer;
+        try {
+            splicer = new RepomdPackageSplicer(oldIndex,
+                    new File(prefix + "primary.xml.gz"),
+                    new File(prefix + "filelists.xml.gz"),
+                    new File(prefix + "other.xml.gz"));
+        }
+        catch (IOException e) {
+            throw new RepomdRuntimeException(e);
+        }
+        try {
+            List<PackageDto> packages = TaskManager.getChannelPackageIds(channel);
+            Set<Long> modified = TaskManager.getChannelModifiedPackageIds(channel,
+                    oldIndex.getBuildTime());
+            int batchSize = ConfigDefaults.get().getDbFetchSize();
+            int added = 0;
+            for (int start = 0; start < packages.size(); start += batchSize) {
+                List<PackageDto> batch = packages.subList(start,
+                        Math.min(start + batchSize, packages.size()));
+                List<PackageDto> newPackages = new ArrayList<PackageDto>();
+                for (PackageDto pkgDto : batch) {
+                    if (!splicer.contains(pkgDto.getId()) ||
+                            modified.contains(pkgDto.getId())) {
+                        newPackages.add(pkgDto);
+                    }
+                }
+                Map<Long, PackageDto> elaborated = new HashMap<Long, PackageDto>();
+                if (!newPackages.isEmpty()) {
+                    TaskManager.elaborateChannelPackageDtos(channel, newPackages);
+                    for (PackageDto pkgDto : newPackages) {
+                        elaborated.put(pkgDto.getId(), pkgDto);
+                    }
+                    added += newPackages.size();
+                }
+                for (PackageDto pkgDto : batch) {
+                    if (splicer.contains(pkgDto.getId()) &&
+                            !modified.contains(pkgDto.getId())) {
+                        queue.add(pkgDto.getId(), splicer.take(pkgDto.getId()));
+                    }
+                    else {
+                        PackageDto newPackage = elaborated.get(pkgDto.getId());
+                        checkPackage(newPackage == null ? pkgDto : newPackage,
+                                channel.getLabel());
+                        queue.render(newPackage);
+                    }
+                }
+            }
+            log.info("Copied " + (packages.size() - added) + " packages of '" +
+                    channel.getLabel() + "' from the old repodata, rendered " + added +
+                    ", dropped " + (oldIndex.size() - packages.size() + added));
+        }
+        catch (RepomdRuntimeException e) {
+            // don't trust the old repodata the next time either
+            new File(prefix + "packages.idx").delete();
+            throw e;
+        }
+        finally {
+            splicer.close();
+        }
+    }
+
+    /**
+     * Sanity check of a package about to be rendered
+     * @param pkgDto elaborated package
+     * @param channelLabel channel label
+     */
+    private static void checkPackage(PackageDto pkgDto, String channelLabel) {
+        // package may have been deleted before its batch was elaborated
+        if (pkgDto.getChecksum() == null) {
+            // channel content changed, we cannot guarantee correct repodata
+            throw new RepomdRuntimeException("Package with id " +
+                    pkgDto.getId() +
+                    " removed from server, interrupting repo generation for " +
+                    channelLabel);
+        }
+    }
+
     /**
      * Deletes existing repo and generates file stating that no repo was generated
      * @param channel the channel to do this for
@@ -449,6 +595,7 @@ public class RpmRepositoryWriter extends RepositoryWriter {
         File filelists = new File(prefix + FILELISTS_FILE);
         File other = new File(prefix + OTHER_FILE);
         File repomd = new File(prefix + REPOMD_FILE);
+        File packagesIndex = new File(prefix + PACKAGES_INDEX_FILE);
 
         File updateinfo = null;
         if (doUpdateinfo) {
@@ -478,5 +625,56 @@ public class RpmRepositoryWriter extends RepositoryWriter {
         filelists.renameTo(new File(prefix + "filelists.xml.gz"));
         other.renameTo(new File(prefix + "other.xml.gz"));
         repomd.renameTo(new File(prefix + "repomd.xml"));
+        // last, so an index is never found next to files it doesn't describe
+        packagesIndex.renameTo(new File(prefix + "packages.idx"));
+    }
+
+    /**
+     * Renders the XML of packages, or takes it as it is, and queues it to
+     * the threads writing primary, filelists and other
+     */
+    private static class PackageXmlQueue {
+
+        private final PrimaryXmlWriter primary;
+        private final FilelistsXmlWriter filelists;
+        private final OtherXmlWriter other;
+        private final RepomdWriterThread[] threads;
+        private final RepomdPackageIndex index = new RepomdPackageIndex();
+
+        PackageXmlQueue(PrimaryXmlWriter primaryIn, FilelistsXmlWriter filelistsIn,
+                OtherXmlWriter otherIn, RepomdWriterThread[] threadsIn) {
+            primary = primaryIn;
+            filelists = filelistsIn;
+            other = otherIn;
+            threads = threadsIn;
+        }
+
+        /**
+         * Renders a package. Rendering may query and update the database, so
+         * it has to happen on the thread owning the session.
+         * @param pkgDto elaborated package
+         */
+        void render(PackageDto pkgDto) {
+            add(pkgDto.getId(), new String[] {primary.getPackageXml(pkgDto),
+                    filelists.getPackageXml(pkgDto), other.getPackageXml(pkgDto)});
+        }
+
+        /**
+         * @param id package id
+         * @param xml XML of the package in primary, filelists and other
+         */
+        void add(Long id, String[] xml) {
+            for (int i = 0; i < threads.length; i++) {
+                if (xml[i] != null) {
+                    threads[i].addPackageXml(xml[i]);
+                }
+            }
+            index.add(id, xml[RepomdPackageIndex.PRIMARY],
+                    xml[RepomdPackageIndex.FILELISTS], xml[RepomdPackageIndex.OTHER]);
+        }
+
+        RepomdPackageIndex getIndex() {
+            return index;
+        }
     }
 }
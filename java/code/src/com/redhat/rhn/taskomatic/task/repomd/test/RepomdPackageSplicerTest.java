@@ -0,0 +1,223 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.rhn.taskomatic.task.repomd.test;
+
+import com.redhat.rhn.domain.channel.Channel;
+import com.redhat.rhn.taskomatic.task.repomd.CompressingDigestOutputWriter;
+import com.redhat.rhn.taskomatic.task.repomd.FilelistsXmlWriter;
+import com.redhat.rhn.taskomatic.task.repomd.OtherXmlWriter;
+import com.redhat.rhn.taskomatic.task.repomd.PrimaryXmlWriter;
+import com.redhat.rhn.taskomatic.task.repomd.RepomdPackageIndex;
+import com.redhat.rhn.taskomatic.task.repomd.RepomdPackageSplicer;
+import com.redhat.rhn.taskomatic.task.repomd.RepomdRuntimeException;
+import com.redhat.rhn.taskomatic.task.repomd.RepomdWriter;
+import com.redhat.rhn.testing.TestUtils;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+/**
+ * Regenerates the repodata of a synthetic channel from the previous
+ * repodata and compares it to repodata written from scratch.
+ */
+public class RepomdPackageSplicerTest extends TestCase {
+
+    private static final String[] FILES = {"primary.xml.gz", "filelists.xml.gz",
+        "other.xml.gz"};
+
+    private File dir;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        dir = new File("/tmp/repodata-" + System.currentTimeMillis() +
+                TestUtils.randomString());
+        dir.mkdirs();
+    }
+
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+        super.tearDown();
+    }
+
+    public void testSpliceEqualsFullGeneration() throws Exception {
+        SortedMap<Long, String[]> channel = new TreeMap<Long, String[]>();
+        for (long id = 1; id <= 200; id++) {
+            channel.put(id, packageXml(id));
+        }
+        RepomdPackageIndex index = write(new File(dir, "old"), channel);
+        RepomdPackageIndex loaded = load(new File(dir, "old"));
+        assertNotNull(loaded);
+        assertEquals(index.getPackageIds(), loaded.getPackageIds());
+        assertEquals(index.getBuildTime(), loaded.getBuildTime());
+
+        // an erratum removes some packages and adds others
+        for (long id = 1; id <= 200; id += 7) {
+            channel.remove(id);
+        }
+        channel.put(201L, packageXml(201L));
+        channel.put(500L, packageXml(500L));
+
+        // splice the old repodata with the new packages
+        RepomdPackageSplicer splicer = splicer(new File(dir, "old"), loaded);
+        SortedMap<Long, String[]> spliced = new TreeMap<Long, String[]>();
+        int copied = 0;
+        for (Long id : channel.keySet()) {
+            if (splicer.contains(id)) {
+                spliced.put(id, splicer.take(id));
+                copied++;
+            }
+            else {
+                spliced.put(id, packageXml(id));
+            }
+        }
+        splicer.close();
+        assertEquals(channel.size() - 2, copied);
+
+        write(new File(dir, "spliced"), spliced);
+        write(new File(dir, "full"), channel);
+        for (String file : FILES) {
+            assertTrue(FileUtils.contentEquals(new File(new File(dir, "full"), file),
+                    new File(new File(dir, "spliced"), file)));
+        }
+    }
+
+    public void testIndexOfOtherFiles() throws Exception {
+        SortedMap<Long, String[]> channel = new TreeMap<Long, String[]>();
+        for (long id = 1; id <= 10; id++) {
+            channel.put(id, packageXml(id));
+        }
+        File old = new File(dir, "old");
+        write(old, channel);
+
+        // the files were replaced without the index
+        RandomAccessFile primary = new RandomAccessFile(new File(old, FILES[0]), "rw");
+        primary.setLength(primary.length() + 1);
+        primary.close();
+        assertNull(load(old));
+        assertNull(load(new File(dir, "missing")));
+    }
+
+    public void testIndexNotMatchingFile() throws Exception {
+        SortedMap<Long, String[]> channel = new TreeMap<Long, String[]>();
+        for (long id = 1; id <= 10; id++) {
+            channel.put(id, packageXml(id));
+        }
+        File old = new File(dir, "old");
+        RepomdPackageIndex index = write(old, channel);
+
+        // lengths that don't match the files
+        RepomdPackageIndex wrong = new RepomdPackageIndex();
+        for (Long id : index.getPackageIds()) {
+            wrong.add(id, "<package/>", "<package/>", "<package/>");
+        }
+        RepomdPackageSplicer splicer = splicer(old, wrong);
+        try {
+            splicer.take(1L);
+            splicer.take(2L);
+            fail("mismatching index not detected");
+        }
+        catch (RepomdRuntimeException e) {
+            // expected
+        }
+        finally {
+            splicer.close();
+        }
+    }
+
+    private RepomdPackageIndex write(File repoDir, SortedMap<Long, String[]> packages)
+        throws Exception {
+        repoDir.mkdirs();
+        final int count = packages.size();
+        Channel channel = new Channel() {
+            public int getPackageCount() {
+                return count;
+            }
+        };
+        List<BufferedWriter> outputs = new ArrayList<BufferedWriter>();
+        for (String file : FILES) {
+            outputs.add(new BufferedWriter(new OutputStreamWriter(
+                    new CompressingDigestOutputWriter(new FileOutputStream(
+                            new File(repoDir, file)), "SHA-256"))));
+        }
+        PrimaryXmlWriter primary = new PrimaryXmlWriter(outputs.get(0));
+        FilelistsXmlWriter filelists = new FilelistsXmlWriter(outputs.get(1));
+        OtherXmlWriter other = new OtherXmlWriter(outputs.get(2));
+        RepomdWriter[] writers = {primary, filelists, other};
+        primary.begin(channel);
+        filelists.begin(channel);
+        other.begin(channel);
+
+        RepomdPackageIndex index = new RepomdPackageIndex();
+        index.setBuildTime(new Date());
+        for (Long id : packages.keySet()) {
+            String[] xml = packages.get(id);
+            for (int i = 0; i < writers.length; i++) {
+                if (xml[i] != null) {
+                    writers[i].addPackageXml(xml[i]);
+                }
+            }
+            index.add(id, xml[0], xml[1], xml[2]);
+        }
+        primary.end();
+        filelists.end();
+        other.end();
+        for (BufferedWriter output : outputs) {
+            output.close();
+        }
+        index.write(new File(repoDir, "packages.idx"), new File(repoDir, FILES[0]),
+                new File(repoDir, FILES[1]), new File(repoDir, FILES[2]));
+        return index;
+    }
+
+    private RepomdPackageIndex load(File repoDir) {
+        return RepomdPackageIndex.load(new File(repoDir, "packages.idx"),
+                new File(repoDir, FILES[0]), new File(repoDir, FILES[1]),
+                new File(repoDir, FILES[2]));
+    }
+
+    private RepomdPackageSplicer splicer(File repoDir, RepomdPackageIndex index)
+        throws Exception {
+        return new RepomdPackageSplicer(index, new File(repoDir, FILES[0]),
+                new File(repoDir, FILES[1]), new File(repoDir, FILES[2]));
+    }
+
+    private static String[] packageXml(long id) {
+        String start = "<package pkgid=\"" + Long.toHexString(id * 7919) +
+                "\" name=\"package-" + id + "\" arch=\"x86_64\">";
+        StringBuilder files = new StringBuilder();
+        for (int i = 0; i < id % 13; i++) {
+            files.append("<file>/usr/share/package-").append(id).append("/file-")
+                .append(i).append("</file>");
+        }
+        return new String[] {
+            start + "<summary>package &lt;" + id + "&gt; é</summary></package>",
+            start + files + "</package>",
+            // packages without changelog are not written to other
+            id % 5 == 0 ? null : start + "<changelog>fixed " + id + "</changelog></package>"
+        };
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.rhn.taskomatic.task.repomd.test;
+
+import com.redhat.rhn.domain.channel.Channel;
+import com.redhat.rhn.taskomatic.task.repomd.CompressingDigestOutputWriter;
+import com.redhat.rhn.taskomatic.task.repomd.FilelistsXmlWriter;
+import com.redhat.rhn.taskomatic.task.repomd.OtherXmlWriter;
+import com.redhat.rhn.taskomatic.task.repomd.PrimaryXmlWriter;
+import com.redhat.rhn.taskomatic.task.repomd.RepomdWriter;
+import com.redhat.rhn.taskomatic.task.repomd.RepomdWriterThread;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Writes the repodata of a synthetic channel the way RpmRepositoryWriter
+ * used to, one package after the other with a flush per package, and
+ * through RepomdWriterThreads, and compares the results.
+ */
+public class RepomdWriterThreadTest extends TestCase {
+
+    private static Logger log = Logger.getLogger(RepomdWriterThreadTest.class);
+
+    private static final int PACKAGES = 5000;
+
+    public void testOutputIsIdentical() throws Exception {
+        List<String> packages = syntheticChannel(PACKAGES);
+
+        long start = System.currentTimeMillis();
+        Output[] sequential = writeSequentially(packages);
+        long sequentialTime = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        Output[] pipelined = writePipelined(packages);
+        long pipelinedTime = System.currentTimeMillis() - start;
+
+        log.info("Repodata of " + PACKAGES + " packages written in " + sequentialTime +
+                " ms sequentially, " + pipelinedTime + " ms pipelined");
+        for (int i = 0; i < sequential.length; i++) {
+            assertTrue(Arrays.equals(sequential[i].bytes, pipelined[i].bytes));
+            assertEquals(sequential[i].compressedChecksum, pipelined[i].compressedChecksum);
+            assertEquals(sequential[i].uncompressedChecksum,
+                    pipelined[i].uncompressedChecksum);
+        }
+    }
+
+    public void testWriterFailure() throws Exception {
+        RepomdWriterThread thread = new RepomdWriterThread("failing",
+                new FilelistsXmlWriter(new BufferedWriter(new OutputStreamWriter(
+                        new ByteArrayOutputStream()))) {
+            public void addPackageXml(String xml) {
+                throw new IllegalStateException("disk full");
+            }
+        }, 1);
+        thread.start();
+        try {
+            for (int i = 0; i < 10; i++) {
+                thread.addPackageXml("<package/>");
+            }
+            thread.finish();
+            fail("writer failure not reported");
+        }
+        catch (RuntimeException e) {
+            // expected
+        }
+        assertFalse(thread.isAlive());
+    }
+
+    private Output[] writeSequentially(List<String> packages) throws Exception {
+        Output[] outputs = newOutputs();
+        RepomdWriter[] writers = newWriters(outputs);
+        for (String xml : packages) {
+            for (int i = 0; i < writers.length; i++) {
+                writers[i].addPackageXml(xml);
+                outputs[i].file.flush();
+            }
+        }
+        return close(outputs, writers);
+    }
+
+    private Output[] writePipelined(List<String> packages) throws Exception {
+        Output[] outputs = newOutputs();
+        RepomdWriter[] writers = newWriters(outputs);
+        RepomdWriterThread[] threads = new RepomdWriterThread[writers.length];
+        for (int i = 0; i < writers.length; i++) {
+            threads[i] = new RepomdWriterThread("writer-" + i, writers[i], 256);
+            threads[i].start();
+        }
+        for (String xml : packages) {
+            for (RepomdWriterThread thread : threads) {
+                thread.addPackageXml(xml);
+            }
+        }
+        for (RepomdWriterThread thread : threads) {
+            thread.finish();
+        }
+        return close(outputs, writers);
+    }
+
+    private Output[] newOutputs() throws Exception {
+        Output[] outputs = new Output[3];
+        for (int i = 0; i < outputs.length; i++) {
+            outputs[i] = new Output();
+        }
+        return outputs;
+    }
+
+    private RepomdWriter[] newWriters(Output[] outputs) {
+        Channel channel = new Channel() {
+            public int getPackageCount() {
+                return PACKAGES;
+            }
+        };
+        PrimaryXmlWriter primary = new PrimaryXmlWriter(outputs[0].writer);
+        FilelistsXmlWriter filelists = new FilelistsXmlWriter(outputs[1].writer);
+        OtherXmlWriter other = new OtherXmlWriter(outputs[2].writer);
+        primary.begin(channel);
+        filelists.begin(channel);
+        other.begin(channel);
+        return new RepomdWriter[] {primary, filelists, other};
+    }
+
+    private Output[] close(Output[] outputs, RepomdWriter[] writers) throws Exception {
+        ((PrimaryXmlWriter) writers[0]).end();
+        ((FilelistsXmlWriter) writers[1]).end();
+        ((OtherXmlWriter) writers[2]).end();
+        for (Output output : outputs) {
+            output.writer.close();
+            output.bytes = output.stream.toByteArray();
+            output.compressedChecksum = output.file.getCompressedChecksum();
+            output.uncompressedChecksum = output.file.getUncompressedChecksum();
+        }
+        return outputs;
+    }
+
+    private static List<String> syntheticChannel(int count) {
+        Random random = new Random(42);
+        List<String> packages = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder xml = new StringBuilder();
+            xml.append("<package pkgid=\"").append(Long.toHexString(random.nextLong()))
+                .append("\" name=\"package-").append(i).append("\" arch=\"x86_64\">")
+                .append("<version epoch=\"0\" ver=\"1.").append(i % 17)
+                .append("\" rel=\"").append(i % 5).append(".el7\"/>");
+            int files = 1 + random.nextInt(40);
+            for (int f = 0; f < files; f++) {
+                xml.append("<file>/usr/share/package-").append(i).append("/file-")
+                    .append(random.nextInt(100000)).append("</file>");
+            }
+            xml.append("</package>");
+            packages.add(xml.toString());
+        }
+        return packages;
+    }
+
+    /**
+     * One gzipped repodata file written to memory
+     */
+    private static class Output {
+        private final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        private final CompressingDigestOutputWriter file;
+        private final BufferedWriter writer;
+        private byte[] bytes;
+        private String compressedChecksum;
+        private String uncompressedChecksum;
+
+        Output() throws Exception {
+            file = new CompressingDigestOutputWriter(stream, "SHA-256");
+            writer = new BufferedWriter(new OutputStreamWriter(file));
+        }
+    }
+}
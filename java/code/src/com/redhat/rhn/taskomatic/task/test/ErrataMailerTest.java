@@ -14,6 +14,7 @@
  */
 package com.redhat.rhn.taskomatic.task.test;
 
+import com.redhat.rhn.common.db.datasource.RowHandler;
 import com.redhat.rhn.domain.channel.Channel;
 import com.redhat.rhn.domain.channel.test.ChannelFactoryTest;
 import com.redhat.rhn.domain.errata.Errata;
@@ -35,17 +36,15 @@ public class ErrataMailerTest extends BaseTestCaseWithUser {
         // We still test the majority of the stuff in ErrataMailer(), just not
         // the queries that get all the users and errata.
         ErrataMailer em = new ErrataMailer() {
-            protected List getOrgRelevantServers(Long errataId, Long orgId,
-                    Long channelId) {
-                List retval = new LinkedList();
-                Map row = new HashMap();
+            protected void processOrgRelevantServers(Long errataId, Long orgId,
+                    Long channelId, RowHandler<Map<String, Object>> handler) {
+                Map<String, Object> row = new HashMap<String, Object>();
                 row.put("server_id", 5000);
                 row.put("name", "test_client_hostname");
                 row.put("release", "test_release");
                 row.put("arch", "test_arch");
                 row.put("user_id", user.getId());   // existing user id needed
-                retval.add(row);
-                return retval;
+                handler.handleRow(row);
             }
 
             protected List getErrataToProcess() {
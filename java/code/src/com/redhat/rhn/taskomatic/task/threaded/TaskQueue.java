@@ -14,31 +14,55 @@
  */
 package com.redhat.rhn.taskomatic.task.threaded;
 
+import com.redhat.rhn.common.conf.Config;
 import com.redhat.rhn.common.hibernate.HibernateFactory;
 import com.redhat.rhn.taskomatic.TaskoRun;
 
+import java.util.Iterator;
 import java.util.List;
-
-import EDU.oswego.cs.dl.util.concurrent.Channel;
-import EDU.oswego.cs.dl.util.concurrent.LinkedQueue;
-import EDU.oswego.cs.dl.util.concurrent.PooledExecutor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.AbstractQueuedSynchronizer;
 
 /**
  * Generic threaded queue suitable for use wherever Taskomatic
  * tasks need to process a number of work items in parallel.
+ *
+ * Work items run on a work-stealing pool of getMaxWorkers() threads that is
+ * created once and kept for the lifetime of the queue. If
+ * taskomatic.&lt;queue name&gt;_backlog is set, run() waits while that many
+ * items are waiting for a worker thread.
  * @version $Rev$
  */
 public class TaskQueue {
 
+    private final String name;
     private QueueDriver queueDriver;
-    private Channel workers = new LinkedQueue();
-    private PooledExecutor executor = null;
-    private int executingWorkers = 0;
-    private int queueSize = 0;
-    private byte[] emptyQueueWait = new byte[0];
-    private boolean taskQueueDone = true;
+    private ForkJoinPool executor = null;
+    private Semaphore backlog = null;
+    private final CompletionLatch pending = new CompletionLatch();
+    private final AtomicInteger executingWorkers = new AtomicInteger();
+    private final AtomicLong completedItems = new AtomicLong();
+    private final AtomicLong totalWaitTime = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private final AtomicLong maxLatency = new AtomicLong();
     private TaskoRun queueRun = null;
 
+    /**
+     * Constructor
+     * @param nameIn name of the queue
+     */
+    public TaskQueue(String nameIn) {
+        name = nameIn;
+        int size = Config.get().getInt("taskomatic." + name + "_backlog", 0);
+        if (size > 0) {
+            backlog = new Semaphore(size);
+        }
+    }
+
     /**
      * Store the QueueDriver instance used when run() is called
      * @param driver to be used as the current QueueDriver
@@ -56,50 +80,68 @@ public class TaskQueue {
     }
 
     /**
-     * Callback all workers should call when starting
-     * to process work
+     * Returns the number of currently executing workers
+     * This should never be more than the thread pool's
+     * maximum size
+     * @return number of currently executing workers
      */
-    public synchronized void workerStarting() {
-        executingWorkers++;
+    public int getExecutingWorkerCount() {
+        return executingWorkers.get();
     }
 
     /**
-     * Callback all workers should call when
-     * finished with their work item
+     * Returns the number of workers pending, either waiting for a thread or
+     * running
+     * @return number of workers pending
      */
-    public synchronized void workerDone() {
-        executingWorkers--;
-        queueSize--;
-        if (executingWorkers < 0) {
-            executingWorkers = 0;
-        }
-        if (queueSize < 0) {
-            queueSize = 0;
-        }
-        if (executingWorkers == 0) {
-            synchronized (emptyQueueWait) {
-                emptyQueueWait.notifyAll();
-            }
-            taskQueueDone = true;
+    public int getQueueSize() {
+        return pending.getCount();
+    }
+
+    /**
+     * Returns the share of worker threads busy right now
+     * @return utilization between 0 and 1
+     */
+    public double getWorkerUtilization() {
+        ForkJoinPool pool = executor;
+        if (pool == null) {
+            return 0;
         }
+        return (double) executingWorkers.get() / pool.getParallelism();
     }
 
     /**
-     * Returns the number of currently executing workers
-     * This should never be more than the thread pool's
-     * maximum size
-     * @return number of currently executing workers
+     * Returns the number of work items finished since the queue was created
+     * @return number of finished work items
      */
-    public int getExecutingWorkerCount() {
-        return executingWorkers;
+    public long getCompletedCount() {
+        return completedItems.get();
     }
 
     /**
-     * Returns the number of workers pending
-     * @return number of workers pending
+     * Returns the average time work items waited for a worker thread
+     * @return average wait time in milliseconds
      */
-    public int getQueueSize() {
-        return queueSize;
+    public long getAverageWaitTime() {
+        long count = completedItems.get();
+        return count == 0 ? 0 : totalWaitTime.get() / count;
+    }
+
+    /**
+     * Returns the average time from queueing a work item until it finished
+     * @return average latency in milliseconds
+     */
+    public long getAverageLatency() {
+        long count = completedItems.get();
+        return count == 0 ? 0 : totalLatency.get() / count;
+    }
+
+    /**
+     * Returns the longest time from queueing a work item until it finished
+     * @return maximum latency in milliseconds
+     */
+    public long getMaxLatency() {
+        return maxLatency.get();
     }
 
     /**
@@ -109,19 +151,18 @@ public class TaskQueue {
     public void run() {
         setupQueue();
         List candidates = queueDriver.getCandidates();
-        queueSize += candidates.size();
-        if (queueSize > 0) {
-            queueDriver.getLogger().info("In the queue: " + queueSize);
+        if (getQueueSize() + candidates.size() > 0) {
+            queueDriver.getLogger().info("In the queue: " +
+                    (getQueueSize() + candidates.size()));
         }
-        while (candidates.size() > 0 && queueDriver.canContinue()) {
-            Object candidate = candidates.remove(0);
-            QueueWorker worker = queueDriver.makeWorker(candidate);
+        for (Iterator iter = candidates.iterator();
+                iter.hasNext() && queueDriver.canContinue();) {
+            QueueWorker worker = queueDriver.makeWorker(iter.next());
             worker.setParentQueue(this);
             try {
-                queueDriver.getLogger().debug("Putting worker");
-                workers.put(worker);
-                queueDriver.getLogger().debug("Put worker");
-                unsetTaskQueueDone();
+                if (backlog != null) {
+                    backlog.acquire();
+                }
             }
             catch (InterruptedException e) {
                 queueDriver.getLogger().error(e);
@@ -130,10 +171,19 @@ public class TaskQueue {
                 HibernateFactory.getSession();
                 return;
             }
+            queueDriver.getLogger().debug("Putting worker");
+            pending.countUp();
+            executor.execute(new WorkItem(worker));
         }
         if (isTaskQueueDone()) {
             // everything done
             queueDriver.getLogger().debug("Finishing run " + queueRun.getId());
+            if (queueDriver.getLogger().isDebugEnabled()) {
+                queueDriver.getLogger().debug("Work items finished: " + getCompletedCount() +
+                        ", average wait " + getAverageWaitTime() + " ms, average latency " +
+                        getAverageLatency() + " ms, maximum latency " + getMaxLatency() +
+                        " ms");
+            }
             queueRun.finished();
             queueRun.saveStatus(TaskoRun.STATUS_FINISHED);
             HibernateFactory.commitTransaction();
@@ -143,41 +193,35 @@ public class TaskQueue {
     }
 
     /**
-     * Waits indefinitely until the queue has emptied of all workers
+     * Waits until the queue has emptied of all workers
      * @throws InterruptedException the wait is interrupted
      */
     public void waitForEmptyQueue() throws InterruptedException {
-        synchronized (emptyQueueWait) {
-            emptyQueueWait.wait();
-        }
+        pending.await();
     }
 
     void shutdown() {
-        executor.shutdownNow();
-        while (!executor.isTerminatedAfterShutdown()) {
-            try {
-                Thread.sleep(100);
-            }
-            catch (InterruptedException e) {
-                queueDriver.getLogger().error(e);
-                return;
+        ForkJoinPool pool = executor;
+        if (pool == null) {
+            return;
+        }
+        pool.shutdownNow();
+        try {
+            while (!pool.awaitTermination(100, TimeUnit.MILLISECONDS)) {
+                queueDriver.getLogger().debug("Waiting for workers to stop");
             }
         }
+        catch (InterruptedException e) {
+            queueDriver.getLogger().error(e);
+        }
     }
 
-    private void setupQueue() {
-        if (executor != null) {
-            executor.shutdownAfterProcessingCurrentlyQueuedTasks();
-            executor = null;
+    private synchronized void setupQueue() {
+        if (executor == null || executor.isShutdown()) {
+            // asyncMode: local queues are FIFO, as the items never fork
+            executor = new ForkJoinPool(Math.max(1, queueDriver.getMaxWorkers()),
+                    new TaskThreadFactory(name), null, true);
         }
-        int maxPoolSize = queueDriver.getMaxWorkers();
-        executor = new PooledExecutor(workers);
-        executor.waitWhenBlocked();
-        executor.setThreadFactory(new TaskThreadFactory());
-        executor.setKeepAliveTime(5000);
-        executor.setMinimumPoolSize(1);
-        executor.setMaximumPoolSize(maxPoolSize);
-        executor.createThreads(maxPoolSize);
     }
 
     /**
@@ -211,11 +255,96 @@ public class TaskQueue {
         return queueRun;
     }
 
-    private synchronized boolean isTaskQueueDone() {
-        return taskQueueDone;
+    private boolean isTaskQueueDone() {
+        return pending.getCount() == 0;
+    }
+
+    private void workerDone(long waitTime, long latency) {
+        executingWorkers.decrementAndGet();
+        completedItems.incrementAndGet();
+        totalWaitTime.addAndGet(waitTime);
+        totalLatency.addAndGet(latency);
+        long max = maxLatency.get();
+        while (latency > max && !maxLatency.compareAndSet(max, latency)) {
+            max = maxLatency.get();
+        }
+        pending.countDown();
+    }
+
+    /**
+     * Runs a worker and keeps the queue figures up to date.
+     */
+    private final class WorkItem implements Runnable {
+
+        private final QueueWorker worker;
+        private final long queued = System.currentTimeMillis();
+
+        WorkItem(QueueWorker workerIn) {
+            worker = workerIn;
+        }
+
+        public void run() {
+            if (backlog != null) {
+                backlog.release();
+            }
+            long start = System.currentTimeMillis();
+            executingWorkers.incrementAndGet();
+            try {
+                worker.run();
+            }
+            catch (RuntimeException e) {
+                queueDriver.getLogger().error(e);
+            }
+            finally {
+                workerDone(start - queued, System.currentTimeMillis() - queued);
+            }
+        }
     }
 
-    private synchronized void unsetTaskQueueDone() {
-        taskQueueDone = false;
+    /**
+     * Counts work items that have been queued and have not finished yet, and
+     * releases waiters once the count drops to zero. Built like
+     * CountDownLatch, but the count can go up again.
+     */
+    private static final class CompletionLatch extends AbstractQueuedSynchronizer {
+
+        private static final long serialVersionUID = -4410592638012432618L;
+
+        void countUp() {
+            for (;;) {
+                int count = getState();
+                if (compareAndSetState(count, count + 1)) {
+                    return;
+                }
+            }
+        }
+
+        void countDown() {
+            releaseShared(1);
+        }
+
+        int getCount() {
+            return getState();
+        }
+
+        void await() throws InterruptedException {
+            acquireSharedInterruptibly(1);
+        }
+
+        protected int tryAcquireShared(int ignored) {
+            return getState() == 0 ? 1 : -1;
+        }
+
+        protected boolean tryReleaseShared(int ignored) {
+            for (;;) {
+                int count = getState();
+                if (count == 0) {
+                    return false;
+                }
+                if (compareAndSetState(count, count - 1)) {
+                    return count == 1;
+                }
+            }
+        }
     }
 }
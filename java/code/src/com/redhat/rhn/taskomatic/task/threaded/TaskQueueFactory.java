@@ -70,7 +70,7 @@ public class TaskQueueFactory {
         synchronized (queues) {
             retval = (TaskQueue) queues.get(name);
             if (retval == null) {
-                retval = new TaskQueue();
+                retval = new TaskQueue(name);
                 QueueDriver driver = (QueueDriver) driverClass.newInstance();
                 driver.setLogger(loggerIn);
                 driver.initialize();
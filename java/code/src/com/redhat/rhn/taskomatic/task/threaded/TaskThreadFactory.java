@@ -14,21 +14,44 @@
  */
 package com.redhat.rhn.taskomatic.task.threaded;
 
-import EDU.oswego.cs.dl.util.concurrent.ThreadFactory;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * ThreadFactory impl for Taskomatic
  * @version $Rev$
  */
-public class TaskThreadFactory implements ThreadFactory {
+public class TaskThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+
+    private final String queueName;
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    /**
+     * Constructor
+     * @param queueNameIn name of the queue the threads work for
+     */
+    public TaskThreadFactory(String queueNameIn) {
+        queueName = queueNameIn;
+    }
 
     /**
      * {@inheritDoc}
      */
-    public Thread newThread(Runnable task) {
-        Thread retval = new Thread(task);
+    public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+        ForkJoinWorkerThread retval = new TaskThread(pool);
+        retval.setName(queueName + "-" + threadCount.incrementAndGet());
         retval.setDaemon(true);
         return retval;
     }
 
+    /**
+     * Worker thread of a TaskQueue
+     */
+    private static class TaskThread extends ForkJoinWorkerThread {
+
+        TaskThread(ForkJoinPool pool) {
+            super(pool);
+        }
+    }
 }
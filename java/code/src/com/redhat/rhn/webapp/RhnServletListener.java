@@ -17,6 +17,7 @@ package com.redhat.rhn.webapp;
 import com.redhat.rhn.common.hibernate.HibernateFactory;
 import com.redhat.rhn.common.messaging.MessageQueue;
 import com.redhat.rhn.manager.satellite.UpgradeCommand;
+import com.redhat.rhn.manager.session.SessionExpiryCoalescer;
 
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
@@ -116,6 +117,8 @@ public class RhnServletListener implements ServletContextListener {
         startHibernate();
         logStart("Hibernate");
 
+        SessionExpiryCoalescer.startFlushing();
+
         log.debug("Starting upgrade check");
         executeUpgradeStep();
     }
@@ -133,6 +136,8 @@ public class RhnServletListener implements ServletContextListener {
         stopMessaging();
         logStop("Messaging");
 
+        SessionExpiryCoalescer.stopFlushing();
+
         stopHibernate();
         logStop("Hibernate");
 
@@ -0,0 +1,28 @@
+--
+-- Copyright (c) 2018 Red Hat, Inc.
+--
+-- This software is licensed to you under the GNU General Public License,
+-- version 2 (GPLv2). There is NO WARRANTY for this software, express or
+-- implied, including the implied warranties of MERCHANTABILITY or FITNESS
+-- FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+-- along with this software; if not, see
+-- http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+--
+-- Red Hat trademarks are not licensed under GPLv2. No permission is
+-- granted to use or replicate Red Hat trademarks that are incorporated
+-- in this software or its documentation.
+--
+
+
+-- records that an object the search server indexes was inserted, updated
+-- or deleted; the search server reindexes the queued objects in order
+
+CREATE OR REPLACE PROCEDURE
+queue_indexer(object_type_in IN VARCHAR2, object_id_in IN NUMBER)
+IS
+BEGIN
+    INSERT INTO rhnIndexerQueue (id, object_type, object_id)
+    VALUES (rhn_indexer_queue_id_seq.nextval, object_type_in, object_id_in);
+END queue_indexer;
+/
+SHOW ERRORS
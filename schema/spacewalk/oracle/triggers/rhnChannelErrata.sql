@@ -23,3 +23,14 @@ begin
 end rhn_channel_errata_mod_trig;
 /
 show errors
+
+-- queues the erratum for the search server
+create or replace trigger
+rhn_channel_errata_idx_trig
+after insert or delete on rhnChannelErrata
+for each row
+begin
+        queue_indexer('errata', nvl(:new.errata_id, :old.errata_id));
+end;
+/
+show errors
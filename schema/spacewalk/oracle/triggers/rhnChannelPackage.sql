@@ -26,3 +26,14 @@ begin
 end rhn_channel_package_mod_trig;
 /
 show errors
+
+-- queues the package for the search server
+create or replace trigger
+rhn_channel_package_idx_trig
+after insert or delete on rhnChannelPackage
+for each row
+begin
+        queue_indexer('package', nvl(:new.package_id, :old.package_id));
+end;
+/
+show errors
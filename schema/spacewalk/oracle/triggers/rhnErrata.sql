@@ -30,3 +30,14 @@ begin
 end rhn_errata_mod_trig;
 /
 show errors
+
+-- queues the erratum for the search server
+create or replace trigger
+rhn_errata_indexer_trig
+after insert or update or delete on rhnErrata
+for each row
+begin
+        queue_indexer('errata', nvl(:new.id, :old.id));
+end;
+/
+show errors
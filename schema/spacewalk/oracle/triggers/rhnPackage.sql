@@ -51,3 +51,14 @@ begin
 end;
 /
 show errors
+
+-- queues the package for the search server
+create or replace trigger
+rhn_package_indexer_trig
+after insert or update or delete on rhnPackage
+for each row
+begin
+        queue_indexer('package', nvl(:new.id, :old.id));
+end;
+/
+show errors
@@ -23,3 +23,14 @@ begin
 end;
 /
 show errors
+
+-- queues the server for the search server
+create or replace trigger
+rhn_server_indexer_trig
+after insert or update or delete on rhnServer
+for each row
+begin
+        queue_indexer('server', nvl(:new.id, :old.id));
+end;
+/
+show errors
@@ -48,3 +48,14 @@ EXCEPTION
 END;
 /
 SHOW ERRORS
+
+-- queues the server for the search server
+create or replace trigger
+rhn_sg_member_indexer_trig
+after insert or delete on rhnServerGroupMembers
+for each row
+begin
+        queue_indexer('server', nvl(:new.server_id, :old.server_id));
+end;
+/
+show errors
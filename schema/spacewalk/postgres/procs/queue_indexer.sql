@@ -0,0 +1,30 @@
+-- oracle equivalent source sha1 3e00e3c5bcb797909c05e20c1b3bf973f8a94035
+--
+-- Copyright (c) 2018 Red Hat, Inc.
+--
+-- This software is licensed to you under the GNU General Public License,
+-- version 2 (GPLv2). There is NO WARRANTY for this software, express or
+-- implied, including the implied warranties of MERCHANTABILITY or FITNESS
+-- FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+-- along with this software; if not, see
+-- http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+--
+-- Red Hat trademarks are not licensed under GPLv2. No permission is
+-- granted to use or replicate Red Hat trademarks that are incorporated
+-- in this software or its documentation.
+--
+
+
+-- records that an object the search server indexes was inserted, updated
+-- or deleted; the search server reindexes the queued objects in order
+
+CREATE OR REPLACE FUNCTION
+queue_indexer(object_type_in IN VARCHAR, object_id_in IN NUMERIC)
+RETURNS VOID
+AS
+$$
+BEGIN
+    INSERT INTO rhnIndexerQueue (id, object_type, object_id)
+    VALUES (nextval('rhn_indexer_queue_id_seq'), object_type_in, object_id_in);
+END;
+$$ LANGUAGE plpgsql;
@@ -1,4 +1,4 @@
--- oracle equivalent source sha1 3caf6c37aad78b3f7aa919ae8fd4895a0e187c14
+-- oracle equivalent source sha1 6e65d3cc8c166010a6a1d4c5d64c580d36f2d9a3
 
 create or replace function rhn_channel_errata_mod_trig_fun() returns trigger as
 $$
@@ -14,3 +14,22 @@ rhn_channel_errata_mod_trig
 before insert or update on rhnChannelErrata
 for each row
 execute procedure rhn_channel_errata_mod_trig_fun();
+
+-- queues the erratum for the search server
+create or replace function rhn_channel_errata_idx_trig_fun() returns trigger as
+$$
+begin
+    if tg_op = 'DELETE' then
+        perform queue_indexer('errata', old.errata_id);
+        return old;
+    end if;
+    perform queue_indexer('errata', new.errata_id);
+    return new;
+end;
+$$ language plpgsql;
+
+create trigger
+rhn_channel_errata_idx_trig
+after insert or delete on rhnChannelErrata
+for each row
+execute procedure rhn_channel_errata_idx_trig_fun();
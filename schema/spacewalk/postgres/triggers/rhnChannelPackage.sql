@@ -1,4 +1,4 @@
--- oracle equivalent source sha1 282815dfe6aeae673360c0eebcfd2059e3144e73
+-- oracle equivalent source sha1 4030037a7a418a338fad2d07d246bf0fc65ff0b0
 --
 -- Copyright (c) 2008--2015 Red Hat, Inc.
 --
@@ -28,3 +28,22 @@ rhn_channel_package_mod_trig
 before insert or update on rhnChannelPackage
 for each row
 execute procedure rhn_channel_package_mod_trig_fun();
+
+-- queues the package for the search server
+create or replace function rhn_channel_package_idx_trig_fun() returns trigger as
+$$
+begin
+    if tg_op = 'DELETE' then
+        perform queue_indexer('package', old.package_id);
+        return old;
+    end if;
+    perform queue_indexer('package', new.package_id);
+    return new;
+end;
+$$ language plpgsql;
+
+create trigger
+rhn_channel_package_idx_trig
+after insert or delete on rhnChannelPackage
+for each row
+execute procedure rhn_channel_package_idx_trig_fun();
@@ -1,4 +1,4 @@
--- oracle equivalent source sha1 7b707c1278cbf541c8908ad8c2a6298b3e19c345
+-- oracle equivalent source sha1 5bc72d301fe3d727b98aca00fa3707df6c6e4732
 
 --
 -- Copyright (c) 2008--2015 Red Hat, Inc.
@@ -59,3 +59,22 @@ rhn_errata_upd_trig
 before update on rhnErrata
 for each row
 execute procedure rhn_errata_upd_trig_fun();
+
+-- queues the erratum for the search server
+create or replace function rhn_errata_indexer_trig_fun() returns trigger as
+$$
+begin
+    if tg_op = 'DELETE' then
+        perform queue_indexer('errata', old.id);
+        return old;
+    end if;
+    perform queue_indexer('errata', new.id);
+    return new;
+end;
+$$ language plpgsql;
+
+create trigger
+rhn_errata_indexer_trig
+after insert or update or delete on rhnErrata
+for each row
+execute procedure rhn_errata_indexer_trig_fun();
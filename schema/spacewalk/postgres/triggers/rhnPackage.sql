@@ -1,4 +1,4 @@
--- oracle equivalent source sha1 9433fdd8b4ba943878354cf4c5967bdab4e6bb3a
+-- oracle equivalent source sha1 defc8b3fd7e6fec67409105160589b173e9004b7
 --
 -- Copyright (c) 2008--2012 Red Hat, Inc.
 --
@@ -65,3 +65,22 @@ before insert or update on rhnPackage
 for each row
 execute procedure rhn_package_mod_trig_fun();
 
+
+-- queues the package for the search server
+create or replace function rhn_package_indexer_trig_fun() returns trigger as
+$$
+begin
+    if tg_op = 'DELETE' then
+        perform queue_indexer('package', old.id);
+        return old;
+    end if;
+    perform queue_indexer('package', new.id);
+    return new;
+end;
+$$ language plpgsql;
+
+create trigger
+rhn_package_indexer_trig
+after insert or update or delete on rhnPackage
+for each row
+execute procedure rhn_package_indexer_trig_fun();
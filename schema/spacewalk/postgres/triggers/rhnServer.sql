@@ -1,4 +1,4 @@
--- oracle equivalent source sha1 f673fbf2b43479d83cac99278879580d29318869
+-- oracle equivalent source sha1 87b44557f2fc330b0801f237afb3947badf55997
 
 create or replace function rhn_server_mod_trig_fun() returns trigger as
 $$
@@ -14,3 +14,22 @@ before insert or update on rhnServer
 for each row
 execute procedure rhn_server_mod_trig_fun();
 
+
+-- queues the server for the search server
+create or replace function rhn_server_indexer_trig_fun() returns trigger as
+$$
+begin
+    if tg_op = 'DELETE' then
+        perform queue_indexer('server', old.id);
+        return old;
+    end if;
+    perform queue_indexer('server', new.id);
+    return new;
+end;
+$$ language plpgsql;
+
+create trigger
+rhn_server_indexer_trig
+after insert or update or delete on rhnServer
+for each row
+execute procedure rhn_server_indexer_trig_fun();
@@ -1,4 +1,4 @@
--- oracle equivalent source sha1 63ba8cc77b88a990bc8717f94c16a9365c22a9e3
+-- oracle equivalent source sha1 c4d73c8ccb79d47203291ff168e6e88cdeab1b35
 
 --
 -- Copyright (c) 2008--2015 Red Hat, Inc.
@@ -67,3 +67,22 @@ rhn_server_group_org_mapping
 BEFORE INSERT OR UPDATE ON rhnServerGroupMembers
 FOR EACH ROW
 EXECUTE PROCEDURE rhn_server_group_org_mapping_fun();
+
+-- queues the server for the search server
+create or replace function rhn_sg_member_indexer_trig_fun() returns trigger as
+$$
+begin
+    if tg_op = 'DELETE' then
+        perform queue_indexer('server', old.server_id);
+        return old;
+    end if;
+    perform queue_indexer('server', new.server_id);
+    return new;
+end;
+$$ language plpgsql;
+
+create trigger
+rhn_sg_member_indexer_trig
+after insert or delete on rhnServerGroupMembers
+for each row
+execute procedure rhn_sg_member_indexer_trig_fun();
@@ -0,0 +1,29 @@
+--
+-- Copyright (c) 2018 Red Hat, Inc.
+--
+-- This software is licensed to you under the GNU General Public License,
+-- version 2 (GPLv2). There is NO WARRANTY for this software, express or
+-- implied, including the implied warranties of MERCHANTABILITY or FITNESS
+-- FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+-- along with this software; if not, see
+-- http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+--
+-- Red Hat trademarks are not licensed under GPLv2. No permission is
+-- granted to use or replicate Red Hat trademarks that are incorporated
+-- in this software or its documentation.
+--
+
+
+CREATE TABLE rhnIndexerQueue
+(
+    id           NUMBER NOT NULL
+                     CONSTRAINT rhn_indexer_queue_id_pk PRIMARY KEY,
+    object_type  VARCHAR2(40) NOT NULL,
+    object_id    NUMBER NOT NULL,
+    created      timestamp with local time zone
+                     DEFAULT (current_timestamp) NOT NULL
+)
+ENABLE ROW MOVEMENT
+;
+
+CREATE SEQUENCE rhn_indexer_queue_id_seq;
@@ -15,6 +15,7 @@
 
 package com.redhat.satellite.search.db;
 
+import org.apache.ibatis.session.ResultContext;
 import org.apache.ibatis.session.SqlSession;
 
 import java.sql.SQLException;
@@ -67,6 +68,49 @@ public class Query<T> {
         return retval;
     }
 
+    /**
+     * Hands the objects returned by the query to the handler one by one,
+     * without loading all of them into memory
+     * @param param query param
+     * @param handler called for every object
+     * @param <E> exception thrown by the handler
+     * @return number of objects returned by the query
+     * @throws SQLException something bad happened
+     * @throws E the handler failed, the rest of the results are skipped
+     */
+    @SuppressWarnings("unchecked")
+    public <E extends Exception> int stream(Object param,
+            final RecordHandler<T, E> handler) throws SQLException, E {
+        final int[] count = new int[1];
+        try {
+            session.select(queryName, param,
+                    new org.apache.ibatis.session.ResultHandler() {
+                public void handleResult(ResultContext context) {
+                    try {
+                        handler.handleRecord((T)context.getResultObject());
+                    }
+                    catch (Exception e) {
+                        throw new HandlerException(e);
+                    }
+                    count[0] = context.getResultCount();
+                }
+            });
+        }
+        catch (RuntimeException e) {
+            // mybatis wraps whatever the handler throws
+            for (Throwable t = e; t != null; t = t.getCause()) {
+                if (t instanceof HandlerException) {
+                    if (t.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException)t.getCause();
+                    }
+                    throw (E)t.getCause();
+                }
+            }
+            throw e;
+        }
+        return count[0];
+    }
+
     /**
      * Load single object from query
      * @param param query apram
@@ -87,4 +131,16 @@ public class Query<T> {
     public T load() throws SQLException {
         return (T)session.selectOne(queryName);
     }
+
+    /**
+     * Carries the exception of a RecordHandler through mybatis
+     */
+    private static class HandlerException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        HandlerException(Exception cause) {
+            super(cause);
+        }
+    }
 }
@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.satellite.search.db.models;
+
+/**
+ * Entry of the indexer queue, an object which was inserted, updated or
+ * deleted since the search server last saw it
+ * @version $Rev$
+ */
+public class IndexerQueueEntry {
+    private long id;
+    private String objectType;
+    private long objectId;
+
+    /**
+     * @return id of the entry, entries are processed in order of id
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @param idIn id of the entry
+     */
+    public void setId(long idIn) {
+        id = idIn;
+    }
+
+    /**
+     * @return index the object belongs to
+     */
+    public String getObjectType() {
+        return objectType;
+    }
+
+    /**
+     * @param objectTypeIn index the object belongs to
+     */
+    public void setObjectType(String objectTypeIn) {
+        objectType = objectTypeIn;
+    }
+
+    /**
+     * @return id of the object
+     */
+    public long getObjectId() {
+        return objectId;
+    }
+
+    /**
+     * @param objectIdIn id of the object
+     */
+    public void setObjectId(long objectIdIn) {
+        objectId = objectIdIn;
+    }
+}
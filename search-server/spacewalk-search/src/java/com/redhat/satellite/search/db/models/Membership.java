@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.satellite.search.db.models;
+
+/**
+ * Membership of a record in a channel or server group, used to index who
+ * may see the record
+ * @version $Rev$
+ */
+public class Membership {
+    private long id;
+    private long groupId;
+
+    /**
+     * @return id of the record
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @param idIn id of the record
+     */
+    public void setId(long idIn) {
+        id = idIn;
+    }
+
+    /**
+     * @return id of the channel or server group
+     */
+    public long getGroupId() {
+        return groupId;
+    }
+
+    /**
+     * @param groupIdIn id of the channel or server group
+     */
+    public void setGroupId(long groupIdIn) {
+        groupId = groupIdIn;
+    }
+}
@@ -82,6 +82,8 @@ public class Server extends GenericRecord {
 
     private String uuid;
 
+    private Long orgId;
+
     /**
      * @return the name
      */
@@ -731,4 +733,18 @@ public class Server extends GenericRecord {
             this.uuid = null;
         }
     }
+
+    /**
+     * @return the id of the org the server belongs to
+     */
+    public Long getOrgId() {
+        return orgId;
+    }
+
+    /**
+     * @param orgIdIn the id of the org the server belongs to
+     */
+    public void setOrgId(Long orgIdIn) {
+        this.orgId = orgIdIn;
+    }
 }
@@ -16,9 +16,11 @@
 package com.redhat.satellite.search.index;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
@@ -34,16 +36,27 @@ import org.apache.lucene.analysis.PerFieldAnalyzerWrapper;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.DateTools;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.Fieldable;
+import org.apache.lucene.document.MapFieldSelector;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
 import org.apache.lucene.queryParser.ParseException;
 import org.apache.lucene.queryParser.QueryParser;
 import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.HitCollector;
 import org.apache.lucene.search.Hits;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TopDocCollector;
+import org.apache.lucene.search.TopFieldDocCollector;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.LockObtainFailedException;
@@ -52,9 +65,11 @@ import org.apache.nutch.searcher.FetchedSegments;
 import org.apache.nutch.searcher.HitDetails;
 import org.apache.nutch.searcher.Summary;
 import org.apache.nutch.util.NutchConfiguration;
+import org.picocontainer.Startable;
 
 import com.redhat.satellite.search.config.Configuration;
 import com.redhat.satellite.search.index.builder.BuilderFactory;
+import com.redhat.satellite.search.index.ngram.EdgeNGramAnalyzer;
 import com.redhat.satellite.search.index.ngram.NGramAnalyzer;
 import com.redhat.satellite.search.index.ngram.NGramQueryParser;
 import com.redhat.satellite.search.rpc.handlers.IndexHandler;
@@ -64,9 +79,11 @@ import com.redhat.satellite.search.rpc.handlers.IndexHandler;
  *
  * @version $Rev$
  */
-public class IndexManager {
+public class IndexManager implements Startable {
 
     private static Logger log = Logger.getLogger(IndexManager.class);
+    // longest prefix of a name indexed for prefix lookups
+    private static final int MAX_NAME_PREFIX = 30;
     private String indexWorkDir;
     private int maxHits;
     private double score_threshold;
@@ -77,12 +94,24 @@ public class IndexManager {
     private int max_ngram;
     private boolean filterDocResults = false;
     private boolean explainResults = false;
+    private boolean planQueries = false;
     private AnalyzerFactory nutchAnalyzerFactory;
     // Name conflict with our Configuration class and Hadoop's
     private org.apache.hadoop.conf.Configuration nutchConf;
     private Map<String, String> docLocaleLookUp = new TreeMap<String, String>
                                                                                                 (String.CASE_INSENSITIVE_ORDER);
     private Map<String, FetchedSegments> docSegments;
+    private int commitDocs;
+    private long searcherRefreshInterval;
+    // keyed by index directory, one per index and docs locale
+    private Map<String, SearcherManager> searchers = new HashMap<String, SearcherManager>();
+    // keyed by index name
+    private Map<String, ManagedWriter> writers = new HashMap<String, ManagedWriter>();
+    // keyed by index name
+    private Map<String, IndexRebuild> rebuilds = new HashMap<String, IndexRebuild>();
+    private int rebuildThreads;
+    private VisibilityCache visibilityCache;
+    private QueryCache queryCache;
     /**
      * Constructor
      *
@@ -108,9 +137,46 @@ public class IndexManager {
         initDocLocaleLookup();
         filterDocResults = config.getBoolean("search.doc.limit_results");
         explainResults = config.getBoolean("search.log.explain.results");
+        planQueries = config.getBoolean("search.plan_ngram_queries");
+        commitDocs = config.getInt("search.index_commit_docs", 1000);
+        searcherRefreshInterval = config.getInt("search.searcher_refresh_interval", 5000);
+        rebuildThreads = config.getInt("search.rebuild_threads", 1);
+        visibilityCache = new VisibilityCache(
+                config.getInt("search.visibility_cache_ttl", 60000));
+        queryCache = new QueryCache(config.getInt("search.query_cache_size", 500));
         initDocSummary();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public void start() {
+    }
+
+    /**
+     * Commits pending changes and closes the searchers and writers
+     */
+    public synchronized void stop() {
+        for (IndexRebuild rebuild : rebuilds.values()) {
+            rebuild.close();
+        }
+        rebuilds.clear();
+        for (SearcherManager searcher : searchers.values()) {
+            searcher.close();
+        }
+        searchers.clear();
+        for (Map.Entry<String, ManagedWriter> entry : writers.entrySet()) {
+            try {
+                entry.getValue().close();
+                unlockIndex(entry.getKey());
+            }
+            catch (IOException e) {
+                log.error("Error closing index " + entry.getKey(), e);
+            }
+        }
+        writers.clear();
+    }
+
 
     /**
      * @return String of the index working directory
@@ -154,19 +220,45 @@ public class IndexManager {
     public List<Result> search(String indexName, String query, String lang,
             boolean isFineGrained)
             throws IndexingException, QueryParseException {
-        IndexSearcher searcher = null;
-        IndexReader reader = null;
+        return search(indexName, query, lang, isFineGrained, null);
+    }
+
+    /**
+     * Query a index, returning only the documents accepted by the filter
+     *
+     * @param indexName name of the index
+     * @param query search query
+     * @param lang language
+     * @param isFineGrained see search(String, String, String, boolean)
+     * @param filter documents to search, null for all
+     * @return list of hits
+     * @throws IndexingException if there is a problem indexing the content.
+     * @throws QueryParseException
+     */
+    public List<Result> search(String indexName, String query, String lang,
+            boolean isFineGrained, Filter filter)
+            throws IndexingException, QueryParseException {
+        SearcherManager manager = null;
+        SearcherManager.ManagedSearcher managed = null;
         List<Result> retval = null;
         try {
-            reader = getIndexReader(indexName, lang);
-            searcher = getIndexSearcher(indexName, lang);
-            QueryParser qp = getQueryParser(indexName, lang, isFineGrained);
+            manager = getSearcherManager(indexName, lang);
+            managed = manager.acquire();
+            IndexReader reader = managed.getReader();
+            QueryCache.Key key = new QueryCache.Key(indexName, reader.getVersion(),
+                    lang, query, isFineGrained, filter);
+            List<Result> cached = queryCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            IndexSearcher searcher = managed.getSearcher();
+            QueryParser qp = getQueryParser(indexName, lang, isFineGrained, reader);
             Query q = qp.parse(query);
             if (log.isDebugEnabled()) {
                 log.debug("Original query was: " + query);
                 log.debug("Parsed Query is: " + q.toString());
             }
-            Hits hits = searcher.search(q);
+            Hits hits = searcher.search(q, filter);
             if (log.isDebugEnabled()) {
                 log.debug(hits.length() + " results were found.");
             }
@@ -181,6 +273,7 @@ public class IndexManager {
                 throw new QueryParseException(e);
             }
             retval = processHits(indexName, hits, queryTerms, query, lang);
+            queryCache.put(key, retval);
             if (explainResults) {
                 debugExplainResults(indexName, hits, searcher, q, queryTerms);
             }
@@ -199,52 +292,252 @@ public class IndexManager {
             throw new QueryParseException("Could not parse query: '" + query + "'");
         }
         finally {
-            try {
-                if (searcher != null) {
-                    searcher.close();
-                }
-                if (reader != null) {
-                    reader.close();
+            if (managed != null) {
+                manager.release(managed);
+            }
+        }
+        return retval;
+    }
+
+
+    /**
+     * Query a index for one page of hits. Only the best offset + limit hits
+     * are kept while searching and only the documents of the page are
+     * loaded, so the cost of a query does not grow with the number of its
+     * hits. The hits are screened by the score thresholds of the index like
+     * the ones returned by search().
+     *
+     * @param indexName name of the index
+     * @param query search query
+     * @param lang language
+     * @param isFineGrained see search(String, String, String, boolean)
+     * @param filter documents to search, null for all
+     * @param offset number of hits to skip
+     * @param limit maximum number of hits of the page
+     * @param sort field the hits are ordered by, prefixed with "-" for
+     * descending order, empty or "score" to order them by relevance
+     * @return the page and the total number of hits
+     * @throws IndexingException if there is a problem indexing the content.
+     * @throws QueryParseException
+     */
+    public ResultPage searchPage(String indexName, String query, String lang,
+            boolean isFineGrained, Filter filter, int offset, int limit, String sort)
+            throws IndexingException, QueryParseException {
+        if (offset < 0 || limit < 1) {
+            throw new QueryParseException("Invalid page: offset " + offset +
+                    ", limit " + limit);
+        }
+        SearcherManager manager = null;
+        SearcherManager.ManagedSearcher managed = null;
+        try {
+            manager = getSearcherManager(indexName, lang);
+            managed = manager.acquire();
+            IndexReader reader = managed.getReader();
+            IndexSearcher searcher = managed.getSearcher();
+            Query q = getQueryParser(indexName, lang, isFineGrained, reader).parse(query);
+            Sort order = getSort(sort);
+            int numHits = (int) Math.min((long) offset + limit,
+                    Math.max(reader.maxDoc(), 1));
+
+            TopDocCollector top = null;
+            if (order == null) {
+                top = new TopDocCollector(numHits);
+            }
+            ScoreCollector scores = new ScoreCollector(top, 11);
+            searcher.search(q, filter, scores);
+            // scores are normalized like the ones of Hits
+            float norm = scores.getScore(0) > 1.0f ? 1.0f / scores.getScore(0) : 1.0f;
+            float minScore = getMinimumScore(indexName, query, scores, norm) / norm;
+            int total = scores.countAtLeast(minScore);
+            if (order != null && offset < total) {
+                top = new TopFieldDocCollector(reader, order, numHits);
+                searcher.search(q, filter, new ThresholdCollector(top, minScore));
+            }
+
+            List<Result> retval = new ArrayList<Result>();
+            if (offset < total) {
+                Set<Term> queryTerms = new HashSet<Term>();
+                q.rewrite(reader).extractTerms(queryTerms);
+                ScoreDoc[] docs = top.topDocs().scoreDocs;
+                int end = Math.min(Math.min(docs.length, total), offset + limit);
+                for (int x = offset; x < end; x++) {
+                    retval.add(createResult(indexName, x, docs[x].score * norm,
+                            searcher.doc(docs[x].doc), queryTerms, query, lang));
                 }
             }
-            catch (IOException ex) {
-                throw new IndexingException(ex);
+            if (log.isDebugEnabled()) {
+                log.debug("Page " + offset + "+" + limit + " of " + total + " hits " +
+                        "out of " + scores.getCount() + " for: " + q);
+            }
+            return new ResultPage(total, retval);
+        }
+        catch (IOException e) {
+            throw new IndexingException(e);
+        }
+        catch (ParseException e) {
+            throw new QueryParseException("Could not parse query: '" + query + "'");
+        }
+        catch (RuntimeException e) {
+            // the field cache can't sort by a tokenized field
+            String message = e.getMessage();
+            if (message != null && message.contains("more terms than documents")) {
+                throw new QueryParseException("Could not sort by: '" + sort + "'", e);
+            }
+            throw e;
+        }
+        finally {
+            if (managed != null) {
+                manager.release(managed);
             }
         }
-        return retval;
     }
 
+    /**
+     * Whether a VisibilityFilter can be applied to an index, which is the
+     * case once all its documents were indexed with the visibility fields.
+     *
+     * @param indexName name of the index
+     * @param lang language
+     * @return true if the index can be filtered by visibility
+     * @throws IndexingException the index could not be read
+     */
+    public boolean isVisibilityIndexed(String indexName, String lang)
+        throws IndexingException {
+        SearcherManager manager = null;
+        SearcherManager.ManagedSearcher managed = null;
+        try {
+            manager = getSearcherManager(indexName, lang);
+            managed = manager.acquire();
+            return managed.isVisibilityIndexed();
+        }
+        catch (IOException e) {
+            // no index yet
+            return false;
+        }
+        finally {
+            if (managed != null) {
+                manager.release(managed);
+            }
+        }
+    }
 
     /**
-     * Create an empty index if it exists
+     * @return cache of the users' visibility filters
+     */
+    public VisibilityCache getVisibilityCache() {
+        return visibilityCache;
+    }
+
+    /**
+     * Number of changes after which an index is committed automatically.
+     * Indexing tasks record their progress once per this many documents.
+     * @return documents per commit
+     */
+    public int getCommitDocs() {
+        return commitDocs;
+    }
+
+    /**
+     * Number of threads indexing tasks rebuild an index with, 1 if indexes
+     * are built by one thread writing to the live index
+     * @return rebuild threads
+     */
+    public int getRebuildThreads() {
+        return rebuildThreads;
+    }
+
+    /**
+     * Starts a rebuild of an index from scratch. The live index keeps being
+     * searched and changed until finishRebuild() swaps the rebuilt index in.
      *
-     * @param indexName index to use
-     * @param lang language.
-     * @throws IndexingException something went wrong adding the document
+     * @param indexName index to rebuild
+     * @param lang language
+     * @return the rebuild, its parts are filled by the worker threads
+     * @throws IndexingException the index is already being rebuilt
      */
-    public void createIndex(String indexName, String lang)
+    public synchronized IndexRebuild startRebuild(String indexName, String lang)
         throws IndexingException {
+        if (rebuilds.containsKey(indexName)) {
+            throw new IndexingException("Index " + indexName +
+                    " is already being rebuilt");
+        }
+        File dir = new File(indexWorkDir + indexName + ".rebuild");
+        // left behind by a rebuild that did not finish
+        deleteDirectory(dir);
+        dir.mkdirs();
+        IndexRebuild rebuild = new IndexRebuild(indexName, dir,
+                getAnalyzer(indexName, lang));
+        rebuilds.put(indexName, rebuild);
+        log.info("Rebuilding index " + indexName + " in " + dir);
+        return rebuild;
+    }
 
+    /**
+     * Merges the parts of a rebuild and swaps the result in for the live
+     * index. Searches running on the old index finish on it, later ones see
+     * the rebuilt index.
+     *
+     * @param rebuild rebuild whose workers are done
+     * @throws IndexingException something went wrong writing the index
+     */
+    public void finishRebuild(IndexRebuild rebuild) throws IndexingException {
+        String indexName = rebuild.getIndexName();
         try {
-            IndexWriter writer = getIndexWriter(indexName, lang);
-            try {
-                writer.flush();
-            }
-            finally {
+            IndexWriter writer = rebuild.merge();
+            synchronized (this) {
                 try {
-                    writer.close();
+                    rebuild.replay(writer);
                 }
                 finally {
-                    // unlock it if it is locked.
+                    writer.close();
+                }
+                ManagedWriter live = writers.remove(indexName);
+                if (live != null) {
+                    live.close();
                     unlockIndex(indexName);
                 }
+                getSearcherManager(indexName, IndexHandler.DEFAULT_LANG).replace(
+                        rebuild.getMergedDirectory(),
+                        new File(rebuild.getDirectory(), "old"));
+                rebuilds.remove(indexName);
+                committed(indexName);
             }
+            log.info("Swapped in the rebuilt index " + indexName);
         }
-        catch (CorruptIndexException e) {
+        catch (IOException e) {
+            abortRebuild(rebuild);
             throw new IndexingException(e);
         }
-        catch (LockObtainFailedException e) {
-            throw new IndexingException(e);
+        deleteDirectory(rebuild.getDirectory());
+    }
+
+    /**
+     * Drops a rebuild, the live index is kept
+     *
+     * @param rebuild rebuild which failed
+     */
+    public void abortRebuild(IndexRebuild rebuild) {
+        synchronized (this) {
+            if (rebuilds.get(rebuild.getIndexName()) == rebuild) {
+                rebuilds.remove(rebuild.getIndexName());
+            }
+        }
+        log.warn("Dropping the rebuild of index " + rebuild.getIndexName());
+        rebuild.close();
+        deleteDirectory(rebuild.getDirectory());
+    }
+
+    /**
+     * Create an empty index if it exists
+     *
+     * @param indexName index to use
+     * @param lang language.
+     * @throws IndexingException something went wrong adding the document
+     */
+    public void createIndex(String indexName, String lang)
+        throws IndexingException {
+        try {
+            getWriter(indexName, lang);
         }
         catch (IOException e) {
             throw new IndexingException(e);
@@ -253,7 +546,8 @@ public class IndexManager {
 
 
     /**
-     * Adds a document to an index
+     * Adds a document to an index. The document is searchable once the
+     * changes of the index are committed, see commitIndex().
      *
      * @param indexName index to use
      * @param doc Document to be indexed.
@@ -262,34 +556,22 @@ public class IndexManager {
      */
     public void addToIndex(String indexName, Document doc, String lang)
         throws IndexingException {
-
+        record(indexName, null, doc);
         try {
-            IndexWriter writer = getIndexWriter(indexName, lang);
-            try {
-                writer.addDocument(doc);
-                writer.flush();
-            }
-            finally {
-                try {
-                    writer.close();
-                }
-                finally {
-                    // unlock it if it is locked.
-                    unlockIndex(indexName);
-                }
+            if (getWriter(indexName, lang).add(doc, getAnalyzer(indexName, lang))) {
+                committed(indexName);
             }
         }
-        catch (CorruptIndexException e) {
-            throw new IndexingException(e);
-        }
-        catch (LockObtainFailedException e) {
-            throw new IndexingException(e);
-        }
         catch (IOException e) {
             throw new IndexingException(e);
         }
     }
+
     /**
+     * Adds a document to an index, replacing the documents with the same
+     * value of the unique field. The document is searchable once the
+     * changes of the index are committed, see commitIndex().
+     *
      * @param indexName
      * @param doc document with data to index
      * @param uniqueField field in doc which identifies this uniquely
@@ -299,37 +581,17 @@ public class IndexManager {
     public void addUniqueToIndex(String indexName, Document doc,
             String uniqueField, String lang)
         throws IndexingException {
-        IndexReader reader = null;
-        int numFound = 0;
+        Term term = new Term(uniqueField, doc.get(uniqueField));
+        record(indexName, term, doc);
         try {
-            reader = getIndexReader(indexName, lang);
-            Term term = new Term(uniqueField, doc.get(uniqueField));
-            numFound = reader.docFreq(term);
-        }
-        catch (FileNotFoundException e) {
-            // Index doesn't exist, so this add will be unique
-            // we don't need to do anything/
+            if (getWriter(indexName, lang).update(term, doc,
+                    getAnalyzer(indexName, lang))) {
+                committed(indexName);
+            }
         }
         catch (IOException e) {
             throw new IndexingException(e);
         }
-        finally {
-            if (reader != null) {
-                try {
-                    reader.close();
-                }
-                catch (IOException e) {
-                    //
-                }
-            }
-        }
-        if (numFound > 0) {
-            log.info("Found " + numFound + " <" + indexName + " docs for " +
-                    uniqueField + ":" + doc.get(uniqueField) +
-                    " will remove them now.");
-            removeFromIndex(indexName, uniqueField, doc.get(uniqueField));
-        }
-        addToIndex(indexName, doc, lang);
     }
 
     /**
@@ -344,28 +606,132 @@ public class IndexManager {
             throws IndexingException {
         log.info("Removing <" + indexName + "> " + uniqueField + ":" +
                 objectId);
-        Term t = new Term(uniqueField, objectId);
-        IndexReader reader;
+        Term term = new Term(uniqueField, objectId);
+        record(indexName, term, null);
         try {
-            reader = getIndexReader(indexName, IndexHandler.DEFAULT_LANG);
-            try {
-                reader.deleteDocuments(t);
-                reader.flush();
-            }
-            finally {
-               if (reader != null) {
-                    reader.close();
-               }
+            if (getWriter(indexName, IndexHandler.DEFAULT_LANG).delete(term)) {
+                committed(indexName);
             }
         }
-        catch (CorruptIndexException e) {
+        catch (IOException e) {
+            throw new IndexingException(e);
+        }
+        commitIndex(indexName);
+    }
+
+    /**
+     * Remove documents from an index in one batch
+     *
+     * @param indexName index to use
+     * @param uniqueField field name which represents this data's unique id
+     * @param objectIds unique document ids
+     * @throws IndexingException something went wrong removing the documents
+     */
+    public void removeFromIndex(String indexName, String uniqueField,
+            Collection<String> objectIds) throws IndexingException {
+        if (objectIds.isEmpty()) {
+            return;
+        }
+        log.info("Removing " + objectIds.size() + " documents from <" + indexName + ">");
+        List<Term> terms = new ArrayList<Term>(objectIds.size());
+        for (String objectId : objectIds) {
+            Term term = new Term(uniqueField, objectId);
+            record(indexName, term, null);
+            terms.add(term);
+        }
+        try {
+            getWriter(indexName, IndexHandler.DEFAULT_LANG).delete(terms);
+            committed(indexName);
+        }
+        catch (IOException e) {
             throw new IndexingException(e);
         }
+    }
+
+    /**
+     * Commits the changes made to an index, making them visible to searches
+     * and durable. Indexing tasks call this before they record how far they
+     * got.
+     *
+     * @param indexName index to commit
+     * @throws IndexingException something went wrong writing the index
+     */
+    public void commitIndex(String indexName) throws IndexingException {
+        ManagedWriter writer;
+        synchronized (this) {
+            writer = writers.get(indexName);
+        }
+        try {
+            if (writer != null && writer.commit()) {
+                committed(indexName);
+            }
+        }
         catch (IOException e) {
             throw new IndexingException(e);
         }
     }
 
+    /**
+     * Statistics of the open searchers and writers, keyed by index; docs
+     * indexes are keyed by their locale directory
+     * @return map of index name to statistics
+     */
+    public synchronized Map<String, Map<String, Object>> getStatistics() {
+        Map<String, Map<String, Object>> stats =
+            new TreeMap<String, Map<String, Object>>();
+        for (Map.Entry<String, SearcherManager> entry : searchers.entrySet()) {
+            String key = entry.getKey().substring(indexWorkDir.length());
+            stats.put(key, entry.getValue().getStatistics());
+        }
+        for (Map.Entry<String, ManagedWriter> entry : writers.entrySet()) {
+            Map<String, Object> indexStats = stats.get(entry.getKey());
+            if (indexStats == null) {
+                indexStats = new HashMap<String, Object>();
+                stats.put(entry.getKey(), indexStats);
+            }
+            indexStats.putAll(entry.getValue().getStatistics());
+        }
+        return stats;
+    }
+
+    /**
+     * Hit ratio and size of the cache of search results
+     * @return statistics of the query cache
+     */
+    public Map<String, Object> getQueryCacheStatistics() {
+        return queryCache.getStatistics();
+    }
+
+    private synchronized void committed(String indexName) {
+        SearcherManager searcher = searchers.get(indexWorkDir + indexName);
+        if (searcher != null) {
+            searcher.invalidate();
+        }
+        queryCache.invalidate(indexName);
+    }
+
+    /**
+     * Records a change of the live index for the rebuild of the index
+     */
+    private synchronized void record(String indexName, Term term, Document doc) {
+        IndexRebuild rebuild = rebuilds.get(indexName);
+        if (rebuild != null) {
+            rebuild.record(term, doc);
+        }
+    }
+
+    private static void deleteDirectory(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                deleteDirectory(file);
+            }
+        }
+        if (dir.exists() && !dir.delete()) {
+            log.warn("Unable to delete " + dir);
+        }
+    }
+
     /**
      * Unlocks the index at the given directory if it is currently locked.
      * Otherwise, does nothing.
@@ -381,53 +747,50 @@ public class IndexManager {
         }
     }
 
-    private IndexWriter getIndexWriter(String name, String lang)
-            throws CorruptIndexException, LockObtainFailedException,
-            IOException {
-        String path = indexWorkDir + name;
-        File f = new File(path);
-        f.mkdirs();
-        Analyzer analyzer = getAnalyzer(name, lang);
-        IndexWriter writer = new IndexWriter(path, analyzer);
-        writer.setUseCompoundFile(true);
+    private synchronized ManagedWriter getWriter(String name, String lang)
+            throws IOException {
+        ManagedWriter writer = writers.get(name);
+        if (writer == null) {
+            String path = indexWorkDir + name;
+            File f = new File(path);
+            f.mkdirs();
+            Analyzer analyzer = getAnalyzer(name, lang);
+            IndexWriter indexWriter;
+            try {
+                indexWriter = new IndexWriter(path, analyzer);
+            }
+            catch (LockObtainFailedException e) {
+                // left behind by a process that did not shut down cleanly
+                log.warn("Removing stale lock of index " + name);
+                unlockIndex(name);
+                indexWriter = new IndexWriter(path, analyzer);
+            }
+            indexWriter.setUseCompoundFile(true);
+            writer = new ManagedWriter(indexWriter, commitDocs);
+            writers.put(name, writer);
+        }
         return writer;
     }
 
-    private IndexReader getIndexReader(String indexName, String locale)
-            throws CorruptIndexException, IOException {
+    private synchronized SearcherManager getSearcherManager(String indexName,
+            String locale) throws IOException {
         String path = "";
         if (indexName.compareTo(BuilderFactory.DOCS_TYPE) == 0) {
-            path = indexWorkDir + File.separator +
-                getDocIndexPath(locale);
+            path = indexWorkDir + getDocIndexPath(locale);
         }
         else {
             path = indexWorkDir + indexName;
         }
-        log.info("IndexManager::getIndexReader(" + indexName + ", " + locale +
-                ") path = " + path);
-        File f = new File(path);
-        IndexReader retval = IndexReader.open(FSDirectory.getDirectory(f));
-        return retval;
-    }
-
-    private IndexSearcher getIndexSearcher(String indexName, String locale)
-            throws CorruptIndexException, IOException {
-        String path = "";
-        if (indexName.compareTo(BuilderFactory.DOCS_TYPE) == 0) {
-            path = indexWorkDir + File.separator +
-                getDocIndexPath(locale);
+        SearcherManager manager = searchers.get(path);
+        if (manager == null) {
+            manager = new SearcherManager(path, searcherRefreshInterval);
+            searchers.put(path, manager);
         }
-        else {
-            path = indexWorkDir + indexName;
-        }
-        log.info("IndexManager::getIndexSearcher(" + indexName + ", " + locale +
-                ") path = " + path);
-        IndexSearcher retval = new IndexSearcher(path);
-        return retval;
+        return manager;
     }
 
     private QueryParser getQueryParser(String indexName, String lang,
-            boolean isFineGrained) {
+            boolean isFineGrained, IndexReader reader) {
         if (log.isDebugEnabled()) {
             log.debug("getQueryParser(" + indexName + ", " + lang + ", " +
                     isFineGrained + ")");
@@ -438,7 +801,12 @@ public class IndexManager {
             qp = new QueryParser("content", analyzer);
         }
         else {
-            qp = new NGramQueryParser("name", analyzer, isFineGrained);
+            NGramQueryParser parser = new NGramQueryParser("name", analyzer,
+                    isFineGrained);
+            if (planQueries) {
+                parser.setIndexReader(reader);
+            }
+            qp = parser;
         }
         qp.setDateResolution(DateTools.Resolution.MINUTE);
         return qp;
@@ -478,67 +846,71 @@ public class IndexManager {
         throws IOException {
         List<Result> retval = new ArrayList<Result>();
         for (int x = 0; x < hits.length(); x++) {
-            Document doc = hits.doc(x);
-            Result pr = null;
             if (!isScoreAcceptable(indexName, hits, x, query)) {
                 break;
             }
-            if (indexName.compareTo(BuilderFactory.DOCS_TYPE) == 0) {
-                pr = new DocResult(x, hits.score(x), doc);
-                String summary = lookupDocSummary(doc, query, lang);
-                if (summary != null) {
-                    ((DocResult)pr).setSummary(summary);
-                }
-            }
-            else if (indexName.compareTo(BuilderFactory.HARDWARE_DEVICE_TYPE) == 0) {
-                pr = new HardwareDeviceResult(x, hits.score(x), doc);
-            }
-            else if (indexName.compareTo(BuilderFactory.SNAPSHOT_TAG_TYPE)  == 0) {
-                pr = new SnapshotTagResult(x, hits.score(x), doc);
-            }
-            else if (indexName.compareTo(BuilderFactory.SERVER_CUSTOM_INFO_TYPE) == 0) {
-                pr = new ServerCustomInfoResult(x, hits.score(x), doc);
-            }
-            else if (indexName.compareTo(BuilderFactory.XCCDF_IDENT_TYPE) == 0) {
-                pr = new Result(x,
-                        doc.getField("id").stringValue(),
-                        doc.getField("identifier").stringValue(),
-                        hits.score(x));
-            }
-            else {
-                pr = new Result(x,
-                        doc.getField("id").stringValue(),
-                        doc.getField("name").stringValue(),
-                        hits.score(x));
-            }
-            if (log.isDebugEnabled()) {
-                log.debug("Hit[" + x + "] Score = " + hits.score(x) + ", Result = " + pr);
-            }
-            /**
-             * matchingField will help the webUI to understand what field was responsible
-             * for this match.  Later implementation should use "Explanation" to determine
-             * field, for now we will simply grab one term and return it's field.
-             */
-            try {
-                MatchingField match = new MatchingField(query, doc, queryTerms);
-                pr.setMatchingField(match.getFieldName());
-                pr.setMatchingFieldValue(match.getFieldValue());
-                log.info("hit[" + x + "] matchingField is being set to: <" +
-                    pr.getMatchingField() + "> based on passed in query field.  " +
-                    "matchingFieldValue = " + pr.getMatchingFieldValue());
-            }
-            catch (Exception e) {
-                log.error("Caught exception: ", e);
-            }
-            if (pr != null) {
-                retval.add(pr);
-            }
+            retval.add(createResult(indexName, x, hits.score(x), hits.doc(x),
+                    queryTerms, query, lang));
             if (maxHits > 0 && x == maxHits) {
                 break;
             }
         }
         return retval;
     }
+
+    private Result createResult(String indexName, int x, float score, Document doc,
+            Set<Term> queryTerms, String query, String lang) {
+        Result pr = null;
+        if (indexName.compareTo(BuilderFactory.DOCS_TYPE) == 0) {
+            pr = new DocResult(x, score, doc);
+            String summary = lookupDocSummary(doc, query, lang);
+            if (summary != null) {
+                ((DocResult)pr).setSummary(summary);
+            }
+        }
+        else if (indexName.compareTo(BuilderFactory.HARDWARE_DEVICE_TYPE) == 0) {
+            pr = new HardwareDeviceResult(x, score, doc);
+        }
+        else if (indexName.compareTo(BuilderFactory.SNAPSHOT_TAG_TYPE)  == 0) {
+            pr = new SnapshotTagResult(x, score, doc);
+        }
+        else if (indexName.compareTo(BuilderFactory.SERVER_CUSTOM_INFO_TYPE) == 0) {
+            pr = new ServerCustomInfoResult(x, score, doc);
+        }
+        else if (indexName.compareTo(BuilderFactory.XCCDF_IDENT_TYPE) == 0) {
+            pr = new Result(x,
+                    doc.getField("id").stringValue(),
+                    doc.getField("identifier").stringValue(),
+                    score);
+        }
+        else {
+            pr = new Result(x,
+                    doc.getField("id").stringValue(),
+                    doc.getField("name").stringValue(),
+                    score);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Hit[" + x + "] Score = " + score + ", Result = " + pr);
+        }
+        /**
+         * matchingField will help the webUI to understand what field was responsible
+         * for this match.  Later implementation should use "Explanation" to determine
+         * field, for now we will simply grab one term and return it's field.
+         */
+        try {
+            MatchingField match = new MatchingField(query, doc, queryTerms);
+            pr.setMatchingField(match.getFieldName());
+            pr.setMatchingFieldValue(match.getFieldValue());
+            log.info("hit[" + x + "] matchingField is being set to: <" +
+                pr.getMatchingField() + "> based on passed in query field.  " +
+                "matchingFieldValue = " + pr.getMatchingFieldValue());
+        }
+        catch (Exception e) {
+            log.error("Caught exception: ", e);
+        }
+        return pr;
+    }
+
     /**
      *
      * @param indexName
@@ -623,37 +995,102 @@ public class IndexManager {
     }
 
     /**
-     * Removes any documents which are not related to the passed in Set of good value
-     * @param ids Set of ids of all known/good values
+     * The lowest normalized score a hit of a search needs, the same
+     * thresholds isScoreAcceptable applies to the hits in order of score.
+     */
+    private float getMinimumScore(String indexName, String query, ScoreCollector scores,
+            float norm) {
+        if ((indexName.compareTo(BuilderFactory.DOCS_TYPE) == 0) &&
+                (!filterDocResults)) {
+            return Float.NEGATIVE_INFINITY;
+        }
+        if ((indexName.compareTo(BuilderFactory.SERVER_TYPE) == 0) ||
+                (indexName.compareTo(BuilderFactory.SERVER_CUSTOM_INFO_TYPE) == 0) ||
+                (indexName.compareTo(BuilderFactory.SNAPSHOT_TAG_TYPE)  == 0) ||
+                (indexName.compareTo(BuilderFactory.HARDWARE_DEVICE_TYPE) == 0)) {
+            return (float) system_score_threshold;
+        }
+        if (indexName.compareTo(BuilderFactory.ERRATA_TYPE) == 0) {
+            if (MatchingField.getFirstFieldName(query).compareTo("name") == 0) {
+                return (float) errata_advisory_score_threshold;
+            }
+            return (float) errata_score_threshold;
+        }
+        // the 11 best hits only need to pass the second threshold
+        return Math.max(0.001f, Math.min((float) score_threshold,
+                scores.getScore(10) * norm));
+    }
+
+    /**
+     * Parses the sort spec of searchPage()
+     */
+    private Sort getSort(String sort) {
+        if (StringUtils.isEmpty(sort) || sort.equals("score")) {
+            return null;
+        }
+        if (sort.startsWith("-")) {
+            return new Sort(new SortField(sort.substring(1), SortField.STRING, true));
+        }
+        return new Sort(new SortField(sort, SortField.STRING));
+    }
+
+    /**
+     * Passes on the hits scoring at least the minimum score
+     */
+    private static class ThresholdCollector extends HitCollector {
+
+        private final HitCollector delegate;
+        private final float minScore;
+
+        ThresholdCollector(HitCollector delegateIn, float minScoreIn) {
+            delegate = delegateIn;
+            minScore = minScoreIn;
+        }
+
+        public void collect(int doc, float score) {
+            if (score >= minScore) {
+                delegate.collect(doc, score);
+            }
+        }
+    }
+
+    /**
+     * Removes any documents which are not related to the passed in collection
+     * of good values. If the unique field is indexed as a keyword, its terms
+     * are walked in order against the sorted ids, otherwise the stored values
+     * of the field are compared. The orphans are deleted in one batch.
+     * @param ids ids of all known/good values
      * @param indexName index name to operate on
      * @param uniqField the name of the field in the Document to uniquely identify
      * this record
      * @return the number of documents deleted
      */
-    public int deleteRecordsNotInList(Set<String> ids, String indexName,
+    public int deleteRecordsNotInList(Collection<String> ids, String indexName,
             String uniqField) {
-        int count = 0;
-        IndexReader reader = null;
+        SearcherManager manager = null;
+        SearcherManager.ManagedSearcher managed = null;
         try {
-            reader = getIndexReader(indexName, IndexHandler.DEFAULT_LANG);
-
-            // Use maxDoc() to iterate over all docs, numDocs() returns the
-            // number of currently alive docs leaving out the deleted ones.
-            int maxDoc = reader.maxDoc();
-            for (int i = 0; i < maxDoc; i++) {
-                if (!reader.isDeleted(i)) {
-                    Document doc = reader.document(i);
-                    String uniqId = doc.getField(uniqField).stringValue();
-                    if (!ids.contains(uniqId)) {
-                        log.info(indexName + ":" + uniqField  + ":  <" + uniqId +
-                                "> not found in list of current/good values " +
-                                "assuming this has been deleted from Database and we " +
-                                "should remove it.");
-                        removeFromIndex(indexName, uniqField, uniqId);
-                        count++;
-                    }
+            commitIndex(indexName);
+            manager = getSearcherManager(indexName, IndexHandler.DEFAULT_LANG);
+            managed = manager.acquire();
+            IndexReader reader = managed.getReader();
+            List<Term> orphans = findOrphanTerms(reader, ids, uniqField);
+            if (orphans == null) {
+                orphans = findOrphanValues(reader, ids, uniqField);
+            }
+            if (!orphans.isEmpty()) {
+                log.info("Removing " + orphans.size() + " documents of " + indexName +
+                        " whose " + uniqField + " is not in the database anymore");
+                if (log.isDebugEnabled()) {
+                    log.debug("Removed: " + orphans);
                 }
+                for (Term orphan : orphans) {
+                    record(indexName, orphan, null);
+                }
+                getWriter(indexName, IndexHandler.DEFAULT_LANG).delete(orphans);
+                committed(indexName);
             }
+            return orphans.size();
         }
         catch (IOException e) {
             e.printStackTrace();
@@ -664,16 +1101,101 @@ public class IndexManager {
             log.info("deleteRecordsNotInList() caught exception : " + e);
         }
         finally {
-            if (reader != null) {
-                try {
-                    reader.close();
+            if (managed != null) {
+                manager.release(managed);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Merges the sorted terms of the field with the sorted ids. Only a field
+     * indexed as a keyword holds the ids as terms: the walk is given up as
+     * soon as a document holding a term not in ids turns out to store
+     * something else in the field, e.g. because it was tokenized.
+     * @return terms of live documents not in ids, null if the terms of the
+     * field are not the ids
+     */
+    private List<Term> findOrphanTerms(IndexReader reader, Collection<String> ids,
+            String field) throws IOException {
+        String[] sorted = ids.toArray(new String[ids.size()]);
+        // same order as the term dictionary
+        Arrays.sort(sorted);
+        FieldSelector selector = new MapFieldSelector(new String[] {field});
+        List<Term> orphans = new ArrayList<Term>();
+        int i = 0;
+        TermEnum terms = reader.terms(new Term(field, ""));
+        TermDocs docs = reader.termDocs();
+        try {
+            do {
+                Term term = terms.term();
+                if (term == null || !field.equals(term.field())) {
+                    break;
+                }
+                String text = term.text();
+                while (i < sorted.length && sorted[i].compareTo(text) < 0) {
+                    i++;
                 }
-                catch (IOException e) {
-                    //
+                if (i < sorted.length && sorted[i].equals(text)) {
+                    continue;
                 }
+                // the term may be left over from deleted documents only
+                docs.seek(term);
+                if (docs.next()) {
+                    Fieldable stored = reader.document(docs.doc(), selector)
+                            .getFieldable(field);
+                    if (stored == null || stored.isTokenized() ||
+                            !text.equals(stored.stringValue())) {
+                        log.debug(field + " is not indexed as a keyword");
+                        return null;
+                    }
+                    orphans.add(term);
+                }
+            } while (terms.next());
+        }
+        finally {
+            docs.close();
+            terms.close();
+        }
+        return orphans;
+    }
+
+    /**
+     * Compares the stored values of the field with the ids. Documents whose
+     * field is tokenized can not be deleted by a term of their value: such a
+     * term is missing or matches other documents as well. They are left to
+     * the next rebuild of the index.
+     * @return terms of live documents not in ids
+     */
+    private List<Term> findOrphanValues(IndexReader reader, Collection<String> ids,
+            String field) throws IOException {
+        Set<String> known = new HashSet<String>(ids);
+        FieldSelector selector = new MapFieldSelector(new String[] {field});
+        List<Term> orphans = new ArrayList<Term>();
+        int skipped = 0;
+        // Use maxDoc() to iterate over all docs, numDocs() returns the
+        // number of currently alive docs leaving out the deleted ones.
+        int maxDoc = reader.maxDoc();
+        for (int i = 0; i < maxDoc; i++) {
+            if (reader.isDeleted(i)) {
+                continue;
+            }
+            Fieldable stored = reader.document(i, selector).getFieldable(field);
+            if (stored == null || known.contains(stored.stringValue())) {
+                continue;
             }
+            if (stored.isTokenized()) {
+                skipped++;
+            }
+            else {
+                orphans.add(new Term(field, stored.stringValue()));
+            }
+        }
+        if (skipped > 0) {
+            log.warn(skipped + " documents whose " + field + " is not in the " +
+                    "database anymore can only be removed by rebuilding the index");
         }
-        return count;
+        return orphans;
     }
 
     private void debugExplainResults(String indexName, Hits hits, IndexSearcher searcher,
@@ -805,6 +1327,8 @@ public class IndexManager {
         analyzer.addAnalyzer("version", new KeywordAnalyzer());
         analyzer.addAnalyzer("release", new KeywordAnalyzer());
         analyzer.addAnalyzer("filename", new KeywordAnalyzer());
+        analyzer.addAnalyzer("name" + NGramQueryParser.PREFIX_SUFFIX,
+                new EdgeNGramAnalyzer(1, MAX_NAME_PREFIX));
         return analyzer;
     }
 
@@ -0,0 +1,240 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+
+package com.redhat.satellite.search.index;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A rebuild of an index from scratch, next to the index being searched.
+ * Every worker thread adds the documents of its records to its own part,
+ * a separate segment directory with its own writer. IndexManager merges the
+ * parts when the rebuild is finished and swaps the result in for the index;
+ * searches are served from the old index until then.
+ *
+ * Changes IndexManager makes to the live index meanwhile are recorded and
+ * replayed on the rebuilt index before the swap. A change replaces all
+ * documents of its term, so only the last change of every record is kept.
+ * The changes have a lock of their own: recording a change never waits for
+ * the parts to be merged.
+ *
+ * @version $Rev$
+ */
+public class IndexRebuild {
+
+    private static Logger log = Logger.getLogger(IndexRebuild.class);
+
+    private final String indexName;
+    private final File dir;
+    private final Analyzer analyzer;
+    private final List<Part> parts = new ArrayList<Part>();
+    private final Map<Object, Change> changes = new LinkedHashMap<Object, Change>();
+
+    /**
+     * Constructor
+     * @param indexNameIn index being rebuilt
+     * @param dirIn directory the parts and the merged index are written to
+     * @param analyzerIn analyzer of the index
+     */
+    IndexRebuild(String indexNameIn, File dirIn, Analyzer analyzerIn) {
+        indexName = indexNameIn;
+        dir = dirIn;
+        analyzer = analyzerIn;
+    }
+
+    /**
+     * @return name of the index being rebuilt
+     */
+    public String getIndexName() {
+        return indexName;
+    }
+
+    /**
+     * Creates a part for a worker thread. A part is meant to be used by one
+     * thread only.
+     * @return the new part
+     * @throws IndexingException the part's directory could not be created
+     */
+    public synchronized Part addPart() throws IndexingException {
+        File partDir = new File(dir, "part" + parts.size());
+        try {
+            Part part = new Part(new IndexWriter(partDir, analyzer, true));
+            parts.add(part);
+            return part;
+        }
+        catch (IOException e) {
+            throw new IndexingException(e);
+        }
+    }
+
+    /**
+     * Records a change made to the live index
+     * @param term term of the replaced or deleted documents, null if the
+     * document is added
+     * @param doc added document, null if the documents of the term are deleted
+     */
+    void record(Term term, Document doc) {
+        // an added document has no term, nothing replaces it
+        Object key = term == null ? new Object() : term;
+        synchronized (changes) {
+            // moved behind the changes made since the last one of the term
+            changes.remove(key);
+            changes.put(key, new Change(term, doc));
+        }
+    }
+
+    /**
+     * Merges the parts into one optimized index
+     * @return open writer of the merged index
+     * @throws IOException something went wrong writing the index
+     */
+    IndexWriter merge() throws IOException {
+        List<Part> merged;
+        synchronized (this) {
+            merged = new ArrayList<Part>(parts);
+        }
+        Directory[] dirs = new Directory[merged.size()];
+        int docs = 0;
+        for (int i = 0; i < merged.size(); i++) {
+            Part part = merged.get(i);
+            docs += part.getCount();
+            dirs[i] = part.writer.getDirectory();
+            part.writer.close();
+        }
+        long start = System.currentTimeMillis();
+        IndexWriter writer = new IndexWriter(getMergedDirectory(), analyzer, true);
+        writer.setUseCompoundFile(true);
+        writer.addIndexes(dirs);
+        log.info("Merged " + merged.size() + " parts with " + docs + " documents of <" +
+                indexName + "> in " + (System.currentTimeMillis() - start) + " ms");
+        return writer;
+    }
+
+    /**
+     * Applies the changes made to the live index since the rebuild started
+     * @param writer writer of the merged index
+     * @throws IOException something went wrong writing the index
+     */
+    void replay(IndexWriter writer) throws IOException {
+        synchronized (changes) {
+            for (Change change : changes.values()) {
+                if (change.doc == null) {
+                    writer.deleteDocuments(change.term);
+                }
+                else if (change.term == null) {
+                    writer.addDocument(change.doc, analyzer);
+                }
+                else {
+                    writer.updateDocument(change.term, change.doc, analyzer);
+                }
+            }
+            if (!changes.isEmpty()) {
+                log.info("Replayed " + changes.size() + " changes on the rebuilt <" +
+                        indexName + ">");
+            }
+            changes.clear();
+        }
+    }
+
+    /**
+     * Closes the writers of the parts still open
+     */
+    synchronized void close() {
+        for (Part part : parts) {
+            try {
+                part.writer.close();
+            }
+            catch (IOException e) {
+                log.warn("Error closing part of rebuilt index " + indexName, e);
+            }
+        }
+    }
+
+    /**
+     * @return directory of the rebuild
+     */
+    File getDirectory() {
+        return dir;
+    }
+
+    /**
+     * @return directory the parts are merged into
+     */
+    File getMergedDirectory() {
+        return new File(dir, "merged");
+    }
+
+    /**
+     * Segment directory a worker thread adds documents to
+     */
+    public static class Part {
+
+        private final IndexWriter writer;
+        private int count;
+
+        Part(IndexWriter writerIn) {
+            writer = writerIn;
+            writer.setUseCompoundFile(true);
+        }
+
+        /**
+         * Adds a document to the part
+         * @param doc document
+         * @throws IndexingException something went wrong writing the part
+         */
+        public void add(Document doc) throws IndexingException {
+            try {
+                writer.addDocument(doc);
+                count++;
+            }
+            catch (IOException e) {
+                throw new IndexingException(e);
+            }
+        }
+
+        /**
+         * @return number of documents added
+         */
+        public int getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * A document added, replaced or deleted in the live index
+     */
+    private static class Change {
+
+        private final Term term;
+        private final Document doc;
+
+        Change(Term termIn, Document docIn) {
+            term = termIn;
+            doc = docIn;
+        }
+    }
+}
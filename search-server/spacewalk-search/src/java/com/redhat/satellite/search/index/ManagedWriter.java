@@ -0,0 +1,166 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+
+package com.redhat.satellite.search.index;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The one IndexWriter of an index, kept open for the life of the process.
+ * Changes are committed, and become visible to searchers, once commitDocs
+ * of them are pending or when commit() is called.
+ *
+ * @version $Rev$
+ */
+class ManagedWriter {
+
+    private final IndexWriter writer;
+    private final int commitDocs;
+    private int pending;
+    private int commitCount;
+    private boolean closed;
+    private long lastCommit = System.currentTimeMillis();
+
+    /**
+     * Constructor
+     * @param writerIn the open writer
+     * @param commitDocsIn number of pending changes that are committed
+     * automatically
+     */
+    ManagedWriter(IndexWriter writerIn, int commitDocsIn) {
+        writer = writerIn;
+        commitDocs = commitDocsIn;
+    }
+
+    /**
+     * Adds a document
+     * @param doc document
+     * @param analyzer analyzer of the document's fields
+     * @return true if the changes were committed
+     * @throws IOException something went wrong writing the index
+     */
+    synchronized boolean add(Document doc, Analyzer analyzer) throws IOException {
+        ensureOpen();
+        writer.addDocument(doc, analyzer);
+        return changed();
+    }
+
+    /**
+     * Replaces the documents matching the term with a new document
+     * @param term unique term of the document
+     * @param doc document
+     * @param analyzer analyzer of the document's fields
+     * @return true if the changes were committed
+     * @throws IOException something went wrong writing the index
+     */
+    synchronized boolean update(Term term, Document doc, Analyzer analyzer)
+        throws IOException {
+        ensureOpen();
+        writer.updateDocument(term, doc, analyzer);
+        return changed();
+    }
+
+    /**
+     * Deletes the documents matching the term
+     * @param term term of the documents
+     * @return true if the changes were committed
+     * @throws IOException something went wrong writing the index
+     */
+    synchronized boolean delete(Term term) throws IOException {
+        ensureOpen();
+        writer.deleteDocuments(term);
+        return changed();
+    }
+
+    /**
+     * Deletes the documents matching any of the terms and commits
+     * @param terms terms of the documents
+     * @throws IOException something went wrong writing the index
+     */
+    synchronized void delete(List<Term> terms) throws IOException {
+        ensureOpen();
+        writer.deleteDocuments(terms.toArray(new Term[terms.size()]));
+        pending += terms.size();
+        commit();
+    }
+
+    /**
+     * Commits the pending changes
+     * @return true if there were changes to commit
+     * @throws IOException something went wrong writing the index
+     */
+    synchronized boolean commit() throws IOException {
+        if (pending == 0) {
+            return false;
+        }
+        writer.flush();
+        pending = 0;
+        commitCount++;
+        lastCommit = System.currentTimeMillis();
+        return true;
+    }
+
+    /**
+     * @return number of changes not committed yet
+     */
+    synchronized int getPending() {
+        return pending;
+    }
+
+    /**
+     * Commits the pending changes and closes the writer
+     * @throws IOException something went wrong writing the index
+     */
+    synchronized void close() throws IOException {
+        writer.close();
+        pending = 0;
+        closed = true;
+    }
+
+    /**
+     * @return commit statistics of the writer
+     */
+    synchronized Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<String, Object>();
+        stats.put("pendingDocs", pending);
+        stats.put("commitCount", commitCount);
+        stats.put("lastCommitAge",
+                (int) ((System.currentTimeMillis() - lastCommit) / 1000));
+        return stats;
+    }
+
+    private void ensureOpen() throws IOException {
+        // the index was swapped for a rebuilt one
+        if (closed) {
+            throw new IOException("Index writer is closed");
+        }
+    }
+
+    private boolean changed() throws IOException {
+        pending++;
+        if (pending >= commitDocs) {
+            return commit();
+        }
+        return false;
+    }
+}
@@ -15,6 +15,8 @@
 
 package com.redhat.satellite.search.index;
 
+import com.redhat.satellite.search.index.ngram.NGramQueryParser;
+
 import org.apache.log4j.Logger;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
@@ -68,7 +70,8 @@ public class MatchingField {
      */
     public String getFieldName() {
         if (terms.length > 0) {
-            return ((Term)terms[0]).field();
+            // exact and prefix fields are not stored
+            return NGramQueryParser.getSourceField(((Term)terms[0]).field());
         }
         return getFirstFieldName(query);
     }
@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+
+package com.redhat.satellite.search.index;
+
+import org.apache.lucene.search.Filter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of search results. Results are keyed by the index
+ * generation they were computed from, so a result is never served for a
+ * newer generation; the entries of an index are also dropped as soon as
+ * the index commits, to free the space.
+ *
+ * @version $Rev$
+ */
+class QueryCache {
+
+    private final int maxEntries;
+    private final Map<Key, List<Result>> entries;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * Constructor
+     * @param maxEntriesIn number of results kept, 0 disables the cache
+     */
+    QueryCache(int maxEntriesIn) {
+        maxEntries = maxEntriesIn;
+        entries = new LinkedHashMap<Key, List<Result>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<Key, List<Result>> eldest) {
+                if (size() > maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param key query
+     * @return copy of the cached result, null if not cached
+     */
+    synchronized List<Result> get(Key key) {
+        if (maxEntries <= 0) {
+            return null;
+        }
+        List<Result> result = entries.get(key);
+        if (result == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return new ArrayList<Result>(result);
+    }
+
+    /**
+     * @param key query
+     * @param result result of the query
+     */
+    synchronized void put(Key key, List<Result> result) {
+        if (maxEntries > 0) {
+            entries.put(key, new ArrayList<Result>(result));
+        }
+    }
+
+    /**
+     * Drops the results of an index
+     * @param indexName index which changed
+     */
+    synchronized void invalidate(String indexName) {
+        for (Iterator<Key> iter = entries.keySet().iterator(); iter.hasNext();) {
+            if (iter.next().indexName.equals(indexName)) {
+                iter.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    /**
+     * @return hit ratio and size statistics
+     */
+    synchronized Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<String, Object>();
+        stats.put("size", entries.size());
+        stats.put("maxSize", maxEntries);
+        stats.put("hits", (int) hits);
+        stats.put("misses", (int) misses);
+        stats.put("evictions", (int) evictions);
+        stats.put("invalidations", (int) invalidations);
+        stats.put("hitRatio", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+        return stats;
+    }
+
+    /**
+     * Identifies a query: the index generation searched, the query with
+     * its options, and the visibility filter applied
+     */
+    static class Key {
+        private final String indexName;
+        private final long version;
+        private final String lang;
+        private final String query;
+        private final boolean fineGrained;
+        // cached filters are shared per user, compared by identity
+        private final Filter filter;
+
+        Key(String indexNameIn, long versionIn, String langIn, String queryIn,
+                boolean fineGrainedIn, Filter filterIn) {
+            indexName = indexNameIn;
+            version = versionIn;
+            lang = langIn;
+            query = queryIn;
+            fineGrained = fineGrainedIn;
+            filter = filterIn;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return indexName.equals(other.indexName) && version == other.version &&
+                    equal(lang, other.lang) && query.equals(other.query) &&
+                    fineGrained == other.fineGrained && filter == other.filter;
+        }
+
+        public int hashCode() {
+            int hash = indexName.hashCode();
+            hash = 31 * hash + (int) (version ^ (version >>> 32));
+            hash = 31 * hash + (lang == null ? 0 : lang.hashCode());
+            hash = 31 * hash + query.hashCode();
+            hash = 31 * hash + (fineGrained ? 1 : 0);
+            return 31 * hash + System.identityHashCode(filter);
+        }
+
+        private static boolean equal(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+
+package com.redhat.satellite.search.index;
+
+import java.util.List;
+
+/**
+ * One page of the hits of a search, along with the number of all hits.
+ *
+ * @version $Rev$
+ */
+public class ResultPage {
+
+    private int total;
+    private List<Result> results;
+
+    /**
+     * Constructor
+     * @param totalIn number of all hits of the search
+     * @param resultsIn hits of the page
+     */
+    public ResultPage(int totalIn, List<Result> resultsIn) {
+        total = totalIn;
+        results = resultsIn;
+    }
+
+    /**
+     * @return number of all hits of the search
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * @return hits of the page
+     */
+    public List<Result> getResults() {
+        return results;
+    }
+
+    /**
+     * @return the string representation of this object
+     */
+    public String toString() {
+        return "Total = " + total + ", Results = " + results;
+    }
+}
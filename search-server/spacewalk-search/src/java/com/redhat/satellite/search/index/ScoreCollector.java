@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+
+package com.redhat.satellite.search.index;
+
+import org.apache.lucene.search.HitCollector;
+
+import java.util.Arrays;
+
+/**
+ * Records the score of every hit of a search, without loading any document,
+ * and passes the hits on to another collector. The scores tell how many
+ * hits pass the score thresholds of an index once the best score is known.
+ *
+ * @version $Rev$
+ */
+class ScoreCollector extends HitCollector {
+
+    private final HitCollector delegate;
+    private final float[] top;
+    private float[] scores = new float[1024];
+    private int count;
+
+    /**
+     * Constructor
+     * @param delegateIn collector the hits are passed on to, null for none
+     * @param topIn number of best scores kept in order
+     */
+    ScoreCollector(HitCollector delegateIn, int topIn) {
+        delegate = delegateIn;
+        top = new float[topIn];
+        Arrays.fill(top, Float.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void collect(int doc, float score) {
+        if (count == scores.length) {
+            scores = Arrays.copyOf(scores, count * 2);
+        }
+        scores[count++] = score;
+        if (score > top[top.length - 1]) {
+            int i = top.length - 1;
+            while (i > 0 && score > top[i - 1]) {
+                top[i] = top[i - 1];
+                i--;
+            }
+            top[i] = score;
+        }
+        if (delegate != null) {
+            delegate.collect(doc, score);
+        }
+    }
+
+    /**
+     * @return number of hits
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns a score of the best hits
+     * @param rank rank of the hit, 0 for the best one, lower than the number
+     * of best scores kept
+     * @return the score, negative infinity if there are fewer hits
+     */
+    float getScore(int rank) {
+        return top[rank];
+    }
+
+    /**
+     * @param min lowest score counted
+     * @return number of hits scoring at least min
+     */
+    int countAtLeast(float min) {
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (scores[i] >= min) {
+                n++;
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,251 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+
+package com.redhat.satellite.search.index;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.FSDirectory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps one IndexSearcher open on an index directory and shares it between
+ * all queries. Every query acquires the current searcher and releases it
+ * when done; a searcher is closed once it has been replaced and the last
+ * query using it released it.
+ *
+ * The index is checked for a new generation at most once per refresh
+ * interval, or on the next acquire after invalidate(). The reader is then
+ * reopened, which only reads the segments that changed.
+ *
+ * @version $Rev$
+ */
+class SearcherManager {
+
+    private static Logger log = Logger.getLogger(SearcherManager.class);
+
+    private final String path;
+    private final long refreshInterval;
+    private ManagedSearcher current;
+    private long lastCheck;
+    private int reopenCount;
+    private long lastReopenTime;
+    private long maxReopenTime;
+    private long totalReopenTime;
+
+    /**
+     * Constructor
+     * @param pathIn index directory
+     * @param refreshIntervalIn milliseconds between checks for a new index
+     * generation
+     */
+    SearcherManager(String pathIn, long refreshIntervalIn) {
+        path = pathIn;
+        refreshInterval = refreshIntervalIn;
+    }
+
+    /**
+     * Returns the current searcher, opening or reopening it if the index
+     * changed. Every searcher acquired has to be released.
+     * @return searcher of the current index generation
+     * @throws IOException the index could not be opened
+     */
+    synchronized ManagedSearcher acquire() throws IOException {
+        long now = System.currentTimeMillis();
+        if (current == null) {
+            log.info("Opening searcher for " + path);
+            IndexReader reader = IndexReader.open(FSDirectory.getDirectory(new File(path)));
+            current = new ManagedSearcher(reader);
+            lastCheck = now;
+        }
+        else if (now - lastCheck >= refreshInterval) {
+            lastCheck = now;
+            try {
+                if (!current.getReader().isCurrent()) {
+                    reopen(now);
+                }
+            }
+            catch (IOException e) {
+                // the index was removed or rebuilt, open it from scratch next time
+                close();
+                throw e;
+            }
+        }
+        current.incRef();
+        return current;
+    }
+
+    /**
+     * Releases a searcher returned by acquire()
+     * @param searcher searcher no longer used
+     */
+    void release(ManagedSearcher searcher) {
+        try {
+            searcher.decRef();
+        }
+        catch (IOException e) {
+            log.warn("Error closing searcher of " + path, e);
+        }
+    }
+
+    /**
+     * Makes the next acquire() check for a new index generation, after the
+     * index was changed by this process.
+     */
+    synchronized void invalidate() {
+        lastCheck = 0;
+    }
+
+    /**
+     * Replaces the index directory with another one. Queries still using the
+     * current searcher finish on the old index, the next acquire() opens the
+     * new one.
+     * @param newDir directory of the new index
+     * @param oldDir where the old index is moved to
+     * @throws IOException the directories could not be renamed
+     */
+    synchronized void replace(File newDir, File oldDir) throws IOException {
+        File dir = new File(path);
+        if (dir.exists() && !dir.renameTo(oldDir)) {
+            throw new IOException("Unable to move " + path + " to " + oldDir);
+        }
+        if (!newDir.renameTo(dir)) {
+            oldDir.renameTo(dir);
+            throw new IOException("Unable to move " + newDir + " to " + path);
+        }
+        close();
+    }
+
+    /**
+     * Closes the searcher once queries still using it are done
+     */
+    synchronized void close() {
+        if (current != null) {
+            release(current);
+            current = null;
+        }
+    }
+
+    /**
+     * @return reopen and age statistics of the searcher
+     */
+    synchronized Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<String, Object>();
+        stats.put("reopenCount", reopenCount);
+        stats.put("lastReopenTime", (int) lastReopenTime);
+        stats.put("maxReopenTime", (int) maxReopenTime);
+        stats.put("averageReopenTime",
+                reopenCount == 0 ? 0 : (int) (totalReopenTime / reopenCount));
+        if (current != null) {
+            stats.put("searcherAge",
+                    (int) ((System.currentTimeMillis() - current.getOpened()) / 1000));
+            stats.put("indexVersion", Long.toString(current.getReader().getVersion()));
+            stats.put("numDocs", current.getReader().numDocs());
+        }
+        return stats;
+    }
+
+    private void reopen(long now) throws IOException {
+        IndexReader reader = current.getReader().reopen();
+        if (reader != current.getReader()) {
+            ManagedSearcher old = current;
+            current = new ManagedSearcher(reader);
+            release(old);
+            lastReopenTime = System.currentTimeMillis() - now;
+            maxReopenTime = Math.max(maxReopenTime, lastReopenTime);
+            totalReopenTime += lastReopenTime;
+            reopenCount++;
+            if (log.isDebugEnabled()) {
+                log.debug("Reopened searcher for " + path + " in " + lastReopenTime +
+                        " ms");
+            }
+        }
+    }
+
+    /**
+     * A reader and searcher of one index generation, closed when the last
+     * reference is released.
+     */
+    static class ManagedSearcher {
+
+        private final IndexReader reader;
+        private final IndexSearcher searcher;
+        private final long opened = System.currentTimeMillis();
+        // the manager holds a reference while the searcher is current
+        private final AtomicInteger refs = new AtomicInteger(1);
+        private Boolean visibilityIndexed;
+
+        ManagedSearcher(IndexReader readerIn) {
+            reader = readerIn;
+            searcher = new IndexSearcher(reader);
+        }
+
+        IndexReader getReader() {
+            return reader;
+        }
+
+        IndexSearcher getSearcher() {
+            return searcher;
+        }
+
+        long getOpened() {
+            return opened;
+        }
+
+        /**
+         * @return true if every document of this generation was indexed
+         * with the fields of VisibilityFilter
+         * @throws IOException the index could not be read
+         */
+        synchronized boolean isVisibilityIndexed() throws IOException {
+            if (visibilityIndexed == null) {
+                int marked = 0;
+                TermDocs docs = reader.termDocs(VisibilityFilter.MARKER);
+                try {
+                    while (docs.next()) {
+                        marked++;
+                    }
+                }
+                finally {
+                    docs.close();
+                }
+                visibilityIndexed = marked == reader.numDocs();
+            }
+            return visibilityIndexed;
+        }
+
+        void incRef() {
+            refs.incrementAndGet();
+        }
+
+        void decRef() throws IOException {
+            if (refs.decrementAndGet() == 0) {
+                try {
+                    searcher.close();
+                }
+                finally {
+                    reader.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+
+package com.redhat.satellite.search.index;
+
+import org.apache.lucene.search.CachingWrapperFilter;
+import org.apache.lucene.search.Filter;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches which user a session belongs to and the visibility filter of every
+ * user and index, so searches don't have to ask the database what the user
+ * may see. The filters cache their bit sets per index reader, a reopened
+ * index is filtered anew.
+ *
+ * Entries expire after the configured time; invalidate() drops all of them
+ * right away when permissions or channel access change, and the indexer
+ * queue drops the filters of an index whose records it reindexed.
+ *
+ * @version $Rev$
+ */
+public class VisibilityCache {
+
+    private static final int MAX_ENTRIES = 10000;
+
+    private final long ttl;
+    private final Map<String, CachedValue> entries =
+        new LinkedHashMap<String, CachedValue>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<String, CachedValue> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+
+    /**
+     * Constructor
+     * @param ttlIn milliseconds an entry is used
+     */
+    VisibilityCache(long ttlIn) {
+        ttl = ttlIn;
+    }
+
+    /**
+     * @param sessionId id of the user's web session
+     * @return id of the session's user, null if not cached
+     */
+    public Long getUser(long sessionId) {
+        return (Long) get("session:" + sessionId);
+    }
+
+    /**
+     * @param sessionId id of the user's web session
+     * @param userId id of the session's user
+     */
+    public void putUser(long sessionId, Long userId) {
+        put("session:" + sessionId, userId);
+    }
+
+    /**
+     * @param indexName index searched
+     * @param userId id of the user
+     * @return filter of the documents of the index the user may see, null if
+     * not cached
+     */
+    public Filter getFilter(String indexName, long userId) {
+        return (Filter) get(indexName + ":" + userId);
+    }
+
+    /**
+     * Caches the filter of a user, the returned filter keeps its bit set
+     * for every reader it was applied to
+     * @param indexName index searched
+     * @param userId id of the user
+     * @param filter filter of the documents the user may see
+     * @return caching filter to search with
+     */
+    public Filter putFilter(String indexName, long userId, VisibilityFilter filter) {
+        Filter cached = new CachingWrapperFilter(filter);
+        put(indexName + ":" + userId, cached);
+        return cached;
+    }
+
+    /**
+     * Drops all cached sessions and filters
+     */
+    public synchronized void invalidate() {
+        entries.clear();
+    }
+
+    /**
+     * Drops the cached filters of an index
+     * @param indexName index which changed
+     */
+    public synchronized void invalidate(String indexName) {
+        String prefix = indexName + ":";
+        for (Iterator<String> iter = entries.keySet().iterator(); iter.hasNext();) {
+            if (iter.next().startsWith(prefix)) {
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * @return number of cached sessions and filters
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private synchronized Object get(String key) {
+        CachedValue entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.created > ttl) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    private synchronized void put(String key, Object value) {
+        entries.put(key, new CachedValue(value));
+    }
+
+    /**
+     * A cached value and when it was cached
+     */
+    private static class CachedValue {
+        private final Object value;
+        private final long created = System.currentTimeMillis();
+
+        CachedValue(Object valueIn) {
+            value = valueIn;
+        }
+    }
+}
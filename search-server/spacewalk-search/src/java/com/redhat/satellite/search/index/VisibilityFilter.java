@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+
+package com.redhat.satellite.search.index;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.search.Filter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Restricts a search to the documents a user may see. Package and errata
+ * documents carry the ids of the channels they are in, system documents
+ * the id of their org and of their server groups; the filter matches the
+ * documents having any of the ids the user has access to.
+ *
+ * Every document indexed with these fields also carries a marker, so an
+ * index built before they existed can be told apart, see
+ * IndexManager.isVisibilityIndexed().
+ *
+ * @version $Rev$
+ */
+public class VisibilityFilter extends Filter {
+
+    public static final String CHANNEL_FIELD = "channelId";
+    public static final String ORG_FIELD = "orgId";
+    public static final String SERVER_GROUP_FIELD = "serverGroupId";
+    public static final Term MARKER = new Term("visibility", "indexed");
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<Term> terms = new ArrayList<Term>();
+
+    /**
+     * Adds ids the user has access to
+     * @param field field holding the ids
+     * @param ids ids of channels, orgs or server groups
+     * @return this filter
+     */
+    public VisibilityFilter add(String field, Collection<?> ids) {
+        for (Object id : ids) {
+            terms.add(new Term(field, id.toString()));
+        }
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public BitSet bits(IndexReader reader) throws IOException {
+        BitSet bits = new BitSet(reader.maxDoc());
+        TermDocs docs = reader.termDocs();
+        try {
+            for (Term term : terms) {
+                docs.seek(term);
+                while (docs.next()) {
+                    bits.set(docs.doc());
+                }
+            }
+        }
+        finally {
+            docs.close();
+        }
+        return bits;
+    }
+
+    /**
+     * Adds the ids a document is visible by, and the marker
+     * @param doc document
+     * @param field field holding the ids
+     * @param ids ids of channels, orgs or server groups; may be null
+     */
+    public static void addFields(Document doc, String field, Collection<?> ids) {
+        if (doc.getField(MARKER.field()) == null) {
+            doc.add(new Field(MARKER.field(), MARKER.text(), Field.Store.NO,
+                    Field.Index.UN_TOKENIZED));
+        }
+        if (ids != null) {
+            for (Object id : ids) {
+                doc.add(new Field(field, id.toString(), Field.Store.NO,
+                        Field.Index.UN_TOKENIZED));
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String toString() {
+        return "VisibilityFilter" + terms;
+    }
+}
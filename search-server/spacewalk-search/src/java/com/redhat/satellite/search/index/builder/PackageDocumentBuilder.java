@@ -14,6 +14,8 @@
  */
 package com.redhat.satellite.search.index.builder;
 
+import com.redhat.satellite.search.index.ngram.NGramQueryParser;
+
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 
@@ -44,6 +46,12 @@ public class PackageDocumentBuilder implements DocumentBuilder {
             String value = metadata.get(name);
             if (name.equals("name")) {
                 store = Field.Store.YES;
+                // looked up whole or by prefix by the NGramQueryParser
+                doc.add(new Field(name + NGramQueryParser.EXACT_SUFFIX,
+                        String.valueOf(value).toLowerCase(), Field.Store.NO,
+                        Field.Index.UN_TOKENIZED));
+                doc.add(new Field(name + NGramQueryParser.PREFIX_SUFFIX,
+                        String.valueOf(value), Field.Store.NO, Field.Index.TOKENIZED));
             }
             else if (name.equals("arch") || name.equals("filename") ||
                     name.equals("version") || name.equals("release") ||
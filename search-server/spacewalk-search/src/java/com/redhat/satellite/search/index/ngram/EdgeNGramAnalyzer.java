@@ -0,0 +1,57 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+
+package com.redhat.satellite.search.index.ngram;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.KeywordTokenizer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+// From Lucene Sandbox
+import org.apache.lucene.analysis.ngram.EdgeNGramTokenFilter;
+
+import java.io.Reader;
+
+/**
+ * EdgeNGramAnalyzer
+ * Indexes the prefixes of a whole field value, so a search for the start
+ * of a name is a lookup of one term instead of a query of all its n-grams.
+ * @version $Rev$
+ */
+public class EdgeNGramAnalyzer extends Analyzer {
+
+    private final int minGram;
+    private final int maxGram;
+
+    /**
+     * Constructor
+     * @param minGramIn length of the shortest prefix
+     * @param maxGramIn length of the longest prefix
+     */
+    public EdgeNGramAnalyzer(int minGramIn, int maxGramIn) {
+        minGram = minGramIn;
+        maxGram = maxGramIn;
+    }
+
+    /**
+     * @param fieldName ignored param
+     * @param reader contains data to parse
+     * @return TokenStream of the lower cased prefixes
+     */
+    public TokenStream tokenStream(String fieldName, Reader reader) {
+        return new EdgeNGramTokenFilter(new LowerCaseFilter(new KeywordTokenizer(reader)),
+                EdgeNGramTokenFilter.Side.FRONT, minGram, maxGram);
+    }
+}
@@ -14,12 +14,18 @@
  */
 package com.redhat.satellite.search.index.ngram;
 
+import java.io.IOException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.ConstantScoreRangeQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.queryParser.QueryParser;
 import org.apache.lucene.queryParser.ParseException;
 import org.apache.lucene.analysis.Analyzer;
@@ -32,12 +38,25 @@ import org.apache.log4j.Logger;
  * NGramQueryParser
  * Creates a custom query parser of ngram-tokenized search terms
  *
+ * Given the reader of the index, terms of fields which are also indexed
+ * whole (field + EXACT_SUFFIX) and as prefixes (field + PREFIX_SUFFIX) are
+ * planned: a whole value or the start of values is looked up as one term,
+ * only other input is broken up into an NGramQuery.
+ *
  * @version $Rev$
  */
 public class NGramQueryParser extends QueryParser {
 
+    /** Suffix of the field holding the whole lower cased value of a field */
+    public static final String EXACT_SUFFIX = "Exact";
+    /** Suffix of the field holding the prefixes of the value of a field */
+    public static final String PREFIX_SUFFIX = "Prefix";
+
     private static Logger log = Logger.getLogger(NGramQueryParser.class);
+    // a whole value ranks above the values it is the start of
+    private static final float EXACT_BOOST = 4.0f;
     private boolean useMust = false;
+    private IndexReader reader;
     /**
      * Constructor
      * @param f field name
@@ -80,8 +99,38 @@ public class NGramQueryParser extends QueryParser {
         useMust = value;
     }
 
+    /**
+     * Makes the parser plan the queries of fields indexed with exact and
+     * prefix fields, using the term statistics of the index
+     * @param readerIn reader of the index searched, null to always build
+     * NGramQueries
+     */
+    public void setIndexReader(IndexReader readerIn) {
+        reader = readerIn;
+    }
+
+    /**
+     * @param field name of a field, possibly an exact or prefix field
+     * @return the field the exact or prefix field was derived from
+     */
+    public static String getSourceField(String field) {
+        if (field.endsWith(EXACT_SUFFIX)) {
+            return field.substring(0, field.length() - EXACT_SUFFIX.length());
+        }
+        if (field.endsWith(PREFIX_SUFFIX)) {
+            return field.substring(0, field.length() - PREFIX_SUFFIX.length());
+        }
+        return field;
+    }
+
     protected Query getFieldQuery(String defaultField,
             String queryText) throws ParseException {
+        if (reader != null && defaultField != null) {
+            Query planned = planQuery(defaultField, queryText);
+            if (planned != null) {
+                return planned;
+            }
+        }
         Query orig = super.getFieldQuery(defaultField, queryText);
         if (!(orig instanceof PhraseQuery)) {
             log.debug("Returning default query.  No phrase query translation.");
@@ -97,6 +146,38 @@ public class NGramQueryParser extends QueryParser {
         return new NGramQuery(pq, useMust);
     }
 
+    /**
+     * Picks the cheapest strategy able to answer a term:
+     *  exact  - the term is a whole value, it is looked up in the exact
+     *           field and in the prefix field for the values it starts
+     *  prefix - the term starts some values, one term of the prefix field
+     *  n-gram - anything else, misspelled or inner parts of values and
+     *           fields without exact and prefix fields
+     * @return the exact or prefix query, null for the n-gram strategy
+     */
+    private Query planQuery(String field, String text) {
+        String value = text.toLowerCase();
+        Term exact = new Term(field + EXACT_SUFFIX, value);
+        Term prefix = new Term(field + PREFIX_SUFFIX, value);
+        try {
+            if (reader.docFreq(exact) > 0) {
+                BooleanQuery query = new BooleanQuery();
+                TermQuery exactQuery = new TermQuery(exact);
+                exactQuery.setBoost(EXACT_BOOST);
+                query.add(exactQuery, BooleanClause.Occur.SHOULD);
+                query.add(new TermQuery(prefix), BooleanClause.Occur.SHOULD);
+                return query;
+            }
+            if (reader.docFreq(prefix) > 0) {
+                return new TermQuery(prefix);
+            }
+        }
+        catch (IOException e) {
+            log.warn("Unable to plan the query of " + field + ":" + text, e);
+        }
+        return null;
+    }
+
     /**
      *
      * @param field
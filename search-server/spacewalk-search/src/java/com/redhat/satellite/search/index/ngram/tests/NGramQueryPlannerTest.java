@@ -0,0 +1,259 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.satellite.search.index.ngram.tests;
+
+import com.redhat.satellite.search.index.builder.PackageDocumentBuilder;
+import com.redhat.satellite.search.index.ngram.EdgeNGramAnalyzer;
+import com.redhat.satellite.search.index.ngram.NGramAnalyzer;
+import com.redhat.satellite.search.index.ngram.NGramQuery;
+import com.redhat.satellite.search.index.ngram.NGramQueryParser;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.PerFieldAnalyzerWrapper;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Hits;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the planned queries of the exact and prefix name fields to the
+ * plain n-gram queries, on the items of NGramTestSetup and on a generated
+ * corpus indexed in both layouts.
+ */
+public class NGramQueryPlannerTest extends NGramTestSetup {
+
+    private static Logger log = Logger.getLogger(NGramQueryPlannerTest.class);
+
+    private static final int CORPUS_SIZE = 2000;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+
+    protected RAMDirectory plannedDir;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        plannedDir = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(plannedDir, getPlannedAnalyzer(), true);
+        for (Map<String, String> item : items) {
+            writer.addDocument(buildPlannedDocument(item.get("name"),
+                    item.get("description")));
+        }
+        writer.close();
+    }
+
+    public void testExactStrategy() throws Exception {
+        Query q = parse(plannedDir, "kernel");
+        assertTrue(q instanceof BooleanQuery);
+        assertEquals("name" + NGramQueryParser.EXACT_SUFFIX,
+                ((TermQuery) ((BooleanQuery) q).getClauses()[0].getQuery())
+                    .getTerm().field());
+        Hits hits = search(plannedDir, q);
+        assertEquals(3, hits.length());
+        assertEquals("kernel", hits.doc(0).get("name"));
+
+        // names are matched whatever their case
+        hits = search(plannedDir, parse(plannedDir, "NewFactory"));
+        assertEquals(1, hits.length());
+        assertEquals("newFactory", hits.doc(0).get("name"));
+    }
+
+    public void testPrefixStrategy() throws Exception {
+        Query q = parse(plannedDir, "kernel-huge");
+        assertTrue(q instanceof TermQuery);
+        assertEquals("name" + NGramQueryParser.PREFIX_SUFFIX,
+                ((TermQuery) q).getTerm().field());
+        assertEquals(2, search(plannedDir, q).length());
+    }
+
+    public void testNGramStrategy() throws Exception {
+        // misspelled, and a field without exact and prefix fields
+        assertTrue(parse(plannedDir, "aspelll") instanceof NGramQuery);
+        assertTrue(parse(plannedDir, "description:spelling") instanceof NGramQuery);
+        // an index built before the exact and prefix fields
+        Query q = parse(ngramDir, "kernel");
+        assertTrue(q instanceof NGramQuery);
+        assertEquals(parse((Directory) null, "kernel").toString(), q.toString());
+    }
+
+    public void testMatchingFieldOfPlannedQuery() throws Exception {
+        assertEquals("name", NGramQueryParser.getSourceField(
+                "name" + NGramQueryParser.EXACT_SUFFIX));
+        assertEquals("name", NGramQueryParser.getSourceField(
+                "name" + NGramQueryParser.PREFIX_SUFFIX));
+        assertEquals("description", NGramQueryParser.getSourceField("description"));
+    }
+
+    /**
+     * Runs the same queries against the same generated corpus, once indexed
+     * and parsed the n-gram way only and once with the exact and prefix
+     * fields and the planner. Every query set is run for some warm up rounds
+     * before the measured rounds, the average time per query and the number
+     * of clauses of the queries are logged.
+     */
+    public void testBenchmarkPlannedQueries() throws Exception {
+        List<String> names = generateNames(CORPUS_SIZE);
+        RAMDirectory ngramCorpus = new RAMDirectory();
+        RAMDirectory plannedCorpus = new RAMDirectory();
+        IndexWriter ngramWriter = new IndexWriter(ngramCorpus,
+                new NGramAnalyzer(min_ngram, max_ngram), true);
+        IndexWriter plannedWriter = new IndexWriter(plannedCorpus,
+                getPlannedAnalyzer(), true);
+        for (String name : names) {
+            Document doc = new Document();
+            doc.add(new Field("name", name, Field.Store.YES, Field.Index.TOKENIZED));
+            ngramWriter.addDocument(doc);
+            plannedWriter.addDocument(buildPlannedDocument(name, name));
+        }
+        ngramWriter.close();
+        plannedWriter.close();
+
+        // whole names, starts of names and misspelled names
+        List<String> queries = new ArrayList<String>();
+        for (int i = 0; i < names.size(); i += names.size() / 50) {
+            String name = names.get(i);
+            queries.add(name);
+            queries.add(name.substring(0, name.length() / 2));
+            queries.add(name.substring(1));
+        }
+
+        long ngramTime = run(ngramCorpus, false, queries);
+        long plannedTime = run(plannedCorpus, true, queries);
+        int ngramClauses = countClauses((Directory) null, queries);
+        int plannedClauses = countClauses(plannedCorpus, queries);
+        log.info("n-gram queries:  " + ngramTime / 1000 / queries.size() +
+                " us per query, " + ngramClauses + " clauses");
+        log.info("planned queries: " + plannedTime / 1000 / queries.size() +
+                " us per query, " + plannedClauses + " clauses");
+        assertTrue(plannedClauses < ngramClauses);
+
+        // the planner finds the whole name first
+        IndexSearcher ngramSearcher = new IndexSearcher(ngramCorpus);
+        IndexSearcher plannedSearcher = new IndexSearcher(plannedCorpus);
+        for (int i = 0; i < queries.size(); i += 3) {
+            String name = queries.get(i);
+            TopDocs top = plannedSearcher.search(
+                    parse(plannedSearcher.getIndexReader(), name), null, 1);
+            assertEquals(name, plannedSearcher.doc(top.scoreDocs[0].doc).get("name"));
+            assertTrue(ngramSearcher.search(parse((Directory) null, name), null, 1)
+                    .totalHits > 0);
+        }
+        ngramSearcher.close();
+        plannedSearcher.close();
+    }
+
+    /**
+     * @return nanoseconds the measured rounds took
+     */
+    private long run(Directory dir, boolean plan, List<String> queries)
+        throws Exception {
+        IndexSearcher searcher = new IndexSearcher(dir);
+        IndexReader planner = plan ? searcher.getIndexReader() : null;
+        long time = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (String query : queries) {
+                searcher.search(parse(planner, query), null, 10);
+            }
+            if (round >= WARMUP_ROUNDS) {
+                time += System.nanoTime() - start;
+            }
+        }
+        searcher.close();
+        return time / MEASURED_ROUNDS;
+    }
+
+    private int countClauses(Directory planner, List<String> queries)
+        throws Exception {
+        int count = 0;
+        for (String query : queries) {
+            Query q = parse(planner, query);
+            count += q instanceof BooleanQuery ?
+                ((BooleanQuery) q).getClauses().length : 1;
+        }
+        return count;
+    }
+
+    private List<String> generateNames(int count) {
+        String[] parts = {"kernel", "gtk", "spell", "virt", "gnome", "python",
+            "perl", "lib", "devel", "doc", "utils", "headers", "bluetooth",
+            "manager", "common", "server", "client", "tools"};
+        List<String> names = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            String name = parts[i % parts.length] + "-" +
+                parts[(i / parts.length) % parts.length];
+            if (i >= parts.length * parts.length) {
+                name += "-" + i;
+            }
+            names.add(name);
+        }
+        return names;
+    }
+
+    private Query parse(Directory planner, String query) throws Exception {
+        if (planner == null) {
+            return parse((IndexReader) null, query);
+        }
+        IndexReader reader = IndexReader.open(planner);
+        try {
+            return parse(reader, query);
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    private Query parse(IndexReader planner, String query) throws Exception {
+        NGramQueryParser parser = new NGramQueryParser("name",
+                new NGramAnalyzer(min_ngram, max_ngram));
+        parser.setIndexReader(planner);
+        return parser.parse(query);
+    }
+
+    private Hits search(Directory dir, Query q) throws Exception {
+        Hits hits = new IndexSearcher(dir).search(q);
+        displayHits(hits);
+        return hits;
+    }
+
+    private Analyzer getPlannedAnalyzer() {
+        PerFieldAnalyzerWrapper analyzer = new PerFieldAnalyzerWrapper(
+                new NGramAnalyzer(min_ngram, max_ngram));
+        analyzer.addAnalyzer("name" + NGramQueryParser.PREFIX_SUFFIX,
+                new EdgeNGramAnalyzer(1, 30));
+        return analyzer;
+    }
+
+    private Document buildPlannedDocument(String name, String description) {
+        Map<String, String> meta = new HashMap<String, String>();
+        meta.put("name", name);
+        meta.put("description", description);
+        return new PackageDocumentBuilder().buildDocument(new Long(name.hashCode()),
+                meta);
+    }
+}
@@ -1,25 +1,38 @@
 package com.redhat.satellite.search.index.tests;
 
 import com.redhat.satellite.search.index.IndexManager;
+import com.redhat.satellite.search.index.IndexRebuild;
 import com.redhat.satellite.search.index.IndexingException;
 import com.redhat.satellite.search.index.Result;
+import com.redhat.satellite.search.index.ResultPage;
 import com.redhat.satellite.search.index.QueryParseException;
+import com.redhat.satellite.search.index.VisibilityFilter;
 import com.redhat.satellite.search.index.builder.BuilderFactory;
 import com.redhat.satellite.search.index.builder.DocumentBuilder;
 import com.redhat.satellite.search.index.builder.PackageDocumentBuilder;
+import com.redhat.satellite.search.index.builder.SnapshotTagDocumentBuilder;
 import com.redhat.satellite.search.tests.BaseTestCase;
 import com.redhat.satellite.search.tests.TestUtil;
 import com.redhat.satellite.search.config.Configuration;
 
+import org.apache.log4j.Logger;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.search.Filter;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class IndexManagerTest extends BaseTestCase {
 
+    private static Logger log = Logger.getLogger(IndexManagerTest.class);
+
     private IndexManager indexManager;
 
     public void setUp() throws Exception {
@@ -54,6 +67,7 @@ public class IndexManagerTest extends BaseTestCase {
         DocumentBuilder pdb = new PackageDocumentBuilder();
         Document doc = pdb.buildDocument(objectId, meta);
         indexManager.addToIndex(index, doc, "en");
+        indexManager.commitIndex(index);
         List<Result> results = indexManager.search(index, "name:foo", "en");
         assertTrue(results.size() >= 1);
         results = indexManager.search(index, "desc:really", "en");
@@ -61,6 +75,267 @@ public class IndexManagerTest extends BaseTestCase {
     }
 
 
+    public void testSearcherSeesUpdates()
+        throws IndexingException, QueryParseException {
+
+        String index = "foo";
+        DocumentBuilder pdb = new PackageDocumentBuilder();
+        Map<String, String> meta = new HashMap<String, String>();
+        meta.put("name", "foo");
+        meta.put("desc", "first");
+        indexManager.addUniqueToIndex(index,
+                pdb.buildDocument(new Long(123), meta), "id", "en");
+        indexManager.commitIndex(index);
+        assertEquals(1, indexManager.search(index, "desc:first", "en").size());
+
+        // replaces the document with the same id
+        meta.put("desc", "second");
+        indexManager.addUniqueToIndex(index,
+                pdb.buildDocument(new Long(123), meta), "id", "en");
+        // searches see the changes once they are committed
+        assertEquals(0, indexManager.search(index, "desc:second", "en").size());
+        indexManager.commitIndex(index);
+        List<Result> results = indexManager.search(index, "desc:second", "en");
+        assertEquals(1, results.size());
+        assertEquals("second", results.get(0).getMatchingFieldValue());
+
+        Map<String, Object> stats = indexManager.getStatistics().get(index);
+        assertEquals(1, stats.get("reopenCount"));
+        assertEquals(0, stats.get("pendingDocs"));
+    }
+
+    public void testVisibilityFilter()
+        throws IndexingException, QueryParseException {
+
+        String index = "foo";
+        DocumentBuilder pdb = new PackageDocumentBuilder();
+        Map<String, String> meta = new HashMap<String, String>();
+        meta.put("name", "foo");
+        meta.put("desc", "visible");
+        Document doc = pdb.buildDocument(new Long(1), meta);
+        VisibilityFilter.addFields(doc, VisibilityFilter.CHANNEL_FIELD,
+                Arrays.asList(101L, 102L));
+        indexManager.addUniqueToIndex(index, doc, "id", "en");
+        doc = pdb.buildDocument(new Long(2), meta);
+        VisibilityFilter.addFields(doc, VisibilityFilter.CHANNEL_FIELD,
+                Arrays.asList(201L));
+        indexManager.addUniqueToIndex(index, doc, "id", "en");
+        indexManager.commitIndex(index);
+        assertTrue(indexManager.isVisibilityIndexed(index, "en"));
+
+        Filter filter = indexManager.getVisibilityCache().putFilter(index, 1L,
+                new VisibilityFilter().add(VisibilityFilter.CHANNEL_FIELD,
+                        Arrays.asList(102L)));
+        List<Result> results = indexManager.search(index, "desc:visible", "en",
+                false, filter);
+        assertEquals(1, results.size());
+        assertEquals("1", results.get(0).getId());
+        assertSame(filter, indexManager.getVisibilityCache().getFilter(index, 1L));
+        assertEquals(0, indexManager.search(index, "desc:visible", "en", false,
+                new VisibilityFilter()).size());
+
+        // a document indexed without the fields
+        indexManager.addUniqueToIndex(index, pdb.buildDocument(new Long(3), meta),
+                "id", "en");
+        indexManager.commitIndex(index);
+        assertFalse(indexManager.isVisibilityIndexed(index, "en"));
+        indexManager.getVisibilityCache().putUser(42L, 1L);
+        indexManager.getVisibilityCache().invalidate("errata");
+        assertSame(filter, indexManager.getVisibilityCache().getFilter(index, 1L));
+        indexManager.getVisibilityCache().invalidate(index);
+        assertNull(indexManager.getVisibilityCache().getFilter(index, 1L));
+        assertEquals(new Long(1L), indexManager.getVisibilityCache().getUser(42L));
+        indexManager.getVisibilityCache().invalidate();
+        assertNull(indexManager.getVisibilityCache().getUser(42L));
+    }
+
+    public void testQueryCache()
+        throws IndexingException, QueryParseException {
+
+        String index = "foo";
+        DocumentBuilder pdb = new PackageDocumentBuilder();
+        Map<String, String> meta = new HashMap<String, String>();
+        meta.put("name", "foo");
+        meta.put("desc", "cached");
+        indexManager.addUniqueToIndex(index,
+                pdb.buildDocument(new Long(1), meta), "id", "en");
+        indexManager.commitIndex(index);
+        assertEquals(1, indexManager.search(index, "desc:cached", "en").size());
+        assertEquals(1, indexManager.search(index, "desc:cached", "en").size());
+        Map<String, Object> stats = indexManager.getQueryCacheStatistics();
+        assertEquals(1, stats.get("hits"));
+        assertEquals(1, stats.get("misses"));
+
+        // the commit drops the result, the next search sees the new document
+        indexManager.addUniqueToIndex(index,
+                pdb.buildDocument(new Long(2), meta), "id", "en");
+        indexManager.commitIndex(index);
+        assertEquals(2, indexManager.search(index, "desc:cached", "en").size());
+        stats = indexManager.getQueryCacheStatistics();
+        assertEquals(1, stats.get("hits"));
+        assertEquals(1, stats.get("invalidations"));
+    }
+
+    public void testSearchPage()
+        throws IndexingException, QueryParseException {
+
+        String index = "foo";
+        for (int i = 1; i <= 30; i++) {
+            Document doc = new Document();
+            doc.add(new Field("id", Integer.toString(i), Field.Store.YES,
+                    Field.Index.UN_TOKENIZED));
+            doc.add(new Field("name", String.format("package%02d", i), Field.Store.YES,
+                    Field.Index.UN_TOKENIZED));
+            doc.add(new Field("desc", i % 3 == 0 ? "kernel" : "kernel module",
+                    Field.Store.YES, Field.Index.TOKENIZED));
+            indexManager.addToIndex(index, doc, "en");
+        }
+        indexManager.commitIndex(index);
+
+        List<Result> all = indexManager.search(index, "desc:kernel", "en");
+        ResultPage page = indexManager.searchPage(index, "desc:kernel", "en", false,
+                null, 5, 10, null);
+        assertEquals(all.size(), page.getTotal());
+        assertEquals(10, page.getResults().size());
+        for (int i = 0; i < 10; i++) {
+            Result expected = all.get(i + 5);
+            Result result = page.getResults().get(i);
+            assertEquals(expected.getId(), result.getId());
+            assertEquals(i + 5, result.getRank());
+            assertEquals(expected.getScore(), result.getScore());
+            assertEquals("desc", result.getMatchingField());
+        }
+
+        page = indexManager.searchPage(index, "desc:kernel", "en", false, null, 0, 3,
+                "-name");
+        assertEquals("package30", page.getResults().get(0).getName());
+        assertEquals("package28", page.getResults().get(2).getName());
+        page = indexManager.searchPage(index, "desc:kernel", "en", false, null, 28, 5,
+                "name");
+        assertEquals(2, page.getResults().size());
+        assertEquals("package30", page.getResults().get(1).getName());
+
+        // past the last hit
+        page = indexManager.searchPage(index, "desc:module", "en", false, null, 100,
+                10, null);
+        assertEquals(20, page.getTotal());
+        assertTrue(page.getResults().isEmpty());
+    }
+
+    public void testRebuild()
+        throws IndexingException, QueryParseException {
+
+        String index = "foo";
+        DocumentBuilder pdb = new PackageDocumentBuilder();
+        Map<String, String> meta = new HashMap<String, String>();
+        meta.put("name", "foo");
+        meta.put("desc", "original");
+        indexManager.addUniqueToIndex(index, pdb.buildDocument(new Long(1), meta),
+                "id", "en");
+        indexManager.commitIndex(index);
+
+        IndexRebuild rebuild = indexManager.startRebuild(index, "en");
+        IndexRebuild.Part[] parts = {rebuild.addPart(), rebuild.addPart()};
+        meta.put("desc", "rebuilt");
+        for (int i = 1; i <= 100; i++) {
+            parts[i % 2].add(pdb.buildDocument(new Long(i), meta));
+        }
+        // changed while rebuilding
+        meta.put("desc", "replayed");
+        indexManager.addUniqueToIndex(index, pdb.buildDocument(new Long(2), meta),
+                "id", "en");
+        // only the last change of a record counts
+        indexManager.addUniqueToIndex(index, pdb.buildDocument(new Long(4), meta),
+                "id", "en");
+        indexManager.removeFromIndex(index, "id", "4");
+        indexManager.removeFromIndex(index, "id", "5");
+        indexManager.addUniqueToIndex(index, pdb.buildDocument(new Long(5), meta),
+                "id", "en");
+        indexManager.commitIndex(index);
+        assertEquals(1, indexManager.search(index, "desc:original", "en", true).size());
+        assertEquals(0, indexManager.search(index, "desc:rebuilt", "en", true).size());
+
+        indexManager.finishRebuild(rebuild);
+        assertEquals(0, indexManager.search(index, "desc:original", "en", true).size());
+        assertEquals(97, indexManager.search(index, "desc:rebuilt", "en", true).size());
+        List<Result> results = indexManager.search(index, "desc:replayed", "en", true);
+        assertEquals(2, results.size());
+        Set<String> replayed = new HashSet<String>();
+        for (Result result : results) {
+            replayed.add(result.getId());
+        }
+        assertEquals(new HashSet<String>(Arrays.asList("2", "5")), replayed);
+
+        // the rebuilt index is the live one
+        meta.put("desc", "afterwards");
+        indexManager.addUniqueToIndex(index, pdb.buildDocument(new Long(3), meta),
+                "id", "en");
+        indexManager.commitIndex(index);
+        assertEquals(1, indexManager.search(index, "desc:afterwards", "en", true).size());
+        assertEquals(96, indexManager.search(index, "desc:rebuilt", "en", true).size());
+    }
+
+    public void testDeleteRecordsNotInList()
+        throws IndexingException, QueryParseException {
+
+        String index = "foo";
+        int size = 50000;
+        List<String> ids = new ArrayList<String>();
+        for (int i = 1; i <= size; i++) {
+            Document doc = new Document();
+            doc.add(new Field("id", Integer.toString(i), Field.Store.YES,
+                    Field.Index.UN_TOKENIZED));
+            doc.add(new Field("name", "package" + i, Field.Store.YES,
+                    Field.Index.UN_TOKENIZED));
+            indexManager.addToIndex(index, doc, "en");
+            // every 10th record was deleted from the database
+            if (i % 10 != 0) {
+                ids.add(Integer.toString(i));
+            }
+        }
+        // ids the index never saw are no orphans
+        ids.add("0");
+        ids.add(Integer.toString(size + 1));
+        indexManager.commitIndex(index);
+
+        long start = System.currentTimeMillis();
+        int deleted = indexManager.deleteRecordsNotInList(ids, index, "id");
+        log.info("Removed " + deleted + " of " + size + " documents in " +
+                (System.currentTimeMillis() - start) + " ms");
+        assertEquals(size / 10, deleted);
+        assertEquals(0, indexManager.search(index, "id:10", "en").size());
+        assertEquals(1, indexManager.search(index, "id:11", "en").size());
+
+        // nothing left to remove, deleted documents are not counted again
+        assertEquals(0, indexManager.deleteRecordsNotInList(ids, index, "id"));
+    }
+
+    public void testDeleteRecordsNotInListTokenized()
+        throws IndexingException, QueryParseException {
+
+        // uniqId of snapshot tags is tokenized into n-grams, none of its
+        // terms is an id
+        String index = BuilderFactory.SNAPSHOT_TAG_TYPE;
+        DocumentBuilder sdb = new SnapshotTagDocumentBuilder();
+        List<String> ids = new ArrayList<String>();
+        for (long i = 1; i <= 3; i++) {
+            Map<String, String> meta = new HashMap<String, String>();
+            meta.put("uniqId", "1000-" + i);
+            meta.put("name", "tag" + i);
+            indexManager.addToIndex(index, sdb.buildDocument(new Long(i), meta), "en");
+            ids.add("1000-" + i);
+        }
+        indexManager.commitIndex(index);
+
+        assertEquals(0, indexManager.deleteRecordsNotInList(ids, index, "uniqId"));
+        // the orphan can not be deleted by a term, no live document is hit
+        ids.remove("1000-3");
+        assertEquals(0, indexManager.deleteRecordsNotInList(ids, index, "uniqId"));
+        for (int i = 1; i <= 3; i++) {
+            assertEquals(1, indexManager.search(index, "id:" + i, "en").size());
+        }
+    }
+
     public void StillNeedsWork_testQueryDocs()
         throws IOException, IndexingException, QueryParseException {
 
@@ -16,11 +16,16 @@
 package com.redhat.satellite.search.rpc.handlers;
 
 import com.redhat.satellite.search.db.DatabaseManager;
+import com.redhat.satellite.search.db.WriteQuery;
 import com.redhat.satellite.search.index.IndexManager;
+import com.redhat.satellite.search.index.builder.BuilderFactory;
 import com.redhat.satellite.search.scheduler.ScheduleManager;
 
 import org.apache.log4j.Logger;
 
+import java.sql.SQLException;
+import java.util.Map;
+
 /**
  * XML-RPC handler which handles calls for administration
  * Updating indexes maybe more tasks later
@@ -31,6 +36,8 @@ public class AdminHandler {
 
     private static Logger log = Logger.getLogger(AdminHandler.class);
     private ScheduleManager scheduleManager;
+    private IndexManager indexManager;
+    private DatabaseManager databaseManager;
 
     /**
      * Constructor
@@ -42,6 +49,8 @@ public class AdminHandler {
             ScheduleManager schedMgr) {
         log.info("** AdminHandler constructor invoked");
         scheduleManager = schedMgr;
+        indexManager = idxManager;
+        databaseManager = dbMgr;
     }
     /**
      * Causes the task associated with the indexName to run and index new data.
@@ -55,4 +64,76 @@ public class AdminHandler {
         }
         return scheduleManager.triggerIndexTask(indexName);
     }
+
+    /**
+     * Rebuilds the package or errata index from scratch. The index task
+     * forgets how far it got and builds the whole index aside, with
+     * search.rebuild_threads threads; searches keep using the current
+     * index until the rebuilt one is swapped in.
+     *
+     * @param indexName packages or errata
+     * @return true if the rebuild is scheduled, false if unable to schedule.
+     */
+    public boolean rebuildIndex(String indexName) {
+        String queryName;
+        if (BuilderFactory.PACKAGES_TYPE.equals(indexName)) {
+            queryName = "deleteLastPackage";
+        }
+        else if (BuilderFactory.ERRATA_TYPE.equals(indexName)) {
+            queryName = "deleteLastErrata";
+        }
+        else {
+            log.info("Rebuilding " + indexName + " is not supported.");
+            return false;
+        }
+        try {
+            WriteQuery query = databaseManager.getWriterQuery(queryName);
+            try {
+                query.delete(null);
+            }
+            finally {
+                query.close();
+            }
+        }
+        catch (SQLException e) {
+            log.error("Unable to reset the index run of " + indexName, e);
+            return false;
+        }
+        return scheduleManager.triggerIndexTask(indexName);
+    }
+
+    /**
+     * Returns statistics of the open searchers and writers: for every index
+     * how often and how fast its searcher was reopened, the searcher's age
+     * in seconds, and the changes waiting to be committed.
+     *
+     * @return map of index name to statistics
+     */
+    public Map<String, Map<String, Object>> getIndexStatistics() {
+        return indexManager.getStatistics();
+    }
+
+    /**
+     * Returns statistics of the cache of search results: its size, hits,
+     * misses, evictions, results dropped because their index changed, and
+     * the hit ratio.
+     *
+     * @return map of statistic name to value
+     */
+    public Map<String, Object> getQueryCacheStatistics() {
+        return indexManager.getQueryCacheStatistics();
+    }
+
+    /**
+     * Drops the cached visibility filters of all users, to be called when
+     * channel access or system permissions changed and searches have to
+     * honor the change before the filters expire.
+     *
+     * @return true
+     */
+    public boolean invalidateVisibility() {
+        log.info("Invalidating cached visibility filters");
+        indexManager.getVisibilityCache().invalidate();
+        return true;
+    }
 }
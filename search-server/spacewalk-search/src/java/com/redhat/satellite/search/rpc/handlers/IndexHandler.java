@@ -20,11 +20,15 @@ import com.redhat.satellite.search.db.Query;
 import com.redhat.satellite.search.index.IndexManager;
 import com.redhat.satellite.search.index.IndexingException;
 import com.redhat.satellite.search.index.Result;
+import com.redhat.satellite.search.index.ResultPage;
 import com.redhat.satellite.search.index.QueryParseException;
+import com.redhat.satellite.search.index.VisibilityCache;
+import com.redhat.satellite.search.index.VisibilityFilter;
 import com.redhat.satellite.search.scheduler.ScheduleManager;
 
 import org.apache.log4j.Logger;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Filter;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
@@ -48,6 +52,7 @@ public class IndexHandler {
     private static Logger log = Logger.getLogger(IndexHandler.class);
     private IndexManager indexManager;
     private DatabaseManager databaseManager;
+    private boolean screenFiltered;
     public static final int QUERY_ERROR = 100;
     public static final int INDEX_ERROR = 200;
     public static final int DB_ERROR = 300;
@@ -63,6 +68,8 @@ public class IndexHandler {
             ScheduleManager schedMgr) {
         indexManager = idxManager;
         databaseManager = dbMgr;
+        // without the queue the memberships in the index go stale
+        screenFiltered = !schedMgr.isQueueEnabled();
     }
 
     /**
@@ -150,13 +157,17 @@ public class IndexHandler {
         while (retry) {
             try {
                 retry = false;
-                List<Result> hits = indexManager.search(indexName, query, lang,
-                        isFineGrained);
                 if (indexName.equals("package") || indexName.equals("errata")
                         || indexName.equals("server")) {
-                    return screenHits(sessionId, indexName, hits);
+                    Filter filter = getVisibilityFilter(sessionId, indexName, lang);
+                    List<Result> hits = indexManager.search(indexName, query, lang,
+                            isFineGrained, filter);
+                    if (filter == null || screenFiltered) {
+                        return screenHits(sessionId, indexName, hits);
+                    }
+                    return hits;
                 }
-                return hits;
+                return indexManager.search(indexName, query, lang, isFineGrained);
             }
             catch (IndexingException e) {
                 log.error("Caught exception: ", e);
@@ -171,27 +182,172 @@ public class IndexHandler {
                 throw new XmlRpcFault(DB_ERROR, e.getMessage());
             }
             catch (BooleanQuery.TooManyClauses e) {
-                int oldQueries = BooleanQuery.getMaxClauseCount();
-                if (Integer.MAX_VALUE / 2 > oldQueries) {
-                    // increase number of max clause count
-                    // if there's no overflow danger
-                    int newQueries = oldQueries * 2;
-                    log.error("Too many hits for query: " + oldQueries +
-                            ".  Increasing max clause count to " + newQueries +
-                            "\nexception message: " + e.getMessage());
-                    BooleanQuery.setMaxClauseCount(newQueries);
-                    retry = true;
-                }
-                else {
-                    // there's no more help
-                    throw e;
+                increaseMaxClauseCount(e);
+                retry = true;
+            }
+        }
+        // return just because of compiler
+        return null;
+    }
+
+    /**
+     * Search index for one page of hits
+     *
+     * @param sessionId
+     *            user's application session id
+     * @param indexName
+     *            index to use
+     * @param query
+     *            search query
+     *  @param lang
+     *            language
+     *  @param isFineGrained
+     *            if set will restrict matches to be stricter and less forgiving
+     *  @param offset
+     *            number of hits to skip
+     *  @param limit
+     *            maximum number of hits returned
+     *  @param sort
+     *            field to order the hits by, prefixed with "-" for descending
+     *            order, empty to order them by relevance
+     * @return the hits of the page and the total number of hits
+     * @throws XmlRpcFault something bad happened
+     */
+    public ResultPage searchPage(long sessionId, String indexName, String query,
+            String lang, boolean isFineGrained, int offset, int limit, String sort)
+            throws XmlRpcFault {
+        if (log.isDebugEnabled()) {
+            log.debug("IndexHandler:: searching for: " + query + ", indexName = " +
+                    indexName + ", lang = " + lang + ", page = " + offset + "+" +
+                    limit + ", sort = " + sort);
+        }
+        if (offset < 0 || limit < 0) {
+            throw new XmlRpcFault(QUERY_ERROR, "Invalid page: offset " + offset +
+                    ", limit " + limit);
+        }
+        boolean retry = true;
+        while (retry) {
+            try {
+                retry = false;
+                if (indexName.equals("package") || indexName.equals("errata")
+                        || indexName.equals("server")) {
+                    Filter filter = getVisibilityFilter(sessionId, indexName, lang);
+                    if (filter == null || screenFiltered) {
+                        // hits screened by the database can only be paged afterwards
+                        ResultPage all = indexManager.searchPage(indexName, query, lang,
+                                isFineGrained, filter, 0, Integer.MAX_VALUE, sort);
+                        List<Result> hits = screenHits(sessionId, indexName,
+                                all.getResults());
+                        return new ResultPage(hits.size(), hits.subList(
+                                Math.min(offset, hits.size()),
+                                (int) Math.min((long) offset + limit, hits.size())));
+                    }
+                    return indexManager.searchPage(indexName, query, lang,
+                            isFineGrained, filter, offset, limit, sort);
                 }
+                return indexManager.searchPage(indexName, query, lang, isFineGrained,
+                        null, offset, limit, sort);
+            }
+            catch (IndexingException e) {
+                log.error("Caught exception: ", e);
+                throw new XmlRpcFault(INDEX_ERROR, e.getMessage());
+            }
+            catch (QueryParseException e) {
+                log.error("Caught exception: ", e);
+                throw new XmlRpcFault(QUERY_ERROR, e.getMessage());
+            }
+            catch (SQLException e) {
+                log.error("Caught exception: ", e);
+                throw new XmlRpcFault(DB_ERROR, e.getMessage());
+            }
+            catch (BooleanQuery.TooManyClauses e) {
+                increaseMaxClauseCount(e);
+                retry = true;
             }
         }
         // return just because of compiler
         return null;
     }
 
+    /**
+     * Doubles the max clause count of queries, so the query can be retried
+     * @param e the exception of the query
+     * @throws BooleanQuery.TooManyClauses if the count can't grow anymore
+     */
+    private void increaseMaxClauseCount(BooleanQuery.TooManyClauses e) {
+        int oldQueries = BooleanQuery.getMaxClauseCount();
+        if (Integer.MAX_VALUE / 2 > oldQueries) {
+            // increase number of max clause count
+            // if there's no overflow danger
+            int newQueries = oldQueries * 2;
+            log.error("Too many hits for query: " + oldQueries +
+                    ".  Increasing max clause count to " + newQueries +
+                    "\nexception message: " + e.getMessage());
+            BooleanQuery.setMaxClauseCount(newQueries);
+        }
+        else {
+            // there's no more help
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the filter of the documents the session's user may see. The
+     * indexer queue reindexes a record whose channels or server groups
+     * change; without the queue the index keeps the old memberships, and the
+     * filter only narrows the hits the database screens. The filter is null
+     * if the index was built without the visibility fields, the hits have to
+     * be screened by the database then.
+     */
+    private Filter getVisibilityFilter(long sessionId, String indexName,
+            String lang) throws IndexingException, SQLException {
+        if (!indexManager.isVisibilityIndexed(indexName, lang)) {
+            return null;
+        }
+        VisibilityCache cache = indexManager.getVisibilityCache();
+        Long userId = cache.getUser(sessionId);
+        if (userId == null) {
+            Query<Long> query = databaseManager.getQuery("getSessionUser");
+            try {
+                userId = query.load(sessionId);
+            }
+            finally {
+                query.close();
+            }
+            if (userId == null) {
+                // no such session, nothing is visible
+                return new VisibilityFilter();
+            }
+            cache.putUser(sessionId, userId);
+        }
+        Filter filter = cache.getFilter(indexName, userId);
+        if (filter == null) {
+            VisibilityFilter visible = new VisibilityFilter();
+            if ("server".equals(indexName)) {
+                visible.add(VisibilityFilter.ORG_FIELD,
+                        loadIds("listOrgAdminOrgIds", userId));
+                visible.add(VisibilityFilter.SERVER_GROUP_FIELD,
+                        loadIds("listUserServerGroupIds", userId));
+            }
+            else {
+                visible.add(VisibilityFilter.CHANNEL_FIELD,
+                        loadIds("listVisibleChannelIds", userId));
+            }
+            filter = cache.putFilter(indexName, userId, visible);
+        }
+        return filter;
+    }
+
+    private List<Long> loadIds(String queryName, Long userId) throws SQLException {
+        Query<Long> query = databaseManager.getQuery(queryName);
+        try {
+            return query.loadList(userId);
+        }
+        finally {
+            query.close();
+        }
+    }
+
     private List<Result> screenHits(long sessionId, String indexName,
             List<Result> hits) throws SQLException {
 
@@ -21,6 +21,8 @@ import com.redhat.satellite.search.index.builder.BuilderFactory;
 import com.redhat.satellite.search.index.IndexManager;
 import com.redhat.satellite.search.scheduler.tasks.IndexErrataTask;
 import com.redhat.satellite.search.scheduler.tasks.IndexPackagesTask;
+import com.redhat.satellite.search.scheduler.tasks.IndexQueuePurgeTask;
+import com.redhat.satellite.search.scheduler.tasks.IndexQueueTask;
 import com.redhat.satellite.search.scheduler.tasks.IndexSnapshotTagsTask;
 import com.redhat.satellite.search.scheduler.tasks.IndexServerCustomInfoTask;
 import com.redhat.satellite.search.scheduler.tasks.IndexSystemsTask;
@@ -89,6 +91,20 @@ public class ScheduleManager implements Startable {
         return trigger;
     }
 
+    /**
+     * Tells whether the indexer queue is drained. The package, errata and
+     * system indexes then follow the changes of the records and their
+     * channel and server group memberships within seconds.
+     * @return true if the indexer queue is drained
+     */
+    public boolean isQueueEnabled() {
+        return getQueueInterval(new Configuration()) > 0;
+    }
+
+    private static long getQueueInterval(Configuration config) {
+        return config.getInt("search.schedule.queue_interval", 5000);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -98,9 +114,20 @@ public class ScheduleManager implements Startable {
 
             long interval = config.getInt("search.schedule.interval", 300000);
             log.info("ScheduleManager task interval is set to " + interval);
+            // the indexer queue delivers changes within seconds, packages and
+            // errata are only polled to catch up with anything it missed
+            long queueInterval = getQueueInterval(config);
+            long queuedInterval = interval;
+            if (queueInterval > 0) {
+                queuedInterval = config.getInt("search.schedule.queued_interval",
+                        3600000);
+                log.info("ScheduleManager queue interval is set to " + queueInterval);
+            }
             int mode = SimpleTrigger.REPEAT_INDEFINITELY;
             if (System.getProperties().get("isTesting") != null) {
                 interval = 100;
+                queuedInterval = 100;
+                queueInterval = Math.min(queueInterval, 100);
                 mode = 0;
             }
 
@@ -110,11 +137,11 @@ public class ScheduleManager implements Startable {
             jobData.put("configuration", new Configuration());
 
             scheduleJob(scheduler, BuilderFactory.PACKAGES_TYPE,
-                    mode, interval,
+                    mode, queuedInterval,
                     IndexPackagesTask.class, jobData);
 
             scheduleJob(scheduler, BuilderFactory.ERRATA_TYPE,
-                    mode, interval,
+                    mode, queuedInterval,
                     IndexErrataTask.class, jobData);
 
             scheduleJob(scheduler, BuilderFactory.SERVER_TYPE,
@@ -137,6 +164,18 @@ public class ScheduleManager implements Startable {
                     mode, interval,
                     IndexXccdfIdentTask.class, jobData);
 
+            if (queueInterval > 0) {
+                scheduleJob(scheduler, "indexerQueue",
+                        mode, queueInterval,
+                        IndexQueueTask.class, jobData);
+            }
+            else {
+                // the triggers fill the queue regardless
+                scheduleJob(scheduler, "indexerQueuePurge",
+                        mode, interval,
+                        IndexQueuePurgeTask.class, jobData);
+            }
+
             scheduler.start();
         }
         catch (SchedulerException e) {
@@ -31,12 +31,12 @@ import org.quartz.JobExecutionException;
 import org.quartz.StatefulJob;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -63,21 +63,9 @@ public abstract class GenericIndexTask implements StatefulJob {
             //try to create the index first incase we never actually
             //   have any records (BZ 537502)
             indexManager.createIndex(getIndexName(), lang);
-            List<GenericRecord> data = getRecords(databaseManager);
-            int count = 0;
-            log.info(super.getClass().toString() + "found [" +
-                    data.size() + "] items to index");
-            for (Iterator<GenericRecord> iter = data.iterator(); iter.hasNext();) {
-                GenericRecord current = iter.next();
-                indexRecord(indexManager, current);
-                count++;
-                if (count == 10 || !iter.hasNext()) {
-                    if (System.getProperties().get("isTesting") == null) {
-                        updateLastRecord(databaseManager, current.getId());
-                    }
-                    count = 0;
-                }
-            }
+            int count = indexRecords(databaseManager, indexManager);
+            log.info("GenericIndexTask<" + super.getClass().toString() +
+                    " indexed " + count + " records");
             //
             // Check to see if any records have been deleted from database, so
             // we should delete from our indexes.
@@ -129,31 +117,14 @@ public abstract class GenericIndexTask implements StatefulJob {
     }
 
     /**
-     * @param indexManager
-     * @param current
+     * Streams the records which have not been indexed, or need to be
+     * reindexed, into the index.
+     * @return number of records indexed
      */
-    private void indexRecord(IndexManager indexManager,
-            GenericRecord data)
-        throws IndexingException {
-
-        Map<String, String> attrs = getFieldMap(data);
-        log.info(super.getClass().toString() + " Indexing object: " +
-                data.getId() + ": " + attrs.toString());
-        DocumentBuilder pdb = BuilderFactory.getBuilder(getIndexName());
-        Document doc = pdb.buildDocument(new Long(data.getId()), attrs);
-        indexManager.addUniqueToIndex(getIndexName(), doc, getUniqueFieldId(),
-                lang);
-    }
-
-
-    /**
-     * @param databaseManager
-     * @return
-     */
-    private List<GenericRecord> getRecords(DatabaseManager databaseManager)
-        throws SQLException {
+    private int indexRecords(final DatabaseManager databaseManager,
+            IndexManager indexManager)
+        throws SQLException, JobExecutionException {
         // What was the last object id we indexed?
-        List<GenericRecord> retval = null;
         Query<Long> query = databaseManager.getQuery(getQueryLastRecord());
         Long sid = null;
         try {
@@ -177,6 +148,7 @@ public abstract class GenericIndexTask implements StatefulJob {
         if (lastRun == null) {
             lastRun = new Date(0);
         }
+        IndexBatch<GenericRecord> batch = createBatch(databaseManager, indexManager, true);
         // Lookup what objects have not been indexed, or need to be reindexed.
         Query<GenericRecord> srvrQuery = databaseManager.getQuery(
                 getQueryRecordsToIndex());
@@ -186,14 +158,64 @@ public abstract class GenericIndexTask implements StatefulJob {
             params.put("last_modified", lastRun);
             log.info("GenericIndexTask<" + super.getClass().toString() +
                     " last processed id = " + sid + ", lastRun was " + lastRun);
-            retval = srvrQuery.loadList(params);
-            log.info("GenericIndexTask<" + super.getClass().toString() +
-                    " number of results returned = " + retval.size());
+            srvrQuery.stream(params, batch);
         }
         finally {
             srvrQuery.close();
         }
-        return retval;
+        batch.flush();
+        return batch.getCount();
+    }
+
+    /**
+     * Reindexes records by id, removing the ones which were deleted
+     * @param databaseManager database manager
+     * @param indexManager index manager
+     * @param ids ids of the records
+     * @return number of records removed from the index
+     * @throws SQLException something bad happened
+     * @throws JobExecutionException indexing failed
+     */
+    int reindex(DatabaseManager databaseManager, IndexManager indexManager,
+            Collection<Long> ids) throws SQLException, JobExecutionException {
+        return createBatch(databaseManager, indexManager, false).reindex(
+                databaseManager, getQueryRecordsById(), ids);
+    }
+
+    /**
+     * Creates the batch indexing the records of this task
+     * @param checkpoint whether the last indexed id is recorded
+     */
+    private IndexBatch<GenericRecord> createBatch(final DatabaseManager databaseManager,
+            IndexManager indexManager, final boolean checkpoint) {
+        final DocumentBuilder pdb = BuilderFactory.getBuilder(getIndexName());
+        return new IndexBatch<GenericRecord>(indexManager, getIndexName(),
+                getUniqueFieldId(), lang) {
+
+            protected long getId(GenericRecord data) {
+                return data.getId();
+            }
+
+            protected void prepare(List<GenericRecord> records) throws SQLException {
+                prepareRecords(databaseManager, records);
+            }
+
+            protected Document buildDocument(GenericRecord data) {
+                Map<String, String> attrs = getFieldMap(data);
+                if (log.isDebugEnabled()) {
+                    log.debug("Indexing object: " + data.getId() + ": " + attrs);
+                }
+                Document doc = pdb.buildDocument(new Long(data.getId()), attrs);
+                addFields(data, doc);
+                return doc;
+            }
+
+            protected void updateLastId(long id) throws SQLException {
+                if (checkpoint) {
+                    updateLastRecord(databaseManager, id);
+                }
+            }
+        };
     }
 
     /**
@@ -208,11 +230,11 @@ public abstract class GenericIndexTask implements StatefulJob {
         Query<Object> query = null;
         String uniqField = null;
         String indexName = null;
-        HashSet<String> idSet = null;
+        List<String> idSet = null;
         try {
             query = databaseManager.getQuery(getQueryAllIds());
             records = query.loadList(Collections.EMPTY_MAP);
-            idSet = new HashSet<String>();
+            idSet = new ArrayList<String>(records.size());
             for (Object record : records) {
                 idSet.add(record.toString());
             }
@@ -227,6 +249,26 @@ public abstract class GenericIndexTask implements StatefulJob {
         return indexManager.deleteRecordsNotInList(idSet, indexName, uniqField);
     }
 
+    /**
+     * Loads what the documents of a batch of records need besides the
+     * records, called before the documents of the batch are built
+     * @param databaseManager database manager
+     * @param records records of the batch
+     * @throws SQLException something bad happened
+     */
+    protected void prepareRecords(DatabaseManager databaseManager,
+            List<GenericRecord> records) throws SQLException {
+    }
+
+    /**
+     * Adds fields which getFieldMap() can't express, like the ids of
+     * VisibilityFilter, to the document of a record
+     * @param data fully populated DTO object
+     * @param doc document built from getFieldMap()
+     */
+    protected void addFields(GenericRecord data, Document doc) {
+    }
+
     /**
      *
      * @param data fully populated DTO object
@@ -264,6 +306,13 @@ public abstract class GenericIndexTask implements StatefulJob {
      * @return name of query which will give back records to be indexed
      */
     protected abstract String getQueryRecordsToIndex();
+    /**
+     * @return name of query which will give back the records of an id_list,
+     * null if the records can't be reindexed by id
+     */
+    protected String getQueryRecordsById() {
+        return null;
+    }
     /**
      *
      * @return name of query which will show the date this task last ran
@@ -0,0 +1,258 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+
+package com.redhat.satellite.search.scheduler.tasks;
+
+import com.redhat.satellite.search.db.DatabaseManager;
+import com.redhat.satellite.search.db.Query;
+import com.redhat.satellite.search.db.RecordHandler;
+import com.redhat.satellite.search.db.models.Membership;
+import com.redhat.satellite.search.index.IndexManager;
+import com.redhat.satellite.search.index.IndexRebuild;
+import com.redhat.satellite.search.index.IndexingException;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.document.Document;
+import org.quartz.JobExecutionException;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Indexes the records streamed from a query in batches. The documents of a
+ * batch are written by the index's open writer, then the index is committed
+ * and the id of the last record is recorded once for the whole batch.
+ * Records have to be streamed in ascending id order.
+ *
+ * Data the documents of a batch need besides the records, like the channels
+ * they are visible in, is loaded once per batch by prepare().
+ *
+ * A batch writing to a part of an IndexRebuild adds the documents to the
+ * part instead, nothing is committed or recorded.
+ *
+ * @param <T> type of the indexed records
+ * @version $Rev$
+ */
+abstract class IndexBatch<T> implements RecordHandler<T, JobExecutionException> {
+
+    private static Logger log = Logger.getLogger(IndexBatch.class);
+
+    private final IndexManager indexManager;
+    private final String indexName;
+    private final String uniqueField;
+    private final String lang;
+    private final int batchSize;
+    private final boolean checkpoint;
+    private final List<T> pending = new ArrayList<T>();
+    private IndexRebuild.Part part;
+    private int count;
+
+    /**
+     * Constructor
+     * @param indexManagerIn index manager
+     * @param indexNameIn index the records are added to
+     * @param uniqueFieldIn field of the documents which identifies a record
+     * @param langIn language
+     */
+    IndexBatch(IndexManager indexManagerIn, String indexNameIn,
+            String uniqueFieldIn, String langIn) {
+        indexManager = indexManagerIn;
+        indexName = indexNameIn;
+        uniqueField = uniqueFieldIn;
+        lang = langIn;
+        batchSize = Math.max(1, indexManager.getCommitDocs());
+        checkpoint = System.getProperties().get("isTesting") == null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void handleRecord(T record) throws JobExecutionException {
+        pending.add(record);
+        if (pending.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Indexes the pending records, commits the index and records the last
+     * indexed id; called once more after the last record
+     * @throws JobExecutionException indexing or recording failed
+     */
+    void flush() throws JobExecutionException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        long lastId = getId(pending.get(pending.size() - 1));
+        try {
+            prepare(pending);
+            if (part != null) {
+                for (T record : pending) {
+                    part.add(buildDocument(record));
+                }
+            }
+            else {
+                for (T record : pending) {
+                    indexManager.addUniqueToIndex(indexName, buildDocument(record),
+                            uniqueField, lang);
+                }
+                // the index has to contain what the checkpoint claims
+                indexManager.commitIndex(indexName);
+                if (checkpoint) {
+                    updateLastId(lastId);
+                }
+            }
+        }
+        catch (IndexingException e) {
+            throw new JobExecutionException(e);
+        }
+        catch (SQLException e) {
+            throw new JobExecutionException(e);
+        }
+        count += pending.size();
+        pending.clear();
+        log.info("Indexed " + count + " records into <" + indexName + ">, last id " +
+                lastId);
+    }
+
+    /**
+     * Reindexes the records of the ids and removes the documents of the ids
+     * the query doesn't return anymore, the records were deleted.
+     * @param databaseManager database manager
+     * @param queryName query streaming the records of an id_list
+     * @param ids ids of the records
+     * @return number of documents removed
+     * @throws SQLException something bad happened
+     * @throws JobExecutionException indexing failed
+     */
+    int reindex(DatabaseManager databaseManager, String queryName,
+            Collection<Long> ids) throws SQLException, JobExecutionException {
+        final Set<String> deleted = new HashSet<String>();
+        for (Long id : ids) {
+            deleted.add(id.toString());
+        }
+        RecordHandler<T, JobExecutionException> handler =
+            new RecordHandler<T, JobExecutionException>() {
+            public void handleRecord(T record) throws JobExecutionException {
+                deleted.remove(Long.toString(getId(record)));
+                IndexBatch.this.handleRecord(record);
+            }
+        };
+        List<Long> list = new ArrayList<Long>(ids);
+        Collections.sort(list);
+        Query<T> query = databaseManager.getQuery(queryName);
+        try {
+            // oracle takes no more than 1000 items in an in clause
+            for (int i = 0; i < list.size(); i += 1000) {
+                Map<String, Object> params = new HashMap<String, Object>();
+                params.put("id_list", list.subList(i, Math.min(i + 1000, list.size())));
+                query.stream(params, handler);
+            }
+        }
+        finally {
+            query.close();
+        }
+        flush();
+        try {
+            indexManager.removeFromIndex(indexName, uniqueField, deleted);
+        }
+        catch (IndexingException e) {
+            throw new JobExecutionException(e);
+        }
+        return deleted.size();
+    }
+
+    /**
+     * Makes the batch add its documents to a part of a rebuild
+     * @param partIn part of the rebuilt index
+     */
+    void setPart(IndexRebuild.Part partIn) {
+        part = partIn;
+    }
+
+    /**
+     * @return number of records indexed
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * @param record record to index
+     * @return id of the record
+     */
+    protected abstract long getId(T record);
+
+    /**
+     * Loads what the documents of a batch need besides the records
+     * @param records records of the batch
+     * @throws SQLException something bad happened
+     */
+    protected void prepare(List<T> records) throws SQLException {
+    }
+
+    /**
+     * @param record record to index
+     * @return document of the record
+     */
+    protected abstract Document buildDocument(T record);
+
+    /**
+     * Records the id of the last record indexed
+     * @param id id of the record
+     * @throws SQLException something bad happened
+     */
+    protected abstract void updateLastId(long id) throws SQLException;
+
+    /**
+     * Loads the channels or server groups of records
+     * @param databaseManager database manager
+     * @param queryName query returning Memberships for an id_list
+     * @param ids ids of the records
+     * @return ids of the channels or server groups keyed by record id
+     * @throws SQLException something bad happened
+     */
+    static Map<Long, List<Long>> loadMemberships(DatabaseManager databaseManager,
+            String queryName, List<Long> ids) throws SQLException {
+        Map<Long, List<Long>> retval = new HashMap<Long, List<Long>>();
+        Query<Membership> query = databaseManager.getQuery(queryName);
+        try {
+            // oracle takes no more than 1000 items in an in clause
+            for (int i = 0; i < ids.size(); i += 1000) {
+                Map<String, Object> params = new HashMap<String, Object>();
+                params.put("id_list", ids.subList(i, Math.min(i + 1000, ids.size())));
+                for (Membership member : query.loadList(params)) {
+                    List<Long> groups = retval.get(member.getId());
+                    if (groups == null) {
+                        groups = new ArrayList<Long>();
+                        retval.put(member.getId(), groups);
+                    }
+                    groups.add(member.getGroupId());
+                }
+            }
+        }
+        finally {
+            query.close();
+        }
+        return retval;
+    }
+}
@@ -19,7 +19,7 @@ import com.redhat.satellite.search.db.Query;
 import com.redhat.satellite.search.db.WriteQuery;
 import com.redhat.satellite.search.db.models.Errata;
 import com.redhat.satellite.search.index.IndexManager;
-import com.redhat.satellite.search.index.IndexingException;
+import com.redhat.satellite.search.index.VisibilityFilter;
 import com.redhat.satellite.search.index.builder.BuilderFactory;
 import com.redhat.satellite.search.index.builder.DocumentBuilder;
 
@@ -31,9 +31,11 @@ import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -59,27 +61,12 @@ public class IndexErrataTask implements Job {
 
         try {
 
-            List<Errata> errata = getErrata(databaseManager);
-            int count = 0;
-            log.info("found [" + errata.size() + "] errata to index");
-            for (Iterator<Errata> iter = errata.iterator(); iter.hasNext();) {
-                Errata current = iter.next();
-                indexErrata(indexManager, current);
-                count++;
-                if (count == 10 || !iter.hasNext()) {
-                    if (System.getProperties().get("isTesting") == null) {
-                        updateLastErrataId(databaseManager, current.getId());
-                    }
-                    count = 0;
-                }
-            }
+            int count = indexErrata(databaseManager, indexManager);
+            log.info("indexed [" + count + "] errata");
         }
         catch (SQLException e) {
             throw new JobExecutionException(e);
         }
-        catch (IndexingException e) {
-            throw new JobExecutionException(e);
-        }
     }
     /**
      * @param databaseManager
@@ -87,14 +74,20 @@ public class IndexErrataTask implements Job {
      */
     private void updateLastErrataId(DatabaseManager databaseManager, long eid)
         throws SQLException {
+        updateIndexerWork(databaseManager, "updateLastErrata", "createLastErrata", eid,
+                Calendar.getInstance().getTime());
+    }
+
+    private void updateIndexerWork(DatabaseManager databaseManager, String updateName,
+            String insertName, long eid, Date modified) throws SQLException {
 
-        WriteQuery updateQuery = databaseManager.getWriterQuery("updateLastErrata");
-        WriteQuery insertQuery = databaseManager.getWriterQuery("createLastErrata");
+        WriteQuery updateQuery = databaseManager.getWriterQuery(updateName);
+        WriteQuery insertQuery = databaseManager.getWriterQuery(insertName);
 
         try {
             Map<String, Object> params = new HashMap<String, Object>();
             params.put("id", eid);
-            params.put("last_modified", Calendar.getInstance().getTime());
+            params.put("last_modified", modified);
             if (updateQuery.update(params) == 0) {
                 insertQuery.insert(params);
             }
@@ -114,11 +107,10 @@ public class IndexErrataTask implements Job {
     }
 
     /**
-     * @param indexManager
-     * @param current
+     * @param errata errata to index
+     * @return document of the errata
      */
-    private void indexErrata(IndexManager indexManager, Errata errata)
-        throws IndexingException {
+    private Document buildDocument(Errata errata) {
 
         Map<String, String> attrs = new HashMap<String, String>();
         attrs.put("id", new Long(errata.getId()).toString());
@@ -140,20 +132,26 @@ public class IndexErrataTask implements Job {
         attrs.put("lastModified", errata.getLastModified());
         attrs.put("name", errata.getAdvisory());
 
-        log.info("Indexing errata: " + errata.getId() + ": " + attrs.toString());
+        if (log.isDebugEnabled()) {
+            log.debug("Indexing errata: " + errata.getId() + ": " + attrs);
+        }
         DocumentBuilder edb = BuilderFactory.getBuilder(BuilderFactory.ERRATA_TYPE);
-        Document doc = edb.buildDocument(new Long(errata.getId()), attrs);
-        indexManager.addToIndex("errata", doc, lang);
+        return edb.buildDocument(new Long(errata.getId()), attrs);
     }
 
     /**
+     * Streams the errata which have not been indexed yet into the index,
+     * then reindexes the errata whose channels changed since the last run
      * @param databaseManager
-     * @return
+     * @param indexManager
+     * @return number of errata indexed
      */
-    private List<Errata> getErrata(DatabaseManager databaseManager)
-        throws SQLException {
+    private int indexErrata(DatabaseManager databaseManager,
+            IndexManager indexManager)
+        throws SQLException, JobExecutionException {
 
-        List<Errata> retval = null;
+        // channel changes from now on are left to the next run
+        Date started = Calendar.getInstance().getTime();
         Query<Long> query = databaseManager.getQuery("getLastErrataId");
         Long eid = null;
         try {
@@ -165,14 +163,145 @@ public class IndexErrataTask implements Job {
         if (eid == null) {
             eid = new Long(0);
         }
+        // the checkpoint only moves with new errata, the channels have a
+        // watermark of their own
+        Date lastRun = loadDate(databaseManager, "getLastErrataChannelsRun");
+        if (lastRun == null) {
+            lastRun = loadDate(databaseManager, "getLastErrataIndexRun");
+        }
+        int count = 0;
+        if (eid == 0 && indexManager.getRebuildThreads() > 1) {
+            // nothing indexed yet, build the whole index aside
+            Query<Long> maxQuery = databaseManager.getQuery("maxErrataId");
+            Long maxId = null;
+            try {
+                maxId = maxQuery.load();
+            }
+            finally {
+                maxQuery.close();
+            }
+            if (maxId != null) {
+                count = rebuild(databaseManager, indexManager, maxId);
+                updateLastErrataId(databaseManager, maxId);
+                eid = maxId;
+            }
+        }
+        ErrataBatch batch = new ErrataBatch(databaseManager, indexManager, true);
         Query<Errata> errataQuery = databaseManager.getQuery("listErrataFromId");
         try {
-            retval = errataQuery.loadList(eid);
+            errataQuery.stream(eid, batch);
         }
         finally {
             errataQuery.close();
         }
-        return retval;
+        batch.flush();
+        count += batch.getCount();
+        if (lastRun != null) {
+            ErrataBatch changed = new ErrataBatch(databaseManager, indexManager, false);
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put("id", eid);
+            params.put("last_modified", lastRun);
+            Query<Errata> changedQuery =
+                databaseManager.getQuery("listErrataWithChangedChannels");
+            try {
+                changedQuery.stream(params, changed);
+            }
+            finally {
+                changedQuery.close();
+            }
+            changed.flush();
+            count += changed.getCount();
+        }
+        updateIndexerWork(databaseManager, "updateLastErrataChannels",
+                "createLastErrataChannels", eid, started);
+        return count;
     }
 
+    private Date loadDate(DatabaseManager databaseManager, String queryName)
+        throws SQLException {
+        Query<Date> query = databaseManager.getQuery(queryName);
+        try {
+            return query.load();
+        }
+        finally {
+            query.close();
+        }
+    }
+
+    /**
+     * Rebuilds the index of all errata up to maxId with several threads,
+     * searches use the old index until the rebuilt one is swapped in
+     * @param databaseManager database manager
+     * @param indexManager index manager
+     * @param maxId highest id of the errata
+     * @return number of errata indexed
+     * @throws JobExecutionException indexing failed
+     */
+    private int rebuild(final DatabaseManager databaseManager,
+            final IndexManager indexManager, long maxId) throws JobExecutionException {
+        ParallelRebuild<Errata> rebuild = new ParallelRebuild<Errata>(databaseManager,
+                indexManager, "errata", lang, "listErrataInRange") {
+            protected IndexBatch<Errata> createBatch() {
+                return new ErrataBatch(databaseManager, indexManager, false);
+            }
+        };
+        return rebuild.run(maxId);
+    }
+
+    /**
+     * Reindexes errata by id, removing the ones which were deleted
+     * @param databaseManager database manager
+     * @param indexManager index manager
+     * @param ids ids of the errata
+     * @return number of errata removed from the index
+     * @throws SQLException something bad happened
+     * @throws JobExecutionException indexing failed
+     */
+    int reindex(DatabaseManager databaseManager, IndexManager indexManager,
+            Collection<Long> ids) throws SQLException, JobExecutionException {
+        ErrataBatch batch = new ErrataBatch(databaseManager, indexManager, false);
+        return batch.reindex(databaseManager, "listErrataById", ids);
+    }
+
+    /**
+     * Indexes errata together with the channels they are in
+     */
+    private class ErrataBatch extends IndexBatch<Errata> {
+
+        private final DatabaseManager databaseManager;
+        private final boolean checkpoint;
+        private Map<Long, List<Long>> channels;
+
+        ErrataBatch(DatabaseManager databaseManagerIn, IndexManager indexManagerIn,
+                boolean checkpointIn) {
+            super(indexManagerIn, "errata", "id", lang);
+            databaseManager = databaseManagerIn;
+            checkpoint = checkpointIn;
+        }
+
+        protected long getId(Errata errata) {
+            return errata.getId();
+        }
+
+        protected void prepare(List<Errata> errata) throws SQLException {
+            List<Long> ids = new ArrayList<Long>(errata.size());
+            for (Errata e : errata) {
+                ids.add(e.getId());
+            }
+            channels = loadMemberships(databaseManager, "listErrataChannelIds", ids);
+        }
+
+        protected Document buildDocument(Errata errata) {
+            Document doc = IndexErrataTask.this.buildDocument(errata);
+            VisibilityFilter.addFields(doc, VisibilityFilter.CHANNEL_FIELD,
+                    channels.get(errata.getId()));
+            return doc;
+        }
+
+        protected void updateLastId(long id) throws SQLException {
+            if (checkpoint) {
+                updateLastErrataId(databaseManager, id);
+            }
+        }
+    }
 }
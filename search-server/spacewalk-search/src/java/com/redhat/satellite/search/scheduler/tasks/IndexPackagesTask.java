@@ -20,7 +20,7 @@ import com.redhat.satellite.search.db.Query;
 import com.redhat.satellite.search.db.WriteQuery;
 import com.redhat.satellite.search.db.models.RhnPackage;
 import com.redhat.satellite.search.index.IndexManager;
-import com.redhat.satellite.search.index.IndexingException;
+import com.redhat.satellite.search.index.VisibilityFilter;
 import com.redhat.satellite.search.index.builder.BuilderFactory;
 import com.redhat.satellite.search.index.builder.DocumentBuilder;
 
@@ -32,9 +32,11 @@ import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -61,27 +63,12 @@ public class IndexPackagesTask implements Job {
             if (System.getProperties().get("isTesting") != null) {
                 cleanLastPackage(databaseManager);
             }
-            List<RhnPackage> packages = getPackages(databaseManager);
-            int count = 0;
-            log.info("found [" + packages.size() + "] packages to index");
-            for (Iterator<RhnPackage> iter = packages.iterator(); iter.hasNext();) {
-                RhnPackage current = iter.next();
-                indexPackage(indexManager, current);
-                count++;
-                if (count == 10 || !iter.hasNext()) {
-                    if (System.getProperties().get("isTesting") == null) {
-                        updateLastPackageId(databaseManager, current.getId());
-                    }
-                    count = 0;
-                }
-            }
+            int count = indexPackages(databaseManager, indexManager);
+            log.info("indexed [" + count + "] packages");
         }
         catch (SQLException e) {
             throw new JobExecutionException(e);
         }
-        catch (IndexingException e) {
-            throw new JobExecutionException(e);
-        }
     }
 
     private void cleanLastPackage(DatabaseManager databaseManager) throws SQLException {
@@ -95,8 +82,7 @@ public class IndexPackagesTask implements Job {
         }
     }
 
-    private void indexPackage(IndexManager indexManager, RhnPackage pkg)
-            throws IndexingException {
+    private Document buildDocument(RhnPackage pkg) {
         Map<String, String> attrs = new HashMap<String, String>();
         attrs.put("name", pkg.getName());
         attrs.put("version", pkg.getVersion());
@@ -105,20 +91,27 @@ public class IndexPackagesTask implements Job {
         attrs.put("description", pkg.getDescription());
         attrs.put("summary", pkg.getSummary());
         attrs.put("arch", pkg.getArch());
-        log.info("Indexing package: " + pkg.getId() + ": " + attrs.toString());
+        if (log.isDebugEnabled()) {
+            log.debug("Indexing package: " + pkg.getId() + ": " + attrs);
+        }
         DocumentBuilder pdb = BuilderFactory.getBuilder(BuilderFactory.PACKAGES_TYPE);
-        Document doc = pdb.buildDocument(new Long(pkg.getId()), attrs);
-        indexManager.addToIndex("package", doc, lang);
+        return pdb.buildDocument(new Long(pkg.getId()), attrs);
     }
 
     private void updateLastPackageId(DatabaseManager databaseManager,
             Long packageId) throws SQLException {
-        WriteQuery updateQuery = databaseManager.getWriterQuery("updateLastPackage");
-        WriteQuery insertQuery = databaseManager.getWriterQuery("createLastPackage");
+        updateIndexerWork(databaseManager, "updateLastPackage", "createLastPackage",
+                packageId, Calendar.getInstance().getTime());
+    }
+
+    private void updateIndexerWork(DatabaseManager databaseManager, String updateName,
+            String insertName, Long packageId, Date modified) throws SQLException {
+        WriteQuery updateQuery = databaseManager.getWriterQuery(updateName);
+        WriteQuery insertQuery = databaseManager.getWriterQuery(insertName);
         try {
             Map<String, Object> params = new HashMap<String, Object>();
             params.put("id", packageId);
-            params.put("last_modified", Calendar.getInstance().getTime());
+            params.put("last_modified", modified);
             if (updateQuery.update(params) == 0) {
                 insertQuery.insert(params);
             }
@@ -137,9 +130,10 @@ public class IndexPackagesTask implements Job {
         }
     }
 
-    private List<RhnPackage> getPackages(DatabaseManager databaseManager)
-            throws SQLException {
-        List<RhnPackage> retval = null;
+    private int indexPackages(DatabaseManager databaseManager,
+            IndexManager indexManager) throws SQLException, JobExecutionException {
+        // channel changes from now on are left to the next run
+        Date started = Calendar.getInstance().getTime();
         Query<Long> query = databaseManager.getQuery("getLastPackageId");
         Long packageId = null;
         try {
@@ -151,13 +145,146 @@ public class IndexPackagesTask implements Job {
         if (packageId == null) {
             packageId = new Long(0);
         }
+        // the checkpoint only moves with new packages, the channels have a
+        // watermark of their own
+        Date lastRun = loadDate(databaseManager, "getLastPackageChannelsRun");
+        if (lastRun == null) {
+            lastRun = loadDate(databaseManager, "getLastPackageIndexRun");
+        }
+        int count = 0;
+        if (packageId == 0 && indexManager.getRebuildThreads() > 1) {
+            // nothing indexed yet, build the whole index aside
+            Query<Long> maxQuery = databaseManager.getQuery("maxPackageId");
+            Long maxId = null;
+            try {
+                maxId = maxQuery.load();
+            }
+            finally {
+                maxQuery.close();
+            }
+            if (maxId != null) {
+                count = rebuild(databaseManager, indexManager, maxId);
+                updateLastPackageId(databaseManager, maxId);
+                packageId = maxId;
+            }
+        }
+        PackageBatch batch = new PackageBatch(databaseManager, indexManager, true);
         Query<RhnPackage> pkgQuery = databaseManager.getQuery("listPackagesFromId");
         try {
-            retval = pkgQuery.loadList(packageId);
+            pkgQuery.stream(packageId, batch);
         }
         finally {
             pkgQuery.close();
         }
-        return retval;
+        batch.flush();
+        count += batch.getCount();
+        if (lastRun != null) {
+            // reindex the channels of packages indexed by earlier runs
+            PackageBatch changed = new PackageBatch(databaseManager, indexManager, false);
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put("id", packageId);
+            params.put("last_modified", lastRun);
+            Query<RhnPackage> changedQuery =
+                databaseManager.getQuery("listPackagesWithChangedChannels");
+            try {
+                changedQuery.stream(params, changed);
+            }
+            finally {
+                changedQuery.close();
+            }
+            changed.flush();
+            count += changed.getCount();
+        }
+        updateIndexerWork(databaseManager, "updateLastPackageChannels",
+                "createLastPackageChannels", packageId, started);
+        return count;
+    }
+
+    private Date loadDate(DatabaseManager databaseManager, String queryName)
+        throws SQLException {
+        Query<Date> query = databaseManager.getQuery(queryName);
+        try {
+            return query.load();
+        }
+        finally {
+            query.close();
+        }
+    }
+
+    /**
+     * Rebuilds the index of all packages up to maxId with several threads,
+     * searches use the old index until the rebuilt one is swapped in
+     * @param databaseManager database manager
+     * @param indexManager index manager
+     * @param maxId highest id of the packages
+     * @return number of packages indexed
+     * @throws JobExecutionException indexing failed
+     */
+    private int rebuild(final DatabaseManager databaseManager,
+            final IndexManager indexManager, long maxId) throws JobExecutionException {
+        ParallelRebuild<RhnPackage> rebuild = new ParallelRebuild<RhnPackage>(
+                databaseManager, indexManager, "package", lang, "listPackagesInRange") {
+            protected IndexBatch<RhnPackage> createBatch() {
+                return new PackageBatch(databaseManager, indexManager, false);
+            }
+        };
+        return rebuild.run(maxId);
+    }
+
+    /**
+     * Reindexes packages by id, removing the ones which were deleted
+     * @param databaseManager database manager
+     * @param indexManager index manager
+     * @param ids ids of the packages
+     * @return number of packages removed from the index
+     * @throws SQLException something bad happened
+     * @throws JobExecutionException indexing failed
+     */
+    int reindex(DatabaseManager databaseManager, IndexManager indexManager,
+            Collection<Long> ids) throws SQLException, JobExecutionException {
+        PackageBatch batch = new PackageBatch(databaseManager, indexManager, false);
+        return batch.reindex(databaseManager, "listPackagesById", ids);
+    }
+
+    /**
+     * Indexes packages together with the channels they are in
+     */
+    private class PackageBatch extends IndexBatch<RhnPackage> {
+
+        private final DatabaseManager databaseManager;
+        private final boolean checkpoint;
+        private Map<Long, List<Long>> channels;
+
+        PackageBatch(DatabaseManager databaseManagerIn, IndexManager indexManagerIn,
+                boolean checkpointIn) {
+            super(indexManagerIn, "package", "id", lang);
+            databaseManager = databaseManagerIn;
+            checkpoint = checkpointIn;
+        }
+
+        protected long getId(RhnPackage pkg) {
+            return pkg.getId();
+        }
+
+        protected void prepare(List<RhnPackage> pkgs) throws SQLException {
+            List<Long> ids = new ArrayList<Long>(pkgs.size());
+            for (RhnPackage pkg : pkgs) {
+                ids.add(pkg.getId());
+            }
+            channels = loadMemberships(databaseManager, "listPackageChannelIds", ids);
+        }
+
+        protected Document buildDocument(RhnPackage pkg) {
+            Document doc = IndexPackagesTask.this.buildDocument(pkg);
+            VisibilityFilter.addFields(doc, VisibilityFilter.CHANNEL_FIELD,
+                    channels.get(pkg.getId()));
+            return doc;
+        }
+
+        protected void updateLastId(long id) throws SQLException {
+            if (checkpoint) {
+                updateLastPackageId(databaseManager, id);
+            }
+        }
     }
 }
@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.satellite.search.scheduler.tasks;
+
+import com.redhat.satellite.search.db.DatabaseManager;
+import com.redhat.satellite.search.db.WriteQuery;
+
+import org.apache.log4j.Logger;
+import org.quartz.JobDataMap;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.StatefulJob;
+
+import java.sql.SQLException;
+
+/**
+ * Empties the indexer queue while the search server does not drain it. The
+ * database triggers keep queueing the changed packages, errata and systems
+ * either way; without the queue the indexing tasks poll for the changes, and
+ * the entries would pile up.
+ *
+ * @version $Rev$
+ */
+public class IndexQueuePurgeTask implements StatefulJob {
+
+    private static Logger log = Logger.getLogger(IndexQueuePurgeTask.class);
+
+    /**
+     * {@inheritDoc}
+     */
+    public void execute(JobExecutionContext ctx) throws JobExecutionException {
+        JobDataMap jobData = ctx.getJobDetail().getJobDataMap();
+        DatabaseManager databaseManager =
+            (DatabaseManager)jobData.get("databaseManager");
+
+        int count = purge(databaseManager);
+        if (log.isDebugEnabled()) {
+            log.debug("Purged " + count + " entries of the indexer queue");
+        }
+    }
+
+    /**
+     * Deletes all entries of the indexer queue
+     * @param databaseManager database manager
+     * @return number of entries deleted
+     * @throws JobExecutionException deleting the entries failed
+     */
+    public int purge(DatabaseManager databaseManager) throws JobExecutionException {
+        try {
+            WriteQuery delete = databaseManager.getWriterQuery("purgeIndexerQueue");
+            try {
+                return delete.delete(null);
+            }
+            finally {
+                delete.close();
+            }
+        }
+        catch (SQLException e) {
+            throw new JobExecutionException(e);
+        }
+    }
+}
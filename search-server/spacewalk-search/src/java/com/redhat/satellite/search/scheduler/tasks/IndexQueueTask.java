@@ -0,0 +1,197 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.satellite.search.scheduler.tasks;
+
+import com.redhat.satellite.search.db.DatabaseManager;
+import com.redhat.satellite.search.db.Query;
+import com.redhat.satellite.search.db.RecordHandler;
+import com.redhat.satellite.search.db.WriteQuery;
+import com.redhat.satellite.search.db.models.IndexerQueueEntry;
+import com.redhat.satellite.search.index.IndexManager;
+import com.redhat.satellite.search.index.builder.BuilderFactory;
+
+import org.apache.log4j.Logger;
+import org.quartz.JobDataMap;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.StatefulJob;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Drains the indexer queue, which the database fills with the packages,
+ * errata and systems inserted, updated or deleted. The queued objects are
+ * reindexed in batches in queue order, the ones which don't exist anymore
+ * are removed from their index, and the entries of a batch are deleted from
+ * the queue once the index changes are committed. The database queues the
+ * objects whose channels or server groups changed as well, so the cached
+ * visibility filters of a reindexed index are dropped.
+ *
+ * @version $Rev$
+ */
+public class IndexQueueTask implements StatefulJob {
+
+    private static Logger log = Logger.getLogger(IndexQueueTask.class);
+
+    /**
+     * {@inheritDoc}
+     */
+    public void execute(JobExecutionContext ctx) throws JobExecutionException {
+        JobDataMap jobData = ctx.getJobDetail().getJobDataMap();
+        DatabaseManager databaseManager =
+            (DatabaseManager)jobData.get("databaseManager");
+        IndexManager indexManager =
+            (IndexManager)jobData.get("indexManager");
+
+        int count = drain(databaseManager, indexManager);
+        if (count > 0) {
+            log.info("Processed " + count + " entries of the indexer queue");
+        }
+    }
+
+    /**
+     * Reindexes the objects of the entries in the indexer queue and removes
+     * the entries
+     * @param databaseManager database manager
+     * @param indexManager index manager
+     * @return number of entries processed
+     * @throws JobExecutionException reading the queue or indexing failed
+     */
+    public int drain(DatabaseManager databaseManager, IndexManager indexManager)
+        throws JobExecutionException {
+        QueueBatch batch = new QueueBatch(databaseManager, indexManager);
+        try {
+            Query<IndexerQueueEntry> query =
+                databaseManager.getQuery("listIndexerQueue");
+            try {
+                query.stream(null, batch);
+            }
+            finally {
+                query.close();
+            }
+            batch.flush();
+        }
+        catch (SQLException e) {
+            throw new JobExecutionException(e);
+        }
+        return batch.getCount();
+    }
+
+    /**
+     * Collects the distinct objects of a batch of queue entries
+     */
+    private static class QueueBatch
+        implements RecordHandler<IndexerQueueEntry, JobExecutionException> {
+
+        private final DatabaseManager databaseManager;
+        private final IndexManager indexManager;
+        private final int batchSize;
+        private final Map<String, Set<Long>> pending = new HashMap<String, Set<Long>>();
+        private final List<Long> entryIds = new ArrayList<Long>();
+        private int count;
+
+        QueueBatch(DatabaseManager databaseManagerIn, IndexManager indexManagerIn) {
+            databaseManager = databaseManagerIn;
+            indexManager = indexManagerIn;
+            batchSize = Math.max(1, indexManager.getCommitDocs());
+        }
+
+        public void handleRecord(IndexerQueueEntry entry)
+            throws JobExecutionException {
+            Set<Long> ids = pending.get(entry.getObjectType());
+            if (ids == null) {
+                ids = new HashSet<Long>();
+                pending.put(entry.getObjectType(), ids);
+            }
+            ids.add(entry.getObjectId());
+            entryIds.add(entry.getId());
+            if (entryIds.size() >= batchSize) {
+                try {
+                    flush();
+                }
+                catch (SQLException e) {
+                    throw new JobExecutionException(e);
+                }
+            }
+        }
+
+        /**
+         * Reindexes the pending objects and removes their entries from the
+         * queue. Only the entries read are removed: ids are taken in insert
+         * order, an entry with a lower id may be committed after the read.
+         */
+        void flush() throws SQLException, JobExecutionException {
+            if (entryIds.isEmpty()) {
+                return;
+            }
+            for (Map.Entry<String, Set<Long>> objects : pending.entrySet()) {
+                reindex(objects.getKey(), objects.getValue());
+            }
+            WriteQuery delete = databaseManager.getWriterQuery("deleteIndexerQueue");
+            try {
+                // oracle takes no more than 1000 items in an in clause
+                for (int i = 0; i < entryIds.size(); i += 1000) {
+                    Map<String, Object> params = new HashMap<String, Object>();
+                    params.put("id_list", entryIds.subList(i,
+                            Math.min(i + 1000, entryIds.size())));
+                    delete.delete(params);
+                }
+            }
+            finally {
+                delete.close();
+            }
+            count += entryIds.size();
+            entryIds.clear();
+            pending.clear();
+        }
+
+        int getCount() {
+            return count;
+        }
+
+        private void reindex(String objectType, Set<Long> ids)
+            throws SQLException, JobExecutionException {
+            int deleted = 0;
+            if ("package".equals(objectType)) {
+                deleted = new IndexPackagesTask().reindex(databaseManager, indexManager,
+                        ids);
+            }
+            else if (BuilderFactory.ERRATA_TYPE.equals(objectType)) {
+                deleted = new IndexErrataTask().reindex(databaseManager, indexManager,
+                        ids);
+            }
+            else if (BuilderFactory.SERVER_TYPE.equals(objectType)) {
+                deleted = new IndexSystemsTask().reindex(databaseManager, indexManager,
+                        ids);
+            }
+            else {
+                log.warn("Skipping " + ids.size() + " queued objects of unknown type " +
+                        objectType);
+                return;
+            }
+            indexManager.getVisibilityCache().invalidate(objectType);
+            if (log.isDebugEnabled()) {
+                log.debug("Reindexed " + ids.size() + " queued " + objectType +
+                        " objects, " + deleted + " of them were deleted");
+            }
+        }
+    }
+}
@@ -15,12 +15,19 @@
 package com.redhat.satellite.search.scheduler.tasks;
 
 
+import com.redhat.satellite.search.db.DatabaseManager;
 import com.redhat.satellite.search.db.models.GenericRecord;
 import com.redhat.satellite.search.db.models.Server;
+import com.redhat.satellite.search.index.VisibilityFilter;
 import com.redhat.satellite.search.index.builder.BuilderFactory;
 
-import java.util.HashMap;
+import org.apache.lucene.document.Document;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 
@@ -34,6 +41,9 @@ import java.util.Map;
  * @version $Rev$
  */
 public class IndexSystemsTask extends GenericIndexTask {
+
+    private Map<Long, List<Long>> serverGroups;
+
     /**
      *  {@inheritDoc}
      */
@@ -96,6 +106,28 @@ public class IndexSystemsTask extends GenericIndexTask {
     /**
      * {@inheritDoc}
      */
+    @Override
+    protected void prepareRecords(DatabaseManager databaseManager,
+            List<GenericRecord> records) throws SQLException {
+        List<Long> ids = new ArrayList<Long>(records.size());
+        for (GenericRecord record : records) {
+            ids.add(record.getId());
+        }
+        serverGroups = IndexBatch.loadMemberships(databaseManager, "listServerGroupIds",
+                ids);
+    }
+
+    @Override
+    protected void addFields(GenericRecord data, Document doc) {
+        Server srvr = (Server)data;
+        if (srvr.getOrgId() != null) {
+            VisibilityFilter.addFields(doc, VisibilityFilter.ORG_FIELD,
+                    Collections.singletonList(srvr.getOrgId()));
+        }
+        VisibilityFilter.addFields(doc, VisibilityFilter.SERVER_GROUP_FIELD,
+                serverGroups.get(srvr.getId()));
+    }
+
     @Override
     public String getIndexName() {
         return BuilderFactory.SERVER_TYPE;
@@ -133,6 +165,14 @@ public class IndexSystemsTask extends GenericIndexTask {
         return "getServerByIdOrDate";
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected String getQueryRecordsById() {
+        return "listServersById";
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,205 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+
+package com.redhat.satellite.search.scheduler.tasks;
+
+import com.redhat.satellite.search.db.DatabaseManager;
+import com.redhat.satellite.search.db.Query;
+import com.redhat.satellite.search.index.IndexManager;
+import com.redhat.satellite.search.index.IndexRebuild;
+import com.redhat.satellite.search.index.IndexingException;
+
+import org.apache.log4j.Logger;
+import org.quartz.JobExecutionException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rebuilds an index with several threads. The id range of the records is
+ * cut into chunks the threads take in turn; every thread streams the
+ * records of its chunks into its own IndexBatch, which writes to the
+ * thread's part of an IndexRebuild. The parts are merged and swapped in
+ * for the live index once all records are indexed.
+ *
+ * @param <T> type of the indexed records
+ * @version $Rev$
+ */
+abstract class ParallelRebuild<T> {
+
+    private static Logger log = Logger.getLogger(ParallelRebuild.class);
+
+    // chunks per thread, so threads finishing early take over the rest
+    private static final int CHUNKS_PER_THREAD = 8;
+
+    private final DatabaseManager databaseManager;
+    private final IndexManager indexManager;
+    private final String indexName;
+    private final String lang;
+    private final String queryName;
+
+    /**
+     * Constructor
+     * @param databaseManagerIn database manager
+     * @param indexManagerIn index manager
+     * @param indexNameIn index to rebuild
+     * @param langIn language
+     * @param queryNameIn query streaming the records with from_id &lt; id &lt;=
+     * to_id in ascending id order
+     */
+    ParallelRebuild(DatabaseManager databaseManagerIn, IndexManager indexManagerIn,
+            String indexNameIn, String langIn, String queryNameIn) {
+        databaseManager = databaseManagerIn;
+        indexManager = indexManagerIn;
+        indexName = indexNameIn;
+        lang = langIn;
+        queryName = queryNameIn;
+    }
+
+    /**
+     * Indexes the records up to maxId and swaps the rebuilt index in
+     * @param maxId highest id of the records
+     * @return number of records indexed
+     * @throws JobExecutionException indexing failed, the live index is kept
+     */
+    int run(long maxId) throws JobExecutionException {
+        int threads = indexManager.getRebuildThreads();
+        long chunk = Math.max(indexManager.getCommitDocs(),
+                maxId / (threads * CHUNKS_PER_THREAD) + 1);
+        AtomicLong next = new AtomicLong(0);
+        long start = System.currentTimeMillis();
+        IndexRebuild rebuild;
+        try {
+            rebuild = indexManager.startRebuild(indexName, lang);
+        }
+        catch (IndexingException e) {
+            throw new JobExecutionException(e);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+        int count = 0;
+        boolean indexed = false;
+        try {
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(new Worker(rebuild, next, chunk, maxId)));
+            }
+            for (Future<Integer> result : results) {
+                count += result.get();
+            }
+            indexed = true;
+        }
+        catch (InterruptedException e) {
+            throw new JobExecutionException(e);
+        }
+        catch (ExecutionException e) {
+            throw new JobExecutionException(e);
+        }
+        finally {
+            // the parts can only be dropped once no thread writes to them
+            stop(executor, next, maxId);
+            if (!indexed) {
+                indexManager.abortRebuild(rebuild);
+            }
+        }
+        try {
+            indexManager.finishRebuild(rebuild);
+        }
+        catch (IndexingException e) {
+            throw new JobExecutionException(e);
+        }
+        log.info("Rebuilt <" + indexName + "> with " + count + " records in " +
+                threads + " threads in " + (System.currentTimeMillis() - start) +
+                " ms");
+        return count;
+    }
+
+    /**
+     * Lets the workers finish the chunks they are streaming, without taking
+     * new ones, and waits for them. Streaming from the database doesn't
+     * react to interrupts.
+     */
+    private void stop(ExecutorService executor, AtomicLong next, long maxId) {
+        next.set(maxId);
+        executor.shutdownNow();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    break;
+                }
+                log.info("Waiting for the threads rebuilding <" + indexName +
+                        "> to stop");
+            }
+            catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return a new batch for a worker thread, not recording any checkpoint
+     */
+    protected abstract IndexBatch<T> createBatch();
+
+    /**
+     * Takes chunks of the id range until all are indexed
+     */
+    private class Worker implements Callable<Integer> {
+
+        private final IndexRebuild rebuild;
+        private final AtomicLong next;
+        private final long chunk;
+        private final long maxId;
+
+        Worker(IndexRebuild rebuildIn, AtomicLong nextIn, long chunkIn, long maxIdIn) {
+            rebuild = rebuildIn;
+            next = nextIn;
+            chunk = chunkIn;
+            maxId = maxIdIn;
+        }
+
+        public Integer call() throws Exception {
+            IndexBatch<T> batch = createBatch();
+            batch.setPart(rebuild.addPart());
+            Query<T> query = databaseManager.getQuery(queryName);
+            try {
+                for (long from = next.getAndAdd(chunk); from < maxId;
+                        from = next.getAndAdd(chunk)) {
+                    Map<String, Object> params = new HashMap<String, Object>();
+                    params.put("from_id", from);
+                    params.put("to_id", from + chunk);
+                    query.stream(params, batch);
+                }
+            }
+            finally {
+                query.close();
+            }
+            batch.flush();
+            return batch.getCount();
+        }
+    }
+}
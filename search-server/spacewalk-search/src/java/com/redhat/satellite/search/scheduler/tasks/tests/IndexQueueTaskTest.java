@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2018 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package com.redhat.satellite.search.scheduler.tasks.tests;
+
+import com.redhat.satellite.search.db.DatabaseManager;
+import com.redhat.satellite.search.db.Query;
+import com.redhat.satellite.search.db.WriteQuery;
+import com.redhat.satellite.search.db.models.IndexerQueueEntry;
+import com.redhat.satellite.search.index.IndexManager;
+import com.redhat.satellite.search.index.builder.BuilderFactory;
+import com.redhat.satellite.search.index.builder.DocumentBuilder;
+import com.redhat.satellite.search.scheduler.tasks.IndexQueuePurgeTask;
+import com.redhat.satellite.search.scheduler.tasks.IndexQueueTask;
+import com.redhat.satellite.search.tests.BaseTestCase;
+import com.redhat.satellite.search.tests.TestUtil;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * IndexQueueTaskTest, fills the indexer queue directly instead of through
+ * the triggers of the indexed tables
+ * @version $Rev$
+ */
+public class IndexQueueTaskTest extends BaseTestCase {
+
+    public void testDrain() throws Exception {
+        DatabaseManager databaseManager = (DatabaseManager)
+            container.getComponentInstanceOfType(DatabaseManager.class);
+        IndexManager indexManager = (IndexManager)
+            container.getComponentInstanceOfType(IndexManager.class);
+        String index = BuilderFactory.PACKAGES_TYPE;
+
+        Query<Long> maxQuery = databaseManager.getQuery("maxPackageId");
+        Long present;
+        try {
+            present = maxQuery.load();
+        }
+        finally {
+            maxQuery.close();
+        }
+        assertNotNull(present);
+        // still in the index, but no longer in the database
+        Long deleted = present + 1000000;
+        DocumentBuilder pdb = BuilderFactory.getBuilder(index);
+        Map<String, String> meta = new HashMap<String, String>();
+        meta.put("name", "stale");
+        indexManager.addUniqueToIndex(index, pdb.buildDocument(deleted, meta), "id",
+                "en");
+        indexManager.commitIndex(index);
+        assertEquals(0, search(indexManager, index, present));
+        assertEquals(1, search(indexManager, index, deleted));
+
+        WriteQuery insert = databaseManager.getWriterQuery("createIndexerQueueEntry");
+        try {
+            for (Long id : new Long[] {present, deleted}) {
+                Map<String, Object> params = new HashMap<String, Object>();
+                params.put("object_type", "package");
+                params.put("object_id", id);
+                insert.insert(params);
+            }
+        }
+        finally {
+            insert.close();
+        }
+
+        assertTrue(new IndexQueueTask().drain(databaseManager, indexManager) >= 2);
+        assertEquals(1, search(indexManager, index, present));
+        assertEquals(0, search(indexManager, index, deleted));
+
+        Query<IndexerQueueEntry> query = databaseManager.getQuery("listIndexerQueue");
+        try {
+            List<IndexerQueueEntry> entries = query.loadList(null);
+            for (IndexerQueueEntry entry : entries) {
+                assertFalse(present.equals(entry.getObjectId()));
+                assertFalse(deleted.equals(entry.getObjectId()));
+            }
+        }
+        finally {
+            query.close();
+        }
+    }
+
+    public void testPurge() throws Exception {
+        DatabaseManager databaseManager = (DatabaseManager)
+            container.getComponentInstanceOfType(DatabaseManager.class);
+        WriteQuery insert = databaseManager.getWriterQuery("createIndexerQueueEntry");
+        try {
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put("object_type", "package");
+            params.put("object_id", 1L);
+            insert.insert(params);
+        }
+        finally {
+            insert.close();
+        }
+
+        assertTrue(new IndexQueuePurgeTask().purge(databaseManager) >= 1);
+        Query<IndexerQueueEntry> query = databaseManager.getQuery("listIndexerQueue");
+        try {
+            assertTrue(query.loadList(null).isEmpty());
+        }
+        finally {
+            query.close();
+        }
+    }
+
+    private int search(IndexManager indexManager, String index, Long id)
+        throws Exception {
+        return indexManager.search(index, "id:" + id, "en", true).size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Class[] getComponentClasses() {
+        Class[] comps = {DatabaseManager.class, IndexManager.class};
+        return TestUtil.buildComponentsList(comps);
+    }
+}